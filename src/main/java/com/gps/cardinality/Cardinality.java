@@ -26,18 +26,33 @@ import static com.gps.cardinality.utils.DataGenerator.generateUUIDs;
 import static com.gps.cardinality.utils.Timestamps.toEpoch;
 import static picocli.CommandLine.Option;
 
+import com.gps.cardinality.pipeline.AdmissionController;
+import com.gps.cardinality.pipeline.Pipeline;
+import com.gps.cardinality.pipeline.ShedPolicy;
+import com.gps.cardinality.pipeline.Stage;
 import com.gps.cardinality.storage.FileWriter;
+import com.gps.cardinality.storage.ChangeFeed;
 import com.gps.cardinality.storage.Database;
+import com.gps.cardinality.storage.InMemoryStorageEngine;
+import com.gps.cardinality.storage.SnapshotRestore;
+import com.gps.cardinality.storage.StorageEngine;
+import com.gps.cardinality.storage.StorageEngines;
+import com.gps.cardinality.utils.CsvEventReader;
 import com.gps.cardinality.utils.DataGenerator;
-import com.gps.cardinality.utils.DataGenerator.GeneratedData;
+import com.gps.cardinality.utils.EventArchiveReader;
+import com.gps.cardinality.utils.EventArchiveWriter;
+import com.gps.cardinality.utils.EventBatch;
+import com.gps.cardinality.utils.EventReader;
 
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
-import java.util.function.Supplier;
-import java.util.stream.Stream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -65,7 +80,17 @@ public class Cardinality implements Runnable {
       description = "A list of landing pages")
   String[] landingPages;
 
+  private static final int QUEUE_CAPACITY = 64;
+  private static final int EVENT_BATCH_SIZE = 1024;
+  private static final int CHANGE_BATCH_SIZE = 1024;
+  private static final int RESTORE_LOADER_THREADS = 2;
+
   private Database db;
+  private SnapshotRestore snapshotRestore;
+  private ScheduledExecutorService checkpoints;
+  private ScheduledExecutorService closeOuts;
+  private Thread changeConsumer;
+  private final AtomicLong consumedChanges = new AtomicLong();
 
   @Option(names = {"-s", "--site_id"},
       required = true,
@@ -94,8 +119,155 @@ public class Cardinality implements Runnable {
       description = "The number of samples to generate")
   private int numSamples;
 
+  @Option(names = {"-w", "--stage_workers"},
+      split = ",",
+      description = "The number of worker threads of the parse, track and log stages of the "
+                    + "ingestion pipeline, comma separated (default: 1,1,1)")
+  private int[] stageWorkers = {1, 1, 1};
+
+  @Option(names = {"--num_sites"},
+      description = "The number of sites to simulate, site ids are suffixed with their rank "
+                    + "(default: 1)")
+  private int numSites = 1;
+
+  @Option(names = {"--site_skew"},
+      description = "The exponent of the Zipf distribution of traffic across sites, 0 for "
+                    + "uniform traffic (default: 1.0)")
+  private double siteSkew = 1.0;
+
+  @Option(names = {"--threads"},
+      description = "The number of simulation threads (default: 1)")
+  private int threads = 1;
+
+  @Option(names = {"--rate"},
+      description = "The target number of events per second across all threads, 0 for no "
+                    + "limit (default: 0)")
+  private double rate;
+
+  @Option(names = {"--duration"},
+      description = "The maximum duration of the simulation in seconds, 0 for no limit "
+                    + "(default: 0)")
+  private long duration;
+
+  @Option(names = {"--memory_budget"},
+      description = "The estimated memory budget of the tables in megabytes, beyond which the "
+                    + "least recently used partitions are spilled to disk, 0 for no limit "
+                    + "(default: 0)")
+  private long memoryBudget;
+
+  @Option(names = {"--spill_dir"},
+      description = "The directory partitions are spilled to when over the memory budget "
+                    + "(default: spill)")
+  private String spillDir = "spill";
+
+  @Option(names = {"--engine"},
+      description = "The storage engine of the tables: memory or sorted_map, or the name of an "
+                    + "engine registered as a service (default: memory)")
+  private String engine = InMemoryStorageEngine.NAME;
+
+  @Option(names = {"--replay"},
+      description = "A CSV file of previously logged events, with a 'guid,timestamp' header "
+                    + "followed by the feature names, or an event archive, to track in batches "
+                    + "instead of generating events")
+  private String replay;
+
+  @Option(names = {"--replay_from"},
+      description = "A 'yyyy-MM-dd' formatted date before which archived events are not "
+                    + "replayed, only reading the archive blocks in range")
+  private String replayFrom;
+
+  @Option(names = {"--replay_to"},
+      description = "A 'yyyy-MM-dd' formatted date from which archived events are not replayed")
+  private String replayTo;
+
+  @Option(names = {"--event_archive"},
+      description = "A file to also log the generated events to as a compressed columnar "
+                    + "archive, which --replay reads back")
+  private String eventArchive;
+
+  @Option(names = {"--site_rate"},
+      description = "The number of events per second admitted for each site of a simulation, "
+                    + "excess events being shed according to --shed_policy, 0 for no admission "
+                    + "control (default: 0)")
+  private double siteRate;
+
+  @Option(names = {"--site_burst"},
+      description = "The number of events a site can submit at once after being idle, 0 for one "
+                    + "second worth of --site_rate (default: 0)")
+  private double siteBurst;
+
+  @Option(names = {"--shed_policy"},
+      description = "What to do with events over a site's budget or once the ingest queue is "
+                    + "full: ${COMPLETION-CANDIDATES} (default: DROP)")
+  private ShedPolicy shedPolicy = ShedPolicy.DROP;
+
+  @Option(names = {"--sample_rate"},
+      description = "The fraction of events over budget admitted by the SAMPLE policy "
+                    + "(default: 0.1)")
+  private double sampleRate = 0.1;
+
+  @Option(names = {"--ingest_queue"},
+      description = "The capacity of the ingest queue in front of the tables when admission "
+                    + "control is enabled (default: 4096)")
+  private int ingestQueue = 4096;
+
+  @Option(names = {"--ingest_workers"},
+      description = "The number of threads tracking admitted events (default: 1)")
+  private int ingestWorkers = 1;
+
+  @Option(names = {"--snapshot"},
+      description = "A directory to snapshot the tables to at the end of the run")
+  private String snapshot;
+
+  @Option(names = {"--restore"},
+      description = "A snapshot directory to restore the tables from before the run, sites "
+                    + "being loaded in the background or on their first use")
+  private String restore;
+
+  @Option(names = {"--checkpoint"},
+      description = "A directory to checkpoint the tables to during and at the end of the run, "
+                    + "only writing the partitions changed since the previous checkpoint")
+  private String checkpoint;
+
+  @Option(names = {"--checkpoint_interval"},
+      description = "The number of seconds between checkpoints (default: 60)")
+  private long checkpointInterval = 60;
+
+  @Option(names = {"--max_deltas"},
+      description = "The number of delta checkpoints after which checkpoints are merged into a "
+                    + "new base (default: 10)")
+  private int maxDeltas = 10;
+
+  @Option(names = {"--archive"},
+      description = "A directory to archive months to once they are over, dropping their guid "
+                    + "data from memory")
+  private String archive;
+
+  @Option(names = {"--grace_days"},
+      description = "The number of days after a month ends, in event time, before it is closed "
+                    + "and its late events dropped (default: 2)")
+  private long graceDays = 2;
+
+  @Option(names = {"--close_interval"},
+      description = "The number of seconds between checks for months to close (default: 60)")
+  private long closeInterval = 60;
+
+  @Option(names = {"--archive_sketch_entries"},
+      description = "The size of the sketch archived for each feature combination of a closed "
+                    + "month, 0 to archive the guid data only (default: 4096)")
+  private int archiveSketchEntries = 4096;
+
+  @Option(names = {"--rollup"},
+      description = "A feature to break the counts of every site down by at the end of the "
+                    + "run, summed across sites and months")
+  private String rollup;
+
+  @Option(names = {"--change_feed"},
+      description = "The capacity of a change feed of the new unique visitors, drained by a "
+                    + "consumer thread during the run, 0 for none (default: 0)")
+  private int changeFeed;
+
   private Cardinality() {
-    db = new Database();
   }
 
   public static void main(String[] args) {
@@ -104,28 +276,238 @@ public class Cardinality implements Runnable {
 
   /**
    * Generates mock data, populating some tables and printing them to the console to help
-   * visualize the results.
+   * visualize the results. Events flow through a {@link Pipeline} which parses them into
+   * tracking events, expands them into their feature combinations, applies them to the tables
+   * and logs them to the CSV file.
+   *
+   * <p>
+   * When several sites, several threads, a duration or a site rate are requested, runs a
+   * {@link Simulation} instead and prints its summary rather than the tables.
+   * </p>
    */
   public void run() {
-    db.createTables(siteId, new TreeSet<>(List.of("feature1", "feature2")));
+    StorageEngine storageEngine = StorageEngines.forName(engine);
+    if (storageEngine instanceof InMemoryStorageEngine) {
+      db = new Database(memoryBudget * 1024 * 1024, Paths.get(spillDir));
+    } else if (memoryBudget > 0 || null != checkpoint) {
+      throw new IllegalArgumentException(String.format(
+          "--memory_budget and --checkpoint need the memory engine, not '%s'", engine));
+    } else {
+      db = new Database(storageEngine);
+    }
+    if (null != restore) {
+      snapshotRestore = db.restore(Paths.get(restore), RESTORE_LOADER_THREADS);
+    }
+    if (null != checkpoint) {
+      checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      });
+      checkpoints.scheduleWithFixedDelay(this::checkpoint, checkpointInterval,
+          checkpointInterval, TimeUnit.SECONDS);
+    }
+    if (changeFeed > 0) {
+      ChangeFeed.Subscription subscription = db.enableChangeFeed(changeFeed).subscribe();
+      changeConsumer = new Thread(() -> {
+        while (!Thread.currentThread().isInterrupted()) {
+          consumedChanges.addAndGet(
+              subscription.poll(CHANGE_BATCH_SIZE, 100, TimeUnit.MILLISECONDS).size());
+        }
+        subscription.close();
+      }, "change-consumer");
+      changeConsumer.setDaemon(true);
+      changeConsumer.start();
+    }
+    if (null != archive) {
+      closeOuts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "close-out");
+        thread.setDaemon(true);
+        return thread;
+      });
+      closeOuts.scheduleWithFixedDelay(this::closeMonths, closeInterval, closeInterval,
+          TimeUnit.SECONDS);
+    }
+    if (null != replay) {
+      replay();
+      return;
+    }
+    if (numSites > 1 || threads > 1 || duration > 0 || siteRate > 0) {
+      Simulation simulation = new Simulation(db, siteId, numSites, siteSkew, threads, rate,
+          duration, numSamples, numGuids, List.of(referers), List.of(landingPages),
+          toEpoch(from), toEpoch(to));
+      if (siteRate > 0) {
+        simulation.withAdmission(new AdmissionController(db, ingestQueue, ingestWorkers)
+            .withSiteRate(siteRate, 0 == siteBurst ? siteRate : siteBurst)
+            .withShedPolicy(shedPolicy, sampleRate));
+      }
+      System.out.print(simulation.run());
+      printStats();
+      return;
+    }
+    if (stageWorkers.length != 3) {
+      throw new IllegalArgumentException(String.format(
+          "Expected 3 stage worker counts, got %d", stageWorkers.length));
+    }
+    List<String> featureNames = List.of("feature1", "feature2");
+    if (!db.hasSite(siteId)) {
+      db.createTables(siteId, new TreeSet<>(featureNames));
+    }
     List<UUID> guids = generateUUIDs(numGuids);
-    Supplier<GeneratedData> randomDataSupplier = () -> DataGenerator
-        .generate(guids, List.of(referers),
-            List.of(landingPages),
-            toEpoch(from),
-            toEpoch(to), null);
+    List<String> refererList = List.of(referers);
+    List<String> landingPageList = List.of(landingPages);
+    int intervalStart = toEpoch(from);
+    int intervalEnd = toEpoch(to);
     FileWriter fileWriter = new FileWriter(siteId);
     fileWriter.writeCsv("guid,timestamp,feature1,feature2");
-    Stream.generate(randomDataSupplier).limit(numSamples).forEach(data -> {
-      db.track(
-          siteId, data.timestamp, data.guid,
-          new TreeMap<>(Map.of("feature1", data.feature1, "feature2", data.feature2)));
-      fileWriter.writeCsv(data.toCsv());
-    });
+    EventArchiveWriter archiveWriter = null == eventArchive ? null
+        : new EventArchiveWriter(Paths.get(eventArchive), featureNames,
+            EventArchiveWriter.DEFAULT_BLOCK_SIZE);
+
+    // Stages hand each other columnar batches of events, the source only submits their sizes
+    Pipeline pipeline = new Pipeline(QUEUE_CAPACITY, 1);
+    pipeline.addStage(new Stage<Integer, EventBatch>("parse", stageWorkers[0], (size, emit) -> {
+      EventBatch batch = new EventBatch(featureNames, size);
+      DataGenerator.generate(ThreadLocalRandom.current(), guids, refererList, landingPageList,
+          intervalStart, intervalEnd, null, batch, size);
+      emit.accept(batch);
+    }));
+    pipeline.addStage(new Stage<EventBatch, EventBatch>("track", stageWorkers[1],
+        (batch, emit) -> {
+          db.track(siteId, batch);
+          emit.accept(batch);
+        }));
+    pipeline.addStage(new Stage<EventBatch, Void>("log", stageWorkers[2], (batch, emit) -> {
+      for (int e = 0; e < batch.size(); e++) {
+        fileWriter.writeCsv(DataGenerator.toCsv(batch, e));
+      }
+      if (null != archiveWriter) {
+        archiveWriter.write(batch);
+      }
+    }));
+    pipeline.start();
+    for (int remaining = numSamples; remaining > 0; remaining -= EVENT_BATCH_SIZE) {
+      pipeline.submit(Math.min(remaining, EVENT_BATCH_SIZE));
+    }
+    pipeline.close();
+
+    db.flush();
     fileWriter.writeTable(db.getGuidDataTable(siteId));
     fileWriter.writeTable(db.getMonthlyCountsTable(siteId));
     fileWriter.close();
+    if (null != archiveWriter) {
+      archiveWriter.close();
+    }
+    System.out.print(pipeline.report());
+    printStats();
     System.out.println(String.format("Simulation complete. Check %s and %s for results.",
         fileWriter.getTablesFilePath(), fileWriter.getCsvFilePath()));
   }
+
+  /**
+   * Tracks the events of a CSV file or an event archive in columnar batches and prints the
+   * resulting tables.
+   */
+  private void replay() {
+    long events = 0;
+    long startNanos = System.nanoTime();
+    boolean archived = EventArchiveReader.isArchive(Paths.get(replay));
+    if (!archived && (null != replayFrom || null != replayTo)) {
+      throw new IllegalArgumentException("--replay_from and --replay_to need an event archive");
+    }
+    try (EventReader reader = archived
+        ? new EventArchiveReader(Paths.get(replay),
+            null == replayFrom ? Long.MIN_VALUE : toEpoch(replayFrom),
+            null == replayTo ? Long.MAX_VALUE : toEpoch(replayTo))
+        : new CsvEventReader(Paths.get(replay))) {
+      if (!db.hasSite(siteId)) {
+        db.createTables(siteId, new TreeSet<>(reader.getFeatureNames()));
+      }
+      EventBatch batch = new EventBatch(reader.getFeatureNames(), EVENT_BATCH_SIZE);
+      while (reader.read(batch, EVENT_BATCH_SIZE) > 0) {
+        db.track(siteId, batch);
+        events += batch.size();
+        batch.clear();
+      }
+      if (archived) {
+        EventArchiveReader archive = (EventArchiveReader) reader;
+        System.out.println(String.format("Read %d of %d archive blocks.",
+            archive.getBlocksInRange(), archive.getBlocks()));
+      }
+    }
+    db.flush();
+    long elapsedNanos = System.nanoTime() - startNanos;
+    FileWriter fileWriter = new FileWriter(siteId);
+    fileWriter.writeTable(db.getGuidDataTable(siteId));
+    fileWriter.writeTable(db.getMonthlyCountsTable(siteId));
+    fileWriter.close();
+    System.out.println(String.format("Replayed %d events in %d ms.", events,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+    printStats();
+    System.out.println(String.format("Replay complete. Check %s for results.",
+        fileWriter.getTablesFilePath()));
+  }
+
+  private void checkpoint() {
+    System.out.println(db.checkpoint(Paths.get(checkpoint), maxDeltas));
+  }
+
+  private void closeMonths() {
+    try {
+      db.closeMonths(TimeUnit.DAYS.toSeconds(graceDays), Paths.get(archive),
+          archiveSketchEntries).forEach(System.out::println);
+    } catch (RuntimeException e) {
+      // Leaves the month open, it is retried on the next run
+      System.err.println(String.format("Month close-out failed: %s", e.getMessage()));
+    }
+  }
+
+  /**
+   * Closes the months that are over, prints the rollup, the memory statistics and the restore
+   * progress if relevant, then snapshots and checkpoints the tables if requested.
+   */
+  private void printStats() {
+    if (null != closeOuts) {
+      closeOuts.shutdown();
+      try {
+        closeOuts.awaitTermination(1, TimeUnit.HOURS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      closeMonths();
+      System.out.println(String.format("%d late events dropped.", db.getLateEvents()));
+    }
+    if (null != rollup) {
+      System.out.print(db.rollUp(rollup, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+    if (null != changeConsumer) {
+      System.out.println(String.format("%s, %d consumed", db.getChangeFeed(),
+          consumedChanges.get()));
+      changeConsumer.interrupt();
+    }
+    if (memoryBudget > 0) {
+      System.out.println(db.getMemoryStats());
+    }
+    if (null != snapshotRestore) {
+      System.out.println(snapshotRestore);
+    }
+    if (null != snapshot) {
+      long start = System.nanoTime();
+      db.snapshot(Paths.get(snapshot));
+      System.out.println(String.format("Snapshot written to %s in %d ms.", snapshot,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+    if (null != checkpoints) {
+      // Lets a running checkpoint complete, interrupting it could leave it half written
+      checkpoints.shutdown();
+      try {
+        checkpoints.awaitTermination(1, TimeUnit.HOURS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      checkpoint();
+    }
+  }
 }
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality;
+
+import static com.gps.cardinality.utils.DataGenerator.generateUUIDs;
+
+import com.gps.cardinality.pipeline.AdmissionController;
+import com.gps.cardinality.storage.Database;
+import com.gps.cardinality.utils.DataGenerator;
+import com.gps.cardinality.utils.DataGenerator.GeneratedData;
+import com.gps.cardinality.utils.LatencyHistogram;
+import com.gps.cardinality.utils.Throttle;
+import com.gps.cardinality.utils.ZipfDistribution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi site, multi threaded tracking simulation. Worker threads pick sites following a Zipf
+ * distribution, so that a few sites get most of the traffic, and track generated visits until
+ * either the number of samples or the duration is reached. The run ends with a throughput,
+ * latency and memory summary rather than with the content of the tables.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class Simulation {
+
+  private Database db;
+  private List<String> siteIds;
+  private ZipfDistribution siteDistribution;
+  private int threads;
+  private double rate;
+  private long durationSeconds;
+  private long numSamples;
+  private List<UUID> guids;
+  private List<String> referers;
+  private List<String> landingPages;
+  private int from;
+  private int to;
+  private AdmissionController admission;
+
+  /**
+   * @param db
+   *     the database to populate
+   * @param siteId
+   *     the site id, used as a prefix of the site ids when simulating several sites
+   * @param numSites
+   *     the number of sites
+   * @param siteSkew
+   *     the exponent of the Zipf distribution of traffic across sites, 0 for uniform traffic
+   * @param threads
+   *     the number of worker threads
+   * @param rate
+   *     the target number of events per second across all threads, 0 for no limit
+   * @param durationSeconds
+   *     the maximum duration of the run, 0 for no limit
+   * @param numSamples
+   *     the maximum number of events, 0 for no limit
+   * @param numGuids
+   *     the number of random guids to select from
+   * @param referers
+   *     a list of referers
+   * @param landingPages
+   *     a list of landing pages
+   * @param from
+   *     the timestamp from which the random timestamps should start
+   * @param to
+   *     the timestamp when the random timestamps should stop
+   */
+  Simulation(Database db, String siteId, int numSites, double siteSkew, int threads,
+      double rate, long durationSeconds, long numSamples, int numGuids, List<String> referers,
+      List<String> landingPages, int from, int to) {
+    if (0 == durationSeconds && 0 == numSamples) {
+      throw new IllegalArgumentException("Either a duration or a number of samples is required");
+    }
+    this.db = db;
+    this.siteIds = new ArrayList<>();
+    for (int i = 0; i < numSites; i++) {
+      siteIds.add(numSites == 1 ? siteId : String.format("%s_%d", siteId, i));
+    }
+    this.siteDistribution = new ZipfDistribution(numSites, siteSkew);
+    this.threads = threads;
+    this.rate = rate;
+    this.durationSeconds = durationSeconds;
+    this.numSamples = numSamples;
+    this.guids = generateUUIDs(numGuids);
+    this.referers = referers;
+    this.landingPages = landingPages;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Submits events through an admission controller rather than tracking them directly. Latencies
+   * are then those of the submissions and the summary includes the shed events.
+   *
+   * @param admission
+   *     the admission controller, started and closed by the simulation
+   * @return this simulation
+   */
+  Simulation withAdmission(AdmissionController admission) {
+    this.admission = admission;
+    return this;
+  }
+
+  /**
+   * Runs the simulation.
+   *
+   * @return the run's summary
+   */
+  String run() {
+    long setupStart = System.nanoTime();
+    long heapBefore = usedHeap();
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    for (String siteId : siteIds) {
+      // Restored sites keep their tables
+      if (!db.hasSite(siteId)) {
+        db.createTables(siteId, features);
+      }
+    }
+    long setupNanos = System.nanoTime() - setupStart;
+    long emptySitesHeap = usedHeap() - heapBefore;
+
+    AtomicLong remaining = new AtomicLong(0 == numSamples ? Long.MAX_VALUE : numSamples);
+    long deadline = 0 == durationSeconds ? Long.MAX_VALUE
+        : System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+    List<LatencyHistogram> histograms = new ArrayList<>();
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histograms.add(histogram);
+      workers.add(new Thread(() -> simulate(remaining, deadline, histogram),
+          String.format("simulation-%d", t)));
+    }
+    if (null != admission) {
+      admission.start();
+    }
+    long start = System.nanoTime();
+    workers.forEach(Thread::start);
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    if (null != admission) {
+      admission.close();
+    }
+    db.flush();
+
+    LatencyHistogram latencies = new LatencyHistogram();
+    histograms.forEach(latencies::merge);
+    long guidPartitions = 0;
+    long countPartitions = 0;
+    for (String siteId : siteIds) {
+      guidPartitions += db.getGuidDataTable(siteId).size();
+      countPartitions += db.getMonthlyCountsTable(siteId).size();
+    }
+    long heap = usedHeap() - heapBefore;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Simulated %d events on %d sites with %d threads in %.3fs%n",
+        latencies.getTotalCount(), siteIds.size(), threads, elapsedNanos / 1e9));
+    sb.append(String.format("throughput: %.0f events/s (target: %s)%n",
+        latencies.getTotalCount() / (elapsedNanos / 1e9),
+        0 == rate ? "unlimited" : String.format("%.0f events/s", rate)));
+    sb.append(String.format("%s latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f "
+                            + "max=%.1f%n", null == admission ? "track" : "submit",
+        latencies.percentile(50) / 1e3, latencies.percentile(90) / 1e3,
+        latencies.percentile(99) / 1e3, latencies.percentile(99.9) / 1e3,
+        latencies.getMax() / 1e3));
+    sb.append(String.format("busiest site share: %.1f%%%n", siteDistribution.probability(0) * 100));
+    if (null != admission) {
+      sb.append(String.format("admission (%s): %s%n", admission.getShedPolicy(),
+          admission.getStats()));
+      sb.append(String.format("busiest site admission: %s%n",
+          admission.getStats(siteIds.get(0))));
+    }
+    sb.append(String.format("partitions: %d guid data, %d counts%n", guidPartitions,
+        countPartitions));
+    sb.append(String.format("site setup: %.3fs, %.1f KB heap per empty site%n", setupNanos / 1e9,
+        emptySitesHeap / 1024.0 / siteIds.size()));
+    sb.append(String.format("heap used: %.1f MB (%.1f KB per site)%n", heap / 1024.0 / 1024.0,
+        heap / 1024.0 / siteIds.size()));
+    return sb.toString();
+  }
+
+  private void simulate(AtomicLong remaining, long deadline, LatencyHistogram latencies) {
+    ThreadLocalRandom rand = ThreadLocalRandom.current();
+    Throttle throttle = 0 == rate ? null : Throttle.create(rate / threads);
+    while (remaining.getAndDecrement() > 0 && System.nanoTime() < deadline) {
+      String siteId = siteIds.get(siteDistribution.sample(rand));
+      GeneratedData data = DataGenerator.generate(rand, guids, referers, landingPages, from, to,
+          throttle);
+      NavigableMap<String, String> features =
+          new TreeMap<>(Map.of("feature1", data.feature1, "feature2", data.feature2));
+      long start = System.nanoTime();
+      if (null == admission) {
+        db.track(siteId, data.timestamp, data.guid, features);
+      } else {
+        try {
+          admission.submit(siteId, data.timestamp, data.guid, features);
+        } catch (RejectedExecutionException e) {
+          // Counted as shed by the controller, a real client would back off
+        }
+      }
+      latencies.record(System.nanoTime() - start);
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
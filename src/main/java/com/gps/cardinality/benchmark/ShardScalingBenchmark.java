@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.benchmark;
+
+import static com.gps.cardinality.utils.DataGenerator.generateUUIDs;
+import static com.gps.cardinality.utils.Timestamps.toEpoch;
+
+import com.gps.cardinality.storage.ShardedDatabase;
+import com.gps.cardinality.utils.DataGenerator;
+import com.gps.cardinality.utils.DataGenerator.GeneratedData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Measures tracking throughput of a {@link ShardedDatabase} as the number of shards grows from 1
+ * to N. Usage:
+ *
+ * <pre>
+ * java -cp build/libs/cardinality.jar com.gps.cardinality.benchmark.ShardScalingBenchmark \
+ *     [max_shards] [num_events] [num_guids]
+ * </pre>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ShardScalingBenchmark {
+
+  private static final String SITE_ID = "site1";
+
+  public static void main(String[] args) {
+    int maxShards = args.length > 0 ? Integer.parseInt(args[0])
+        : Runtime.getRuntime().availableProcessors();
+    int numEvents = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+    int numGuids = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+
+    List<UUID> guids = generateUUIDs(numGuids);
+    List<String> referers = List.of("facebook.com", "google.com", "twitter.com", "bing.com");
+    List<String> landingPages = List.of("/index.html", "/index2.html", "/index3.html");
+    List<GeneratedData> events = new ArrayList<>(numEvents);
+    List<NavigableMap<String, String>> features = new ArrayList<>(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      GeneratedData data = DataGenerator.generate(guids, referers, landingPages,
+          toEpoch("2018-10-01"), toEpoch("2018-12-01"), null);
+      events.add(data);
+      features.add(new TreeMap<>(Map.of("feature1", data.feature1, "feature2", data.feature2)));
+    }
+
+    System.out.println(String.format("%d events, %d guids", numEvents, numGuids));
+    System.out.println(String.format("%8s %14s %9s %12s", "shards", "events/s", "speedup",
+        "max/min load"));
+    // Powers of two below the maximum, then the maximum itself
+    List<Integer> shardCounts = new ArrayList<>();
+    for (int numShards = 1; numShards < maxShards; numShards *= 2) {
+      shardCounts.add(numShards);
+    }
+    shardCounts.add(maxShards);
+    double baseline = 0;
+    for (int numShards : shardCounts) {
+      // Warm up the JIT on a throwaway run before measuring
+      run(numShards, events.subList(0, Math.min(numEvents, 50_000)), features);
+      long[] load = new long[numShards];
+      double throughput = run(numShards, events, features, load);
+      if (baseline == 0) {
+        baseline = throughput;
+      }
+      long max = Arrays.stream(load).max().orElse(0);
+      long min = Arrays.stream(load).min().orElse(0);
+      System.out.println(String.format("%8d %14.0f %8.2fx %12.3f", numShards, throughput,
+          throughput / baseline, min == 0 ? 0 : (double) max / min));
+    }
+  }
+
+  private static double run(
+      int numShards, List<GeneratedData> events, List<NavigableMap<String, String>> features) {
+    return run(numShards, events, features, new long[numShards]);
+  }
+
+  /**
+   * Tracks all events into a fresh sharded database and returns the throughput in events per
+   * second, filling {@code load} with the number of events each shard received.
+   */
+  private static double run(int numShards, List<GeneratedData> events,
+      List<NavigableMap<String, String>> features, long[] load) {
+    try (ShardedDatabase db = new ShardedDatabase(numShards)) {
+      db.createTables(SITE_ID, new TreeSet<>(List.of("feature1", "feature2")));
+      long start = System.nanoTime();
+      for (int i = 0; i < events.size(); i++) {
+        GeneratedData data = events.get(i);
+        db.track(SITE_ID, data.timestamp, data.guid, features.get(i));
+      }
+      db.drain();
+      long elapsed = System.nanoTime() - start;
+      System.arraycopy(db.getRoutedEvents(), 0, load, 0, numShards);
+      return events.size() / (elapsed / 1e9);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.benchmark;
+
+import static com.gps.cardinality.utils.DataGenerator.generateUUIDs;
+import static com.gps.cardinality.utils.Timestamps.toEpoch;
+
+import com.gps.cardinality.storage.Database;
+import com.gps.cardinality.storage.ScanPage;
+import com.gps.cardinality.storage.StorageEngine;
+import com.gps.cardinality.storage.StorageEngines;
+import com.gps.cardinality.storage.StorageTable;
+import com.gps.cardinality.utils.DataGenerator;
+import com.gps.cardinality.utils.DataGenerator.GeneratedData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Runs the same tracking, point get, scan and snapshot workload against storage engines, see
+ * {@link StorageEngines}. Usage:
+ *
+ * <pre>
+ * java -cp build/libs/cardinality.jar com.gps.cardinality.benchmark.StorageEngineBenchmark \
+ *     [engines] [num_events] [num_guids]
+ * </pre>
+ *
+ * <p>
+ * Engines are given as a comma separated list of names, {@code memory,sorted_map} by default.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class StorageEngineBenchmark {
+
+  private static final String SITE_ID = "site1";
+  private static final int SCAN_PAGE_SIZE = 1000;
+
+  public static void main(String[] args) {
+    String[] engines = (args.length > 0 ? args[0] : "memory,sorted_map").split(",");
+    int numEvents = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+    int numGuids = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+
+    List<UUID> guids = generateUUIDs(numGuids);
+    List<String> referers = List.of("facebook.com", "google.com", "twitter.com", "bing.com");
+    List<String> landingPages = List.of("/index.html", "/index2.html", "/index3.html");
+    List<GeneratedData> events = new ArrayList<>(numEvents);
+    List<NavigableMap<String, String>> features = new ArrayList<>(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      GeneratedData data = DataGenerator.generate(guids, referers, landingPages,
+          toEpoch("2018-10-01"), toEpoch("2018-12-01"), null);
+      events.add(data);
+      features.add(new TreeMap<>(Map.of("feature1", data.feature1, "feature2", data.feature2)));
+    }
+    System.out.println(String.format("%d events, %d guids", numEvents, numGuids));
+    System.out.println(String.format("%12s %14s %14s %14s %12s %14s", "engine", "events/s",
+        "gets/s", "scan rows/s", "snapshot ms", "est. bytes"));
+    for (String name : engines) {
+      // Warm up the JIT on a throwaway run before measuring
+      run(StorageEngines.forName(name), events.subList(0, Math.min(numEvents, 50_000)), features);
+      double[] result = run(StorageEngines.forName(name), events, features);
+      System.out.println(String.format("%12s %14.0f %14.0f %14.0f %12.1f %14.0f", name,
+          result[0], result[1], result[2], result[3], result[4]));
+    }
+  }
+
+  /**
+   * Tracks all events into a fresh database, reads back every counts partition, scans the guid
+   * data and snapshots the database. Reads go to the tables directly, not to the query cache.
+   *
+   * @return the tracking, point get and scan throughputs per second, the snapshot time in
+   * milliseconds and the estimated footprint of the tables in bytes
+   */
+  private static double[] run(StorageEngine engine, List<GeneratedData> events,
+      List<NavigableMap<String, String>> features) {
+    Database db = new Database(engine);
+    db.createTables(SITE_ID, new TreeSet<>(List.of("feature1", "feature2")));
+    long start = System.nanoTime();
+    for (int i = 0; i < events.size(); i++) {
+      GeneratedData data = events.get(i);
+      db.track(SITE_ID, data.timestamp, data.guid, features.get(i));
+    }
+    double trackThroughput = events.size() / ((System.nanoTime() - start) / 1e9);
+
+    StorageTable counts = db.getMonthlyCountsTable(SITE_ID);
+    List<String> keys = new ArrayList<>();
+    counts.forEachPartitionKey(SITE_ID + ":", keys::add);
+    int numGets = Math.max(keys.size(), events.size() / 10);
+    long columns = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < numGets; i++) {
+      columns += counts.selectPartition(keys.get(i % keys.size())).size();
+    }
+    double getThroughput = numGets / ((System.nanoTime() - start) / 1e9);
+
+    StorageTable guids = db.getGuidDataTable(SITE_ID);
+    long rows = 0;
+    String pagingState = null;
+    start = System.nanoTime();
+    do {
+      ScanPage page = guids.scan(pagingState, SCAN_PAGE_SIZE);
+      rows += page.getRows().size();
+      pagingState = page.getPagingState();
+    } while (null != pagingState);
+    double scanThroughput = rows / ((System.nanoTime() - start) / 1e9);
+
+    long bytes = guids.getEstimatedBytes() + counts.getEstimatedBytes();
+    try {
+      Path snapshot = Files.createTempDirectory("engine-benchmark");
+      start = System.nanoTime();
+      db.snapshot(snapshot);
+      double snapshotMillis = (System.nanoTime() - start) / 1e6;
+      try (Stream<Path> files = Files.walk(snapshot)) {
+        for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+          Files.delete(file);
+        }
+      }
+      if (0 == columns) {
+        throw new IllegalStateException("No counts were read");
+      }
+      return new double[]{trackThroughput, getThroughput, scanThroughput, snapshotMillis, bytes};
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import com.gps.cardinality.storage.Database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission layer in front of {@link Database#track}, protecting the tracking of every site from
+ * traffic spikes of a few. Submitted events go through three checks before being queued:
+ *
+ * <ul>
+ * <li>each site has a token budget, refilled at a steady rate up to a burst size</li>
+ * <li>a site may only occupy a share of the ingest queue, so a backlog of one site leaves room
+ * for the others</li>
+ * <li>the ingest queue itself is bounded</li>
+ * </ul>
+ *
+ * <p>
+ * Events failing a check are shed according to the {@link ShedPolicy}. Submitting never blocks,
+ * so the latency seen by callers stays flat whatever the load. Worker threads take events off the
+ * queue and track them. Shed events are counted per site, see {@link #getStats(String)}.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class AdmissionController implements AutoCloseable {
+
+  private static final String SHED_MESSAGE = "Event of site '%s' shed: %s";
+  private static final double DEFAULT_MAX_SITE_QUEUE_SHARE = 0.5;
+
+  private Database db;
+  private int workers;
+  private BoundedQueue<Event> queue;
+  private double siteRate;
+  private double siteBurst;
+  private Map<String, double[]> siteRates;
+  private ShedPolicy policy;
+  private double sampleRate;
+  private int maxSiteQueued;
+  private Map<String, SiteBudget> budgets;
+  private List<Thread> threads;
+  private volatile boolean closed;
+  /**
+   * Number of submissions in progress, which may still queue an event after the controller is
+   * closed.
+   */
+  private AtomicInteger submitting;
+  /**
+   * Set once closed and no submission is in progress, i.e. once no event can be queued anymore.
+   */
+  private volatile boolean drained;
+  private volatile RuntimeException failure;
+
+  /**
+   * Creates a controller with no token budget, dropping events once a site fills half of the
+   * queue or once the queue is full.
+   *
+   * @param db
+   *     the database events are tracked in
+   * @param queueCapacity
+   *     the minimum capacity of the ingest queue, rounded up to the next power of two
+   * @param workers
+   *     the number of threads tracking queued events
+   */
+  public AdmissionController(Database db, int queueCapacity, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException(
+          String.format("Admission needs at least one worker: %d", workers));
+    }
+    this.db = db;
+    this.workers = workers;
+    this.queue = new BoundedQueue<>(queueCapacity);
+    this.siteRates = new ConcurrentHashMap<>();
+    this.policy = ShedPolicy.DROP;
+    this.budgets = new ConcurrentHashMap<>();
+    this.threads = new ArrayList<>();
+    this.submitting = new AtomicInteger();
+    withMaxSiteQueueShare(DEFAULT_MAX_SITE_QUEUE_SHARE);
+  }
+
+  /**
+   * @param eventsPerSecond
+   *     the rate at which the token budget of every site is refilled, 0 for no budget
+   * @param burst
+   *     the maximum number of tokens a site can accumulate while idle
+   * @return this controller
+   */
+  public AdmissionController withSiteRate(double eventsPerSecond, double burst) {
+    checkRate(eventsPerSecond, burst);
+    this.siteRate = eventsPerSecond;
+    this.siteBurst = burst;
+    return this;
+  }
+
+  /**
+   * Overrides the token budget of a single site, before its first event is submitted.
+   *
+   * @param siteId
+   *     the site
+   * @param eventsPerSecond
+   *     the rate at which the site's token budget is refilled, 0 for no budget
+   * @param burst
+   *     the maximum number of tokens the site can accumulate while idle
+   * @return this controller
+   */
+  public AdmissionController withSiteRate(String siteId, double eventsPerSecond, double burst) {
+    checkRate(eventsPerSecond, burst);
+    siteRates.put(siteId, new double[]{eventsPerSecond, burst});
+    return this;
+  }
+
+  /**
+   * @param policy
+   *     what to do with excess events
+   * @param sampleRate
+   *     the probability of admitting an event over budget, only used by {@link ShedPolicy#SAMPLE}
+   * @return this controller
+   */
+  public AdmissionController withShedPolicy(ShedPolicy policy, double sampleRate) {
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException(String.format("Invalid sample rate: %f", sampleRate));
+    }
+    this.policy = policy;
+    this.sampleRate = sampleRate;
+    return this;
+  }
+
+  /**
+   * @param share
+   *     the maximum fraction of the ingest queue the events of a single site may occupy
+   * @return this controller
+   */
+  public AdmissionController withMaxSiteQueueShare(double share) {
+    if (share <= 0 || share > 1) {
+      throw new IllegalArgumentException(String.format("Invalid queue share: %f", share));
+    }
+    this.maxSiteQueued = Math.max(1, (int) (queue.capacity() * share));
+    return this;
+  }
+
+  private static void checkRate(double eventsPerSecond, double burst) {
+    if (eventsPerSecond < 0 || (eventsPerSecond > 0 && burst < 1)) {
+      throw new IllegalArgumentException(
+          String.format("Invalid site rate: %f events/s, burst %f", eventsPerSecond, burst));
+    }
+  }
+
+  /**
+   * Starts the worker threads.
+   */
+  public void start() {
+    for (int w = 0; w < workers; w++) {
+      Thread thread = new Thread(this::work, String.format("admission-%d", w));
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  /**
+   * Submits an event for tracking, without waiting.
+   *
+   * @param siteId
+   *     the site to be tracked
+   * @param timestamp
+   *     the timestamp of the event
+   * @param guid
+   *     the guid of the visitor
+   * @param features
+   *     the features of the event
+   * @return true if the event was queued, false if it was dropped
+   * @throws RejectedExecutionException
+   *     if the event was shed and the policy is {@link ShedPolicy#REJECT}
+   * @throws IllegalStateException
+   *     if the controller is closed
+   */
+  public boolean submit(
+      String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
+    // Counted before checking for closing, so that closing waits for the event to be queued
+    submitting.incrementAndGet();
+    try {
+      if (closed) {
+        throw new IllegalStateException("Admission controller is closed");
+      }
+      return admit(siteId, timestamp, guid, features);
+    } finally {
+      submitting.decrementAndGet();
+    }
+  }
+
+  private boolean admit(
+      String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
+    SiteBudget budget = budgets.computeIfAbsent(siteId, this::newBudget);
+    budget.offered.increment();
+    boolean sampled = false;
+    if (!budget.tryAcquire(System.nanoTime())) {
+      if (ShedPolicy.SAMPLE != policy || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+        return shed(siteId, budget, "over budget");
+      }
+      sampled = true;
+    }
+    if (budget.queued.incrementAndGet() > maxSiteQueued) {
+      budget.queued.decrementAndGet();
+      return shed(siteId, budget, "queue share exceeded");
+    }
+    if (!queue.offer(new Event(siteId, timestamp, guid, features, budget))) {
+      budget.queued.decrementAndGet();
+      return shed(siteId, budget, "queue full");
+    }
+    budget.admitted.increment();
+    if (sampled) {
+      budget.sampled.increment();
+    }
+    return true;
+  }
+
+  private SiteBudget newBudget(String siteId) {
+    double[] rate = siteRates.getOrDefault(siteId, new double[]{siteRate, siteBurst});
+    return new SiteBudget(rate[0], rate[1]);
+  }
+
+  private boolean shed(String siteId, SiteBudget budget, String reason) {
+    budget.shed.increment();
+    if (ShedPolicy.REJECT == policy) {
+      throw new RejectedExecutionException(String.format(SHED_MESSAGE, siteId, reason));
+    }
+    return false;
+  }
+
+  /**
+   * Stops accepting events and waits until the queued events are tracked, including those of
+   * submissions racing with the close.
+   *
+   * @throws IllegalStateException
+   *     if the controller was never started, in which case queued events would never be tracked
+   * @throws RuntimeException
+   *     if any event failed to be tracked, with the first failure as its cause
+   */
+  public void close() {
+    if (threads.isEmpty()) {
+      throw new IllegalStateException("Admission controller was never started");
+    }
+    closed = true;
+    int idle = 0;
+    while (submitting.get() > 0) {
+      BoundedQueue.backoff(idle++);
+    }
+    drained = true;
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    if (null != failure) {
+      throw new RuntimeException("Admitted events failed to be tracked", failure);
+    }
+  }
+
+  /**
+   * The loop of a worker thread. Stops once the controller is closed, no submission is in
+   * progress and the queue is empty.
+   */
+  private void work() {
+    int idle = 0;
+    while (true) {
+      // No event may be queued anymore before the poll for an empty poll to be final
+      boolean finished = drained;
+      Event event = queue.poll();
+      if (null == event) {
+        if (finished) {
+          break;
+        }
+        BoundedQueue.backoff(idle++);
+        continue;
+      }
+      idle = 0;
+      try {
+        db.track(event.siteId, event.timestamp, event.guid, event.features);
+      } catch (RuntimeException e) {
+        if (null == failure) {
+          failure = e;
+        }
+      } finally {
+        event.budget.queued.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @param siteId
+   *     the site
+   * @return the events submitted for the site so far
+   */
+  public AdmissionStats getStats(String siteId) {
+    SiteBudget budget = budgets.get(siteId);
+    return null == budget ? new AdmissionStats(0, 0, 0, 0) : budget.stats();
+  }
+
+  /**
+   * @return the events submitted for all sites so far
+   */
+  public AdmissionStats getStats() {
+    long offered = 0;
+    long admitted = 0;
+    long sampled = 0;
+    long shed = 0;
+    for (SiteBudget budget : budgets.values()) {
+      AdmissionStats stats = budget.stats();
+      offered += stats.getOffered();
+      admitted += stats.getAdmitted();
+      sampled += stats.getSampled();
+      shed += stats.getShed();
+    }
+    return new AdmissionStats(offered, admitted, sampled, shed);
+  }
+
+  public ShedPolicy getShedPolicy() {
+    return policy;
+  }
+
+  /**
+   * The token bucket and counters of a site. Only submissions of the same site contend on it.
+   */
+  private static class SiteBudget {
+    private double rate;
+    private double burst;
+    private double tokens;
+    private long lastRefillNanos;
+    private AtomicInteger queued = new AtomicInteger();
+    private LongAdder offered = new LongAdder();
+    private LongAdder admitted = new LongAdder();
+    private LongAdder sampled = new LongAdder();
+    private LongAdder shed = new LongAdder();
+
+    SiteBudget(double rate, double burst) {
+      this.rate = rate;
+      this.burst = burst;
+      this.tokens = burst;
+      this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available, after refilling the tokens accrued since the last call.
+     */
+    synchronized boolean tryAcquire(long nowNanos) {
+      if (0 == rate) {
+        return true;
+      }
+      tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * rate / 1e9);
+      lastRefillNanos = nowNanos;
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+
+    AdmissionStats stats() {
+      return new AdmissionStats(offered.sum(), admitted.sum(), sampled.sum(), shed.sum());
+    }
+  }
+
+  /**
+   * An admitted event waiting to be tracked.
+   */
+  private static class Event {
+    private String siteId;
+    private long timestamp;
+    private String guid;
+    private NavigableMap<String, String> features;
+    private SiteBudget budget;
+
+    Event(String siteId, long timestamp, String guid, NavigableMap<String, String> features,
+        SiteBudget budget) {
+      this.siteId = siteId;
+      this.timestamp = timestamp;
+      this.guid = guid;
+      this.features = features;
+      this.budget = budget;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+/**
+ * A snapshot of the events offered to an {@link AdmissionController}, either for a single site
+ * or for all sites.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class AdmissionStats {
+
+  private long offered;
+  private long admitted;
+  private long sampled;
+  private long shed;
+
+  AdmissionStats(long offered, long admitted, long sampled, long shed) {
+    this.offered = offered;
+    this.admitted = admitted;
+    this.sampled = sampled;
+    this.shed = shed;
+  }
+
+  /**
+   * @return the number of events submitted
+   */
+  public long getOffered() {
+    return offered;
+  }
+
+  /**
+   * @return the number of events queued for tracking, sampled events included
+   */
+  public long getAdmitted() {
+    return admitted;
+  }
+
+  /**
+   * @return the number of events admitted by sampling while over budget
+   */
+  public long getSampled() {
+    return sampled;
+  }
+
+  /**
+   * @return the number of events dropped or rejected
+   */
+  public long getShed() {
+    return shed;
+  }
+
+  /**
+   * Counts tracked while events were sampled under-represent the offered traffic. Multiplying
+   * them by this factor corrects for the shed events, assuming shed events were distributed like
+   * the admitted ones. Applying it to unique counts is an approximation, returning visitors being
+   * more likely to have had at least one event admitted.
+   *
+   * @return the ratio of offered to admitted events, 1 if no event was shed
+   */
+  public double getUpscaleFactor() {
+    return 0 == admitted ? 1 : (double) offered / admitted;
+  }
+
+  public String toString() {
+    return String.format("offered=%d admitted=%d sampled=%d shed=%d upscale=%.3f", offered,
+        admitted, sampled, shed, getUpscaleFactor());
+  }
+}
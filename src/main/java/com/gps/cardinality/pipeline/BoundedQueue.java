@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free, bounded, multi producer and multi consumer queue backed by a ring buffer (after
+ * Dmitry Vyukov's bounded MPMC queue). Each slot carries a sequence number telling producers
+ * whether the slot is free and consumers whether it is filled, so producers and consumers only
+ * ever contend on a compare-and-set of the tail or head position.
+ *
+ * @param <T>
+ *     the type of queued elements
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class BoundedQueue<T> {
+
+  private static final int MAX_SPINS = 100;
+  private static final int MAX_YIELDS = 200;
+  private static final long PARK_NANOS = 50_000;
+
+  private Object[] buffer;
+  private AtomicLongArray sequences;
+  private int mask;
+  private AtomicLong head;
+  private AtomicLong tail;
+
+  /**
+   * @param capacity
+   *     the minimum capacity of the queue, rounded up to the next power of two
+   */
+  public BoundedQueue(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("Invalid queue capacity: %d", capacity));
+    }
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.buffer = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.head = new AtomicLong();
+    this.tail = new AtomicLong();
+  }
+
+  /**
+   * Adds an element if the queue is not full.
+   *
+   * @param element
+   *     the element to add
+   * @return true if the element was added, false if the queue is full
+   */
+  public boolean offer(T element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          buffer[index] = element;
+          // Publishes the element to consumers
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest element if the queue is not empty.
+   *
+   * @return the oldest element or null if the queue is empty
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          T element = (T) buffer[index];
+          buffer[index] = null;
+          // Hands the slot back to producers, one lap ahead
+          sequences.set(index, position + mask + 1);
+          return element;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return null;
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  /**
+   * Adds an element, waiting for room if the queue is full. Waiting spins, then yields, then
+   * parks for short periods.
+   *
+   * @param element
+   *     the element to add
+   * @return the time spent waiting for room, in nanoseconds
+   */
+  public long put(T element) {
+    if (offer(element)) {
+      return 0;
+    }
+    long start = System.nanoTime();
+    int attempts = 0;
+    while (!offer(element)) {
+      backoff(attempts++);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @return an estimate of the number of queued elements
+   */
+  public int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Waits a little, longer as the number of failed attempts grows.
+   *
+   * @param attempts
+   *     the number of failed attempts so far
+   */
+  static void backoff(int attempts) {
+    if (attempts < MAX_SPINS) {
+      Thread.onSpinWait();
+    } else if (attempts < MAX_SPINS + MAX_YIELDS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+}
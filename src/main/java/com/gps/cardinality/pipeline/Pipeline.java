@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A staged processing pipeline. Stages are connected with bounded {@link BoundedQueue}s carrying
+ * batches of elements, and each stage runs its own number of worker threads, so that e.g.
+ * combination expansion, storage updates and file I/O overlap instead of running one after the
+ * other for each event.
+ *
+ * <pre>
+ * Pipeline pipeline = new Pipeline(1024, 256);
+ * pipeline.addStage(new Stage&lt;String, Event&gt;("parse", 1, (line, emit) -&gt; ...));
+ * pipeline.addStage(new Stage&lt;Event, Void&gt;("apply", 4, (event, emit) -&gt; ...));
+ * pipeline.start();
+ * lines.forEach(pipeline::submit);
+ * pipeline.close(); // drains every queue
+ * System.out.println(pipeline.report());
+ * </pre>
+ *
+ * <p>
+ * Elements are submitted by a single producer thread. Elements are not kept in order across
+ * workers of the same stage.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Pipeline implements AutoCloseable {
+
+  private int queueCapacity;
+  private int batchSize;
+  private List<Stage<Object, Object>> stages;
+  private List<BoundedQueue<List<Object>>> queues;
+  private List<AtomicInteger> activeWorkers;
+  private List<Thread> threads;
+  private List<Object> pendingBatch;
+  private volatile boolean sourceClosed;
+  private volatile Throwable failure;
+  private long startNanos;
+  private long endNanos;
+
+  /**
+   * @param queueCapacity
+   *     the number of batches each stage's input queue can hold
+   * @param batchSize
+   *     the maximum number of elements handed from a stage to the next at once
+   */
+  public Pipeline(int queueCapacity, int batchSize) {
+    this.queueCapacity = queueCapacity;
+    this.batchSize = batchSize;
+    this.stages = new ArrayList<>();
+    this.queues = new ArrayList<>();
+    this.activeWorkers = new ArrayList<>();
+    this.threads = new ArrayList<>();
+    this.pendingBatch = new ArrayList<>(batchSize);
+  }
+
+  /**
+   * Appends a stage to the pipeline. The stage consumes the elements emitted by the previously
+   * added stage.
+   *
+   * @param stage
+   *     the stage
+   * @return this pipeline
+   */
+  @SuppressWarnings("unchecked")
+  public Pipeline addStage(Stage<?, ?> stage) {
+    if (startNanos > 0) {
+      throw new IllegalStateException("Pipeline already started");
+    }
+    stages.add((Stage<Object, Object>) stage);
+    return this;
+  }
+
+  /**
+   * Starts the worker threads of every stage.
+   */
+  public void start() {
+    if (stages.isEmpty()) {
+      throw new IllegalStateException("Pipeline has no stages");
+    }
+    startNanos = System.nanoTime();
+    for (int i = 0; i < stages.size(); i++) {
+      queues.add(new BoundedQueue<>(queueCapacity));
+      activeWorkers.add(new AtomicInteger(stages.get(i).getWorkers()));
+    }
+    for (int i = 0; i < stages.size(); i++) {
+      Stage<Object, Object> stage = stages.get(i);
+      stage.startNanos = startNanos;
+      for (int w = 0; w < stage.getWorkers(); w++) {
+        int stageIndex = i;
+        Thread thread = new Thread(() -> work(stageIndex),
+            String.format("pipeline-%s-%d", stage.getName(), w));
+        threads.add(thread);
+        thread.start();
+      }
+    }
+  }
+
+  /**
+   * Submits an element to the first stage, waiting if the first stage's queue is full.
+   *
+   * @param element
+   *     the element
+   */
+  public void submit(Object element) {
+    pendingBatch.add(element);
+    if (pendingBatch.size() >= batchSize) {
+      queues.get(0).put(pendingBatch);
+      pendingBatch = new ArrayList<>(batchSize);
+    }
+  }
+
+  /**
+   * Stops accepting elements and waits until every stage has processed all the elements queued
+   * before it.
+   *
+   * @throws RuntimeException
+   *     if any element failed to be processed, with the first failure as its cause
+   */
+  public void close() {
+    if (!pendingBatch.isEmpty()) {
+      queues.get(0).put(pendingBatch);
+      pendingBatch = new ArrayList<>(batchSize);
+    }
+    sourceClosed = true;
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    endNanos = System.nanoTime();
+    if (null != failure) {
+      throw new RuntimeException("Pipeline elements failed to be processed", failure);
+    }
+  }
+
+  /**
+   * The loop of a stage's worker thread. Stops once the upstream stage has finished and the
+   * stage's input queue is empty.
+   */
+  private void work(int stageIndex) {
+    Stage<Object, Object> stage = stages.get(stageIndex);
+    BoundedQueue<List<Object>> input = queues.get(stageIndex);
+    BoundedQueue<List<Object>> output =
+        stageIndex + 1 < stages.size() ? queues.get(stageIndex + 1) : null;
+    Emitter emitter = new Emitter(stage, output);
+    // Errors kill the worker, which must still count as finished for downstream to drain
+    try {
+      int idle = 0;
+      while (true) {
+        // Upstream must be seen as finished before the poll for an empty poll to be final
+        boolean upstreamFinished = stageIndex == 0
+            ? sourceClosed : activeWorkers.get(stageIndex - 1).get() == 0;
+        List<Object> batch = input.poll();
+        if (null == batch) {
+          if (upstreamFinished) {
+            break;
+          }
+          BoundedQueue.backoff(idle++);
+          continue;
+        }
+        idle = 0;
+        long start = System.nanoTime();
+        for (Object element : batch) {
+          try {
+            stage.getProcessor().process(element, emitter);
+          } catch (RuntimeException e) {
+            stage.failures.incrementAndGet();
+            if (null == failure) {
+              failure = e;
+            }
+          }
+        }
+        stage.elementsIn.addAndGet(batch.size());
+        stage.busyNanos.addAndGet(System.nanoTime() - start);
+        emitter.flush();
+      }
+    } catch (Error e) {
+      if (null == failure) {
+        failure = e;
+      }
+      // Nothing else may be left to drain the input, upstream would then block on it forever
+      discard(stageIndex, input);
+      throw e;
+    } finally {
+      if (activeWorkers.get(stageIndex).decrementAndGet() == 0) {
+        stage.endNanos = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Drops the batches queued to a stage until the upstream stage has finished and the stage's
+   * input queue is empty.
+   */
+  private void discard(int stageIndex, BoundedQueue<List<Object>> input) {
+    int idle = 0;
+    while (true) {
+      boolean upstreamFinished = stageIndex == 0
+          ? sourceClosed : activeWorkers.get(stageIndex - 1).get() == 0;
+      if (null != input.poll()) {
+        idle = 0;
+      } else if (upstreamFinished) {
+        return;
+      } else {
+        BoundedQueue.backoff(idle++);
+      }
+    }
+  }
+
+  /**
+   * Collects the elements emitted by a worker into batches for the next stage.
+   */
+  private class Emitter implements Consumer<Object> {
+    private Stage<Object, Object> stage;
+    private BoundedQueue<List<Object>> output;
+    private List<Object> batch;
+
+    Emitter(Stage<Object, Object> stage, BoundedQueue<List<Object>> output) {
+      this.stage = stage;
+      this.output = output;
+      this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void accept(Object element) {
+      stage.elementsOut.incrementAndGet();
+      if (null == output) {
+        return;
+      }
+      batch.add(element);
+      if (batch.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (!batch.isEmpty()) {
+        stage.blockedNanos.addAndGet(output.put(batch));
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+  }
+
+  /**
+   * Reports the throughput of each stage. Busy time is the share of the stage's worker time
+   * spent processing elements, blocked time the share spent waiting on a full downstream queue.
+   * The busiest stage is reported as the bottleneck.
+   *
+   * @return a printable report
+   */
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-12s %8s %12s %12s %12s %7s %8s%n",
+        "stage", "workers", "in", "out", "in/s", "busy", "blocked"));
+    String bottleneck = null;
+    double maxBusy = -1;
+    for (Stage<Object, Object> stage : stages) {
+      long end = stage.endNanos > 0 ? stage.endNanos : System.nanoTime();
+      double seconds = Math.max(1, end - stage.startNanos) / 1e9;
+      double workerNanos = seconds * 1e9 * stage.getWorkers();
+      double busy = stage.busyNanos.get() / workerNanos;
+      double blocked = stage.blockedNanos.get() / workerNanos;
+      if (busy > maxBusy) {
+        maxBusy = busy;
+        bottleneck = stage.getName();
+      }
+      sb.append(String.format("%-12s %8d %12d %12d %12.0f %6.1f%% %7.1f%%%n",
+          stage.getName(), stage.getWorkers(), stage.elementsIn.get(), stage.elementsOut.get(),
+          stage.elementsIn.get() / seconds, busy * 100, blocked * 100));
+    }
+    long end = endNanos > 0 ? endNanos : System.nanoTime();
+    sb.append(String.format("total: %.3fs, bottleneck: %s%n", (end - startNanos) / 1e9,
+        bottleneck));
+    return sb.toString();
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+/**
+ * What an {@link AdmissionController} does with the events of a site that is over its token
+ * budget, or with any event once the ingest queue is full.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public enum ShedPolicy {
+  /**
+   * Excess events are silently dropped.
+   */
+  DROP,
+  /**
+   * Excess events are admitted at the controller's sample rate and dropped otherwise, so that
+   * counts can be scaled back up with {@link AdmissionStats#getUpscaleFactor()}.
+   */
+  SAMPLE,
+  /**
+   * Excess events are refused with a
+   * {@link java.util.concurrent.RejectedExecutionException}, leaving it to the caller to back
+   * off or retry.
+   */
+  REJECT
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A step of a {@link Pipeline}. A stage has its own number of worker threads which take batches
+ * of elements from the stage's input queue, process each element and emit zero or more elements
+ * to the next stage.
+ *
+ * @param <I>
+ *     the type of elements consumed by the stage
+ * @param <O>
+ *     the type of elements emitted by the stage
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Stage<I, O> {
+
+  /**
+   * The processing done by a stage on each element.
+   */
+  @FunctionalInterface
+  public interface Processor<I, O> {
+    /**
+     * @param element
+     *     the element to process
+     * @param emit
+     *     hands elements to the next stage, ignored for the last stage
+     */
+    void process(I element, Consumer<O> emit);
+  }
+
+  private String name;
+  private int workers;
+  private Processor<I, O> processor;
+
+  AtomicLong elementsIn;
+  AtomicLong elementsOut;
+  AtomicLong failures;
+  AtomicLong busyNanos;
+  AtomicLong blockedNanos;
+  volatile long startNanos;
+  volatile long endNanos;
+
+  /**
+   * @param name
+   *     the name of the stage, used in reports
+   * @param workers
+   *     the number of worker threads of the stage
+   * @param processor
+   *     the processing done on each element
+   */
+  public Stage(String name, int workers, Processor<I, O> processor) {
+    if (workers < 1) {
+      throw new IllegalArgumentException(
+          String.format("Stage '%s' needs at least one worker: %d", name, workers));
+    }
+    this.name = name;
+    this.workers = workers;
+    this.processor = processor;
+    this.elementsIn = new AtomicLong();
+    this.elementsOut = new AtomicLong();
+    this.failures = new AtomicLong();
+    this.busyNanos = new AtomicLong();
+    this.blockedNanos = new AtomicLong();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  Processor<I, O> getProcessor() {
+    return processor;
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+/**
+ * A change published to a {@link ChangeFeed}: a guid's first visit of a month for a feature
+ * combination, which inserts a guid data row and increments the combination's unique count.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ChangeEvent {
+
+  private final long sequence;
+  private final String siteId;
+  private final long monthStart;
+  private final String rowKey;
+  private final String countsKey;
+  private final String column;
+
+  ChangeEvent(long sequence, String siteId, long monthStart, String rowKey, String countsKey,
+      String column) {
+    this.sequence = sequence;
+    this.siteId = siteId;
+    this.monthStart = monthStart;
+    this.rowKey = rowKey;
+    this.countsKey = countsKey;
+    this.column = column;
+  }
+
+  /**
+   * @return the position of the change in the feed, changes being numbered from 0
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public String getSiteId() {
+    return siteId;
+  }
+
+  public long getMonthStart() {
+    return monthStart;
+  }
+
+  /**
+   * @return the partition key of the new guid data row
+   */
+  public String getRowKey() {
+    return rowKey;
+  }
+
+  /**
+   * @return the partition key of the incremented monthly count, null for sites that compute
+   * their counts at query time, see {@link TrackingMode#FULL_TUPLE}
+   */
+  public String getCountsKey() {
+    return countsKey;
+  }
+
+  /**
+   * @return the column of the incremented monthly count, null if there is none
+   */
+  public String getColumn() {
+    return column;
+  }
+
+  public String toString() {
+    return String.format("#%d %s: +%s%s", sequence, siteId, rowKey,
+        null == countsKey ? "" : String.format(" %s[%s] +1", countsKey, column));
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process feed of the changes made by tracking, see {@link ChangeEvent}, so that downstream
+ * consumers can react to new unique visitors instead of scanning the counts tables.
+ *
+ * <p>
+ * Changes are numbered and written to a bounded ring buffer shared by every subscriber.
+ * Publishing never waits: a writer claims the next sequence number and stores the change in its
+ * slot, overwriting the change published a full ring earlier. Each {@link Subscription} keeps its
+ * own position, reads changes in batches and can start from any sequence still held by the
+ * ring. A subscriber falling more than a ring behind skips to the oldest change still held and
+ * counts the changes it missed, so a slow consumer never holds ingestion back.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ChangeFeed {
+
+  private static final long POLL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final AtomicReferenceArray<ChangeEvent> ring;
+  private final int mask;
+  private final AtomicLong sequence;
+  private final Set<Subscription> subscriptions;
+
+  /**
+   * @param capacity
+   *     the number of changes held by the ring, rounded up to a power of two
+   */
+  ChangeFeed(int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException(String.format("Invalid capacity: %d", capacity));
+    }
+    int size = Integer.highestOneBit(capacity);
+    size = size < capacity ? size << 1 : size;
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.sequence = new AtomicLong();
+    this.subscriptions = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Publishes a change, see {@link ChangeEvent}.
+   */
+  void publish(String siteId, long monthStart, String rowKey, String countsKey, String column) {
+    long next = sequence.getAndIncrement();
+    ChangeEvent event = new ChangeEvent(next, siteId, monthStart, rowKey, countsKey, column);
+    int slot = (int) (next & mask);
+    while (true) {
+      ChangeEvent current = ring.get(slot);
+      // A writer a full ring ahead already took the slot, the change is lost to every reader
+      if ((null != current && current.getSequence() > next)
+          || ring.compareAndSet(slot, current, event)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the number of changes published so far, i.e. the sequence of the next change
+   */
+  public long getPublished() {
+    return sequence.get();
+  }
+
+  public int getCapacity() {
+    return ring.length();
+  }
+
+  /**
+   * Subscribes to the changes published from now on.
+   *
+   * @return the subscription
+   */
+  public Subscription subscribe() {
+    return subscribe(sequence.get());
+  }
+
+  /**
+   * Subscribes to the changes from a sequence on, e.g. the {@link Subscription#getPosition()}
+   * of a previous subscription. Changes no longer held by the ring are counted as missed.
+   *
+   * @param fromSequence
+   *     the sequence of the first change to read
+   * @return the subscription
+   * @throws IllegalArgumentException
+   *     if the sequence was not published yet
+   */
+  public Subscription subscribe(long fromSequence) {
+    if (fromSequence < 0 || fromSequence > sequence.get()) {
+      throw new IllegalArgumentException(String.format(
+          "Sequence %d is not in the published range [0, %d]", fromSequence, sequence.get()));
+    }
+    Subscription subscription = new Subscription(fromSequence);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  /**
+   * @return the open subscriptions
+   */
+  public int getSubscriptions() {
+    return subscriptions.size();
+  }
+
+  public String toString() {
+    long maxLag = 0;
+    long missed = 0;
+    for (Subscription subscription : subscriptions) {
+      maxLag = Math.max(maxLag, subscription.getLag());
+      missed += subscription.getMissed();
+    }
+    return String.format("change feed: %d changes published, %d subscribers, max lag %d, "
+                         + "%d missed", sequence.get(), subscriptions.size(), maxLag, missed);
+  }
+
+  /**
+   * A consumer's position in the feed. Reading is synchronized, but a subscription is meant to
+   * be read by a single consumer.
+   */
+  public class Subscription implements AutoCloseable {
+
+    private volatile long position;
+    private volatile long missed;
+
+    private Subscription(long position) {
+      this.position = position;
+    }
+
+    /**
+     * Reads the next changes, without waiting.
+     *
+     * @param maxEvents
+     *     the maximum number of changes to read
+     * @return the changes in sequence order, empty if none was published since the last poll
+     */
+    public synchronized List<ChangeEvent> poll(int maxEvents) {
+      List<ChangeEvent> events = new ArrayList<>();
+      long next = position;
+      while (events.size() < maxEvents && next < sequence.get()) {
+        ChangeEvent event = ring.get((int) (next & mask));
+        if (null == event || event.getSequence() < next) {
+          // Claimed but not stored yet
+          break;
+        }
+        if (event.getSequence() > next) {
+          // Lapped by the writers, resumes from the oldest change the ring may still hold
+          long oldest = Math.max(next + 1, sequence.get() - ring.length());
+          missed += oldest - next;
+          next = oldest;
+          continue;
+        }
+        events.add(event);
+        next++;
+      }
+      position = next;
+      return events;
+    }
+
+    /**
+     * Reads the next changes, waiting for at least one to be published.
+     *
+     * @param maxEvents
+     *     the maximum number of changes to read
+     * @param timeout
+     *     how long to wait
+     * @param unit
+     *     the unit of the timeout
+     * @return the changes in sequence order, empty if none was published before the timeout
+     */
+    public List<ChangeEvent> poll(int maxEvents, long timeout, TimeUnit unit) {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      List<ChangeEvent> events = poll(maxEvents);
+      while (events.isEmpty() && System.nanoTime() < deadline
+             && !Thread.currentThread().isInterrupted()) {
+        LockSupport.parkNanos(POLL_PARK_NANOS);
+        events = poll(maxEvents);
+      }
+      return events;
+    }
+
+    /**
+     * @return the sequence of the next change to read, to resume from with {@link
+     * ChangeFeed#subscribe(long)}
+     */
+    public long getPosition() {
+      return position;
+    }
+
+    /**
+     * @return the number of changes published but not read yet
+     */
+    public long getLag() {
+      return Math.max(0, sequence.get() - position);
+    }
+
+    /**
+     * @return the number of changes overwritten before they could be read
+     */
+    public long getMissed() {
+      return missed;
+    }
+
+    @Override
+    public void close() {
+      subscriptions.remove(this);
+    }
+  }
+}
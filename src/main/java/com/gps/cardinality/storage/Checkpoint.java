@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.nio.file.Path;
+
+/**
+ * The outcome of a {@link Database#checkpoint(Path, int)}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Checkpoint {
+
+  private Path path;
+  private boolean delta;
+  private int sites;
+  private int partitions;
+  private long bytes;
+  private long nanos;
+
+  Checkpoint(Path path, boolean delta, int sites, int partitions, long bytes, long nanos) {
+    this.path = path;
+    this.delta = delta;
+    this.sites = sites;
+    this.partitions = partitions;
+    this.bytes = bytes;
+    this.nanos = nanos;
+  }
+
+  /**
+   * @return the directory the checkpoint was written to
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * @return true if only the partitions changed since the previous checkpoint were written,
+   * false for a new base
+   */
+  public boolean isDelta() {
+    return delta;
+  }
+
+  public int getSites() {
+    return sites;
+  }
+
+  public int getPartitions() {
+    return partitions;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public String toString() {
+    return String.format("%s checkpoint %s: %d sites, %d partitions, %.1f KB in %.3fs",
+        delta ? "delta" : "base", path.getFileName(), sites, partitions, bytes / 1024.0,
+        nanos / 1e9);
+  }
+}
@@ -22,12 +22,22 @@
 
 package com.gps.cardinality.storage;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -36,16 +46,53 @@ import java.util.stream.Collectors;
  * @author gstathis
  * Created on: 2018-11-03
  */
-public class ColumnFamily {
+public class ColumnFamily implements StorageTable {
 
   private String name;
   private ColumnDefinition columnDefinition;
   private Map<String, ColumnFamilyData> data;
+  private Footprint footprint;
+  private SpillStore spill;
+  /**
+   * Number of stripes of hot counters, 1 to never stripe counters.
+   */
+  private int counterStripes = 1;
+  /**
+   * Write epochs of the table's versioned counters, null if counters are not versioned.
+   */
+  private VersionClock versions;
+  /**
+   * Keys of the partitions written to since the last checkpoint, in memory or spilled.
+   */
+  private Set<String> dirty;
+  /**
+   * Every partition key, in memory or spilled, sorted by token.
+   */
+  private NavigableSet<PartitionToken> tokens;
 
   ColumnFamily(String name, ColumnDefinition columnDefinition) {
+    this(name, columnDefinition, null, null);
+  }
+
+  /**
+   * @param name
+   *     the table name
+   * @param columnDefinition
+   *     the partitioning and clustering keys
+   * @param parentFootprint
+   *     the footprint the table's footprint is added to, may be null
+   * @param spillDirectory
+   *     the directory partitions are evicted to, null if partitions are never evicted
+   */
+  ColumnFamily(String name, ColumnDefinition columnDefinition, Footprint parentFootprint,
+      Path spillDirectory) {
     this.name = name;
     this.columnDefinition = columnDefinition;
-    this.data = new HashMap<>();
+    this.data = new ConcurrentHashMap<>();
+    this.footprint = new Footprint(parentFootprint);
+    this.spill = null == spillDirectory ? null : new SpillStore(spillDirectory, name);
+    this.tokens = new ConcurrentSkipListSet<>();
+    this.dirty = ConcurrentHashMap.newKeySet();
   }
 
   /**
@@ -58,6 +105,21 @@ public class ColumnFamily {
    */
   void update(
       Map<String, Object> keys, Map<String, Object> data) {
+    updateAndReportIfNew(keys, data);
+  }
+
+  /**
+   * Updates a single record or creates a new one if none exists (upsert), atomically reporting
+   * whether the record was created. When several threads upsert the same new record, exactly one
+   * of them sees it as created.
+   *
+   * @param keys
+   *     the partitioning keys
+   * @param data
+   *     the data (clustering keys must be present)
+   * @return true if the record did not exist before
+   */
+  boolean updateAndReportIfNew(Map<String, Object> keys, Map<String, Object> data) {
     String partitionKey = buildCompositeKey(keys, this.columnDefinition.getCompositeKeys());
     String clusteringKey = buildCompositeKey(data, this.columnDefinition.getClusteringKeys());
     clusteringKey = clusteringKey.isBlank() ? "" : clusteringKey.concat(":");
@@ -70,7 +132,264 @@ public class ColumnFamily {
       String newKey = clusteringKey.concat(keyValue.getKey());
       prefixedKeyValues.put(newKey, keyValue.getValue());
     }
-    put(partitionKey, prefixedKeyValues);
+    return put(partitionKey, prefixedKeyValues);
+  }
+
+  @Override
+  public void put(String partitionKey, String column, Object value) {
+    ColumnFamilyData partition = acquire(partitionKey, null);
+    try {
+      partition.set(column, value);
+    } finally {
+      release(partitionKey, partition);
+    }
+  }
+
+  @Override
+  public boolean putIfAbsent(String partitionKey, String column, Object value) {
+    ColumnFamilyData partition = acquire(partitionKey, null);
+    try {
+      return partition.setIfAbsent(column, value);
+    } finally {
+      release(partitionKey, partition);
+    }
+  }
+
+  /**
+   * Atomically increments a single counter column, creating the record if none exists.
+   *
+   * @param partitionKey
+   *     the partition key, see {@link #partitionKey(Map)}
+   * @param column
+   *     the full column name, see {@link #columnName(Map, String)}
+   * @param delta
+   *     the amount to add to the counter
+   * @return the previous value of the counter, 0 if it did not exist
+   */
+  public int increment(String partitionKey, String column, int delta) {
+    ColumnFamilyData partition = acquire(partitionKey, null);
+    try {
+      return partition.increment(column, delta);
+    } finally {
+      release(partitionKey, partition);
+    }
+  }
+
+  /**
+   * Adds to a single counter column, creating the record if none exists. Unlike {@link
+   * #increment(String, String, int)}, the previous value is not needed, so that contended
+   * counters can be striped, see {@link ColumnFamilyData#add(String, int, int, boolean)}.
+   *
+   * @param partitionKey
+   *     the partition key, see {@link #partitionKey(Map)}
+   * @param column
+   *     the full column name, see {@link #columnName(Map, String)}
+   * @param delta
+   *     the amount to add to the counter
+   * @param hot
+   *     true to stripe the counter right away rather than once it is contended
+   */
+  public void add(String partitionKey, String column, int delta, boolean hot) {
+    ColumnFamilyData partition = acquire(partitionKey, null);
+    try {
+      if (null == versions) {
+        partition.add(column, delta, counterStripes, hot);
+      } else {
+        long epoch = versions.enter();
+        try {
+          partition.add(column, delta, epoch, versions.getPruneEpoch());
+        } finally {
+          versions.exit();
+        }
+      }
+    } finally {
+      release(partitionKey, partition);
+    }
+  }
+
+  /**
+   * Versions the counters written by {@link #add(String, String, int, boolean)}, so that they
+   * can be read as of an epoch pinned by a {@link ReadView}. Versioned counters are never
+   * striped.
+   *
+   * @param versions
+   *     the clock of the table's write epochs
+   */
+  void setVersionClock(VersionClock versions) {
+    this.versions = versions;
+  }
+
+  /**
+   * @return the clock of the table's write epochs, null if counters are not versioned
+   */
+  VersionClock getVersionClock() {
+    return versions;
+  }
+
+  /**
+   * @param counterStripes
+   *     the number of stripes hot counters are split into, 1 to never stripe counters
+   */
+  void setCounterStripes(int counterStripes) {
+    if (counterStripes < 1) {
+      throw new IllegalArgumentException(
+          String.format("Invalid number of counter stripes: %d", counterStripes));
+    }
+    this.counterStripes = counterStripes;
+  }
+
+  /**
+   * @return the number of in-memory partitions holding striped counters
+   */
+  int getStripedPartitions() {
+    int count = 0;
+    for (ColumnFamilyData partition : data.values()) {
+      if (partition.isStriped()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Reads a single column of a partition.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @return the column value or null if either the partition or the column does not exist
+   */
+  public Object select(String partitionKey, String column) {
+    ColumnFamilyData partition = lookup(partitionKey);
+    return null == partition ? null : partition.get(column);
+  }
+
+  /**
+   * Reads a single column of a partition as of the end of an epoch.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @param epoch
+   *     the epoch pinned by the reader, see {@link VersionClock#pin()}
+   * @return the column value or null if either the partition or the column did not exist
+   */
+  Object select(String partitionKey, String column, long epoch) {
+    ColumnFamilyData partition = lookup(partitionKey);
+    return null == partition ? null : partition.get(column, epoch);
+  }
+
+  /**
+   * Reads a batch of single columns at once. Requests are sorted by partition key so that each
+   * distinct partition is resolved once, and spilled partitions are faulted back in in the order
+   * of their position in the spill file.
+   *
+   * @param partitionKeys
+   *     the partition key of each request
+   * @param columns
+   *     the full column name of each request
+   * @return the column values, in request order, null where either the partition or the column
+   * does not exist
+   */
+  public Object[] multiGet(String[] partitionKeys, String[] columns) {
+    return multiGet(partitionKeys, columns, VersionClock.LATEST);
+  }
+
+  /**
+   * Reads a batch of single columns at once as of the end of an epoch, see {@link
+   * #multiGet(String[], String[])}.
+   *
+   * @param partitionKeys
+   *     the partition key of each request
+   * @param columns
+   *     the full column name of each request
+   * @param epoch
+   *     the epoch pinned by the reader, see {@link VersionClock#pin()}
+   * @return the column values, in request order, null where either the partition or the column
+   * did not exist
+   */
+  Object[] multiGet(String[] partitionKeys, String[] columns, long epoch) {
+    Integer[] order = new Integer[partitionKeys.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparing(i -> partitionKeys[i]));
+    Map<String, ColumnFamilyData> partitions = new HashMap<>();
+    List<String> spilled = new ArrayList<>();
+    for (int i = 0; i < order.length; i++) {
+      String key = partitionKeys[order[i]];
+      if (i > 0 && key.equals(partitionKeys[order[i - 1]])) {
+        continue;
+      }
+      ColumnFamilyData partition = data.get(key);
+      if (null != partition) {
+        partition.touch();
+        partitions.put(key, partition);
+      } else if (null != spill && spill.contains(key)) {
+        spilled.add(key);
+      }
+    }
+    if (!spilled.isEmpty()) {
+      // Positions are read once, partitions may be faulted in concurrently
+      Map<String, Long> positions = new HashMap<>();
+      spilled.forEach(key -> positions.put(key, spill.position(key)));
+      spilled.sort(Comparator.comparing(positions::get));
+      for (String key : spilled) {
+        ColumnFamilyData partition = lookup(key);
+        if (null != partition) {
+          partitions.put(key, partition);
+        }
+      }
+    }
+    Object[] values = new Object[partitionKeys.length];
+    for (int i = 0; i < values.length; i++) {
+      ColumnFamilyData partition = partitions.get(partitionKeys[i]);
+      values[i] = null == partition ? null : partition.get(columns[i], epoch);
+    }
+    return values;
+  }
+
+  /**
+   * Prepares a statement reading or incrementing a single field, see {@link PreparedStatement}.
+   *
+   * @param field
+   *     the name of the field
+   * @return the prepared statement
+   */
+  PreparedStatement prepare(String field) {
+    return new PreparedStatement(this, field);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  public ColumnDefinition getColumnDefinition() {
+    return columnDefinition;
+  }
+
+  /**
+   * @param keys
+   *     the partitioning keys
+   * @return the partition key built from the key values
+   */
+  String partitionKey(Map<String, Object> keys) {
+    return buildCompositeKey(keys, this.columnDefinition.getCompositeKeys());
+  }
+
+  /**
+   * @param columns
+   *     the clustering key values
+   * @param field
+   *     the name of the field
+   * @return the full name of the field's column, prefixed with the clustering key
+   */
+  String columnName(Map<String, Object> columns, String field) {
+    String clusteringKey = buildCompositeKey(columns, this.columnDefinition.getClusteringKeys());
+    return clusteringKey.isBlank() ? field : clusteringKey.concat(":").concat(field);
   }
 
   /**
@@ -84,7 +403,7 @@ public class ColumnFamily {
    */
   Boolean updateIfExists(Map<String, Object> keys, Map<String, Object> data) {
     String partitionKey = buildCompositeKey(keys, this.columnDefinition.getCompositeKeys());
-    if (this.data.containsKey(partitionKey)) {
+    if (this.data.containsKey(partitionKey) || (null != spill && spill.contains(partitionKey))) {
       update(keys, data);
       return true;
     } else {
@@ -99,7 +418,7 @@ public class ColumnFamily {
    *     the partitioning keys
    * @param columns
    *     the column names and values from which to select
-   * @return the column value
+   * @return the column value or null if either the partition or the column does not exist
    */
   Object selectOne(Map<String, Object> keys, Map<String, Object> columns) {
     String partitionKey = buildCompositeKey(keys, this.columnDefinition.getCompositeKeys());
@@ -108,7 +427,8 @@ public class ColumnFamily {
     List<String> fields = columns.entrySet().stream()
         .filter(e -> !this.columnDefinition.getClusteringKeys().contains(e.getKey()))
         .map(Map.Entry::getKey).collect(Collectors.toList());
-    return data.get(partitionKey).get(clusteringKey.concat(String.join(":", fields)));
+    ColumnFamilyData partition = lookup(partitionKey);
+    return null == partition ? null : partition.get(clusteringKey.concat(String.join(":", fields)));
   }
 
   /**
@@ -131,7 +451,25 @@ public class ColumnFamily {
     from = from.isBlank() ? "" : from.concat(":");
     String to = buildCompositeKey(toColumns, this.columnDefinition.getClusteringKeys());
     to = to.isBlank() ? "" : to.concat(":");
-    return data.get(partitionKey).getRange(from, false, to, false);
+    ColumnFamilyData partition = lookup(partitionKey);
+    return null == partition ? Map.of() : partition.getRange(from, false, to, false);
+  }
+
+  /**
+   * Returns all the column rows of a partition.
+   *
+   * @param keys
+   *     the partitioning keys
+   * @return the sorted key/values of the partition, empty if the partition does not exist
+   */
+  Map<String, Object> selectPartition(Map<String, Object> keys) {
+    return selectPartition(buildCompositeKey(keys, this.columnDefinition.getCompositeKeys()));
+  }
+
+  @Override
+  public Map<String, Object> selectPartition(String partitionKey) {
+    ColumnFamilyData partition = lookup(partitionKey);
+    return null == partition ? Map.of() : partition.getAll();
   }
 
   /**
@@ -163,19 +501,410 @@ public class ColumnFamily {
    *     the partitioning key
    * @param keyValues
    *     the key/values
-   * @return the old values that this operation replaced, or null if none existed before.
-   */
-  private Map<String, Object> put(String key, Map<String, Object> keyValues) {
-    Map<String, Object> oldKeyValues = null;
-    ColumnFamilyData columnFamily = data.get(key);
-    if (null == columnFamily) {
-      columnFamily = new ColumnFamilyData();
-      data.put(key, columnFamily);
+   * @return true if the partition did not exist before
+   */
+  private boolean put(String key, Map<String, Object> keyValues) {
+    boolean[] created = new boolean[1];
+    ColumnFamilyData partition = acquire(key, created);
+    try {
+      partition.putAll(keyValues);
+    } finally {
+      release(key, partition);
+    }
+    return created[0];
+  }
+
+  /**
+   * Returns a partition for writing, creating it or faulting it back in from the spill store if
+   * needed. When partitions can be evicted, the partition is pinned until {@link
+   * #release(String, ColumnFamilyData)} so that it cannot be evicted while being written to.
+   *
+   * @param key
+   *     the partition key
+   * @param created
+   *     set to true if the partition was created, may be null
+   * @return the partition
+   */
+  private ColumnFamilyData acquire(String key, boolean[] created) {
+    while (true) {
+      ColumnFamilyData partition = data.get(key);
+      if (null == partition) {
+        partition = load(key, true, created);
+      }
+      if (null == spill || partition.pin()) {
+        partition.touch();
+        return partition;
+      }
+      // The partition is being evicted, wait until it reaches the spill store
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Records a written partition as dirty, then unpins it.
+   */
+  private void release(String key, ColumnFamilyData partition) {
+    if (partition.markDirty()) {
+      dirty.add(key);
+    }
+    if (null != spill) {
+      partition.unpin();
+    }
+  }
+
+  /**
+   * Returns a partition for reading, faulting it back in from the spill store if needed.
+   *
+   * @param key
+   *     the partition key
+   * @return the partition or null if it does not exist
+   */
+  private ColumnFamilyData lookup(String key) {
+    ColumnFamilyData partition = data.get(key);
+    if (null == partition && null != spill) {
+      partition = load(key, false, null);
+    }
+    if (null != partition) {
+      partition.touch();
+    }
+    return partition;
+  }
+
+  private ColumnFamilyData load(String key, boolean create, boolean[] created) {
+    return data.computeIfAbsent(key, k -> {
+      ColumnFamilyData partition = null == spill ? null : spill.faultIn(k, footprint);
+      if (null == partition && create) {
+        partition = new ColumnFamilyData(footprint);
+        tokens.add(new PartitionToken(k));
+        if (null != created) {
+          created[0] = true;
+        }
+      }
+      if (null != partition) {
+        footprint.add(Footprint.partitionBytes(k));
+      }
+      return partition;
+    });
+  }
+
+  /**
+   * Scans the whole table one page at a time, in token order then column order. Each call only
+   * holds one page of rows, concurrent writers are never blocked and spilled partitions are read
+   * without being faulted back in. Rows written during the scan may or may not be returned.
+   *
+   * @param pagingState
+   *     the paging state of the previous page, null to start from the beginning
+   * @param pageSize
+   *     the maximum number of rows to return
+   * @return the next page of rows
+   */
+  public ScanPage scan(String pagingState, int pageSize) {
+    checkPageSize(pageSize);
+    List<ScanPage.Row> rows = new ArrayList<>(pageSize);
+    PartitionToken from = null;
+    String afterColumn = null;
+    if (null != pagingState) {
+      String[] state = ScanPage.decodePagingState(pagingState);
+      from = new PartitionToken(state[0]);
+      afterColumn = state[1];
+    }
+    for (PartitionToken partition : null == from ? tokens : tokens.tailSet(from, true)) {
+      String after = partition.equals(from) ? afterColumn : null;
+      ColumnFamilyData columns = scanPartition(partition.key);
+      if (null != columns && fillPage(partition.key, columns, after, rows, pageSize)) {
+        return new ScanPage(rows, ScanPage.pagingState(rows));
+      }
+    }
+    return new ScanPage(rows, null);
+  }
+
+  /**
+   * Scans a single partition one page of columns at a time, in column order.
+   *
+   * @param keys
+   *     the partitioning keys
+   * @param pagingState
+   *     the paging state of the previous page, null to start from the first column
+   * @param pageSize
+   *     the maximum number of rows to return
+   * @return the next page of rows, empty if the partition does not exist
+   */
+  public ScanPage scanPartition(Map<String, Object> keys, String pagingState, int pageSize) {
+    checkPageSize(pageSize);
+    String partitionKey = partitionKey(keys);
+    String afterColumn = null;
+    if (null != pagingState) {
+      String[] state = ScanPage.decodePagingState(pagingState);
+      if (!partitionKey.equals(state[0])) {
+        throw new IllegalArgumentException(String.format(
+            "Paging state of partition '%s' used to scan partition '%s'", state[0], partitionKey));
+      }
+      afterColumn = state[1];
+    }
+    List<ScanPage.Row> rows = new ArrayList<>(pageSize);
+    ColumnFamilyData partition = data.get(partitionKey);
+    if (null == partition && null != spill) {
+      partition = spill.peek(partitionKey);
+    }
+    if (null != partition && fillPage(partitionKey, partition, afterColumn, rows, pageSize)) {
+      return new ScanPage(rows, ScanPage.pagingState(rows));
+    }
+    return new ScanPage(rows, null);
+  }
+
+  private static void checkPageSize(int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException(String.format("Invalid page size: %d", pageSize));
+    }
+  }
+
+  /**
+   * Reads an existing partition for a scan, without touching it or faulting it back in.
+   *
+   * @return the partition, null if it was dropped
+   */
+  private ColumnFamilyData scanPartition(String key) {
+    PartitionToken token = new PartitionToken(key);
+    while (true) {
+      ColumnFamilyData partition = data.get(key);
+      if (null == partition && null != spill) {
+        partition = spill.peek(key);
+      }
+      if (null != partition) {
+        return partition;
+      }
+      if (!tokens.contains(token)) {
+        return null;
+      }
+      // The partition is moving between memory and the spill store
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Reads an existing partition without touching it or faulting it back in, e.g. to archive it.
+   *
+   * @param key
+   *     the partition key
+   * @return a read only view of the partition's columns, null if it does not exist
+   */
+  Map<String, Object> peek(String key) {
+    ColumnFamilyData partition = scanPartition(key);
+    return null == partition ? null : partition.getAll();
+  }
+
+  /**
+   * @param prefix
+   *     the start of the keys
+   * @param action
+   *     called with the key of each partition starting with the prefix, in memory or spilled
+   */
+  public void forEachPartitionKey(String prefix, Consumer<String> action) {
+    for (PartitionToken token : tokens) {
+      if (token.key.startsWith(prefix)) {
+        action.accept(token.key);
+      }
+    }
+  }
+
+  /**
+   * Drops a partition, in memory or spilled, e.g. once archived. The partition must no longer be
+   * written to and must not be evicted concurrently.
+   *
+   * @param key
+   *     the partition key
+   * @return the estimated number of heap bytes freed
+   */
+  public long drop(String key) {
+    tokens.remove(new PartitionToken(key));
+    dirty.remove(key);
+    if (null != spill) {
+      spill.remove(key);
+    }
+    ColumnFamilyData partition = data.remove(key);
+    if (null == partition) {
+      return 0;
+    }
+    long bytes = Footprint.partitionBytes(key) + partition.estimateBytes();
+    footprint.add(-bytes);
+    return bytes;
+  }
+
+  /**
+   * @return true if the page is full
+   */
+  private static boolean fillPage(String key, ColumnFamilyData partition, String afterColumn,
+      List<ScanPage.Row> rows, int pageSize) {
+    for (Map.Entry<String, Object> column : partition.getTail(afterColumn).entrySet()) {
+      rows.add(new ScanPage.Row(key, column.getKey(), column.getValue()));
+      if (rows.size() == pageSize) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A partition key and its token, ordered by token then key in the unlikely case of a token
+   * collision.
+   */
+  private static class PartitionToken implements Comparable<PartitionToken> {
+    private long token;
+    private String key;
+
+    PartitionToken(String key) {
+      this.token = TokenRing.token(key);
+      this.key = key;
+    }
+
+    public int compareTo(PartitionToken other) {
+      int cmp = Long.compare(token, other.token);
+      return 0 != cmp ? cmp : key.compareTo(other.key);
+    }
+
+    public boolean equals(Object other) {
+      return other instanceof PartitionToken && 0 == compareTo((PartitionToken) other);
+    }
+
+    public int hashCode() {
+      return key.hashCode();
+    }
+  }
+
+  /**
+   * Moves a partition to the spill store, unless it is being written to or holds counter
+   * versions open views may still need.
+   *
+   * @param key
+   *     the partition key
+   * @return the estimated number of heap bytes freed, 0 if the partition was not evicted
+   */
+  long evict(String key) {
+    ColumnFamilyData partition = data.get(key);
+    if (null == spill || null == partition || !partition.markEvicted()) {
+      return 0;
+    }
+    // Spilled counters lose their versions, checked once writers can no longer add any
+    if (null != versions && partition.hasVersionsAfter(versions.getPruneEpoch())) {
+      partition.unmarkEvicted();
+      return 0;
+    }
+    spill.write(key, partition.getAll());
+    data.remove(key, partition);
+    long bytes = Footprint.partitionBytes(key) + partition.estimateBytes();
+    footprint.add(-bytes);
+    return bytes;
+  }
+
+  /**
+   * Writes every partition, in memory or spilled, in token order. Partitions written to during
+   * the snapshot are written in whatever state they are in.
+   *
+   * @param out
+   *     the snapshot output
+   * @throws IOException
+   *     if the snapshot could not be written
+   */
+  public void writeSnapshot(DataOutput out) throws IOException {
+    List<PartitionToken> partitions = new ArrayList<>(tokens);
+    out.writeInt(partitions.size());
+    for (PartitionToken partition : partitions) {
+      out.writeUTF(partition.key);
+      Map<String, Object> columns = peek(partition.key);
+      PartitionCodec.write(out, null == columns ? Map.of() : columns);
+    }
+  }
+
+  /**
+   * Writes partitions in the format of {@link #writeSnapshot(DataOutput)} for a checkpoint,
+   * flagging them as clean. Partitions written to during the checkpoint are either part of it or
+   * flagged as dirty again for the next one.
+   *
+   * @param out
+   *     the checkpoint output
+   * @param delta
+   *     true to only write the partitions changed since the last checkpoint, false for all of
+   *     them
+   * @return the number of partitions written
+   * @throws IOException
+   *     if the checkpoint could not be written
+   */
+  int writeCheckpoint(DataOutput out, boolean delta) throws IOException {
+    List<String> keys = new ArrayList<>();
+    if (delta) {
+      keys.addAll(dirty);
     } else {
-      oldKeyValues = columnFamily.getDataAsMap();
+      tokens.forEach(token -> keys.add(token.key));
     }
-    columnFamily.putAll(keyValues);
-    return oldKeyValues;
+    out.writeInt(keys.size());
+    for (String key : keys) {
+      // Unflag before reading, writes applied after the read flag the partition again
+      dirty.remove(key);
+      ColumnFamilyData partition = data.get(key);
+      if (null != partition) {
+        partition.clearDirty();
+      }
+      out.writeUTF(key);
+      Map<String, Object> columns = peek(key);
+      PartitionCodec.write(out, null == columns ? Map.of() : columns);
+    }
+    return keys.size();
+  }
+
+  /**
+   * @return the number of partitions changed since the last checkpoint
+   */
+  int getDirtyPartitions() {
+    return dirty.size();
+  }
+
+  /**
+   * Loads the partitions written by {@link #writeSnapshot(DataOutput)} or {@link
+   * #writeCheckpoint(DataOutput, boolean)} into the table, replacing the partitions already
+   * loaded from an older checkpoint. Loaded partitions are clean.
+   *
+   * @param in
+   *     the snapshot input
+   * @throws IOException
+   *     if the snapshot could not be read
+   */
+  public void readSnapshot(DataInput in) throws IOException {
+    int numPartitions = in.readInt();
+    for (int i = 0; i < numPartitions; i++) {
+      String key = in.readUTF();
+      ColumnFamilyData replaced = data.put(key, PartitionCodec.read(in, footprint));
+      if (null == replaced) {
+        footprint.add(Footprint.partitionBytes(key));
+        tokens.add(new PartitionToken(key));
+      } else {
+        footprint.add(-replaced.estimateBytes());
+      }
+    }
+  }
+
+  /**
+   * @return a read only view of the in-memory partitions
+   */
+  Map<String, ColumnFamilyData> getPartitions() {
+    return Collections.unmodifiableMap(data);
+  }
+
+  /**
+   * @return the estimated heap footprint of the table, in bytes
+   */
+  public long getEstimatedBytes() {
+    return footprint.get();
+  }
+
+  SpillStore getSpillStore() {
+    return spill;
+  }
+
+  /**
+   * @return the number of partitions, in memory or spilled
+   */
+  public int size() {
+    return data.size() + (null == spill ? 0 : spill.size());
   }
 
   public String toString() {
@@ -189,18 +918,19 @@ public class ColumnFamily {
       sb.append("'\n");
       sb.append(entry.getValue());
     }
+    for (String key : spilledKeys()) {
+      ColumnFamilyData partition = spill.peek(key);
+      if (null != partition) {
+        sb.append("Partition Key: '");
+        sb.append(key);
+        sb.append("'\n");
+        sb.append(partition);
+      }
+    }
     return sb.toString();
   }
 
-  public void write(Writer writer) throws IOException {
-    writer.write("Column Family: '");
-    writer.write(name);
-    writer.write("'\n");
-    for (Map.Entry<String, ColumnFamilyData> entry : data.entrySet()) {
-      writer.write("Partition Key: '");
-      writer.write(entry.getKey());
-      writer.write("'\n");
-      entry.getValue().write(writer);
-    }
+  private Set<String> spilledKeys() {
+    return null == spill ? Set.of() : spill.keys();
   }
 }
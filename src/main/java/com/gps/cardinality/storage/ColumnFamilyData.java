@@ -24,9 +24,12 @@ package com.gps.cardinality.storage;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,14 +44,63 @@ public class ColumnFamilyData {
 
   private static final String NON_INTEGER_COUNTER_TYPE
       = "Non integer counter type for counter '%s': %s";
+  /**
+   * Compiled once, the field name is compared to the column name after matching.
+   */
+  private static final Pattern COUNTER_EXPRESSION =
+      Pattern.compile("(.+?)(\\s*)(\\+|-)(\\s*)(\\d+)");
+  /**
+   * Number of failed counter updates after which the counters of a partition are striped.
+   */
+  static final int HOT_COUNTER_CONTENTION = 16;
   /**
    * This hash map orders keys by natural ordering and supports extracting contiguous ranges of
    * key/value pairs. It's also thread safe.
    */
   protected ConcurrentSkipListMap<String, Object> data;
 
+  private static final AtomicIntegerFieldUpdater<ColumnFamilyData> PINS =
+      AtomicIntegerFieldUpdater.newUpdater(ColumnFamilyData.class, "pins");
+  private static final AtomicIntegerFieldUpdater<ColumnFamilyData> CONTENTION =
+      AtomicIntegerFieldUpdater.newUpdater(ColumnFamilyData.class, "contention");
+  private static final AtomicIntegerFieldUpdater<ColumnFamilyData> DIRTY =
+      AtomicIntegerFieldUpdater.newUpdater(ColumnFamilyData.class, "dirty");
+
+  private Footprint footprint;
+  /**
+   * Number of writers currently updating the partition, -1 once the partition is evicted.
+   */
+  private volatile int pins;
+  private volatile long lastAccessSeconds;
+  /**
+   * Number of counter updates that lost a race with another thread.
+   */
+  private volatile int contention;
+  /**
+   * Whether any column holds a {@link StripedCounter}, in which case reads resolve values.
+   */
+  private volatile boolean striped;
+  /**
+   * Whether any column holds a {@link CounterVersion}, in which case reads resolve values.
+   */
+  private volatile boolean versioned;
+  /**
+   * 1 if the partition was written to since it was last checkpointed, 0 otherwise.
+   */
+  private volatile int dirty;
+
   ColumnFamilyData() {
-    data = new ConcurrentSkipListMap<>();
+    this(new Footprint(null));
+  }
+
+  /**
+   * @param footprint
+   *     the footprint the partition's columns are accounted to
+   */
+  ColumnFamilyData(Footprint footprint) {
+    this.data = new ConcurrentSkipListMap<>();
+    this.footprint = footprint;
+    touch();
   }
 
   /**
@@ -65,11 +117,13 @@ public class ColumnFamilyData {
    * and increment.
    */
   static CounterMatch isCounter(String key, Object value) {
+    if (!(value instanceof String)) {
+      return new CounterMatch(false);
+    }
     int pos = key.lastIndexOf(":");
-    String fieldName = key.substring(pos < 0 ? 0 : pos+1);
-    Matcher m =
-        Pattern.compile("(" + fieldName + ")(\\s*)(\\+|-)(\\s*)(\\d+)").matcher(value.toString());
-    if (m.matches()) {
+    Matcher m = COUNTER_EXPRESSION.matcher((String) value);
+    if (m.matches() && key.length() - pos - 1 == m.group(1).length()
+        && key.endsWith(m.group(1))) {
       return new CounterMatch(true, m.group(3), Integer.parseInt(m.group(5)));
     } else {
       return new CounterMatch(false);
@@ -136,20 +190,235 @@ public class ColumnFamilyData {
     CounterMatch cm = isCounter(key, value);
     if (cm.isMatch()) {
       int inc = cm.getInc();
-      String op = cm.getOp();
-      Object oldVal, returnVal;
-      oldVal = returnVal = data.get(key);
+      return incrementCounter(key, cm.getOp().equals("+") ? inc : -inc);
+    } else {
+      Object oldVal = data.put(key, value);
+      footprint.add(null == oldVal ? Footprint.columnBytes(key, value)
+          : Footprint.valueBytes(value) - Footprint.valueBytes(oldVal));
+      return oldVal;
+    }
+  }
+
+  /**
+   * Stores a column value as is, without interpreting counter expressions, replacing the
+   * previous value if any.
+   *
+   * @param key
+   *     the column name
+   * @param value
+   *     the new value
+   * @return the previous value or null if the column did not exist
+   */
+  Object set(String key, Object value) {
+    Object oldVal = data.put(key, value);
+    footprint.add(null == oldVal ? Footprint.columnBytes(key, value)
+        : Footprint.valueBytes(value) - Footprint.valueBytes(oldVal));
+    return oldVal;
+  }
+
+  /**
+   * Stores a column value as is unless the column exists.
+   *
+   * @param key
+   *     the column name
+   * @param value
+   *     the value
+   * @return true if the column was stored
+   */
+  boolean setIfAbsent(String key, Object value) {
+    if (null != data.putIfAbsent(key, value)) {
+      return false;
+    }
+    footprint.add(Footprint.columnBytes(key, value));
+    return true;
+  }
+
+  /**
+   * Stores a column value as is, without interpreting counter expressions. Used when reloading
+   * a partition.
+   */
+  void restore(String key, Object value) {
+    data.put(key, value);
+    footprint.add(Footprint.columnBytes(key, value));
+  }
+
+  /**
+   * Atomically increments (or decrements) a counter column, creating it if necessary. Concurrent
+   * increments of the same counter are never lost.
+   *
+   * @param key
+   *     the counter column name
+   * @param delta
+   *     the amount to add to the counter
+   * @return the previous value of the counter, 0 if the counter did not exist
+   * @throws RuntimeException
+   *     if the column exists and is not a counter
+   */
+  int increment(String key, int delta) {
+    Object oldVal = incrementCounter(key, delta);
+    return null == oldVal ? 0 : (int) oldVal;
+  }
+
+  private Object incrementCounter(String key, int delta) {
+    while (true) {
+      Object oldVal = data.get(key);
+      if (oldVal instanceof StripedCounter) {
+        // Striped counters have no atomic previous value, only counts tables stripe counters
+        StripedCounter counter = (StripedCounter) oldVal;
+        counter.add(delta);
+        return counter.sum() - delta;
+      }
       if (null == oldVal) {
-        oldVal = 0;
+        if (null == data.putIfAbsent(key, delta)) {
+          footprint.add(Footprint.columnBytes(key, delta));
+          return null;
+        }
+        continue;
       }
       if (!(oldVal instanceof Integer)) {
         throw new RuntimeException(String.format(NON_INTEGER_COUNTER_TYPE, key, oldVal));
       }
-      data.put(key, op.equals("+") ? (int) oldVal + inc : (int) oldVal - inc);
-      return returnVal;
-    } else {
-      return data.put(key, value);
+      if (data.replace(key, oldVal, (int) oldVal + delta)) {
+        return oldVal;
+      }
+    }
+  }
+
+  /**
+   * Adds to a counter column, creating it if necessary, without reporting its previous value.
+   * Once the counters of the partition have lost enough races with other threads, or right away
+   * for known hot counters, the counter is replaced by a {@link StripedCounter} so that
+   * concurrent additions stop colliding. Reads return the sum of the stripes.
+   *
+   * @param key
+   *     the counter column name
+   * @param delta
+   *     the amount to add to the counter
+   * @param stripes
+   *     the number of stripes of the counter once striped, 1 to never stripe it
+   * @param hot
+   *     true to stripe the counter right away
+   * @throws RuntimeException
+   *     if the column exists and is not a counter
+   */
+  void add(String key, int delta, int stripes, boolean hot) {
+    while (true) {
+      Object oldVal = data.get(key);
+      if (oldVal instanceof StripedCounter) {
+        ((StripedCounter) oldVal).add(delta);
+        return;
+      }
+      if (null != oldVal && !(oldVal instanceof Integer)) {
+        throw new RuntimeException(String.format(NON_INTEGER_COUNTER_TYPE, key, oldVal));
+      }
+      if (stripes > 1 && (hot || contention >= HOT_COUNTER_CONTENTION)) {
+        stripe(key, (Integer) oldVal, stripes);
+        continue;
+      }
+      if (null == oldVal) {
+        if (null == data.putIfAbsent(key, delta)) {
+          footprint.add(Footprint.columnBytes(key, delta));
+          return;
+        }
+      } else if (data.replace(key, oldVal, (int) oldVal + delta)) {
+        return;
+      }
+      CONTENTION.incrementAndGet(this);
+    }
+  }
+
+  /**
+   * Replaces a counter by a striped counter holding its value, unless it changed meanwhile.
+   */
+  private void stripe(String key, Integer oldVal, int stripes) {
+    StripedCounter counter = new StripedCounter(stripes, null == oldVal ? 0 : oldVal);
+    striped = true;
+    if (null == oldVal) {
+      if (null == data.putIfAbsent(key, counter)) {
+        footprint.add(Footprint.columnBytes(key, counter));
+      }
+    } else if (data.replace(key, oldVal, counter)) {
+      footprint.add(Footprint.valueBytes(counter) - Footprint.valueBytes(oldVal));
+    }
+  }
+
+  boolean isStriped() {
+    return striped;
+  }
+
+  /**
+   * Adds to a versioned counter column, creating it if necessary, see {@link CounterVersion}.
+   * Versioned counters are never striped.
+   *
+   * @param key
+   *     the counter column name
+   * @param delta
+   *     the amount to add to the counter
+   * @param epoch
+   *     the write epoch of the caller, see {@link VersionClock#enter()}
+   * @param pruneEpoch
+   *     the oldest epoch readers may still read, see {@link VersionClock#getPruneEpoch()}
+   * @throws RuntimeException
+   *     if the column exists and is not a counter
+   */
+  void add(String key, int delta, long epoch, long pruneEpoch) {
+    versioned = true;
+    while (true) {
+      Object oldVal = data.get(key);
+      if (null != oldVal && !(oldVal instanceof Integer) && !(oldVal instanceof CounterVersion)) {
+        throw new RuntimeException(String.format(NON_INTEGER_COUNTER_TYPE, key, oldVal));
+      }
+      CounterVersion version = CounterVersion.add(oldVal, delta, epoch, pruneEpoch);
+      if (null == oldVal) {
+        if (null == data.putIfAbsent(key, version)) {
+          footprint.add(Footprint.columnBytes(key, version));
+          return;
+        }
+      } else if (data.replace(key, oldVal, version)) {
+        footprint.add(Footprint.valueBytes(version) - Footprint.valueBytes(oldVal));
+        return;
+      }
+    }
+  }
+
+  /**
+   * @param pruneEpoch
+   *     the oldest epoch readers may still read
+   * @return true if a counter holds versions newer than the prune epoch, i.e. if its latest
+   * value is not the value every reader sees
+   */
+  boolean hasVersionsAfter(long pruneEpoch) {
+    if (!versioned) {
+      return false;
+    }
+    for (Object value : data.values()) {
+      if (value instanceof CounterVersion && ((CounterVersion) value).getEpoch() > pruneEpoch) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the value of a column as exposed to readers, the sum of striped counters and the
+   * latest version of versioned counters
+   */
+  private static Object resolve(Object value) {
+    if (value instanceof StripedCounter) {
+      return ((StripedCounter) value).sum();
+    }
+    return value instanceof CounterVersion ? (Object) ((CounterVersion) value).getValue() : value;
+  }
+
+  /**
+   * @return a read only copy of the columns with striped counters summed
+   */
+  private Map<String, Object> resolved(Map<String, Object> columns) {
+    Map<String, Object> copy = new TreeMap<>();
+    for (Map.Entry<String, Object> entry : columns.entrySet()) {
+      copy.put(entry.getKey(), resolve(entry.getValue()));
     }
+    return Collections.unmodifiableMap(copy);
   }
 
   /**
@@ -166,7 +435,21 @@ public class ColumnFamilyData {
    *     if the specified key is null
    */
   Object get(String key) {
-    return data.get(key);
+    return resolve(data.get(key));
+  }
+
+  /**
+   * @param key
+   *     the key for which to fetch the associated value
+   * @param epoch
+   *     the epoch pinned by the reader, see {@link VersionClock#pin()}
+   * @return the value associated to the key as of the end of the epoch, or null if there was
+   * no key mapping then
+   */
+  Object get(String key, long epoch) {
+    Object value = data.get(key);
+    return value instanceof CounterVersion ? ((CounterVersion) value).valueAt(epoch)
+        : resolve(value);
   }
 
   /**
@@ -184,7 +467,28 @@ public class ColumnFamilyData {
    */
   Map<String, Object> getRange(
       String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
-    return data.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    Map<String, Object> range = data.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    return striped || versioned ? resolved(range) : range;
+  }
+
+  /**
+   * @param fromKey
+   *     low endpoint (exclusive) of the keys in the returned map, null for the first column
+   * @return a read only, sorted view of the columns after fromKey. Iterating it never blocks
+   * writers and reflects some of the concurrent updates. A copy once counters are striped or
+   * versioned.
+   */
+  Map<String, Object> getTail(String fromKey) {
+    Map<String, Object> tail = null == fromKey ? data : data.tailMap(fromKey, false);
+    return striped || versioned ? resolved(tail) : Collections.unmodifiableMap(tail);
+  }
+
+  /**
+   * @return a read only, sorted view of all the columns, a copy once counters are striped or
+   * versioned
+   */
+  Map<String, Object> getAll() {
+    return striped || versioned ? resolved(data) : Collections.unmodifiableMap(data);
   }
 
   /**
@@ -199,8 +503,89 @@ public class ColumnFamilyData {
     }
   }
 
+  /**
+   * Registers a writer, preventing the partition from being evicted until {@link #unpin()}.
+   *
+   * @return false if the partition was evicted, in which case it must not be written to
+   */
+  boolean pin() {
+    while (true) {
+      int current = pins;
+      if (current < 0) {
+        return false;
+      }
+      if (PINS.compareAndSet(this, current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  void unpin() {
+    PINS.decrementAndGet(this);
+  }
+
+  /**
+   * Marks the partition as evicted if no writer is updating it. Writers can no longer pin an
+   * evicted partition.
+   *
+   * @return true if the partition was marked as evicted
+   */
+  boolean markEvicted() {
+    return PINS.compareAndSet(this, 0, -1);
+  }
+
+  /**
+   * Cancels {@link #markEvicted()}, letting writers pin the partition again.
+   */
+  void unmarkEvicted() {
+    pins = 0;
+  }
+
+  /**
+   * Flags the partition as changed since the last checkpoint. Called once a write is applied.
+   *
+   * @return true if the partition was clean, i.e. if the caller must record it as dirty
+   */
+  boolean markDirty() {
+    return 0 == dirty && DIRTY.compareAndSet(this, 0, 1);
+  }
+
+  /**
+   * Flags the partition as checkpointed. Called before reading the partition for a checkpoint,
+   * so that writes applied after the read flag the partition again.
+   */
+  void clearDirty() {
+    dirty = 0;
+  }
+
+  /**
+   * Records an access to the partition, with a one second resolution to avoid writing to the
+   * partition on every access.
+   */
+  void touch() {
+    long now = System.currentTimeMillis() / 1000;
+    if (lastAccessSeconds != now) {
+      lastAccessSeconds = now;
+    }
+  }
+
+  long getLastAccessSeconds() {
+    return lastAccessSeconds;
+  }
+
+  /**
+   * @return the estimated footprint of the partition's columns, in bytes
+   */
+  long estimateBytes() {
+    long bytes = 0;
+    for (Map.Entry<String, Object> entry : data.entrySet()) {
+      bytes += Footprint.columnBytes(entry.getKey(), entry.getValue());
+    }
+    return bytes;
+  }
+
   Map<String, Object> getDataAsMap() {
-    return new HashMap<>(data);
+    return new HashMap<>(getAll());
   }
 
   public String toString() {
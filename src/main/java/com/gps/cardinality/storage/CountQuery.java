@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.NavigableMap;
+
+/**
+ * A single (month, feature values) lookup of a batched count query, see {@link
+ * Database#getMonthlyUniqueCounts(String, java.util.List)}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class CountQuery {
+
+  private long monthStart;
+  private NavigableMap<String, String> features;
+
+  /**
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by, features absent from the map are not filtered on
+   */
+  public CountQuery(long monthStart, NavigableMap<String, String> features) {
+    this.monthStart = monthStart;
+    this.features = features;
+  }
+
+  public static CountQuery of(long monthStart, NavigableMap<String, String> features) {
+    return new CountQuery(monthStart, features);
+  }
+
+  public long getMonthStart() {
+    return monthStart;
+  }
+
+  public NavigableMap<String, String> getFeatures() {
+    return features;
+  }
+}
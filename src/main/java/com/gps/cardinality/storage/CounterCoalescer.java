@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Write combining layer for the counters of a {@link StorageTable}. Increments are accumulated in
+ * per thread buffers and applied to the table in bulk, so that threads incrementing the same hot
+ * counters (e.g. the site totals of the current month) only meet on the table once per flush
+ * instead of once per increment.
+ *
+ * <p>
+ * A thread's buffer is flushed when it holds {@code maxPendingCells} distinct counters or when
+ * its oldest pending increment is older than {@code maxStalenessMillis}. Readers call {@link
+ * #beforeRead()}, which flushes every buffer unless a full flush already happened within the
+ * staleness bound, so reads never miss increments older than that bound.
+ * </p>
+ *
+ * <p>
+ * The increments of an event are buffered between {@link #beginEvent()} and {@link #endEvent()},
+ * during which the buffer is not flushed, so that every flush applies whole events. Flushes are
+ * applied to tables with versioned counters as a single group of writes, see {@link
+ * VersionClock}.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class CounterCoalescer {
+
+  private StorageTable table;
+  private Consumer<String> flushListener;
+  private int maxPendingCells;
+  private long maxStalenessNanos;
+  private ThreadLocal<Buffer> buffers;
+  private Set<Buffer> allBuffers;
+  private volatile long lastFullFlushNanos;
+
+  /**
+   * @param table
+   *     the table holding the counters
+   * @param maxPendingCells
+   *     the number of distinct counters a thread buffers before flushing
+   * @param maxStalenessMillis
+   *     the maximum age of increments not yet visible to readers, 0 to always flush before
+   *     reads
+   * @param flushListener
+   *     called with the key of every partition updated by a flush, may be null
+   */
+  CounterCoalescer(StorageTable table, int maxPendingCells, long maxStalenessMillis,
+      Consumer<String> flushListener) {
+    this.table = table;
+    this.flushListener = flushListener;
+    this.maxPendingCells = maxPendingCells;
+    this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    this.allBuffers = ConcurrentHashMap.newKeySet();
+    this.buffers = ThreadLocal.withInitial(() -> {
+      Buffer buffer = new Buffer(Thread.currentThread());
+      allBuffers.add(buffer);
+      return buffer;
+    });
+    this.lastFullFlushNanos = System.nanoTime();
+  }
+
+  /**
+   * The pending increments of a single thread, by partition key and column. Only its owner
+   * thread adds to a buffer but any reader may flush it, hence the (uncontended) locking. The
+   * owner holds the lock for the duration of an event.
+   */
+  private static class Buffer {
+    private Thread owner;
+    private ReentrantLock lock;
+    private Map<String, Map<String, int[]>> pending;
+    private int pendingCells;
+    private long oldestPendingNanos;
+
+    Buffer(Thread owner) {
+      this.owner = owner;
+      this.lock = new ReentrantLock();
+      this.pending = new HashMap<>();
+    }
+  }
+
+  /**
+   * Starts buffering the increments of an event, which are flushed together. Every {@link
+   * #beginEvent()} must be followed by an {@link #endEvent()}.
+   */
+  void beginEvent() {
+    buffers.get().lock.lock();
+  }
+
+  /**
+   * Ends the event started by {@link #beginEvent()}, flushing the buffer if it is full or stale.
+   */
+  void endEvent() {
+    Buffer buffer = buffers.get();
+    try {
+      flushIfNeeded(buffer);
+    } finally {
+      buffer.lock.unlock();
+    }
+  }
+
+  /**
+   * Buffers a counter increment.
+   *
+   * @param partitionKey
+   *     the partition key, see {@link ColumnFamily#partitionKey(Map)}
+   * @param column
+   *     the counter column name, see {@link ColumnFamily#columnName(Map, String)}
+   * @param delta
+   *     the amount to add to the counter
+   */
+  void increment(String partitionKey, String column, int delta) {
+    Buffer buffer = buffers.get();
+    buffer.lock.lock();
+    try {
+      if (0 == buffer.pendingCells) {
+        buffer.oldestPendingNanos = System.nanoTime();
+      }
+      Map<String, int[]> cells = buffer.pending.computeIfAbsent(partitionKey, k -> new HashMap<>());
+      int[] cell = cells.get(column);
+      if (null == cell) {
+        cells.put(column, new int[]{delta});
+        buffer.pendingCells++;
+      } else {
+        cell[0] += delta;
+      }
+      if (1 == buffer.lock.getHoldCount()) {
+        flushIfNeeded(buffer);
+      }
+    } finally {
+      buffer.lock.unlock();
+    }
+  }
+
+  private void flushIfNeeded(Buffer buffer) {
+    if (0 == buffer.pendingCells) {
+      return;
+    }
+    if (buffer.pendingCells >= maxPendingCells
+        || System.nanoTime() - buffer.oldestPendingNanos >= maxStalenessNanos) {
+      flush(buffer);
+    }
+  }
+
+  /**
+   * Makes sure the table reflects every increment older than the staleness bound.
+   */
+  void beforeRead() {
+    if (0 == maxStalenessNanos || System.nanoTime() - lastFullFlushNanos >= maxStalenessNanos) {
+      flushAll();
+    }
+  }
+
+  /**
+   * Applies the pending increments of every thread to the table.
+   */
+  void flushAll() {
+    long start = System.nanoTime();
+    for (Buffer buffer : allBuffers) {
+      buffer.lock.lock();
+      try {
+        flush(buffer);
+        if (!buffer.owner.isAlive()) {
+          // The owner can no longer add to the buffer, forget it
+          allBuffers.remove(buffer);
+        }
+      } finally {
+        buffer.lock.unlock();
+      }
+    }
+    lastFullFlushNanos = start;
+  }
+
+  private void flush(Buffer buffer) {
+    VersionClock versions =
+        table instanceof ColumnFamily ? ((ColumnFamily) table).getVersionClock() : null;
+    if (null != versions) {
+      versions.enter();
+    }
+    try {
+      for (Map.Entry<String, Map<String, int[]>> partition : buffer.pending.entrySet()) {
+        for (Map.Entry<String, int[]> cell : partition.getValue().entrySet()) {
+          table.add(partition.getKey(), cell.getKey(), cell.getValue()[0], false);
+        }
+        if (null != flushListener) {
+          flushListener.accept(partition.getKey());
+        }
+      }
+    } finally {
+      if (null != versions) {
+        versions.exit();
+      }
+    }
+    buffer.pending.clear();
+    buffer.pendingCells = 0;
+  }
+}
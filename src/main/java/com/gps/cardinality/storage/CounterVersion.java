@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+/**
+ * An immutable version of a counter column, stored in place of its {@link Integer} value in
+ * tables with a {@link VersionClock}. Each version holds the value of the counter as of the end
+ * of a write epoch and links to the previous one, so that readers pinning an older epoch still
+ * see the value the counter had then. Plain {@link Integer} values count as versions of epoch 0.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+final class CounterVersion {
+
+  private final long epoch;
+  private final int value;
+  private final CounterVersion previous;
+
+  CounterVersion(long epoch, int value, CounterVersion previous) {
+    this.epoch = epoch;
+    this.value = value;
+    this.previous = previous;
+  }
+
+  /**
+   * Adds to a counter on behalf of a writer of the specified epoch. Writers of later epochs may
+   * have updated the counter first, in which case their versions are rebuilt to include the
+   * delta as well.
+   *
+   * @param cell
+   *     the current value of the counter column, null if it does not exist
+   * @param delta
+   *     the amount to add to the counter
+   * @param epoch
+   *     the epoch of the writer
+   * @param pruneEpoch
+   *     the oldest epoch readers may still read, older versions are dropped
+   * @return the new latest version of the counter
+   */
+  static CounterVersion add(Object cell, int delta, long epoch, long pruneEpoch) {
+    if (null == cell || cell instanceof CounterVersion) {
+      return add((CounterVersion) cell, delta, epoch, pruneEpoch);
+    }
+    return add(new CounterVersion(0, (Integer) cell, null), delta, epoch, pruneEpoch);
+  }
+
+  private static CounterVersion add(
+      CounterVersion head, int delta, long epoch, long pruneEpoch) {
+    if (null == head) {
+      return new CounterVersion(epoch, delta, null);
+    }
+    if (head.epoch > epoch) {
+      return new CounterVersion(head.epoch, head.value + delta,
+          add(head.previous, delta, epoch, pruneEpoch));
+    }
+    if (head.epoch == epoch) {
+      return new CounterVersion(epoch, head.value + delta, head.previous);
+    }
+    return new CounterVersion(epoch, head.value + delta, prune(head, pruneEpoch));
+  }
+
+  /**
+   * @return the versions readers of the prune epoch or later may read, i.e. the versions newer
+   * than the prune epoch and the latest one as of the prune epoch
+   */
+  private static CounterVersion prune(CounterVersion head, long pruneEpoch) {
+    if (null == head.previous) {
+      return head;
+    }
+    if (head.epoch <= pruneEpoch) {
+      return new CounterVersion(head.epoch, head.value, null);
+    }
+    return new CounterVersion(head.epoch, head.value, prune(head.previous, pruneEpoch));
+  }
+
+  /**
+   * @param epoch
+   *     the epoch pinned by the reader
+   * @return the value of the counter as of the end of the epoch, null if it did not exist yet
+   */
+  Integer valueAt(long epoch) {
+    for (CounterVersion version = this; null != version; version = version.previous) {
+      if (version.epoch <= epoch) {
+        return version.value;
+      }
+    }
+    return null;
+  }
+
+  long getEpoch() {
+    return epoch;
+  }
+
+  int getValue() {
+    return value;
+  }
+
+  long estimateBytes() {
+    long bytes = 0;
+    for (CounterVersion version = this; null != version; version = version.previous) {
+      bytes += 32;
+    }
+    return bytes;
+  }
+
+  public String toString() {
+    return String.valueOf(value);
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects which feature combinations (cuboids) of a site are materialized in its guid data and
+ * counts tables. A combination is materialized if it is no larger than the maximum combination
+ * size or explicitly included, is not explicitly excluded, and contains all the mandatory
+ * features. E.g. to only count single features plus one pair:
+ *
+ * <pre>
+ * CuboidSpec.create().withMaxCombinationSize(1).include("feature1", "feature2")
+ * </pre>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class CuboidSpec {
+
+  private int maxCombinationSize;
+  private List<Set<String>> includes;
+  private List<Set<String>> excludes;
+  private Set<String> mandatory;
+
+  private CuboidSpec() {
+    this.maxCombinationSize = Integer.MAX_VALUE;
+    this.includes = new ArrayList<>();
+    this.excludes = new ArrayList<>();
+    this.mandatory = new TreeSet<>();
+  }
+
+  public static CuboidSpec create() {
+    return new CuboidSpec();
+  }
+
+  /**
+   * @param maxCombinationSize
+   *     the maximum number of features combined, 0 only materializes the site totals
+   */
+  public CuboidSpec withMaxCombinationSize(int maxCombinationSize) {
+    if (maxCombinationSize < 0) {
+      throw new IllegalArgumentException(
+          String.format("Invalid max combination size: %d", maxCombinationSize));
+    }
+    this.maxCombinationSize = maxCombinationSize;
+    return this;
+  }
+
+  /**
+   * Materializes a combination regardless of the maximum combination size.
+   */
+  public CuboidSpec include(String... features) {
+    this.includes.add(new TreeSet<>(List.of(features)));
+    return this;
+  }
+
+  /**
+   * Never materializes a combination.
+   */
+  public CuboidSpec exclude(String... features) {
+    this.excludes.add(new TreeSet<>(List.of(features)));
+    return this;
+  }
+
+  /**
+   * Only materializes combinations containing all of the specified features.
+   */
+  public CuboidSpec withMandatory(String... features) {
+    this.mandatory.addAll(List.of(features));
+    return this;
+  }
+
+  public int getMaxCombinationSize() {
+    return maxCombinationSize;
+  }
+
+  public List<Set<String>> getIncludes() {
+    return includes;
+  }
+
+  public List<Set<String>> getExcludes() {
+    return excludes;
+  }
+
+  public Set<String> getMandatory() {
+    return mandatory;
+  }
+
+  /**
+   * Checks that the spec only refers to features of the site.
+   *
+   * @param features
+   *     the names of features supported by the site
+   * @throws IllegalArgumentException
+   *     if the spec refers to unknown features or includes a combination missing a mandatory
+   *     feature
+   */
+  void validate(NavigableSet<String> features) {
+    List<Set<String>> referenced = new ArrayList<>(includes);
+    referenced.addAll(excludes);
+    referenced.add(mandatory);
+    for (Set<String> combination : referenced) {
+      if (!features.containsAll(combination)) {
+        throw new IllegalArgumentException(
+            String.format("Unknown features in %s, site features are %s", combination, features));
+      }
+    }
+    for (Set<String> combination : includes) {
+      if (!combination.containsAll(mandatory)) {
+        throw new IllegalArgumentException(String.format(
+            "Included combination %s is missing mandatory features %s", combination, mandatory));
+      }
+    }
+  }
+}
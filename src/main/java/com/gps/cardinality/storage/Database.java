@@ -22,19 +22,49 @@
 
 package com.gps.cardinality.storage;
 
-import static com.gps.cardinality.utils.Maps.combineMaps;
-
-import com.gps.cardinality.utils.Timestamps;
+import com.gps.cardinality.utils.EventBatch;
+import com.gps.cardinality.utils.IntervalCalculator;
+import com.gps.cardinality.utils.ThetaSketch;
 import com.gps.cardinality.utils.Timestamps.Intervals;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Manages all in-memory data store column families.
@@ -52,15 +82,98 @@ public class Database {
   private static final String CF_METRIC = "metric";
   private static String CF_GUID_DATA = "%s_cf_guid_data";
   private static String CF_MONTHLY_COUNTS = "%s_cf_monthly_data";
+  private static final int QUERY_CACHE_CAPACITY = 10_000;
+  private static final double EVICTION_LOW_WATERMARK = 0.8;
+  private static final int MEMORY_BUDGET_CHECK_INTERVAL = 256;
+  private static final String SNAPSHOT_MANIFEST = "manifest";
+  private static final String SNAPSHOT_SITE_FILE = "site-%d.snapshot";
+  private static final String CHECKPOINT_BASE = "base-%06d";
+  private static final String CHECKPOINT_DELTA = "delta-%06d-%06d";
+  private static final Pattern CHECKPOINT_NAME =
+      Pattern.compile("(?:base|delta)-(\\d{6})(?:-(\\d{6}))?");
 
-  private Map<String, Map<String, ColumnFamily>> siteTables;
+  private StorageEngine engine;
+  private Map<String, Map<String, StorageTable>> siteTables;
   private Map<String, NavigableSet<String>> siteFeatures;
   private Map<String, List<List<String>>> siteFeatureNameCombinations;
+  private Map<String, Set<List<String>>> siteMaterializedCombinations;
+  private Map<String, SiteOptions> siteOptions;
+  private Map<String, CounterCoalescer> siteCounterCoalescers;
+  private Map<String, SecondaryIndex> siteSecondaryIndexes;
+  private Map<String, SketchStore> siteSketchStores;
+  private Map<String, IntervalCalculator> siteIntervalCalculators;
+  private Map<String, SiteStatements> siteStatements;
+  /**
+   * The latest event timestamp tracked for each site.
+   */
+  private Map<String, LongAccumulator> siteWatermarks;
+  private Map<String, Map<Long, MonthArchive>> siteClosedMonths;
+  private LongAdder lateEvents;
+  private Map<NavigableSet<String>, List<List<String>>> defaultCombinations;
+  private QueryCache queryCache;
+  private Footprint footprint;
+  private long memoryBudget;
+  private Path spillDirectory;
+  private AtomicBoolean evicting;
+  private volatile SnapshotRestore restore;
+  /**
+   * The directory of the checkpoint chain the dirty partitions are relative to, null if none.
+   */
+  private volatile Path checkpointDirectory;
+  private volatile ChangeFeed changeFeed;
 
   public Database() {
-    this.siteTables = new HashMap<>();
-    this.siteFeatures = new HashMap<>();
-    this.siteFeatureNameCombinations = new HashMap<>();
+    this(0, null);
+  }
+
+  /**
+   * @param memoryBudgetBytes
+   *     the estimated heap footprint of all tables above which the least recently accessed
+   *     partitions are evicted to disk, 0 for no limit
+   * @param spillDirectory
+   *     the directory evicted partitions are stored in, required when there is a budget
+   */
+  public Database(long memoryBudgetBytes, Path spillDirectory) {
+    this(memoryBudgetBytes, spillDirectory, null);
+  }
+
+  /**
+   * @param engine
+   *     the storage engine the tables are created by, see {@link StorageEngines}. Memory
+   *     budgets, checkpoints, striped counters and read views are features of the {@link
+   *     InMemoryStorageEngine}, and are not available with other engines.
+   */
+  public Database(StorageEngine engine) {
+    this(0, null, engine);
+  }
+
+  private Database(long memoryBudgetBytes, Path spillDirectory, StorageEngine engine) {
+    if (memoryBudgetBytes > 0 && null == spillDirectory) {
+      throw new IllegalArgumentException("A memory budget requires a spill directory");
+    }
+    this.siteTables = new ConcurrentHashMap<>();
+    this.siteFeatures = new ConcurrentHashMap<>();
+    this.siteFeatureNameCombinations = new ConcurrentHashMap<>();
+    this.siteMaterializedCombinations = new ConcurrentHashMap<>();
+    this.siteOptions = new ConcurrentHashMap<>();
+    this.siteCounterCoalescers = new ConcurrentHashMap<>();
+    this.siteSecondaryIndexes = new ConcurrentHashMap<>();
+    this.siteSketchStores = new ConcurrentHashMap<>();
+    this.siteIntervalCalculators = new ConcurrentHashMap<>();
+    this.siteStatements = new ConcurrentHashMap<>();
+    this.siteWatermarks = new ConcurrentHashMap<>();
+    this.siteClosedMonths = new ConcurrentHashMap<>();
+    this.lateEvents = new LongAdder();
+    this.defaultCombinations = new ConcurrentHashMap<>();
+    this.queryCache = new QueryCache(QUERY_CACHE_CAPACITY);
+    this.footprint = new Footprint(null);
+    this.memoryBudget = memoryBudgetBytes;
+    this.spillDirectory = spillDirectory;
+    this.evicting = new AtomicBoolean();
+    // In-memory tables are accounted for in the database's footprint
+    this.engine = null == engine || engine instanceof InMemoryStorageEngine
+        ? new InMemoryStorageEngine(footprint, memoryBudget > 0 ? spillDirectory : null)
+        : engine;
   }
 
   /**
@@ -176,9 +289,69 @@ public class Database {
     return featureCombinations;
   }
 
+  /**
+   * Generates the feature name combinations selected by a {@link CuboidSpec}, ordered by
+   * increasing combination size, in the same format as {@link
+   * #featureNameCombinations(NavigableSet)}. Unlike the default combinations, only the selected
+   * combinations are generated so their number is bounded by the spec rather than by the number
+   * of features.
+   *
+   * @param featureList
+   *     the ordered list of feature names
+   * @param spec
+   *     the combinations to select
+   * @return the selected combinations of the specified features
+   */
+  List<List<String>> featureNameCombinations(NavigableSet<String> featureList, CuboidSpec spec) {
+    spec.validate(featureList);
+    List<String> optional = new ArrayList<>(featureList);
+    optional.removeAll(spec.getMandatory());
+    List<Set<String>> selected = new ArrayList<>();
+    int maxOptional = Math.min(
+        spec.getMaxCombinationSize() - spec.getMandatory().size(), optional.size());
+    for (int size = 0; size <= maxOptional; size++) {
+      // Walk all combinations of the given size in lexicographic order of feature positions
+      int[] positions = IntStream.range(0, size).toArray();
+      while (true) {
+        Set<String> combination = new TreeSet<>(spec.getMandatory());
+        for (int position : positions) {
+          combination.add(optional.get(position));
+        }
+        selected.add(combination);
+        int i = size - 1;
+        while (i >= 0 && positions[i] == optional.size() - size + i) {
+          i--;
+        }
+        if (i < 0) {
+          break;
+        }
+        positions[i]++;
+        for (int j = i + 1; j < size; j++) {
+          positions[j] = positions[j - 1] + 1;
+        }
+      }
+    }
+    for (Set<String> include : spec.getIncludes()) {
+      if (!selected.contains(include)) {
+        selected.add(include);
+      }
+    }
+    selected.removeAll(spec.getExcludes());
+
+    List<List<String>> featureCombinations = new ArrayList<>();
+    for (Set<String> combination : selected) {
+      List<String> keys = new ArrayList<>();
+      for (String featureName : featureList) {
+        keys.add(combination.contains(featureName) ? featureName : "");
+      }
+      featureCombinations.add(keys);
+    }
+    return featureCombinations;
+  }
+
   /**
    * Records a single site event into two tables, one tracking guids and one
-   * tracking the monthly cardinality counts.
+   * tracking the monthly cardinality counts. Safe to call from multiple threads.
    *
    * @param siteId
    *     the site to be tracked
@@ -191,49 +364,352 @@ public class Database {
    */
   public void track(
       String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
-    Intervals intervals = Timestamps.getIntervals(timestamp);
+    apply(plan(siteId, timestamp, guid, features));
+  }
+
+  /**
+   * Computes the intervals and feature combinations of a single site event without touching
+   * any table. See {@link #apply(TrackingPlan)}.
+   *
+   * @param siteId
+   *     the site to be tracked
+   * @param timestamp
+   *     the timestamp of the event
+   * @param guid
+   *     the guid of the visitor
+   * @param features
+   *     the features key/values
+   * @return the plan of the event's writes
+   */
+  public TrackingPlan plan(
+      String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
+    Intervals intervals = siteIntervalCalculators.get(siteId).getIntervals(timestamp);
+
+    if (siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      return new TrackingPlan(siteId, intervals, guid, features, null);
+    }
 
     List<Map<String, Object>> featureCombos = featureNameValueCombinations(
         siteFeatures.get(siteId), siteFeatureNameCombinations.get(siteId), features);
+    return new TrackingPlan(siteId, intervals, guid, features, featureCombos);
+  }
+
+  /**
+   * Applies the writes of a single site event to the guid data and monthly counts tables. Safe
+   * to call from multiple threads.
+   *
+   * @param plan
+   *     the plan computed by {@link #plan(String, long, String, NavigableMap)}
+   */
+  public void apply(TrackingPlan plan) {
+    checkMemoryBudget();
+    String siteId = plan.siteId;
+    ensureLoaded(siteId);
+    Intervals intervals = plan.intervals;
+    String guid = plan.guid;
+    siteWatermarks.get(siteId).accumulate(intervals.getTimestamp());
+    if (isClosed(siteId, intervals.getMonthStart())) {
+      lateEvents.increment();
+      return;
+    }
+
+    SecondaryIndex index = siteSecondaryIndexes.get(siteId);
+    if (null != index) {
+      index.add(intervals.getMonthStart(), guid, plan.features);
+    }
+    SketchStore sketches = siteSketchStores.get(siteId);
+    if (null != sketches) {
+      sketches.add(intervals.getMonthStart(), guid, plan.features);
+    }
+
+    if (null == plan.featureCombos) {
+      trackFullTuple(siteId, intervals.getMonthStart(), guid, plan.features);
+      return;
+    }
 
-    featureCombos.forEach(fc -> {
-      Map<String, Object> rawTableKeys = combineMaps(
-          Map.of(CF_SITE_ID, siteId, CF_INTERVAL_SIZE, "month", CF_INTERVAL_START,
-              intervals.getMonthStart(), CF_GUID, guid), fc);
-      boolean unique = updateAndReportIfUnique(
-          getGuidDataTable(siteId), rawTableKeys, Map.of("visits", "visits+1"));
-
-      if (unique) {
-        Map<String, Object> countsTableKeys = combineMaps(
-            Map.of(CF_SITE_ID, siteId, CF_MONTH_START, intervals.getMonthStart()), fc);
-        getMonthlyCountsTable(siteId).update(
-            countsTableKeys,
-            Map.of(CF_METRIC, "month_unique", CF_INTERVAL_START, intervals.getMonthStart(),
-                "visits", "visits+1"));
+    SiteStatements statements = siteStatements.get(siteId);
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    long monthStart = intervals.getMonthStart();
+    beginEvent(statements, coalescer);
+    try {
+      for (Map<String, Object> fc : plan.featureCombos) {
+        // Combinations are sorted maps holding every feature, in the order of the key layouts
+        Object[] guidKeys = new Object[4 + fc.size()];
+        Object[] countsKeys = new Object[4 + fc.size()];
+        guidKeys[0] = siteId;
+        guidKeys[1] = "month";
+        guidKeys[2] = monthStart;
+        guidKeys[3] = guid;
+        countsKeys[0] = siteId;
+        countsKeys[1] = monthStart;
+        int i = 0;
+        for (Object value : fc.values()) {
+          guidKeys[4 + i] = value;
+          countsKeys[2 + i] = value;
+          i++;
+        }
+        countsKeys[2 + i] = "month_unique";
+        countsKeys[3 + i] = monthStart;
+        trackCombination(siteId, statements, coalescer, guidKeys, countsKeys);
       }
-    });
+    } finally {
+      endEvent(statements, coalescer);
+    }
+  }
+
+  /**
+   * Tracks a batch of events of a single site. Equivalent to tracking each event on its own,
+   * but intervals and feature combinations are computed in loops over the batch's arrays, and
+   * the key arrays and combination layouts are set up once per batch rather than once per event
+   * and combination. Feature maps are only built for sites that also index, sketch or track full
+   * tuples. Safe to call from multiple threads with different batches.
+   *
+   * @param siteId
+   *     the site to be tracked
+   * @param batch
+   *     the events, features the site does not support are ignored
+   */
+  public void track(String siteId, EventBatch batch) {
+    ensureLoaded(siteId);
+    String[] featureNames = siteFeatures.get(siteId).toArray(new String[0]);
+    int numFeatures = featureNames.length;
+    // Batch column of each site feature, -1 if the batch does not carry it
+    int[] columns = new int[numFeatures];
+    for (int f = 0; f < numFeatures; f++) {
+      columns[f] = batch.getFeatureNames().indexOf(featureNames[f]);
+    }
+    SecondaryIndex index = siteSecondaryIndexes.get(siteId);
+    SketchStore sketches = siteSketchStores.get(siteId);
+    boolean fullTuple = siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE;
+    boolean featureMaps = fullTuple || null != index || null != sketches;
+    boolean[][] combinations = null;
+    if (!fullTuple) {
+      List<List<String>> names = siteFeatureNameCombinations.get(siteId);
+      combinations = new boolean[names.size()][numFeatures];
+      for (int c = 0; c < names.size(); c++) {
+        for (int f = 0; f < numFeatures; f++) {
+          combinations[c][f] = !names.get(c).get(f).isEmpty();
+        }
+      }
+    }
+    IntervalCalculator calculator = siteIntervalCalculators.get(siteId);
+    SiteStatements statements = siteStatements.get(siteId);
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    String[] values = new String[numFeatures];
+    Object[] guidKeys = new Object[4 + numFeatures];
+    Object[] countsKeys = new Object[4 + numFeatures];
+    guidKeys[0] = siteId;
+    guidKeys[1] = "month";
+    countsKeys[0] = siteId;
+    countsKeys[2 + numFeatures] = "month_unique";
+
+    Map<Long, MonthArchive> closedMonths = siteClosedMonths.get(siteId);
+    long watermark = Long.MIN_VALUE;
+    for (int e = 0; e < batch.size(); e++) {
+      checkMemoryBudget();
+      watermark = Math.max(watermark, batch.getTimestamp(e));
+      long monthStart = calculator.getMonthStart(batch.getTimestamp(e));
+      if (null != closedMonths && closedMonths.containsKey(monthStart)) {
+        lateEvents.increment();
+        continue;
+      }
+      String guid = batch.getGuid(e);
+      for (int f = 0; f < numFeatures; f++) {
+        int id = columns[f] < 0 ? EventBatch.ABSENT : batch.getFeatureId(columns[f], e);
+        values[f] = EventBatch.ABSENT == id ? null : batch.getFeatureValue(columns[f], id);
+      }
+      if (featureMaps) {
+        NavigableMap<String, String> features = new TreeMap<>();
+        for (int f = 0; f < numFeatures; f++) {
+          if (null != values[f]) {
+            features.put(featureNames[f], values[f]);
+          }
+        }
+        if (null != index) {
+          index.add(monthStart, guid, features);
+        }
+        if (null != sketches) {
+          sketches.add(monthStart, guid, features);
+        }
+        if (fullTuple) {
+          trackFullTuple(siteId, monthStart, guid, features);
+          continue;
+        }
+      }
+      Long month = monthStart;
+      guidKeys[2] = month;
+      guidKeys[3] = guid;
+      countsKeys[1] = month;
+      countsKeys[3 + numFeatures] = month;
+      beginEvent(statements, coalescer);
+      try {
+        for (boolean[] combination : combinations) {
+          boolean complete = true;
+          for (int f = 0; f < numFeatures && complete; f++) {
+            String value = combination[f] ? values[f] : "";
+            complete = null != value;
+            guidKeys[4 + f] = value;
+            countsKeys[2 + f] = value;
+          }
+          if (complete) {
+            trackCombination(siteId, statements, coalescer, guidKeys, countsKeys);
+          }
+        }
+      } finally {
+        endEvent(statements, coalescer);
+      }
+    }
+    siteWatermarks.get(siteId).accumulate(watermark);
+  }
+
+  /**
+   * Starts writing the combinations of an event, which read views and coalesced flushes then
+   * see either all or none of. Every {@link #beginEvent(SiteStatements, CounterCoalescer)} must
+   * be followed by an {@link #endEvent(SiteStatements, CounterCoalescer)}.
+   */
+  private static void beginEvent(SiteStatements statements, CounterCoalescer coalescer) {
+    if (null != coalescer) {
+      // Flushes are groups of writes of their own
+      coalescer.beginEvent();
+    } else if (null != statements.versions) {
+      statements.versions.enter();
+    }
+  }
+
+  private static void endEvent(SiteStatements statements, CounterCoalescer coalescer) {
+    if (null != coalescer) {
+      coalescer.endEvent();
+    } else if (null != statements.versions) {
+      statements.versions.exit();
+    }
+  }
+
+  /**
+   * Records the visit of a guid for a single feature combination, counting it if it is the
+   * guid's first visit of the month for that combination.
+   */
+  private void trackCombination(String siteId, SiteStatements statements,
+      CounterCoalescer coalescer, Object[] guidKeys, Object[] countsKeys) {
+    boolean unique = 0 == statements.guidVisits.increment(1, guidKeys);
+    if (unique) {
+      String partitionKey = statements.countsVisits.partitionKey(countsKeys);
+      String column = statements.countsVisits.column(countsKeys);
+      ChangeFeed feed = changeFeed;
+      if (null != feed) {
+        feed.publish(siteId, (long) countsKeys[1], statements.guidVisits.partitionKey(guidKeys),
+            partitionKey, column);
+      }
+      if (null == coalescer) {
+        getMonthlyCountsTable(siteId).add(partitionKey, column, 1,
+            statements.isHotCounter(countsKeys));
+        queryCache.invalidate(partitionKey);
+      } else {
+        // Cached results are invalidated once the increment is flushed to the table
+        coalescer.increment(partitionKey, column, 1);
+      }
+    }
+  }
+
+  private void checkMemoryBudget() {
+    if (memoryBudget > 0
+        && 0 == ThreadLocalRandom.current().nextInt(MEMORY_BUDGET_CHECK_INTERVAL)
+        && footprint.get() > memoryBudget) {
+      enforceMemoryBudget();
+    }
+  }
+
+  /**
+   * Records a single site event as one full feature tuple row, clustered by guid under the
+   * site's monthly partition. See {@link TrackingMode#FULL_TUPLE}.
+   */
+  private void trackFullTuple(
+      String siteId, long monthStart, String guid, NavigableMap<String, String> features) {
+    NavigableSet<String> featureNames = siteFeatures.get(siteId);
+    Object[] keys = new Object[4 + featureNames.size()];
+    keys[0] = siteId;
+    keys[1] = "month";
+    keys[2] = monthStart;
+    keys[3] = guid;
+    int i = 4;
+    for (String featureName : featureNames) {
+      keys[i++] = features.getOrDefault(featureName, "");
+    }
+    boolean unique = 0 == siteStatements.get(siteId).guidVisits.increment(1, keys);
+    if (unique) {
+      ChangeFeed feed = changeFeed;
+      if (null != feed) {
+        feed.publish(siteId, monthStart,
+            siteStatements.get(siteId).guidVisits.partitionKey(keys), null, null);
+      }
+      // Only a new tuple can change the month's rollups, repeat visits leave them intact
+      queryCache.invalidate(siteId.concat(":").concat(String.valueOf(monthStart)));
+    }
+  }
+
+  /**
+   * Counts the unique visits of a month matching a feature filter by scanning the month's full
+   * tuple rows. Rows are clustered by guid so de-duplicating a guid only requires remembering the
+   * last matching one. Results are cached until the month is written to again, see {@link
+   * QueryCache}.
+   */
+  private int rollUpMonthlyUniqueCount(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    NavigableSet<String> featureNames = siteFeatures.get(siteId);
+    String[] filter = new String[featureNames.size()];
+    int i = 0;
+    for (String featureName : featureNames) {
+      filter[i++] = features.get(featureName);
+    }
+    String month = siteId.concat(":").concat(String.valueOf(monthStart));
+    String query = String.join(":", featureNames.stream()
+        .map(f -> features.getOrDefault(f, "")).toArray(String[]::new));
+    Integer cached = queryCache.get(month, query, maxQueryStalenessNanos(siteId));
+    if (null != cached) {
+      return cached;
+    }
+    long version = queryCache.getVersion(month);
+
+    // Column names are laid out as guid:feature1:...:featureN:visits
+    Map<String, Object> rows = getGuidDataTable(siteId).selectPartition(
+        siteStatements.get(siteId).guidVisits.partitionKey(siteId, "month", monthStart));
+    int count = 0;
+    String lastGuid = null;
+    for (String column : rows.keySet()) {
+      int guidEnd = column.indexOf(':');
+      if (null != lastGuid && lastGuid.length() == guidEnd && column.startsWith(lastGuid)) {
+        continue;
+      }
+      if (matchesTuple(column, guidEnd + 1, filter)) {
+        lastGuid = column.substring(0, guidEnd);
+        count++;
+      }
+    }
+    queryCache.put(month, query, version, count);
+    return count;
   }
 
   /**
-   * Updates a table and reports if a previous record existed for that key. Used to track unique
-   * visits.
+   * Matches the feature values of a full tuple column name against a filter without splitting
+   * the column name.
    *
-   * @param cf
-   *     the table
-   * @param keys
-   *     the row key
-   * @param data
-   *     the data for the row
-   * @return true if the record is a new unique record, false if there was already an entry for
-   * that row key
+   * @param column
+   *     the column name
+   * @param start
+   *     the position of the first feature value in the column name
+   * @param filter
+   *     the expected value of each feature, null for features that should not be filtered on
+   * @return true if every filtered feature has the expected value
    */
-  private boolean updateAndReportIfUnique(
-      ColumnFamily cf, Map<String, Object> keys, Map<String, Object> data) {
-    boolean unique;
-    if (unique = !cf.updateIfExists(keys, data)) {
-      cf.update(keys, data);
+  private static boolean matchesTuple(String column, int start, String[] filter) {
+    for (String expected : filter) {
+      int end = column.indexOf(':', start);
+      if (null != expected
+          && (end - start != expected.length() || !column.startsWith(expected, start))) {
+        return false;
+      }
+      start = end + 1;
     }
-    return unique;
+    return true;
   }
 
   /**
@@ -245,7 +721,47 @@ public class Database {
    *     the names of features supported by the site
    */
   public void createTables(String siteId, NavigableSet<String> features) {
-    Map<String, ColumnFamily> tables = new HashMap<>();
+    createTables(siteId, features, SiteOptions.defaults());
+  }
+
+  /**
+   * Auto generates tables for a given site and set of supported features.
+   *
+   * @param siteId
+   *     the site
+   * @param features
+   *     the names of features supported by the site
+   * @param options
+   *     the site's table configuration
+   */
+  public void createTables(String siteId, NavigableSet<String> features, SiteOptions options) {
+    if (options.isReadViewsEnabled() && !(engine instanceof InMemoryStorageEngine)) {
+      throw new IllegalArgumentException(String.format(
+          "Read views are not supported by the '%s' storage engine", engine.getName()));
+    }
+    Map<String, StorageTable> tables = new HashMap<>();
+    this.siteOptions.put(siteId, options);
+    this.siteWatermarks.put(siteId, new LongAccumulator(Math::max, Long.MIN_VALUE));
+    this.siteIntervalCalculators.put(siteId, IntervalCalculator.forZone(options.getZone()));
+    if (options.isSecondaryIndexEnabled()) {
+      this.siteSecondaryIndexes.put(siteId, new SecondaryIndex());
+    }
+    if (options.getSketchNominalEntries() > 0) {
+      this.siteSketchStores.put(siteId, new SketchStore(options.getSketchNominalEntries()));
+    }
+
+    if (options.getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      // Full tuple table, one wide partition per month clustered by guid then feature values
+      List<String> tupleClusteringKeys = new ArrayList<>(features);
+      tupleClusteringKeys.add(0, CF_GUID);
+      String tableName = String.format(CF_GUID_DATA, siteId);
+      tables.put(tableName, newTable(tableName, new ColumnDefinition(
+          List.of(CF_SITE_ID, CF_INTERVAL_SIZE, CF_INTERVAL_START), tupleClusteringKeys)));
+      this.siteTables.put(siteId, tables);
+      this.siteFeatures.put(siteId, features);
+      this.siteStatements.put(siteId, new SiteStatements(tables.get(tableName), null, -1));
+      return;
+    }
 
     // Raw data table
     List<String> rawTableKeys = new ArrayList<>(features);
@@ -254,7 +770,7 @@ public class Database {
         rawTableKeys,
         List.of());
     String tableName = String.format(CF_GUID_DATA, siteId);
-    tables.put(tableName, new ColumnFamily(tableName, rawDataDefinition));
+    tables.put(tableName, newTable(tableName, rawDataDefinition));
 
     // Counts table
     List<String> countsTableKeys = new ArrayList<>(features);
@@ -263,18 +779,1267 @@ public class Database {
         countsTableKeys,
         List.of(CF_METRIC, CF_INTERVAL_START));
     tableName = String.format(CF_MONTHLY_COUNTS, siteId);
-    tables.put(tableName, new ColumnFamily(tableName, countsDefinition));
+    tables.put(tableName, newTable(tableName, countsDefinition));
 
     this.siteTables.put(siteId, tables);
     this.siteFeatures.put(siteId, features);
-    this.siteFeatureNameCombinations.put(siteId, featureNameCombinations(features));
+    if (tables.get(tableName) instanceof ColumnFamily) {
+      ColumnFamily countsTable = (ColumnFamily) tables.get(tableName);
+      countsTable.setCounterStripes(options.getCounterStripes());
+      if (options.isReadViewsEnabled()) {
+        countsTable.setVersionClock(new VersionClock());
+      }
+    }
+    this.siteStatements.put(siteId, new SiteStatements(
+        tables.get(String.format(CF_GUID_DATA, siteId)), tables.get(tableName),
+        options.getHotCounterFeatures()));
+    // Sites sharing the same features share their default combinations
+    List<List<String>> combinations = null == options.getCuboids()
+        ? defaultCombinations.computeIfAbsent(features, this::featureNameCombinations)
+        : featureNameCombinations(features, options.getCuboids());
+    this.siteFeatureNameCombinations.put(siteId, combinations);
+    this.siteMaterializedCombinations.put(siteId, new HashSet<>(combinations));
+    if (options.getCoalescedCounterCells() > 0) {
+      this.siteCounterCoalescers.put(siteId, new CounterCoalescer(tables.get(tableName),
+          options.getCoalescedCounterCells(), options.getCoalescedCounterStalenessMillis(),
+          queryCache::invalidate));
+    }
+  }
+
+  /**
+   * @param siteId
+   *     the site
+   * @return true if the site's tables were created or restored
+   */
+  public boolean hasSite(String siteId) {
+    return siteTables.containsKey(siteId);
+  }
+
+  /**
+   * Writes the tables of every site to a directory, one file per site plus a manifest listing
+   * each site's features, tracking mode, time zone and snapshot size. Buffered counter
+   * increments are flushed first. Sites can be written to during the snapshot, in which case the
+   * snapshot holds some of the concurrent writes. Secondary indexes and sketches are not part of
+   * the snapshot.
+   *
+   * @param directory
+   *     the snapshot directory, created if needed
+   * @throws UncheckedIOException
+   *     if the snapshot could not be written
+   */
+  public synchronized void snapshot(Path directory) {
+    flush();
+    writeSnapshot(directory, SnapshotContent.ALL);
+  }
+
+  /**
+   * Checkpoints the tables to a directory holding a chain of checkpoints: a base snapshot
+   * followed by deltas of the partitions changed since the previous checkpoint. Checkpoint I/O
+   * thus follows the rate of change of the tables rather than their size. Once the chain holds
+   * {@code maxDeltas} deltas, or when the directory does not hold the chain of this database,
+   * the next checkpoint is a new base and the previous chain is deleted.
+   *
+   * <pre>
+   * directory/base-000002/      manifest, site-0.snapshot, site-1.snapshot...
+   * directory/delta-000002-000001/      manifest and files of the changed sites only
+   * directory/delta-000002-000002/
+   * </pre>
+   *
+   * <p>
+   * Manifests are written last, a checkpoint without one is ignored. {@link #restore(Path, int)}
+   * loads the latest base and its deltas.
+   * </p>
+   *
+   * @param directory
+   *     the checkpoint directory, created if needed
+   * @param maxDeltas
+   *     the number of deltas after which checkpoints are merged into a new base
+   * @return what was written
+   * @throws UncheckedIOException
+   *     if the checkpoint could not be written
+   */
+  public synchronized Checkpoint checkpoint(Path directory, int maxDeltas) {
+    if (!(engine instanceof InMemoryStorageEngine)) {
+      throw new IllegalStateException(String.format(
+          "Checkpoints are not supported by the '%s' storage engine", engine.getName()));
+    }
+    long start = System.nanoTime();
+    flush();
+    try {
+      Files.createDirectories(directory);
+      int[] chain = checkpointChain(directory);
+      boolean delta = directory.equals(checkpointDirectory) && chain[0] > 0
+                      && chain[1] < maxDeltas;
+      Path target = delta
+          ? directory.resolve(String.format(CHECKPOINT_DELTA, chain[0], chain[1] + 1))
+          : directory.resolve(String.format(CHECKPOINT_BASE, chain[0] + 1));
+      int[] written = writeSnapshot(
+          target, delta ? SnapshotContent.CHANGED : SnapshotContent.CHECKPOINT);
+      if (!delta) {
+        // The new base supersedes the previous chain
+        try (Stream<Path> files = Files.list(directory)) {
+          for (Path old : files.collect(Collectors.toList())) {
+            if (!old.equals(target) && CHECKPOINT_NAME.matcher(
+                old.getFileName().toString()).matches()) {
+              deleteRecursively(old);
+            }
+          }
+        }
+      }
+      checkpointDirectory = directory;
+      return new Checkpoint(target, delta, written[0], written[1], directorySize(target),
+          System.nanoTime() - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * What {@link #writeSnapshot(Path, SnapshotContent)} writes.
+   */
+  private enum SnapshotContent {
+    /**
+     * Every partition, leaving the dirty partitions dirty.
+     */
+    ALL,
+    /**
+     * Every partition, flagged as checkpointed.
+     */
+    CHECKPOINT,
+    /**
+     * The partitions changed since the last checkpoint, flagged as checkpointed.
+     */
+    CHANGED
+  }
+
+  /**
+   * Writes a snapshot of the sites to a directory, the manifest being moved in place last.
+   *
+   * @return the number of sites and partitions written
+   */
+  private int[] writeSnapshot(Path directory, SnapshotContent content) {
+    int sites = 0;
+    int partitions = 0;
+    try {
+      Files.createDirectories(directory);
+      Path manifestFile = directory.resolve(SNAPSHOT_MANIFEST + ".tmp");
+      List<String> siteIds = new ArrayList<>(siteTables.keySet());
+      ByteArrayOutputStream entries = new ByteArrayOutputStream();
+      try (DataOutputStream manifest = new DataOutputStream(entries)) {
+        for (String siteId : siteIds) {
+          Map<String, StorageTable> tables = siteTables.get(siteId);
+          if (content == SnapshotContent.CHANGED) {
+            if (tables.values().stream()
+                .allMatch(table -> 0 == ((ColumnFamily) table).getDirtyPartitions())) {
+              continue;
+            }
+          } else {
+            ensureLoaded(siteId);
+          }
+          String fileName = String.format(SNAPSHOT_SITE_FILE, sites++);
+          Path file = directory.resolve(fileName);
+          try (DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(tables.size());
+            for (Map.Entry<String, StorageTable> table : tables.entrySet()) {
+              out.writeUTF(table.getKey());
+              if (content == SnapshotContent.ALL) {
+                table.getValue().writeSnapshot(out);
+              } else {
+                partitions += ((ColumnFamily) table.getValue()).writeCheckpoint(
+                    out, content == SnapshotContent.CHANGED);
+              }
+            }
+          }
+          SiteOptions options = siteOptions.get(siteId);
+          manifest.writeUTF(siteId);
+          manifest.writeUTF(options.getTrackingMode().name());
+          manifest.writeUTF(options.getZone().getId());
+          manifest.writeInt(siteFeatures.get(siteId).size());
+          for (String feature : siteFeatures.get(siteId)) {
+            manifest.writeUTF(feature);
+          }
+          Map<Long, MonthArchive> closedMonths = siteClosedMonths.getOrDefault(siteId, Map.of());
+          manifest.writeInt(closedMonths.size());
+          for (Map.Entry<Long, MonthArchive> month : closedMonths.entrySet()) {
+            MonthArchive archive = month.getValue();
+            manifest.writeLong(month.getKey());
+            manifest.writeUTF(archive.getRowsFile().toAbsolutePath().toString());
+            manifest.writeUTF(null == archive.getSketchesFile() ? ""
+                : archive.getSketchesFile().toAbsolutePath().toString());
+          }
+          manifest.writeLong(Files.size(file));
+          manifest.writeUTF(fileName);
+        }
+      }
+      try (DataOutputStream manifest = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(manifestFile)))) {
+        manifest.writeInt(sites);
+        entries.writeTo(manifest);
+      }
+      Files.move(manifestFile, directory.resolve(SNAPSHOT_MANIFEST),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new int[]{sites, partitions};
+  }
+
+  /**
+   * Finds the latest complete base checkpoint of a directory and its number of deltas.
+   *
+   * @return the base's generation, 0 if there is none, and its number of complete deltas
+   */
+  private static int[] checkpointChain(Path directory) throws IOException {
+    int generation = 0;
+    int deltas = 0;
+    List<Path> checkpoints = new ArrayList<>();
+    if (Files.isDirectory(directory)) {
+      try (Stream<Path> files = Files.list(directory)) {
+        files.filter(file -> Files.exists(file.resolve(SNAPSHOT_MANIFEST)))
+            .forEach(checkpoints::add);
+      }
+    }
+    for (Path checkpoint : checkpoints) {
+      Matcher m = CHECKPOINT_NAME.matcher(checkpoint.getFileName().toString());
+      if (m.matches() && null == m.group(2)) {
+        generation = Math.max(generation, Integer.parseInt(m.group(1)));
+      }
+    }
+    for (Path checkpoint : checkpoints) {
+      Matcher m = CHECKPOINT_NAME.matcher(checkpoint.getFileName().toString());
+      if (m.matches() && null != m.group(2) && Integer.parseInt(m.group(1)) == generation) {
+        deltas = Math.max(deltas, Integer.parseInt(m.group(2)));
+      }
+    }
+    return new int[]{generation, deltas};
+  }
+
+  private static long directorySize(Path directory) throws IOException {
+    long bytes = 0;
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        bytes += Files.size(file);
+      }
+    }
+    return bytes;
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  /**
+   * Restores a snapshot written by {@link #snapshot(Path)}, or the latest checkpoint chain
+   * written by {@link #checkpoint(Path, int)}, lazily. Sites are registered from the manifests
+   * with their snapshotted tracking mode and time zone, and their tables are loaded in the
+   * background, largest first, or by the first track or query of the site. Requests to a site
+   * being loaded wait for it, requests to other sites do not. Restoring a checkpoint chain lets
+   * the next checkpoint to the same directory be a delta.
+   *
+   * @param directory
+   *     the snapshot or checkpoint directory
+   * @param loaderThreads
+   *     the number of background loader threads, 0 to only load sites on demand
+   * @return the progress of the restore
+   * @throws IllegalArgumentException
+   *     if a site of the snapshot already exists
+   */
+  public SnapshotRestore restore(Path directory, int loaderThreads) {
+    return restore(directory, loaderThreads, null);
+  }
+
+  /**
+   * See {@link #restore(Path, int)}.
+   *
+   * @param siteOptions
+   *     the options of each restored site, e.g. to restore cuboid specs or enable secondary
+   *     indexes for new events, null to use the snapshotted tracking mode and time zone
+   */
+  public SnapshotRestore restore(
+      Path directory, int loaderThreads, Function<String, SiteOptions> siteOptions) {
+    if (null != restore && !restore.isComplete()) {
+      throw new IllegalStateException("A snapshot is already being restored");
+    }
+    long startNanos = System.nanoTime();
+    // Sites in the order of their first appearance, with their files in chain order
+    Map<String, SnapshotRestore.Site> sites = new LinkedHashMap<>();
+    Map<String, Map<Long, MonthArchive>> closedMonths = new HashMap<>();
+    try {
+      List<Path> chain = new ArrayList<>();
+      int[] checkpoints = checkpointChain(directory);
+      if (Files.exists(directory.resolve(SNAPSHOT_MANIFEST))) {
+        chain.add(directory);
+      } else if (checkpoints[0] > 0) {
+        chain.add(directory.resolve(String.format(CHECKPOINT_BASE, checkpoints[0])));
+        for (int delta = 1; delta <= checkpoints[1]; delta++) {
+          Path path = directory.resolve(String.format(CHECKPOINT_DELTA, checkpoints[0], delta));
+          if (Files.exists(path.resolve(SNAPSHOT_MANIFEST))) {
+            chain.add(path);
+          }
+        }
+      } else {
+        throw new IllegalArgumentException(
+            String.format("No snapshot or checkpoint in '%s'", directory));
+      }
+      for (Path snapshot : chain) {
+        readManifest(snapshot, sites, closedMonths, siteOptions);
+      }
+      checkpointDirectory = checkpoints[0] > 0 ? directory : null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    for (String siteId : sites.keySet()) {
+      if (hasSite(siteId)) {
+        throw new IllegalArgumentException(String.format("Site '%s' already exists", siteId));
+      }
+    }
+    // Published first so that requests to a site being registered wait for it to be loaded,
+    // rather than writing to its empty tables
+    SnapshotRestore restore = new SnapshotRestore(this, sites.values(), startNanos);
+    this.restore = restore;
+    for (SnapshotRestore.Site site : sites.values()) {
+      createTables(site.getSiteId(), site.getFeatures(), site.getOptions());
+    }
+    closedMonths.forEach((siteId, months) ->
+        siteClosedMonths.put(siteId, new ConcurrentHashMap<>(months)));
+    restore.registered();
+    restore.start(loaderThreads);
+    return restore;
+  }
+
+  private static void readManifest(Path snapshot, Map<String, SnapshotRestore.Site> sites,
+      Map<String, Map<Long, MonthArchive>> closedMonths,
+      Function<String, SiteOptions> siteOptions) throws IOException {
+    try (DataInputStream manifest = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(snapshot.resolve(SNAPSHOT_MANIFEST))))) {
+      int numSites = manifest.readInt();
+      for (int i = 0; i < numSites; i++) {
+        String siteId = manifest.readUTF();
+        SiteOptions options = SiteOptions.defaults()
+            .withTrackingMode(TrackingMode.valueOf(manifest.readUTF()))
+            .withZone(ZoneId.of(manifest.readUTF()));
+        NavigableSet<String> features = new TreeSet<>();
+        int numFeatures = manifest.readInt();
+        for (int f = 0; f < numFeatures; f++) {
+          features.add(manifest.readUTF());
+        }
+        Map<Long, MonthArchive> months = new HashMap<>();
+        int numClosedMonths = manifest.readInt();
+        for (int m = 0; m < numClosedMonths; m++) {
+          long monthStart = manifest.readLong();
+          Path rowsFile = Paths.get(manifest.readUTF());
+          String sketchesFile = manifest.readUTF();
+          months.put(monthStart, new MonthArchive(
+              rowsFile, sketchesFile.isEmpty() ? null : Paths.get(sketchesFile)));
+        }
+        // Later checkpoints of the chain list every closed month of the site
+        closedMonths.put(siteId, months);
+        long bytes = manifest.readLong();
+        Path file = snapshot.resolve(manifest.readUTF());
+        SiteOptions restoredOptions = null == siteOptions ? options : siteOptions.apply(siteId);
+        sites.computeIfAbsent(siteId, id -> new SnapshotRestore.Site(id, features, restoredOptions))
+            .addFile(file, bytes);
+      }
+    }
+  }
+
+  /**
+   * Loads the tables of a restored site from its snapshot files, in chain order. Tables are read
+   * directly, never through the public getters, which would wait for the site to be loaded.
+   */
+  void loadSite(String siteId, List<Path> files) {
+    Map<String, StorageTable> tables = siteTables.get(siteId);
+    for (Path file : files) {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file)))) {
+        int numTables = in.readInt();
+        for (int i = 0; i < numTables; i++) {
+          String tableName = in.readUTF();
+          StorageTable table = tables.get(tableName);
+          if (null == table) {
+            throw new IllegalStateException(String.format(
+                "Table '%s' of the snapshot of site '%s' does not exist", tableName, siteId));
+          }
+          table.readSnapshot(in);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    if (memoryBudget > 0 && footprint.get() > memoryBudget) {
+      enforceMemoryBudget();
+    }
+  }
+
+  private void ensureLoaded(String siteId) {
+    SnapshotRestore restore = this.restore;
+    if (null != restore) {
+      restore.ensureLoaded(siteId);
+    }
+  }
+
+  /**
+   * Closes a month of a site once it is over, so that memory only holds the guid data of the
+   * open months. The unique count of every feature combination of the month is first verified
+   * against its guid data rows. The rows are then archived to a compressed file along with,
+   * optionally, a Theta sketch of the visitors of each combination, and dropped from memory
+   * and the spill store, along with the month's secondary index and segment sketches. Counts
+   * remain queryable, and combinations can still be intersected with {@link
+   * #getClosedMonthSketch(String, long, NavigableMap)}.
+   *
+   * <p>
+   * Events of a closed month are dropped as late events, since their uniqueness can no longer
+   * be checked, see {@link #getLateEvents()}. The next checkpoint is a new base so that restored
+   * checkpoints do not bring the dropped rows back.
+   * </p>
+   *
+   * @param siteId
+   *     the site
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param archiveDirectory
+   *     the directory the archive is written to, see {@link MonthArchive}
+   * @param sketchNominalEntries
+   *     the size of the sketch of each combination, 0 to archive the rows only
+   * @return the outcome of the close-out
+   * @throws IllegalArgumentException
+   *     if the site rolls its counts up from its guid data, see {@link TrackingMode#FULL_TUPLE}
+   * @throws IllegalStateException
+   *     if the month is already closed, or if its counts do not match its guid data, in which
+   *     case the month is left open
+   * @throws UncheckedIOException
+   *     if the archive could not be written, in which case the month is left open unless its
+   *     rows were already verified and archived, since its events may then have been dropped
+   */
+  public synchronized MonthCloseOut closeMonth(
+      String siteId, long monthStart, Path archiveDirectory, int sketchNominalEntries) {
+    long start = System.nanoTime();
+    ensureLoaded(siteId);
+    if (siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      throw new IllegalArgumentException(String.format(
+          "Site '%s' rolls its counts up from its guid data, its months cannot be closed",
+          siteId));
+    }
+    MonthArchive archive =
+        MonthArchive.of(archiveDirectory, siteId, monthStart, sketchNominalEntries > 0);
+    if (isClosed(siteId, monthStart)) {
+      throw new IllegalStateException(
+          String.format("Month %d of site '%s' is already closed", monthStart, siteId));
+    }
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    if (null != coalescer) {
+      coalescer.flushAll();
+    }
+    // Keeps partitions from being evicted while they are archived and dropped
+    while (!evicting.compareAndSet(false, true)) {
+      Thread.onSpinWait();
+    }
+    try {
+      Files.createDirectories(archiveDirectory);
+      long[] written = archiveMonth(siteId, monthStart, archive, sketchNominalEntries);
+      long freedBytes = written[2];
+      SecondaryIndex index = siteSecondaryIndexes.get(siteId);
+      if (null != index) {
+        freedBytes += index.dropMonth(monthStart);
+      }
+      SketchStore sketches = siteSketchStores.get(siteId);
+      if (null != sketches) {
+        freedBytes += sketches.dropMonth(monthStart);
+      }
+      checkpointDirectory = null;
+      return new MonthCloseOut(siteId, monthStart, archive, (int) written[0], (int) written[1],
+          archive.getBytes(), freedBytes, System.nanoTime() - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * Verifies, archives and drops the guid data rows of a month, see {@link #closeMonth(String,
+   * long, Path, int)}. Rows are written to temporary files moved in place once verified. The
+   * month is only marked closed once its rows are verified and archived, events tracked until
+   * then are counted and their rows archived along with the others.
+   *
+   * @return the number of rows archived, of counts verified and of heap bytes freed
+   */
+  private long[] archiveMonth(String siteId, long monthStart, MonthArchive archive,
+      int sketchNominalEntries) throws IOException {
+    StorageTable guidTable = siteTables.get(siteId).get(String.format(CF_GUID_DATA, siteId));
+    StorageTable countsTable = siteTables.get(siteId).get(String.format(CF_MONTHLY_COUNTS, siteId));
+    // Guid data keys are laid out as site:month:monthStart:guid:feature1:...:featureN
+    String prefix = siteId + ":month:" + monthStart + ":";
+    String column = monthlyUniqueColumn(siteId, monthStart);
+
+    Path rowsFile = archive.getRowsFile();
+    Path rowsTmp = rowsFile.resolveSibling(rowsFile.getFileName() + ".tmp");
+    List<String> keys = new ArrayList<>();
+    Map<String, int[]> guids = new HashMap<>();
+    Map<String, ThetaSketch> sketches = new TreeMap<>();
+    long rows = 0;
+    long freedBytes = 0;
+    try (DataOutputStream out = MonthArchive.create(rowsTmp)) {
+      guidTable.forEachPartitionKey(prefix, keys::add);
+      for (String key : keys) {
+        Map<String, Object> columns = peek(guidTable, key);
+        if (null == columns) {
+          continue;
+        }
+        out.writeBoolean(true);
+        out.writeUTF(key);
+        PartitionCodec.write(out, columns);
+        rows++;
+        // The combination's counts key is site:monthStart:feature1:...:featureN
+        int guidEnd = key.indexOf(':', prefix.length());
+        String countsKey = siteId + ":" + monthStart + key.substring(guidEnd);
+        guids.computeIfAbsent(countsKey, k -> new int[1])[0]++;
+        if (sketchNominalEntries > 0) {
+          sketches.computeIfAbsent(countsKey, k -> new ThetaSketch(sketchNominalEntries))
+              .update(key.substring(prefix.length(), guidEnd));
+        }
+      }
+      List<String> mismatches = new ArrayList<>();
+      for (Map.Entry<String, int[]> combination : guids.entrySet()) {
+        Object count = countsTable.select(combination.getKey(), column);
+        if (null == count || combination.getValue()[0] != ((Number) count).intValue()) {
+          mismatches.add(String.format("'%s' counts %s visitors for %d guids",
+              combination.getKey(), count, combination.getValue()[0]));
+        }
+      }
+      if (!mismatches.isEmpty()) {
+        throw new IllegalStateException(String.format(
+            "Month %d of site '%s' does not verify, %d of %d counts differ from the guid data: %s",
+            monthStart, siteId, mismatches.size(), guids.size(), mismatches.get(0)));
+      }
+      if (sketchNominalEntries > 0) {
+        writeSketches(archive, sketchNominalEntries, sketches);
+      }
+      // Events of the month are dropped from now on
+      siteClosedMonths.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+          .put(monthStart, archive);
+      // Rows of events tracked while the month was being closed are archived as well
+      while (!keys.isEmpty()) {
+        for (String key : keys) {
+          freedBytes += guidTable.drop(key);
+        }
+        List<String> late = new ArrayList<>();
+        guidTable.forEachPartitionKey(prefix, late::add);
+        for (String key : late) {
+          Map<String, Object> columns = peek(guidTable, key);
+          if (null != columns) {
+            out.writeBoolean(true);
+            out.writeUTF(key);
+            PartitionCodec.write(out, columns);
+            rows++;
+          }
+        }
+        keys = late;
+      }
+      out.writeBoolean(false);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(rowsTmp);
+      throw e;
+    }
+    Files.move(rowsTmp, rowsFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    return new long[]{rows, guids.size(), freedBytes};
+  }
+
+  /**
+   * Writes the sketch of each combination of a closed month to a temporary file moved in place.
+   */
+  private void writeSketches(MonthArchive archive, int sketchNominalEntries,
+      Map<String, ThetaSketch> sketches) throws IOException {
+    Path sketchesFile = archive.getSketchesFile();
+    Path sketchesTmp = sketchesFile.resolveSibling(sketchesFile.getFileName() + ".tmp");
+    try (DataOutputStream out = MonthArchive.create(sketchesTmp)) {
+      out.writeInt(sketchNominalEntries);
+      for (Map.Entry<String, ThetaSketch> sketch : sketches.entrySet()) {
+        out.writeBoolean(true);
+        out.writeUTF(sketch.getKey());
+        sketch.getValue().compact().write(out);
+      }
+      out.writeBoolean(false);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(sketchesTmp);
+      throw e;
+    }
+    Files.move(sketchesTmp, sketchesFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Closes the months of every site that ended more than a grace period before the site's
+   * latest tracked event, see {@link #closeMonth(String, long, Path, int)}.
+   *
+   * @param graceSeconds
+   *     how long after a month ends its late events are still counted, in event time
+   * @param archiveDirectory
+   *     the directory archives are written to
+   * @param sketchNominalEntries
+   *     the size of the sketch of each combination, 0 to archive the rows only
+   * @return the outcome of each close-out, in site then month order
+   */
+  public List<MonthCloseOut> closeMonths(
+      long graceSeconds, Path archiveDirectory, int sketchNominalEntries) {
+    List<MonthCloseOut> closeOuts = new ArrayList<>();
+    for (String siteId : new ArrayList<>(siteTables.keySet())) {
+      long watermark = siteWatermarks.get(siteId).get();
+      if (Long.MIN_VALUE == watermark
+          || siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+        continue;
+      }
+      String prefix = siteId + ":month:";
+      NavigableSet<Long> months = new TreeSet<>();
+      getGuidDataTable(siteId).forEachPartitionKey(prefix, key -> months.add(
+          Long.parseLong(key.substring(prefix.length(), key.indexOf(':', prefix.length())))));
+      IntervalCalculator calculator = siteIntervalCalculators.get(siteId);
+      for (long monthStart : months) {
+        if (!isClosed(siteId, monthStart)
+            && calculator.getMonthEnd(monthStart) + graceSeconds <= watermark) {
+          closeOuts.add(closeMonth(siteId, monthStart, archiveDirectory, sketchNominalEntries));
+        }
+      }
+    }
+    return closeOuts;
+  }
+
+  /**
+   * @return the monthly counts table column of the unique count of a month
+   */
+  private String monthlyUniqueColumn(String siteId, long monthStart) {
+    Object[] countsKeys = new Object[4 + siteFeatures.get(siteId).size()];
+    Arrays.fill(countsKeys, "");
+    countsKeys[countsKeys.length - 2] = "month_unique";
+    countsKeys[countsKeys.length - 1] = monthStart;
+    return siteStatements.get(siteId).countsVisits.column(countsKeys);
+  }
+
+  private boolean isClosed(String siteId, long monthStart) {
+    Map<Long, MonthArchive> closedMonths = siteClosedMonths.get(siteId);
+    return null != closedMonths && closedMonths.containsKey(monthStart);
+  }
+
+  /**
+   * @param siteId
+   *     the site
+   * @return the archives of the site's closed months, by month start
+   */
+  public NavigableMap<Long, MonthArchive> getClosedMonths(String siteId) {
+    return new TreeMap<>(siteClosedMonths.getOrDefault(siteId, Map.of()));
+  }
+
+  /**
+   * @return the number of events dropped because their month was closed
+   */
+  public long getLateEvents() {
+    return lateEvents.sum();
+  }
+
+  /**
+   * Reads the sketch of the visitors of a feature combination of a closed month from its
+   * archive. Sketches of different combinations or months can be combined with {@link
+   * ThetaSketch#union}, {@link ThetaSketch#intersect} and {@link ThetaSketch#aNotB}.
+   *
+   * @param siteId
+   *     the site
+   * @param monthStart
+   *     the timestamp of the start of a month closed with sketches
+   * @param features
+   *     the feature values of a materialized combination
+   * @return the sketch, empty if no visitor was seen with the combination
+   * @throws IllegalArgumentException
+   *     if the month is not closed or the combination is not materialized
+   */
+  public ThetaSketch.Compact getClosedMonthSketch(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    MonthArchive archive = siteClosedMonths.getOrDefault(siteId, Map.of()).get(monthStart);
+    if (null == archive) {
+      throw new IllegalArgumentException(
+          String.format("Month %d of site '%s' is not closed", monthStart, siteId));
+    }
+    Object[] countsKeys = countsKeys(siteId, monthStart, features);
+    return archive.sketch(siteStatements.get(siteId).countsVisits.partitionKey(countsKeys));
+  }
+
+  /**
+   * Rolls the counts of every site up across sites and months, e.g. for a network wide referer
+   * breakdown, see {@link Rollup}. Runs on the common fork/join pool.
+   *
+   * @param feature
+   *     the feature to break the counts down by, null for totals only
+   * @param fromMonth
+   *     the timestamp of the start of the first month, inclusive
+   * @param toMonth
+   *     the timestamp of the start of the last month, inclusive
+   * @return the rollup
+   */
+  public Rollup rollUp(String feature, long fromMonth, long toMonth) {
+    return rollUp(feature, fromMonth, toMonth, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Rolls the counts of every site up across sites and months, with a fork/join task per site
+   * and month whose partial rollups are merged as they complete. Reads the site's counts the
+   * same way as {@link #getMonthlyUniqueCount(String, long, NavigableMap)}, only taking the
+   * counts of whole months and of the feature's values alone, so each combination must be
+   * materialized to contribute. Sites computing their counts at query time are skipped.
+   *
+   * @param feature
+   *     the feature to break the counts down by, null for totals only
+   * @param fromMonth
+   *     the timestamp of the start of the first month, inclusive
+   * @param toMonth
+   *     the timestamp of the start of the last month, inclusive
+   * @param pool
+   *     the pool to run the tasks on
+   * @return the rollup
+   */
+  public Rollup rollUp(String feature, long fromMonth, long toMonth, ForkJoinPool pool) {
+    long start = System.nanoTime();
+    Rollup rollup = pool.invoke(
+        new RollupTask(this, feature, fromMonth, toMonth, new ArrayList<>(siteTables.keySet())));
+    rollup.setNanos(System.nanoTime() - start);
+    return rollup;
+  }
+
+  /**
+   * Lists the monthly counts partitions of a site taken by {@link #rollUp(String, long, long,
+   * ForkJoinPool)}, by month then partition key.
+   *
+   * @return the feature value of each partition, null for the whole month, or null if the
+   * site is skipped
+   */
+  Map<Long, Map<String, String>> rollupPartitions(
+      String siteId, String feature, long fromMonth, long toMonth) {
+    ensureLoaded(siteId);
+    if (siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      return null;
+    }
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    if (null != coalescer) {
+      coalescer.beforeRead();
+    }
+    List<String> featureNames = new ArrayList<>(siteFeatures.get(siteId));
+    // Position of the feature in the keys, past the month, 0 when only taking whole months
+    int featureIndex = null == feature ? 0 : featureNames.indexOf(feature) + 1;
+    Map<Long, Map<String, String>> months = new TreeMap<>();
+    // Monthly counts keys are laid out as site:monthStart:feature1:...:featureN
+    String prefix = siteId + ":";
+    getMonthlyCountsTable(siteId).forEachPartitionKey(prefix, key -> {
+      String[] values = key.substring(prefix.length()).split(":", -1);
+      if (values.length != featureNames.size() + 1) {
+        return;
+      }
+      long monthStart = Long.parseLong(values[0]);
+      if (monthStart < fromMonth || monthStart > toMonth) {
+        return;
+      }
+      int set = 0;
+      for (int i = 1; i < values.length; i++) {
+        if (!values[i].isEmpty()) {
+          set = 0 == set ? i : -1;
+        }
+      }
+      if (0 == set || (set > 0 && set == featureIndex)) {
+        months.computeIfAbsent(monthStart, m -> new HashMap<>())
+            .put(key, 0 == set ? null : values[set]);
+      }
+    });
+    return months;
+  }
+
+  /**
+   * Rolls up the counts and sketches of a single month of a site, see {@link
+   * #rollupPartitions(String, String, long, long)}.
+   */
+  Rollup rollUpMonth(
+      String siteId, String feature, long monthStart, Map<String, String> partitions) {
+    String[] keys = partitions.keySet().toArray(new String[0]);
+    String[] columns = new String[keys.length];
+    Arrays.fill(columns, monthlyUniqueColumn(siteId, monthStart));
+    Object[] values = getMonthlyCountsTable(siteId).multiGet(keys, columns);
+    Rollup rollup = new Rollup(feature);
+    rollup.addSiteMonth();
+    for (int i = 0; i < keys.length; i++) {
+      if (null != values[i]) {
+        rollup.add(partitions.get(keys[i]), ((Number) values[i]).longValue());
+      }
+    }
+    SketchStore sketches = siteSketchStores.get(siteId);
+    if (null != sketches) {
+      rollup.add(null, sketches.segment(monthStart, null, null));
+      for (String value : partitions.values()) {
+        if (null != value) {
+          rollup.add(value, sketches.segment(monthStart, feature, value));
+        }
+      }
+    }
+    return rollup;
+  }
+
+  /**
+   * Evicts the least recently accessed partitions of all sites to disk until the estimated
+   * footprint is back under the low watermark of the memory budget. Past months and idle sites
+   * are naturally the first to go. Only one thread evicts at a time, others carry on.
+   */
+  void enforceMemoryBudget() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long target = (long) (memoryBudget * EVICTION_LOW_WATERMARK);
+      List<EvictionCandidate> candidates = new ArrayList<>();
+      for (Map<String, StorageTable> tables : siteTables.values()) {
+        for (StorageTable table : tables.values()) {
+          for (Map.Entry<String, ColumnFamilyData> partition
+              : ((ColumnFamily) table).getPartitions().entrySet()) {
+            candidates.add(new EvictionCandidate((ColumnFamily) table, partition.getKey(),
+                partition.getValue().getLastAccessSeconds()));
+          }
+        }
+      }
+      candidates.sort(Comparator.comparingLong(c -> c.lastAccessSeconds));
+      for (EvictionCandidate candidate : candidates) {
+        if (footprint.get() <= target) {
+          break;
+        }
+        candidate.table.evict(candidate.partitionKey);
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * The statements a site's tracking and counting hot paths execute.
+   */
+  private static class SiteStatements {
+    /**
+     * Increments the visits of a guid data row.
+     */
+    private PreparedStatement guidVisits;
+    /**
+     * Reads or increments the unique visits of a monthly counts row, null for full tuple sites.
+     */
+    private PreparedStatement countsVisits;
+    /**
+     * The maximum number of features of the counters striped right away, -1 for none.
+     */
+    private int hotCounterFeatures;
+    /**
+     * The write epochs of the monthly counts table, null if its counters are not versioned.
+     */
+    private VersionClock versions;
+
+    SiteStatements(StorageTable guidTable, StorageTable countsTable, int hotCounterFeatures) {
+      this.guidVisits = new PreparedStatement(guidTable, "visits");
+      this.countsVisits = null == countsTable ? null : new PreparedStatement(countsTable, "visits");
+      this.hotCounterFeatures = hotCounterFeatures;
+      this.versions = countsTable instanceof ColumnFamily
+          ? ((ColumnFamily) countsTable).getVersionClock() : null;
+    }
+
+    /**
+     * @param countsKeys
+     *     the counts row keys, the feature values being between the site and metric keys
+     * @return true if the row counts a combination of few enough features to be striped
+     */
+    boolean isHotCounter(Object[] countsKeys) {
+      int features = 0;
+      for (int i = 2; i < countsKeys.length - 2 && features <= hotCounterFeatures; i++) {
+        if (!"".equals(countsKeys[i])) {
+          features++;
+        }
+      }
+      return features <= hotCounterFeatures;
+    }
+  }
+
+  private static class EvictionCandidate {
+    private ColumnFamily table;
+    private String partitionKey;
+    private long lastAccessSeconds;
+
+    EvictionCandidate(ColumnFamily table, String partitionKey, long lastAccessSeconds) {
+      this.table = table;
+      this.partitionKey = partitionKey;
+      this.lastAccessSeconds = lastAccessSeconds;
+    }
+  }
+
+  /**
+   * @return the current memory and spill statistics of all tables
+   */
+  public MemoryStats getMemoryStats() {
+    long spilledPartitions = 0;
+    long spilledBytes = 0;
+    long evictions = 0;
+    long faults = 0;
+    for (Map<String, StorageTable> tables : siteTables.values()) {
+      for (StorageTable table : tables.values()) {
+        SpillStore spill =
+            table instanceof ColumnFamily ? ((ColumnFamily) table).getSpillStore() : null;
+        if (null != spill) {
+          spilledPartitions += spill.size();
+          spilledBytes += spill.getSpilledBytes();
+          evictions += spill.getEvictions();
+          faults += spill.getFaults();
+        }
+      }
+    }
+    return new MemoryStats(memoryBudget, footprint.get(), spilledPartitions, spilledBytes,
+        evictions, faults);
+  }
+
+  /**
+   * Applies all the counter increments buffered by coalescing sites to their tables, e.g. before
+   * writing the tables out.
+   */
+  public void flush() {
+    siteCounterCoalescers.values().forEach(CounterCoalescer::flushAll);
+  }
+
+  private StorageTable newTable(String tableName, ColumnDefinition definition) {
+    return engine.createTable(tableName, definition);
+  }
+
+  /**
+   * Reads a partition without faulting it back in from the spill store, e.g. to archive it.
+   *
+   * @return the partition's columns, null if it does not exist
+   */
+  private static Map<String, Object> peek(StorageTable table, String key) {
+    if (table instanceof ColumnFamily) {
+      return ((ColumnFamily) table).peek(key);
+    }
+    Map<String, Object> columns = table.selectPartition(key);
+    return columns.isEmpty() ? null : columns;
+  }
+
+  /**
+   * @return the storage engine the tables are created by
+   */
+  public StorageEngine getStorageEngine() {
+    return engine;
+  }
+
+  /**
+   * Reads the number of unique visits of a site for a given month and feature combination.
+   *
+   * @param siteId
+   *     the site
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by, features absent from the map are not filtered on
+   * @return the number of unique visits
+   */
+  public int getMonthlyUniqueCount(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    ensureLoaded(siteId);
+    if (siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      return rollUpMonthlyUniqueCount(siteId, monthStart, features);
+    }
+    Object[] countsKeys = countsKeys(siteId, monthStart, features);
+    PreparedStatement countsVisits = siteStatements.get(siteId).countsVisits;
+    String partitionKey = countsVisits.partitionKey(countsKeys);
+    String column = countsVisits.column(countsKeys);
+    // Flushes invalidate cached results, they must happen before the lookup
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    if (null != coalescer) {
+      coalescer.beforeRead();
+    }
+    Integer cached = queryCache.get(partitionKey, column, maxQueryStalenessNanos(siteId));
+    if (null != cached) {
+      return cached;
+    }
+    long version = queryCache.getVersion(partitionKey);
+    Object value = getMonthlyCountsTable(siteId).select(partitionKey, column);
+    int count = null == value ? 0 : (int) value;
+    queryCache.put(partitionKey, column, version, count);
+    return count;
+  }
+
+  /**
+   * Reads the number of unique visits of a site for many months and feature combinations at
+   * once, e.g. to refresh a dashboard. The counts table partitions are resolved in a single
+   * batch, see {@link ColumnFamily#multiGet(String[], String[])}.
+   *
+   * @param siteId
+   *     the site
+   * @param queries
+   *     the months and feature values to count
+   * @return the number of unique visits of each query, in query order
+   */
+  public int[] getMonthlyUniqueCounts(String siteId, List<CountQuery> queries) {
+    ensureLoaded(siteId);
+    int[] counts = new int[queries.size()];
+    if (siteOptions.get(siteId).getTrackingMode() == TrackingMode.FULL_TUPLE) {
+      for (int i = 0; i < counts.length; i++) {
+        CountQuery query = queries.get(i);
+        counts[i] = rollUpMonthlyUniqueCount(siteId, query.getMonthStart(), query.getFeatures());
+      }
+      return counts;
+    }
+    PreparedStatement countsVisits = siteStatements.get(siteId).countsVisits;
+    long maxStalenessNanos = maxQueryStalenessNanos(siteId);
+    // Flushes invalidate cached results, they must happen before the lookups
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    if (null != coalescer) {
+      coalescer.beforeRead();
+    }
+    // Cache misses are resolved together
+    List<Integer> misses = new ArrayList<>();
+    List<String> partitionKeys = new ArrayList<>();
+    List<String> columns = new ArrayList<>();
+    List<Long> versions = new ArrayList<>();
+    for (int i = 0; i < counts.length; i++) {
+      CountQuery query = queries.get(i);
+      Object[] countsKeys = countsKeys(siteId, query.getMonthStart(), query.getFeatures());
+      String partitionKey = countsVisits.partitionKey(countsKeys);
+      String column = countsVisits.column(countsKeys);
+      Integer cached = queryCache.get(partitionKey, column, maxStalenessNanos);
+      if (null != cached) {
+        counts[i] = cached;
+      } else {
+        misses.add(i);
+        partitionKeys.add(partitionKey);
+        columns.add(column);
+        versions.add(queryCache.getVersion(partitionKey));
+      }
+    }
+    if (misses.isEmpty()) {
+      return counts;
+    }
+    Object[] values = getMonthlyCountsTable(siteId).multiGet(
+        partitionKeys.toArray(new String[0]), columns.toArray(new String[0]));
+    for (int i = 0; i < values.length; i++) {
+      int count = null == values[i] ? 0 : (int) values[i];
+      counts[misses.get(i)] = count;
+      queryCache.put(partitionKeys.get(i), columns.get(i), versions.get(i), count);
+    }
+    return counts;
+  }
+
+  /**
+   * Starts publishing the changes made by tracking to a {@link ChangeFeed}: every first visit of
+   * a guid in a month for a feature combination, i.e. every new guid data row and its increment
+   * of the monthly counts. Downstream consumers subscribe to the feed rather than scanning the
+   * tables. Publishing costs a few allocations per new unique visitor and never waits on
+   * consumers.
+   *
+   * @param capacity
+   *     the number of changes held for subscribers, see {@link ChangeFeed}
+   * @return the feed, the existing one if changes are already published
+   */
+  public synchronized ChangeFeed enableChangeFeed(int capacity) {
+    if (null == changeFeed) {
+      changeFeed = new ChangeFeed(capacity);
+    }
+    return changeFeed;
+  }
+
+  /**
+   * @return the feed changes are published to, null if not enabled, see {@link
+   * #enableChangeFeed(int)}
+   */
+  public ChangeFeed getChangeFeed() {
+    return changeFeed;
+  }
+
+  /**
+   * Opens a consistent, point in time view of the monthly counts of a site, see {@link
+   * ReadView}. Opening a view never waits for writers: events still being tracked are left out
+   * of the view rather than waited for.
+   *
+   * @param siteId
+   *     a site created with {@link SiteOptions#withReadViews(boolean)}
+   * @return the view, to be closed once done
+   */
+  public ReadView openReadView(String siteId) {
+    ensureLoaded(siteId);
+    SiteStatements statements = siteStatements.get(siteId);
+    if (null == statements || null == statements.versions) {
+      throw new IllegalArgumentException(
+          String.format("Read views are not enabled for site '%s'", siteId));
+    }
+    CounterCoalescer coalescer = siteCounterCoalescers.get(siteId);
+    if (null != coalescer) {
+      coalescer.beforeRead();
+    }
+    return new ReadView(this, siteId, statements.versions);
+  }
+
+  /**
+   * Reads the number of unique visits of a site for many months and feature combinations as of
+   * an epoch pinned by a {@link ReadView}, bypassing the query cache.
+   */
+  int[] getMonthlyUniqueCounts(String siteId, List<CountQuery> queries, long epoch) {
+    PreparedStatement countsVisits = siteStatements.get(siteId).countsVisits;
+    String[] partitionKeys = new String[queries.size()];
+    String[] columns = new String[queries.size()];
+    for (int i = 0; i < partitionKeys.length; i++) {
+      CountQuery query = queries.get(i);
+      Object[] countsKeys = countsKeys(siteId, query.getMonthStart(), query.getFeatures());
+      partitionKeys[i] = countsVisits.partitionKey(countsKeys);
+      columns[i] = countsVisits.column(countsKeys);
+    }
+    // Read views are only enabled for in-memory tables
+    Object[] values =
+        ((ColumnFamily) getMonthlyCountsTable(siteId)).multiGet(partitionKeys, columns, epoch);
+    int[] counts = new int[values.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = null == values[i] ? 0 : (int) values[i];
+    }
+    return counts;
+  }
+
+  QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  private long maxQueryStalenessNanos(String siteId) {
+    return TimeUnit.MILLISECONDS.toNanos(siteOptions.get(siteId).getMaxQueryStalenessMillis());
+  }
+
+  /**
+   * Binds the monthly counts table key values of a count query, checking that its feature
+   * combination is materialized.
+   */
+  private Object[] countsKeys(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    NavigableSet<String> featureNames = siteFeatures.get(siteId);
+    Object[] countsKeys = new Object[4 + featureNames.size()];
+    countsKeys[0] = siteId;
+    countsKeys[1] = monthStart;
+    List<String> combination = new ArrayList<>();
+    int i = 2;
+    for (String featureName : featureNames) {
+      countsKeys[i++] = features.getOrDefault(featureName, "");
+      combination.add(features.containsKey(featureName) ? featureName : "");
+    }
+    countsKeys[i++] = "month_unique";
+    countsKeys[i] = monthStart;
+    if (!siteMaterializedCombinations.get(siteId).contains(combination)) {
+      throw new IllegalArgumentException(String.format(
+          "Feature combination %s is not materialized for site '%s'", combination, siteId));
+    }
+    return countsKeys;
+  }
+
+  /**
+   * Looks up the visitors of a month with a given feature value in the site's secondary index,
+   * without scanning the guid data table.
+   *
+   * @param siteId
+   *     a site created with {@link SiteOptions#withSecondaryIndex(boolean)}
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param feature
+   *     the feature name
+   * @param value
+   *     the feature value
+   * @return the guids seen with the feature value during the month
+   */
+  public List<String> getIndexedGuids(
+      String siteId, long monthStart, String feature, String value) {
+    return secondaryIndex(siteId).guids(monthStart, feature, value);
+  }
+
+  /**
+   * Counts unique visits with the site's secondary index alone. With several features, counts
+   * the visitors seen with each of the values during the month, not necessarily in the same
+   * visit. See {@link SecondaryIndex}.
+   *
+   * @param siteId
+   *     a site created with {@link SiteOptions#withSecondaryIndex(boolean)}
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by, features absent from the map are not filtered on
+   * @return the number of unique visitors
+   */
+  public int getIndexedUniqueCount(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    return secondaryIndex(siteId).count(monthStart, features);
+  }
+
+  /**
+   * @param siteId
+   *     the site
+   * @return the estimated heap footprint of the site's secondary index in bytes, 0 if the site
+   * is not indexed
+   */
+  public long getSecondaryIndexBytes(String siteId) {
+    SecondaryIndex index = siteSecondaryIndexes.get(siteId);
+    return null == index ? 0 : index.estimateBytes();
   }
 
-  public ColumnFamily getGuidDataTable(String siteId) {
+  /**
+   * Returns the sketch of a segment of a site's visitors. Segments can be combined with {@link
+   * ThetaSketch#union}, {@link ThetaSketch#intersect} and {@link ThetaSketch#aNotB} before
+   * estimating their number of unique visitors, e.g. to count the visitors from a referer who
+   * never landed on a page, or the visitors of two consecutive months.
+   *
+   * @param siteId
+   *     a site created with {@link SiteOptions#withThetaSketches(int)}
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param feature
+   *     the feature name, null for every visitor of the month
+   * @param value
+   *     the feature value, ignored if feature is null
+   * @return a copy of the segment's sketch
+   */
+  public ThetaSketch.Compact getSegment(
+      String siteId, long monthStart, String feature, String value) {
+    SketchStore sketches = siteSketchStores.get(siteId);
+    if (null == sketches) {
+      throw new IllegalArgumentException(String.format("Site '%s' has no sketches", siteId));
+    }
+    return sketches.segment(monthStart, feature, value);
+  }
+
+  /**
+   * @param siteId
+   *     the site
+   * @return the estimated heap footprint of the site's sketches in bytes, 0 if the site has
+   * none
+   */
+  public long getSketchBytes(String siteId) {
+    SketchStore sketches = siteSketchStores.get(siteId);
+    return null == sketches ? 0 : sketches.estimateBytes();
+  }
+
+  private SecondaryIndex secondaryIndex(String siteId) {
+    SecondaryIndex index = siteSecondaryIndexes.get(siteId);
+    if (null == index) {
+      throw new IllegalArgumentException(
+          String.format("Site '%s' has no secondary index", siteId));
+    }
+    return index;
+  }
+
+  public StorageTable getGuidDataTable(String siteId) {
+    ensureLoaded(siteId);
     return this.siteTables.get(siteId).get(String.format(CF_GUID_DATA, siteId));
   }
 
-  public ColumnFamily getMonthlyCountsTable(String siteId) {
+  /**
+   * @param siteId
+   *     the site
+   * @return the site's monthly counts table, null for {@link TrackingMode#FULL_TUPLE} sites
+   */
+  public StorageTable getMonthlyCountsTable(String siteId) {
+    ensureLoaded(siteId);
     return this.siteTables.get(siteId).get(String.format(CF_MONTHLY_COUNTS, siteId));
   }
 }
@@ -71,7 +71,7 @@ public class FileWriter {
     }
   }
 
-  public void writeTable(ColumnFamily table) {
+  public void writeTable(StorageTable table) {
     if (null != this.tablesWriter) {
       try {
         table.write(this.tablesWriter);
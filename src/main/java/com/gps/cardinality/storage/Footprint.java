@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimated heap footprint of in-memory data, in bytes. Footprints form a hierarchy so that
+ * adding to a table's footprint also adds to its database's footprint. Estimates assume a 64 bit
+ * JVM with compressed object pointers and compact strings.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Footprint {
+
+  /**
+   * Map entry, key string and {@link ColumnFamilyData} with its empty skip list.
+   */
+  static final long PARTITION_OVERHEAD = 200;
+  /**
+   * Skip list node with its share of index nodes, plus the column name string header.
+   */
+  static final long COLUMN_OVERHEAD = 80;
+  static final long STRING_OVERHEAD = 40;
+  static final long INTEGER_BYTES = 16;
+
+  private Footprint parent;
+  private LongAdder bytes;
+
+  Footprint(Footprint parent) {
+    this.parent = parent;
+    this.bytes = new LongAdder();
+  }
+
+  void add(long delta) {
+    bytes.add(delta);
+    if (null != parent) {
+      parent.add(delta);
+    }
+  }
+
+  /**
+   * @return the estimated footprint in bytes
+   */
+  public long get() {
+    return bytes.sum();
+  }
+
+  static long partitionBytes(String key) {
+    return PARTITION_OVERHEAD + key.length();
+  }
+
+  static long columnBytes(String key, Object value) {
+    return COLUMN_OVERHEAD + key.length() + valueBytes(value);
+  }
+
+  static long valueBytes(Object value) {
+    if (value instanceof Integer) {
+      return INTEGER_BYTES;
+    }
+    if (value instanceof StripedCounter) {
+      return ((StripedCounter) value).estimateBytes();
+    }
+    if (value instanceof CounterVersion) {
+      return ((CounterVersion) value).estimateBytes();
+    }
+    return STRING_OVERHEAD + value.toString().length();
+  }
+}
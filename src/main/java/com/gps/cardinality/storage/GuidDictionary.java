@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int ids to guids in the order they are first seen, so that sets of guids can be
+ * stored as sorted int arrays. A {@link SecondaryIndex} keeps one dictionary per month, ids
+ * therefore mostly grow as the month goes on.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class GuidDictionary {
+
+  /**
+   * Rough cost of a dictionary entry besides the guid string: the hash map node, the boxed id
+   * and the reverse lookup slot.
+   */
+  private static final long ENTRY_OVERHEAD = 64;
+
+  private Map<String, Integer> ids;
+  private List<String> guids;
+  private long guidBytes;
+
+  GuidDictionary() {
+    this.ids = new ConcurrentHashMap<>();
+    this.guids = new ArrayList<>();
+  }
+
+  /**
+   * @param guid
+   *     a guid
+   * @return the id of the guid, assigned if the guid was never seen
+   */
+  int idFor(String guid) {
+    Integer id = ids.get(guid);
+    if (null != id) {
+      return id;
+    }
+    return ids.computeIfAbsent(guid, g -> {
+      synchronized (this) {
+        guids.add(g);
+        guidBytes += Footprint.STRING_OVERHEAD + g.length();
+        return guids.size() - 1;
+      }
+    });
+  }
+
+  synchronized String guid(int id) {
+    return guids.get(id);
+  }
+
+  synchronized int size() {
+    return guids.size();
+  }
+
+  /**
+   * @return the estimated heap footprint of the dictionary, in bytes
+   */
+  synchronized long estimateBytes() {
+    return guidBytes + ENTRY_OVERHEAD * guids.size();
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.nio.file.Path;
+
+/**
+ * The default {@link StorageEngine}, keeping partitions in concurrent maps on the heap, see
+ * {@link ColumnFamily}. When the database has a memory budget, the least recently accessed
+ * partitions are spilled to disk.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+
+  public static final String NAME = "memory";
+
+  private Footprint footprint;
+  private Path spillDirectory;
+
+  public InMemoryStorageEngine() {
+    this(null, null);
+  }
+
+  /**
+   * @param footprint
+   *     the footprint the tables' footprints are added to, may be null
+   * @param spillDirectory
+   *     the directory partitions are evicted to, null if partitions are never evicted
+   */
+  InMemoryStorageEngine(Footprint footprint, Path spillDirectory) {
+    this.footprint = footprint;
+    this.spillDirectory = spillDirectory;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public ColumnFamily createTable(String name, ColumnDefinition definition) {
+    return new ColumnFamily(name, definition, footprint, spillDirectory);
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+/**
+ * Point in time memory and spill statistics of a {@link Database}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class MemoryStats {
+
+  private long budgetBytes;
+  private long estimatedBytes;
+  private long spilledPartitions;
+  private long spilledBytes;
+  private long evictions;
+  private long faults;
+
+  MemoryStats(long budgetBytes, long estimatedBytes, long spilledPartitions, long spilledBytes,
+      long evictions, long faults) {
+    this.budgetBytes = budgetBytes;
+    this.estimatedBytes = estimatedBytes;
+    this.spilledPartitions = spilledPartitions;
+    this.spilledBytes = spilledBytes;
+    this.evictions = evictions;
+    this.faults = faults;
+  }
+
+  /**
+   * @return the memory budget in bytes, 0 if unlimited
+   */
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  /**
+   * @return the estimated heap footprint of all tables in bytes
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  public long getSpilledPartitions() {
+    return spilledPartitions;
+  }
+
+  /**
+   * @return the size on disk of the spilled partitions in bytes
+   */
+  public long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /**
+   * @return the number of partitions evicted to disk so far
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return the number of partitions faulted back in from disk so far
+   */
+  public long getFaults() {
+    return faults;
+  }
+
+  public String toString() {
+    return String.format("memory: %.1f MB estimated (budget: %s), %d partitions spilled "
+                         + "(%.1f MB), %d evictions, %d faults",
+        estimatedBytes / 1024.0 / 1024.0,
+        0 == budgetBytes ? "unlimited" : String.format("%.1f MB", budgetBytes / 1024.0 / 1024.0),
+        spilledPartitions, spilledBytes / 1024.0 / 1024.0, evictions, faults);
+  }
+}
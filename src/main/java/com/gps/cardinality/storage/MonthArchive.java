@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import com.gps.cardinality.utils.ThetaSketch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The archive of a closed month of a site, see {@link Database#closeMonth(String, long, Path,
+ * int)}: the month's guid data rows and, optionally, a Theta sketch of the visitors of each of
+ * its feature combinations. Both files are GZIP compressed.
+ *
+ * <pre>
+ * site-month.rows.gz        per row: boolean true, UTF partition key, {@link PartitionCodec}
+ *                           columns, then boolean false
+ * site-month.sketches.gz    int nominal entries, then per combination: boolean true, UTF
+ *                           counts partition key, sketch, then boolean false
+ * </pre>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class MonthArchive {
+
+  private static final String ROWS_FILE = "%s-%d.rows.gz";
+  private static final String SKETCHES_FILE = "%s-%d.sketches.gz";
+
+  private Path rowsFile;
+  private Path sketchesFile;
+
+  /**
+   * @param rowsFile
+   *     the archived guid data rows
+   * @param sketchesFile
+   *     the archived sketches, null if the month was closed without sketches
+   */
+  MonthArchive(Path rowsFile, Path sketchesFile) {
+    this.rowsFile = rowsFile;
+    this.sketchesFile = sketchesFile;
+  }
+
+  /**
+   * @return the archive files of a month in a directory
+   */
+  static MonthArchive of(Path directory, String siteId, long monthStart, boolean sketches) {
+    return new MonthArchive(directory.resolve(String.format(ROWS_FILE, siteId, monthStart)),
+        sketches ? directory.resolve(String.format(SKETCHES_FILE, siteId, monthStart)) : null);
+  }
+
+  public Path getRowsFile() {
+    return rowsFile;
+  }
+
+  /**
+   * @return the archived sketches, null if the month was closed without sketches
+   */
+  public Path getSketchesFile() {
+    return sketchesFile;
+  }
+
+  /**
+   * Reads the archived guid data rows back.
+   *
+   * @param consumer
+   *     called with the partition key and columns of each row
+   * @return the number of rows read
+   * @throws UncheckedIOException
+   *     if the archive could not be read
+   */
+  public int readRows(BiConsumer<String, Map<String, Object>> consumer) {
+    int rows = 0;
+    try (DataInputStream in = open(rowsFile)) {
+      while (in.readBoolean()) {
+        String key = in.readUTF();
+        consumer.accept(key, PartitionCodec.read(in, new Footprint(null)).getAll());
+        rows++;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return rows;
+  }
+
+  /**
+   * Scans the archived sketches for the sketch of a combination.
+   *
+   * @param countsKey
+   *     the monthly counts partition key of the combination
+   * @return the sketch, empty if no visitor was seen with the combination
+   * @throws IllegalStateException
+   *     if the month was closed without sketches
+   */
+  ThetaSketch.Compact sketch(String countsKey) {
+    if (null == sketchesFile) {
+      throw new IllegalStateException(
+          String.format("No sketches were archived with %s", rowsFile.getFileName()));
+    }
+    try (DataInputStream in = open(sketchesFile)) {
+      int nominalEntries = in.readInt();
+      while (in.readBoolean()) {
+        String key = in.readUTF();
+        ThetaSketch.Compact sketch = ThetaSketch.Compact.read(in);
+        if (key.equals(countsKey)) {
+          return sketch;
+        }
+      }
+      return ThetaSketch.empty(nominalEntries);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return the total size of the archive files, in bytes
+   */
+  long getBytes() throws IOException {
+    return Files.size(rowsFile) + (null == sketchesFile ? 0 : Files.size(sketchesFile));
+  }
+
+  /**
+   * Creates a compressed archive file, entries being written as described above.
+   */
+  static DataOutputStream create(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(file))));
+  }
+
+  private static DataInputStream open(Path file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(Files.newInputStream(file))));
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.time.Instant;
+
+/**
+ * The outcome of a {@link Database#closeMonth(String, long, java.nio.file.Path, int)}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class MonthCloseOut {
+
+  private String siteId;
+  private long monthStart;
+  private MonthArchive archive;
+  private int rows;
+  private int combinations;
+  private long archiveBytes;
+  private long freedBytes;
+  private long nanos;
+
+  MonthCloseOut(String siteId, long monthStart, MonthArchive archive, int rows,
+      int combinations, long archiveBytes, long freedBytes, long nanos) {
+    this.siteId = siteId;
+    this.monthStart = monthStart;
+    this.archive = archive;
+    this.rows = rows;
+    this.combinations = combinations;
+    this.archiveBytes = archiveBytes;
+    this.freedBytes = freedBytes;
+    this.nanos = nanos;
+  }
+
+  public String getSiteId() {
+    return siteId;
+  }
+
+  public long getMonthStart() {
+    return monthStart;
+  }
+
+  public MonthArchive getArchive() {
+    return archive;
+  }
+
+  /**
+   * @return the number of guid data rows archived and dropped
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the number of feature combinations whose counts were verified
+   */
+  public int getCombinations() {
+    return combinations;
+  }
+
+  public long getArchiveBytes() {
+    return archiveBytes;
+  }
+
+  /**
+   * @return the estimated number of heap bytes freed by dropping the rows
+   */
+  public long getFreedBytes() {
+    return freedBytes;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public String toString() {
+    return String.format("closed month %s of site %s: %d rows, %d counts verified, "
+                         + "%.1f KB archived, %.1f KB freed in %.3fs",
+        Instant.ofEpochSecond(monthStart), siteId, rows, combinations, archiveBytes / 1024.0,
+        freedBytes / 1024.0, nanos / 1e9);
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Binary encoding of a partition's columns, used to move partitions out of the heap.
+ *
+ * <pre>
+ * int                  number of columns
+ * per column:
+ *   UTF                column name
+ *   byte               'I' for counters and integers, 'S' for any other value
+ *   int | UTF          value
+ * </pre>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class PartitionCodec {
+
+  private static final byte INTEGER = 'I';
+  private static final byte STRING = 'S';
+
+  static void write(DataOutput out, Map<String, Object> columns) throws IOException {
+    out.writeInt(columns.size());
+    for (Map.Entry<String, Object> column : columns.entrySet()) {
+      out.writeUTF(column.getKey());
+      if (column.getValue() instanceof Integer) {
+        out.writeByte(INTEGER);
+        out.writeInt((int) column.getValue());
+      } else {
+        out.writeByte(STRING);
+        out.writeUTF(column.getValue().toString());
+      }
+    }
+  }
+
+  static ColumnFamilyData read(DataInput in, Footprint footprint) throws IOException {
+    ColumnFamilyData partition = new ColumnFamilyData(footprint);
+    int numColumns = in.readInt();
+    for (int i = 0; i < numColumns; i++) {
+      String name = in.readUTF();
+      byte type = in.readByte();
+      partition.restore(name, type == INTEGER ? (Object) in.readInt() : in.readUTF());
+    }
+    return partition;
+  }
+
+  static byte[] encode(Map<String, Object> columns) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      write(out, columns);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static ColumnFamilyData decode(byte[] bytes, Footprint footprint) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      return read(in, footprint);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+/**
+ * CQL inspired prepared statement reading or incrementing a single field of a {@link
+ * StorageTable}. The table's key layout is resolved once when the statement is prepared, then
+ * each execution binds the key values positionally: the partitioning keys followed by the
+ * clustering keys, in the order of the table's {@link ColumnDefinition}. Executions skip the
+ * key name lookups, validation and counter expression parsing of the map based methods.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class PreparedStatement {
+
+  private StorageTable table;
+  private int numPartitionKeys;
+  private int numValues;
+  private String field;
+
+  /**
+   * @param table
+   *     the table
+   * @param field
+   *     the name of the field the statement reads or increments
+   */
+  PreparedStatement(StorageTable table, String field) {
+    ColumnDefinition definition = table.getColumnDefinition();
+    this.table = table;
+    this.numPartitionKeys = definition.getCompositeKeys().size();
+    this.numValues = numPartitionKeys + definition.getClusteringKeys().size();
+    this.field = field;
+  }
+
+  /**
+   * Atomically increments the field, creating the record if needed.
+   *
+   * @param delta
+   *     the amount to add to the field
+   * @param values
+   *     the partitioning then clustering key values
+   * @return the previous value of the field, 0 if the record did not exist
+   */
+  int increment(int delta, Object... values) {
+    checkArity(values);
+    return table.increment(partitionKey(values), column(values), delta);
+  }
+
+  /**
+   * @param values
+   *     the partitioning then clustering key values
+   * @return the field value or null if either the partition or the column does not exist
+   */
+  Object select(Object... values) {
+    checkArity(values);
+    return table.select(partitionKey(values), column(values));
+  }
+
+  /**
+   * @param values
+   *     the partitioning then clustering key values
+   * @return the partition key the values bind to
+   */
+  String partitionKey(Object... values) {
+    return join(values, 0, numPartitionKeys, null);
+  }
+
+  /**
+   * @param values
+   *     the partitioning then clustering key values
+   * @return the name of the field's column the values bind to
+   */
+  String column(Object... values) {
+    return numValues == numPartitionKeys ? field : join(values, numPartitionKeys, numValues, field);
+  }
+
+  private static String join(Object[] values, int from, int to, String suffix) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        sb.append(':');
+      }
+      if (null == values[i]) {
+        throw new IllegalArgumentException(String.format("Key value %d missing", i));
+      }
+      sb.append(values[i]);
+    }
+    if (null != suffix) {
+      sb.append(':').append(suffix);
+    }
+    return sb.toString();
+  }
+
+  private void checkArity(Object[] values) {
+    if (values.length != numValues) {
+      throw new IllegalArgumentException(String.format(
+          "Expected %d key values, got %d", numValues, values.length));
+    }
+  }
+}
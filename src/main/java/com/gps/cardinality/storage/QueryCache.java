@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of query results. Results are cached per scope, the unit of data writes invalidate
+ * (a monthly counts partition, or a site month for rollups), and tagged with the version of
+ * their scope when they were computed. Writing to a scope bumps its version, which invalidates
+ * all of the scope's results at once without having to find them. Only scopes with cached
+ * results have a version, writes to other scopes cost a single lookup, and a scope's version is
+ * dropped along with its last result. Versions are drawn from a single clock so that the new
+ * version of a dropped scope never matches a result computed against the old one.
+ *
+ * <p>
+ * Readers may accept results older than the latest write up to a staleness bound, so that
+ * queries polling frequently written scopes (e.g. the current month) still hit the cache.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class QueryCache {
+
+  private Map<String, Result> results;
+  private Map<String, Scope> scopes;
+  private AtomicLong clock;
+  private LongAdder hits;
+  private LongAdder misses;
+
+  /**
+   * @param capacity
+   *     the maximum number of results to keep, least recently used results are evicted first
+   */
+  QueryCache(int capacity) {
+    this.results = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+        if (size() <= capacity) {
+          return false;
+        }
+        release(eldest.getValue().scope);
+        return true;
+      }
+    };
+    this.scopes = new ConcurrentHashMap<>();
+    this.clock = new AtomicLong();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  private static class Result {
+    private String scope;
+    private long version;
+    private long computedNanos;
+    private int count;
+
+    Result(String scope, long version, int count) {
+      this.scope = scope;
+      this.version = version;
+      this.computedNanos = System.nanoTime();
+      this.count = count;
+    }
+  }
+
+  private static class Scope {
+    private volatile long version;
+    /**
+     * The number of cached results of the scope, guarded by the cache.
+     */
+    private int results;
+
+    Scope(long version) {
+      this.version = version;
+    }
+  }
+
+  /**
+   * @param scope
+   *     the scope of the query, e.g. {@code site1:1538352000}
+   * @param query
+   *     the normalized query within the scope
+   * @param maxStalenessNanos
+   *     how old a result invalidated by a write may be and still be returned, 0 to only return
+   *     results computed since the scope was last written to
+   * @return the cached count or null if none is fresh enough
+   */
+  synchronized Integer get(String scope, String query, long maxStalenessNanos) {
+    Result result = results.get(scope.concat("|").concat(query));
+    if (null == result
+        || (result.version != getVersion(scope)
+            && System.nanoTime() - result.computedNanos > maxStalenessNanos)) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return result.count;
+  }
+
+  /**
+   * Caches a count. The version should be read with {@link #getVersion(String)} before the count
+   * is computed so that a concurrent write is never masked by the cached value.
+   */
+  synchronized void put(String scope, String query, long version, int count) {
+    String key = scope.concat("|").concat(query);
+    // Counted first, the eviction the put may trigger must not drop the scope
+    if (!results.containsKey(key)) {
+      scopes.computeIfAbsent(scope, s -> new Scope(clock.incrementAndGet())).results++;
+    }
+    results.put(key, new Result(scope, version, count));
+  }
+
+  long getVersion(String scope) {
+    return scopes.computeIfAbsent(scope, s -> new Scope(clock.incrementAndGet())).version;
+  }
+
+  /**
+   * Invalidates every result of a scope.
+   */
+  void invalidate(String scope) {
+    Scope cached = scopes.get(scope);
+    if (null != cached) {
+      cached.version = clock.incrementAndGet();
+    }
+  }
+
+  /**
+   * Drops the version of a scope once its last result is evicted.
+   */
+  private void release(String scope) {
+    Scope cached = scopes.get(scope);
+    if (null != cached && --cached.results == 0) {
+      scopes.remove(scope);
+    }
+  }
+
+  /**
+   * @return the number of scopes with a version
+   */
+  int getScopes() {
+    return scopes.size();
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * A consistent, point in time view of the monthly counts of a site, see {@link
+ * Database#openReadView(String)}. The view sees every event tracked up to the epoch it pins
+ * in full, and nothing of the events tracked after it, however long it stays open. Queries go
+ * through the view alone, they are neither cached nor blocked by ingestion.
+ *
+ * <p>
+ * Open views keep the counter versions they read in memory, views should be closed once the
+ * queries of a dashboard are done.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ReadView implements AutoCloseable {
+
+  private Database database;
+  private String siteId;
+  private VersionClock versions;
+  private long epoch;
+  private volatile boolean closed;
+
+  ReadView(Database database, String siteId, VersionClock versions) {
+    this.database = database;
+    this.siteId = siteId;
+    this.versions = versions;
+    this.epoch = versions.pin();
+  }
+
+  /**
+   * Reads the number of unique visits of the site for a given month and feature combination,
+   * as of the view's epoch.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by, features absent from the map are not filtered on
+   * @return the number of unique visits
+   */
+  public int getMonthlyUniqueCount(long monthStart, NavigableMap<String, String> features) {
+    return getMonthlyUniqueCounts(List.of(CountQuery.of(monthStart, features)))[0];
+  }
+
+  /**
+   * Reads the number of unique visits of the site for many months and feature combinations at
+   * once, as of the view's epoch.
+   *
+   * @param queries
+   *     the months and feature values to count
+   * @return the number of unique visits of each query, in query order
+   */
+  public int[] getMonthlyUniqueCounts(List<CountQuery> queries) {
+    if (closed) {
+      throw new IllegalStateException(String.format("Read view of site '%s' is closed", siteId));
+    }
+    return database.getMonthlyUniqueCounts(siteId, queries, epoch);
+  }
+
+  public String getSiteId() {
+    return siteId;
+  }
+
+  /**
+   * @return the write epoch the view reads as of
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * Releases the view's epoch. Closing a view twice has no effect.
+   */
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      versions.unpin(epoch);
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import com.gps.cardinality.utils.ThetaSketch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Counts of many sites and months summed together, optionally broken down by the values of a
+ * feature, see {@link Database#rollUp(String, long, long)}. Sums count a visitor once per site
+ * and month they visited. Sites keeping {@link SiteOptions#withThetaSketches(int) sketches} also
+ * contribute to a union of their segment sketches, which estimates distinct visitors across
+ * those sites and months.
+ *
+ * <p>
+ * Partial rollups are merged with {@link #merge(Rollup)}, which is associative and commutative,
+ * so that sites and months can be rolled up in any grouping and order.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Rollup {
+
+  private String feature;
+  private long total;
+  private NavigableMap<String, Long> counts;
+  private ThetaSketch.Compact totalSketch;
+  private Map<String, ThetaSketch.Compact> sketches;
+  private int sites;
+  private int siteMonths;
+  private int skippedSites;
+  private long nanos;
+
+  Rollup(String feature) {
+    this.feature = feature;
+    this.counts = new TreeMap<>();
+    this.sketches = new HashMap<>();
+  }
+
+  /**
+   * Adds the unique count of a site and month, for a feature value or for the whole month.
+   *
+   * @param value
+   *     the feature value, null for the whole month
+   * @param count
+   *     the unique count
+   */
+  void add(String value, long count) {
+    if (null == value) {
+      total += count;
+    } else {
+      counts.merge(value, count, Long::sum);
+    }
+  }
+
+  /**
+   * Adds the visitors of a site and month to the distinct visitors estimates.
+   *
+   * @param value
+   *     the feature value, null for the whole month
+   * @param sketch
+   *     the segment sketch of the value
+   */
+  void add(String value, ThetaSketch.Compact sketch) {
+    if (null == value) {
+      totalSketch = null == totalSketch ? sketch : ThetaSketch.union(totalSketch, sketch);
+    } else {
+      sketches.merge(value, sketch, ThetaSketch::union);
+    }
+  }
+
+  void addSiteMonth() {
+    siteMonths++;
+  }
+
+  void addSite() {
+    sites++;
+  }
+
+  void addSkippedSite() {
+    skippedSites++;
+  }
+
+  void setNanos(long nanos) {
+    this.nanos = nanos;
+  }
+
+  /**
+   * Folds another partial rollup of the same feature into this one.
+   *
+   * @param other
+   *     the other rollup, of different sites or months
+   * @return this rollup
+   */
+  Rollup merge(Rollup other) {
+    total += other.total;
+    other.counts.forEach((value, count) -> counts.merge(value, count, Long::sum));
+    if (null != other.totalSketch) {
+      add(null, other.totalSketch);
+    }
+    other.sketches.forEach(this::add);
+    sites += other.sites;
+    siteMonths += other.siteMonths;
+    skippedSites += other.skippedSites;
+    return this;
+  }
+
+  /**
+   * @return the feature the counts are broken down by, null for totals only
+   */
+  public String getFeature() {
+    return feature;
+  }
+
+  /**
+   * @return the sum of the unique counts of every site and month
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * @return the sum of the unique counts of every site and month, by feature value
+   */
+  public NavigableMap<String, Long> getCounts() {
+    return Collections.unmodifiableNavigableMap(counts);
+  }
+
+  /**
+   * @param value
+   *     a feature value, null for every visitor
+   * @return the union of the segment sketches of the sites keeping sketches, null if none does
+   */
+  public ThetaSketch.Compact getSketch(String value) {
+    return null == value ? totalSketch : sketches.get(value);
+  }
+
+  /**
+   * @return the number of sites rolled up
+   */
+  public int getSites() {
+    return sites;
+  }
+
+  /**
+   * @return the number of (site, month) pairs rolled up
+   */
+  public int getSiteMonths() {
+    return siteMonths;
+  }
+
+  /**
+   * @return the number of sites left out because they compute their counts at query time, see
+   * {@link TrackingMode#FULL_TUPLE}
+   */
+  public int getSkippedSites() {
+    return skippedSites;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format(
+        "rollup%s of %d sites, %d site months in %.3fs (%d sites skipped)%n",
+        null == feature ? "" : " by " + feature, sites, siteMonths, nanos / 1e9, skippedSites));
+    sb.append(line("total", total, totalSketch));
+    for (Map.Entry<String, Long> count : counts.entrySet()) {
+      sb.append(line(count.getKey(), count.getValue(), sketches.get(count.getKey())));
+    }
+    return sb.toString();
+  }
+
+  private static String line(String label, long count, ThetaSketch.Compact sketch) {
+    return null == sketch ? String.format("  %s: %d%n", label, count)
+        : String.format("  %s: %d (~%.0f distinct)%n", label, count, sketch.getEstimate());
+  }
+}
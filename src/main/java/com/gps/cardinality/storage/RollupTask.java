@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task rolling up the counts of a range of sites, see {@link Database#rollUp(String,
+ * long, long)}. Ranges are split in halves down to single sites, each of which forks a task per
+ * month, and the partial rollups are merged on the way back up.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+@SuppressWarnings("serial")
+class RollupTask extends RecursiveTask<Rollup> {
+
+  private Database db;
+  private String feature;
+  private long fromMonth;
+  private long toMonth;
+  private List<String> siteIds;
+
+  RollupTask(Database db, String feature, long fromMonth, long toMonth, List<String> siteIds) {
+    this.db = db;
+    this.feature = feature;
+    this.fromMonth = fromMonth;
+    this.toMonth = toMonth;
+    this.siteIds = siteIds;
+  }
+
+  @Override
+  protected Rollup compute() {
+    if (siteIds.isEmpty()) {
+      return new Rollup(feature);
+    }
+    if (siteIds.size() > 1) {
+      int middle = siteIds.size() / 2;
+      RollupTask left =
+          new RollupTask(db, feature, fromMonth, toMonth, siteIds.subList(0, middle));
+      left.fork();
+      Rollup right = new RollupTask(db, feature, fromMonth, toMonth,
+          siteIds.subList(middle, siteIds.size())).compute();
+      return left.join().merge(right);
+    }
+    String siteId = siteIds.get(0);
+    Rollup rollup = new Rollup(feature);
+    Map<Long, Map<String, String>> months =
+        db.rollupPartitions(siteId, feature, fromMonth, toMonth);
+    if (null == months) {
+      rollup.addSkippedSite();
+      return rollup;
+    }
+    rollup.addSite();
+    List<Month> tasks = new ArrayList<>();
+    for (Map.Entry<Long, Map<String, String>> month : months.entrySet()) {
+      tasks.add(new Month(siteId, month.getKey(), month.getValue()));
+    }
+    for (Month task : ForkJoinTask.invokeAll(tasks)) {
+      rollup.merge(task.join());
+    }
+    return rollup;
+  }
+
+  /**
+   * Rolls up a single month of a site.
+   */
+  @SuppressWarnings("serial")
+  private class Month extends RecursiveTask<Rollup> {
+
+    private String siteId;
+    private long monthStart;
+    private Map<String, String> partitions;
+
+    Month(String siteId, long monthStart, Map<String, String> partitions) {
+      this.siteId = siteId;
+      this.monthStart = monthStart;
+      this.partitions = partitions;
+    }
+
+    @Override
+    protected Rollup compute() {
+      return db.rollUpMonth(siteId, feature, monthStart, partitions);
+    }
+  }
+}
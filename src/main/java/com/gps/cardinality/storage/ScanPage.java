@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of rows returned by a {@link StorageTable} scan. Rows of a partition are ordered by
+ * column name, partitions by token for a {@link ColumnFamily}. The paging state resumes the scan
+ * right after the last row of the page.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ScanPage {
+
+  private List<Row> rows;
+  private String pagingState;
+
+  public ScanPage(List<Row> rows, String pagingState) {
+    this.rows = Collections.unmodifiableList(rows);
+    this.pagingState = pagingState;
+  }
+
+  public List<Row> getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the opaque state to pass to the next scan call, null if the scan is complete
+   */
+  public String getPagingState() {
+    return pagingState;
+  }
+
+  public boolean isLast() {
+    return null == pagingState;
+  }
+
+  /**
+   * @return the paging state resuming a scan right after the last of the rows
+   */
+  static String pagingState(List<Row> rows) {
+    Row last = rows.get(rows.size() - 1);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(last.getPartitionKey());
+      out.writeUTF(last.getColumn());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * @return the partition key and column of the last row returned
+   * @throws IllegalArgumentException
+   *     if the paging state was not returned by a scan
+   */
+  static String[] decodePagingState(String pagingState) {
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(Base64.getUrlDecoder().decode(pagingState)))) {
+      return new String[]{in.readUTF(), in.readUTF()};
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Invalid paging state: '%s'", pagingState), e);
+    }
+  }
+
+  /**
+   * A single column of a partition.
+   */
+  public static class Row {
+    private String partitionKey;
+    private String column;
+    private Object value;
+
+    public Row(String partitionKey, String column, Object value) {
+      this.partitionKey = partitionKey;
+      this.column = column;
+      this.value = value;
+    }
+
+    public String getPartitionKey() {
+      return partitionKey;
+    }
+
+    public String getColumn() {
+      return column;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public String toString() {
+      return String.format("%s=>(column='%s', value='%s')", partitionKey, column, value);
+    }
+  }
+}
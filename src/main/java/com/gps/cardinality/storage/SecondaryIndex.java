@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional per site index of the guid data table, from (month, feature, value) to the ids of
+ * the guids seen with that feature value during the month. Each month has its own {@link
+ * GuidDictionary}, so that guid ids are dense and mostly increasing within the month, and each
+ * posting list is a {@link SortedIntSet}.
+ *
+ * <p>
+ * Counting with several features intersects their posting lists and so counts the guids seen
+ * with each of the values during the month, not necessarily within the same visit. For a single
+ * feature, or for visitors who never change feature values within a month, this matches the
+ * monthly counts table.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class SecondaryIndex {
+
+  private static final long ENTRY_OVERHEAD = 64;
+
+  private Map<Long, Month> months;
+
+  SecondaryIndex() {
+    this.months = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Indexes a single visit.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the visit's month
+   * @param guid
+   *     the guid of the visitor
+   * @param features
+   *     the feature values of the visit, empty values are not indexed
+   */
+  void add(long monthStart, String guid, NavigableMap<String, String> features) {
+    Month month = months.computeIfAbsent(monthStart, m -> new Month());
+    int id = month.dictionary.idFor(guid);
+    month.guids.add(id);
+    for (Map.Entry<String, String> feature : features.entrySet()) {
+      if (!feature.getValue().isEmpty()) {
+        month.postings.computeIfAbsent(feature.getKey(), f -> new ConcurrentHashMap<>())
+            .computeIfAbsent(feature.getValue(), v -> new SortedIntSet()).add(id);
+      }
+    }
+  }
+
+  /**
+   * @return the guids seen with the feature value during the month, in first seen order
+   */
+  List<String> guids(long monthStart, String feature, String value) {
+    SortedIntSet set = posting(monthStart, feature, value);
+    List<String> guids = new ArrayList<>();
+    if (null != set) {
+      GuidDictionary dictionary = months.get(monthStart).dictionary;
+      for (int id : set.toArray()) {
+        guids.add(dictionary.guid(id));
+      }
+    }
+    return guids;
+  }
+
+  /**
+   * Counts the guids seen with every one of the feature values during the month using the index
+   * alone.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by, empty for all the guids of the month
+   * @return the number of matching guids
+   */
+  int count(long monthStart, NavigableMap<String, String> features) {
+    if (features.isEmpty()) {
+      Month month = months.get(monthStart);
+      return null == month ? 0 : month.guids.size();
+    }
+    SortedIntSet[] sets = new SortedIntSet[features.size()];
+    int i = 0;
+    for (Map.Entry<String, String> feature : features.entrySet()) {
+      sets[i] = posting(monthStart, feature.getKey(), feature.getValue());
+      if (null == sets[i]) {
+        return 0;
+      }
+      i++;
+    }
+    // Intersecting the smallest lists first keeps the intermediate results small
+    Arrays.sort(sets, Comparator.comparingInt(SortedIntSet::size));
+    int[] result = sets[0].toArray();
+    for (i = 1; i < sets.length && result.length > 0; i++) {
+      result = SortedIntSet.intersect(result, sets[i].toArray());
+    }
+    return result.length;
+  }
+
+  private SortedIntSet posting(long monthStart, String feature, String value) {
+    Month month = months.get(monthStart);
+    Map<String, SortedIntSet> values = null == month ? null : month.postings.get(feature);
+    return null == values ? null : values.get(value);
+  }
+
+  /**
+   * Drops the index of a month, along with its guid dictionary.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @return the estimated heap bytes freed
+   */
+  long dropMonth(long monthStart) {
+    Month month = months.remove(monthStart);
+    return null == month ? 0 : month.estimateBytes();
+  }
+
+  /**
+   * @return the estimated heap footprint of the index, including its guid dictionaries, in bytes
+   */
+  long estimateBytes() {
+    long bytes = 0;
+    for (Month month : months.values()) {
+      bytes += month.estimateBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * The index of a single month.
+   */
+  private static class Month {
+    private GuidDictionary dictionary;
+    private SortedIntSet guids;
+    private Map<String, Map<String, SortedIntSet>> postings;
+
+    Month() {
+      this.dictionary = new GuidDictionary();
+      this.guids = new SortedIntSet();
+      this.postings = new ConcurrentHashMap<>();
+    }
+
+    long estimateBytes() {
+      long bytes = dictionary.estimateBytes() + ENTRY_OVERHEAD + guids.estimateBytes();
+      for (Map<String, SortedIntSet> values : postings.values()) {
+        for (Map.Entry<String, SortedIntSet> posting : values.entrySet()) {
+          bytes += ENTRY_OVERHEAD + Footprint.STRING_OVERHEAD + posting.getKey().length()
+                   + posting.getValue().estimateBytes();
+        }
+      }
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Spreads site data over a number of independent {@link Database} shards, simulating the nodes of
+ * a cluster. Each shard is confined to a single worker thread, so shards never share locks and a
+ * shard's tables are only ever touched by its own worker.
+ *
+ * <p>
+ * Events are routed with a {@link TokenRing} on the {@code site_id:guid} key. All the guid rows
+ * of a visitor therefore live on a single shard, which keeps the uniqueness check local, and the
+ * unique counts of the shards are disjoint so that query results merge by simple addition.
+ * </p>
+ *
+ * <p>
+ * Each worker's queue is bounded, routing an event to a shard whose queue is full waits for
+ * room. Events failing to be applied do not stop their shard, the first failure of each shard
+ * is reported by {@link #drain()} and {@link #close()}.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ShardedDatabase implements AutoCloseable {
+
+  private static final int DEFAULT_VIRTUAL_NODES = 64;
+  private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+  private TokenRing ring;
+  private List<Shard> shards;
+
+  public ShardedDatabase(int numShards) {
+    this(numShards, DEFAULT_VIRTUAL_NODES);
+  }
+
+  public ShardedDatabase(int numShards, int virtualNodes) {
+    this(numShards, virtualNodes, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * @param numShards
+   *     the number of shards
+   * @param virtualNodes
+   *     the number of tokens of each shard on the ring, see {@link TokenRing}
+   * @param queueCapacity
+   *     the number of tasks each shard's worker can have queued before routing waits
+   */
+  public ShardedDatabase(int numShards, int virtualNodes, int queueCapacity) {
+    this.ring = new TokenRing(numShards, virtualNodes);
+    this.shards = new ArrayList<>();
+    for (int i = 0; i < numShards; i++) {
+      shards.add(new Shard(i, queueCapacity));
+    }
+  }
+
+  /**
+   * A single {@link Database} owned by a single worker thread.
+   */
+  private static class Shard {
+    private int id;
+    private Database db;
+    private ThreadPoolExecutor worker;
+    private AtomicLong routedEvents;
+    /**
+     * The first event failure, only ever set by the worker.
+     */
+    private volatile RuntimeException failure;
+
+    Shard(int id, int queueCapacity) {
+      this.id = id;
+      this.db = new Database();
+      this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, String.format("shard-%d", id));
+            t.setDaemon(true);
+            return t;
+          }, (task, executor) -> {
+            // Waits for room rather than running the task outside of the shard's worker
+            if (executor.isShutdown()) {
+              throw new RejectedExecutionException(String.format("Shard %d is closed", id));
+            }
+            try {
+              executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RejectedExecutionException(e);
+            }
+          });
+      this.routedEvents = new AtomicLong();
+    }
+
+    void track(String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
+      try {
+        db.track(siteId, timestamp, guid, features);
+      } catch (RuntimeException e) {
+        if (null == failure) {
+          failure = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the tables of a site on every shard and waits until they are available.
+   *
+   * @param siteId
+   *     the site
+   * @param features
+   *     the names of features supported by the site
+   */
+  public void createTables(String siteId, NavigableSet<String> features) {
+    onAllShards(db -> {
+      db.createTables(siteId, features);
+      return null;
+    });
+  }
+
+  /**
+   * Routes a single site event to the shard owning the visitor. The event is applied
+   * asynchronously by the shard's worker, in the order events were routed to that shard. Waits
+   * if the shard's queue is full.
+   *
+   * @param siteId
+   *     the site to be tracked
+   * @param timestamp
+   *     the timestamp of the event
+   * @param guid
+   *     the guid of the visitor
+   * @param features
+   *     the features key/values
+   * @see Database#track(String, long, String, NavigableMap)
+   */
+  public void track(
+      String siteId, long timestamp, String guid, NavigableMap<String, String> features) {
+    Shard shard = shards.get(ring.shardFor(routingKey(siteId, guid)));
+    shard.routedEvents.incrementAndGet();
+    shard.worker.execute(() -> shard.track(siteId, timestamp, guid, features));
+  }
+
+  /**
+   * Reads the number of unique visits of a site for a given month and feature combination by
+   * summing the partial counts of every shard. Reads are queued behind the writes already routed
+   * to each shard.
+   *
+   * @param siteId
+   *     the site
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param features
+   *     the feature values to filter by
+   * @return the number of unique visits
+   * @see Database#getMonthlyUniqueCount(String, long, NavigableMap)
+   */
+  public int getMonthlyUniqueCount(
+      String siteId, long monthStart, NavigableMap<String, String> features) {
+    return onAllShards(db -> db.getMonthlyUniqueCount(siteId, monthStart, features))
+        .stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * Blocks until every event routed so far has been applied by its shard.
+   *
+   * @throws RuntimeException
+   *     if any event failed to be applied, with the first failure of the first failed shard as
+   *     its cause and those of the other shards suppressed
+   */
+  public void drain() {
+    onAllShards(db -> null);
+    checkFailures();
+  }
+
+  private void checkFailures() {
+    RuntimeException failures = null;
+    for (Shard shard : shards) {
+      if (null == shard.failure) {
+        continue;
+      }
+      if (null == failures) {
+        failures = new RuntimeException(String.format(
+            "Events failed to be applied by shard %d", shard.id), shard.failure);
+      } else {
+        failures.addSuppressed(shard.failure);
+      }
+    }
+    if (null != failures) {
+      throw failures;
+    }
+  }
+
+  /**
+   * @return the number of events routed to each shard, indexed by shard
+   */
+  public long[] getRoutedEvents() {
+    return shards.stream().mapToLong(s -> s.routedEvents.get()).toArray();
+  }
+
+  public TokenRing getRing() {
+    return ring;
+  }
+
+  /**
+   * Runs a function on every shard's worker and waits for all the results.
+   */
+  private <T> List<T> onAllShards(Function<Database, T> function) {
+    List<CompletableFuture<T>> futures = new ArrayList<>();
+    for (Shard shard : shards) {
+      futures.add(CompletableFuture.supplyAsync(() -> function.apply(shard.db), shard.worker));
+    }
+    List<T> results = new ArrayList<>();
+    futures.forEach(f -> results.add(f.join()));
+    return results;
+  }
+
+  static String routingKey(String siteId, String guid) {
+    return siteId.concat(":").concat(guid);
+  }
+
+  /**
+   * Stops the shard workers once the events already routed have been applied.
+   *
+   * @throws RuntimeException
+   *     if any event failed to be applied, see {@link #drain()}
+   */
+  public void close() {
+    for (Shard shard : shards) {
+      shard.worker.shutdown();
+    }
+    for (Shard shard : shards) {
+      try {
+        shard.worker.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    checkFailures();
+  }
+}
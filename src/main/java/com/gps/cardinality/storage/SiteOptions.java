@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Per site table configuration used by {@link Database#createTables(String,
+ * java.util.NavigableSet, SiteOptions)}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class SiteOptions {
+
+  private TrackingMode trackingMode;
+  private CuboidSpec cuboids;
+  private int coalescedCounterCells;
+  private long coalescedCounterStalenessMillis;
+  private boolean secondaryIndex;
+  private ZoneId zone;
+  private long maxQueryStalenessMillis;
+  private int sketchNominalEntries;
+  private int counterStripes;
+  private int hotCounterFeatures;
+  private boolean readViews;
+
+  public SiteOptions() {
+    this.trackingMode = TrackingMode.PRECOMPUTED;
+    this.zone = ZoneOffset.UTC;
+    this.counterStripes = Integer.highestOneBit(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+    this.hotCounterFeatures = -1;
+  }
+
+  public static SiteOptions defaults() {
+    return new SiteOptions();
+  }
+
+  public SiteOptions withTrackingMode(TrackingMode trackingMode) {
+    this.trackingMode = trackingMode;
+    return this;
+  }
+
+  public TrackingMode getTrackingMode() {
+    return trackingMode;
+  }
+
+  /**
+   * @param cuboids
+   *     the feature combinations to materialize, null materializes the default combinations
+   */
+  public SiteOptions withCuboids(CuboidSpec cuboids) {
+    this.cuboids = cuboids;
+    return this;
+  }
+
+  public CuboidSpec getCuboids() {
+    return cuboids;
+  }
+
+  /**
+   * Buffers the increments of the monthly counts table per thread, see {@link CounterCoalescer}.
+   *
+   * @param maxPendingCells
+   *     the number of distinct counters a thread buffers before flushing, 0 disables coalescing
+   * @param maxStalenessMillis
+   *     the maximum age of increments not yet visible to queries, 0 to always flush before
+   *     queries
+   */
+  public SiteOptions withCounterCoalescing(int maxPendingCells, long maxStalenessMillis) {
+    this.coalescedCounterCells = maxPendingCells;
+    this.coalescedCounterStalenessMillis = maxStalenessMillis;
+    return this;
+  }
+
+  public int getCoalescedCounterCells() {
+    return coalescedCounterCells;
+  }
+
+  public long getCoalescedCounterStalenessMillis() {
+    return coalescedCounterStalenessMillis;
+  }
+
+  /**
+   * Maintains a {@link SecondaryIndex} of the site's guids by month and feature value, see
+   * {@link Database#getIndexedGuids(String, long, String, String)}.
+   */
+  public SiteOptions withSecondaryIndex(boolean secondaryIndex) {
+    this.secondaryIndex = secondaryIndex;
+    return this;
+  }
+
+  public boolean isSecondaryIndexEnabled() {
+    return secondaryIndex;
+  }
+
+  /**
+   * @param zone
+   *     the time zone the site's months, weeks and days are counted in
+   */
+  public SiteOptions withZone(ZoneId zone) {
+    this.zone = zone;
+    return this;
+  }
+
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * Lets count queries return cached results invalidated by newer writes, see {@link
+   * QueryCache}.
+   *
+   * @param maxQueryStalenessMillis
+   *     the maximum age of a cached result returned after its data was written to, 0 to never
+   *     return such results
+   */
+  public SiteOptions withMaxQueryStaleness(long maxQueryStalenessMillis) {
+    this.maxQueryStalenessMillis = maxQueryStalenessMillis;
+    return this;
+  }
+
+  public long getMaxQueryStalenessMillis() {
+    return maxQueryStalenessMillis;
+  }
+
+  /**
+   * Maintains {@link com.gps.cardinality.utils.ThetaSketch} segments of the site's visitors by
+   * month and feature value, see {@link Database#getSegment(String, long, String, String)}.
+   *
+   * @param nominalEntries
+   *     the size of each sketch, the relative error is about {@code 1 / sqrt(nominalEntries)},
+   *     0 disables sketches
+   */
+  public SiteOptions withThetaSketches(int nominalEntries) {
+    this.sketchNominalEntries = nominalEntries;
+    return this;
+  }
+
+  public int getSketchNominalEntries() {
+    return sketchNominalEntries;
+  }
+
+  /**
+   * Splits hot counters of the monthly counts table into stripes summed on read, so that threads
+   * counting the same visits stop colliding on a single cell. Counters are striped once they are
+   * contended, or right away for combinations of at most {@code hotCounterFeatures} features.
+   *
+   * @param stripes
+   *     the number of stripes of a hot counter, 1 disables striping (default: the number of
+   *     processors rounded up to a power of two, at least 2)
+   * @param hotCounterFeatures
+   *     the maximum number of features of the combinations striped right away, e.g. 0 for the
+   *     site totals and 1 for single feature counts, -1 to only stripe contended counters
+   */
+  public SiteOptions withCounterStripes(int stripes, int hotCounterFeatures) {
+    this.counterStripes = stripes;
+    this.hotCounterFeatures = hotCounterFeatures;
+    return this;
+  }
+
+  public int getCounterStripes() {
+    return counterStripes;
+  }
+
+  public int getHotCounterFeatures() {
+    return hotCounterFeatures;
+  }
+
+  /**
+   * Versions the counters of the monthly counts table so that queries can read a consistent
+   * point in time state of it, see {@link Database#openReadView(String)}. Versioned counters are
+   * never striped.
+   */
+  public SiteOptions withReadViews(boolean readViews) {
+    this.readViews = readViews;
+    return this;
+  }
+
+  public boolean isReadViewsEnabled() {
+    return readViews;
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import com.gps.cardinality.utils.ThetaSketch;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional per site store of {@link ThetaSketch} segments: one sketch of the guids of each
+ * month, and one per (month, feature, value). Combining segments with the sketch set operations
+ * answers queries the precomputed counts cannot, e.g. visitors from one referer who never
+ * landed on a given page, or visitors of two different months.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class SketchStore {
+
+  private int nominalEntries;
+  private Map<Long, ThetaSketch> monthSketches;
+  private Map<Long, Map<String, Map<String, ThetaSketch>>> segmentSketches;
+
+  /**
+   * @param nominalEntries
+   *     the size of each sketch, see {@link ThetaSketch#ThetaSketch(int)}
+   */
+  SketchStore(int nominalEntries) {
+    this.nominalEntries = nominalEntries;
+    this.monthSketches = new ConcurrentHashMap<>();
+    this.segmentSketches = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Adds a single visit to the sketches of its month and feature values.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the visit's month
+   * @param guid
+   *     the guid of the visitor
+   * @param features
+   *     the feature values of the visit, empty values are not sketched
+   */
+  void add(long monthStart, String guid, NavigableMap<String, String> features) {
+    monthSketches.computeIfAbsent(monthStart, m -> new ThetaSketch(nominalEntries)).update(guid);
+    Map<String, Map<String, ThetaSketch>> month =
+        segmentSketches.computeIfAbsent(monthStart, m -> new ConcurrentHashMap<>());
+    for (Map.Entry<String, String> feature : features.entrySet()) {
+      if (!feature.getValue().isEmpty()) {
+        month.computeIfAbsent(feature.getKey(), f -> new ConcurrentHashMap<>())
+            .computeIfAbsent(feature.getValue(), v -> new ThetaSketch(nominalEntries))
+            .update(guid);
+      }
+    }
+  }
+
+  /**
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @param feature
+   *     the feature name, null for every visitor of the month
+   * @param value
+   *     the feature value
+   * @return a compact copy of the segment's sketch, empty if the segment has no visitor
+   */
+  ThetaSketch.Compact segment(long monthStart, String feature, String value) {
+    ThetaSketch sketch;
+    if (null == feature) {
+      sketch = monthSketches.get(monthStart);
+    } else {
+      Map<String, Map<String, ThetaSketch>> month = segmentSketches.get(monthStart);
+      Map<String, ThetaSketch> values = null == month ? null : month.get(feature);
+      sketch = null == values ? null : values.get(value);
+    }
+    return null == sketch ? ThetaSketch.empty(nominalEntries) : sketch.compact();
+  }
+
+  /**
+   * Drops the sketches of a month.
+   *
+   * @param monthStart
+   *     the timestamp of the start of the month
+   * @return the estimated heap bytes freed
+   */
+  long dropMonth(long monthStart) {
+    long bytes = 0;
+    ThetaSketch sketch = monthSketches.remove(monthStart);
+    if (null != sketch) {
+      bytes += sketch.estimateBytes();
+    }
+    Map<String, Map<String, ThetaSketch>> month = segmentSketches.remove(monthStart);
+    if (null != month) {
+      bytes += estimateBytes(month);
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the estimated heap footprint of all the sketches, in bytes
+   */
+  long estimateBytes() {
+    long bytes = 0;
+    for (ThetaSketch sketch : monthSketches.values()) {
+      bytes += sketch.estimateBytes();
+    }
+    for (Map<String, Map<String, ThetaSketch>> month : segmentSketches.values()) {
+      bytes += estimateBytes(month);
+    }
+    return bytes;
+  }
+
+  private static long estimateBytes(Map<String, Map<String, ThetaSketch>> month) {
+    long bytes = 0;
+    for (Map<String, ThetaSketch> values : month.values()) {
+      for (ThetaSketch sketch : values.values()) {
+        bytes += sketch.estimateBytes();
+      }
+    }
+    return bytes;
+  }
+}
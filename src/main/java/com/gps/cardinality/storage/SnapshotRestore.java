@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a lazy restore of a {@link Database} snapshot, see {@link Database#restore(Path,
+ * int)}. Sites are registered from the snapshot's manifest up front, so the database serves
+ * requests right away, and their tables are loaded either by background loader threads, largest
+ * sites first, or by the first request touching them, whichever comes first.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class SnapshotRestore {
+
+  private Database db;
+  private List<Site> sites;
+  private Map<String, Site> pending;
+  private List<Thread> loaders;
+  private AtomicInteger nextSite;
+  private AtomicInteger loadedSites;
+  private long startNanos;
+  /**
+   * Released once every site is registered, sites cannot be loaded before.
+   */
+  private CountDownLatch registration;
+  private volatile long registeredNanos;
+  private AtomicLong firstReadyNanos;
+  private volatile long allReadyNanos;
+  private volatile RuntimeException failure;
+
+  /**
+   * @param db
+   *     the database the sites are registered in
+   * @param sites
+   *     the sites of the snapshot, not registered yet, see {@link #registered()}
+   * @param startNanos
+   *     when the restore started
+   */
+  SnapshotRestore(Database db, Collection<Site> sites, long startNanos) {
+    this.db = db;
+    this.sites = new ArrayList<>(sites);
+    this.sites.sort(Comparator.comparingLong((Site site) -> site.bytes).reversed());
+    this.pending = new ConcurrentHashMap<>();
+    sites.forEach(site -> pending.put(site.siteId, site));
+    this.loaders = new ArrayList<>();
+    this.nextSite = new AtomicInteger();
+    this.loadedSites = new AtomicInteger();
+    this.startNanos = startNanos;
+    this.registration = new CountDownLatch(1);
+    this.firstReadyNanos = new AtomicLong();
+  }
+
+  /**
+   * Lets sites be loaded once they are all registered in the database. Requests to a site
+   * arriving before then wait for its registration.
+   */
+  void registered() {
+    registeredNanos = System.nanoTime() - startNanos;
+    if (sites.isEmpty()) {
+      allReadyNanos = registeredNanos;
+    }
+    registration.countDown();
+  }
+
+  /**
+   * Starts the background loader threads.
+   */
+  void start(int loaderThreads) {
+    for (int i = 0; i < loaderThreads; i++) {
+      Thread thread = new Thread(this::loadAll, String.format("snapshot-loader-%d", i));
+      thread.setDaemon(true);
+      loaders.add(thread);
+      thread.start();
+    }
+  }
+
+  private void loadAll() {
+    for (int i = nextSite.getAndIncrement(); i < sites.size(); i = nextSite.getAndIncrement()) {
+      try {
+        load(sites.get(i));
+      } catch (RuntimeException e) {
+        // The site is loaded again, and fails again, on its next access
+        if (null == failure) {
+          failure = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads a site if it is still pending, waiting for a concurrent load of the same site.
+   *
+   * @param siteId
+   *     the site
+   */
+  void ensureLoaded(String siteId) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    Site site = pending.get(siteId);
+    if (null != site) {
+      load(site);
+    }
+  }
+
+  private void load(Site site) {
+    try {
+      registration.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    synchronized (site) {
+      if (site.loaded) {
+        return;
+      }
+      db.loadSite(site.siteId, site.files);
+      site.loaded = true;
+    }
+    pending.remove(site.siteId);
+    long now = System.nanoTime() - startNanos;
+    firstReadyNanos.compareAndSet(0, now);
+    if (loadedSites.incrementAndGet() == sites.size()) {
+      allReadyNanos = now;
+    }
+  }
+
+  /**
+   * Waits for the background loaders to finish.
+   *
+   * @throws RuntimeException
+   *     if a site failed to load, with the first failure as its cause
+   */
+  public void awaitLoaded() {
+    for (Thread loader : loaders) {
+      try {
+        loader.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    if (null != failure) {
+      throw new RuntimeException("Sites failed to be restored", failure);
+    }
+  }
+
+  public boolean isComplete() {
+    return pending.isEmpty();
+  }
+
+  public int getRegisteredSites() {
+    return sites.size();
+  }
+
+  public int getLoadedSites() {
+    return loadedSites.get();
+  }
+
+  /**
+   * @return the time it took to register every site and start serving requests, in nanoseconds
+   */
+  public long getRegisteredNanos() {
+    return registeredNanos;
+  }
+
+  /**
+   * @return the time it took for the first site to be fully loaded, in nanoseconds, 0 if no site
+   * is loaded yet
+   */
+  public long getFirstReadyNanos() {
+    return firstReadyNanos.get();
+  }
+
+  /**
+   * @return the time it took for every site to be fully loaded, in nanoseconds, 0 until then
+   */
+  public long getAllReadyNanos() {
+    return allReadyNanos;
+  }
+
+  public String toString() {
+    return String.format("Restored %d sites: serving after %.3fs, first site ready after %.3fs, "
+                         + "%d loaded%s", sites.size(), registeredNanos / 1e9,
+        getFirstReadyNanos() / 1e9, getLoadedSites(),
+        0 == allReadyNanos ? "" : String.format(", all ready after %.3fs", allReadyNanos / 1e9));
+  }
+
+  /**
+   * A site listed in the manifests of a snapshot or of a checkpoint chain.
+   */
+  static class Site {
+    private String siteId;
+    private NavigableSet<String> features;
+    private SiteOptions options;
+    private long bytes;
+    private List<Path> files;
+    private boolean loaded;
+
+    Site(String siteId, NavigableSet<String> features, SiteOptions options) {
+      this.siteId = siteId;
+      this.features = features;
+      this.options = options;
+      this.files = new ArrayList<>();
+    }
+
+    /**
+     * Adds a snapshot file of the site, files being loaded in the order they are added.
+     */
+    void addFile(Path file, long bytes) {
+      this.files.add(file);
+      this.bytes += bytes;
+    }
+
+    String getSiteId() {
+      return siteId;
+    }
+
+    NavigableSet<String> getFeatures() {
+      return features;
+    }
+
+    SiteOptions getOptions() {
+      return options;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of ints backed by a sorted array, so the set costs about four bytes per element.
+ * Adding a value below the largest one shifts the array, so the set suits ids that are mostly
+ * added in increasing order, such as the per month guid ids of a {@link SecondaryIndex}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class SortedIntSet {
+
+  private static final int INITIAL_CAPACITY = 4;
+  private static final long ARRAY_OVERHEAD = 16;
+  private static final long OBJECT_OVERHEAD = 24;
+
+  private int[] values;
+  private int size;
+
+  SortedIntSet() {
+    this.values = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * @param value
+   *     the value to add
+   * @return true if the value was not in the set
+   */
+  synchronized boolean add(int value) {
+    int pos = size;
+    if (size > 0 && value <= values[size - 1]) {
+      pos = Arrays.binarySearch(values, 0, size, value);
+      if (pos >= 0) {
+        return false;
+      }
+      pos = -pos - 1;
+    }
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size + (size >> 1) + 1);
+    }
+    System.arraycopy(values, pos, values, pos + 1, size - pos);
+    values[pos] = value;
+    size++;
+    return true;
+  }
+
+  synchronized boolean contains(int value) {
+    return Arrays.binarySearch(values, 0, size, value) >= 0;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return a sorted copy of the values
+   */
+  synchronized int[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * @return the estimated heap footprint of the set, in bytes
+   */
+  synchronized long estimateBytes() {
+    return OBJECT_OVERHEAD + ARRAY_OVERHEAD + 4L * values.length;
+  }
+
+  /**
+   * Intersects two sorted arrays of distinct values.
+   *
+   * @return the sorted values present in both arrays
+   */
+  static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, n);
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * A {@link StorageEngine} keeping each table in a single sorted map of partitions, themselves
+ * sorted maps of columns. Partitions are kept in key order rather than token order, so that range
+ * scans only visit the partitions of the range. There is no spilling, striping nor versioning of
+ * counters: the engine mostly serves as a second implementation of the {@link StorageTable}
+ * contract and as a baseline for other engines.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class SortedMapStorageEngine implements StorageEngine {
+
+  public static final String NAME = "sorted_map";
+
+  private static final String NON_INTEGER_COUNTER_TYPE
+      = "Non integer counter type for counter '%s': %s";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public StorageTable createTable(String name, ColumnDefinition definition) {
+    return new Table(name, definition);
+  }
+
+  private static class Table implements StorageTable {
+    private String name;
+    private ColumnDefinition columnDefinition;
+    private ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Object>> partitions;
+    private Footprint footprint;
+
+    Table(String name, ColumnDefinition columnDefinition) {
+      this.name = name;
+      this.columnDefinition = columnDefinition;
+      this.partitions = new ConcurrentSkipListMap<>();
+      this.footprint = new Footprint(null);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public ColumnDefinition getColumnDefinition() {
+      return columnDefinition;
+    }
+
+    public void put(String partitionKey, String column, Object value) {
+      Object oldVal = partition(partitionKey).put(column, value);
+      footprint.add(null == oldVal ? Footprint.columnBytes(column, value)
+          : Footprint.valueBytes(value) - Footprint.valueBytes(oldVal));
+    }
+
+    public boolean putIfAbsent(String partitionKey, String column, Object value) {
+      if (null != partition(partitionKey).putIfAbsent(column, value)) {
+        return false;
+      }
+      footprint.add(Footprint.columnBytes(column, value));
+      return true;
+    }
+
+    public int increment(String partitionKey, String column, int delta) {
+      ConcurrentSkipListMap<String, Object> columns = partition(partitionKey);
+      while (true) {
+        Object oldVal = columns.get(column);
+        if (null == oldVal) {
+          if (null == columns.putIfAbsent(column, delta)) {
+            footprint.add(Footprint.columnBytes(column, delta));
+            return 0;
+          }
+        } else if (!(oldVal instanceof Integer)) {
+          throw new IllegalStateException(String.format(NON_INTEGER_COUNTER_TYPE, column, oldVal));
+        } else if (columns.replace(column, oldVal, (int) oldVal + delta)) {
+          return (int) oldVal;
+        }
+      }
+    }
+
+    public Object select(String partitionKey, String column) {
+      Map<String, Object> columns = partitions.get(partitionKey);
+      return null == columns ? null : columns.get(column);
+    }
+
+    public Map<String, Object> selectPartition(String partitionKey) {
+      Map<String, Object> columns = partitions.get(partitionKey);
+      return null == columns ? Map.of() : Collections.unmodifiableMap(columns);
+    }
+
+    public void forEachPartitionKey(String prefix, Consumer<String> action) {
+      for (String key : partitions.tailMap(prefix, true).keySet()) {
+        if (!key.startsWith(prefix)) {
+          break;
+        }
+        action.accept(key);
+      }
+    }
+
+    public ScanPage scan(String pagingState, int pageSize) {
+      if (pageSize < 1) {
+        throw new IllegalArgumentException(String.format("Invalid page size: %d", pageSize));
+      }
+      List<ScanPage.Row> rows = new ArrayList<>(pageSize);
+      ConcurrentNavigableMap<String, ConcurrentSkipListMap<String, Object>> range = partitions;
+      String from = null;
+      String afterColumn = null;
+      if (null != pagingState) {
+        String[] state = ScanPage.decodePagingState(pagingState);
+        from = state[0];
+        afterColumn = state[1];
+        range = partitions.tailMap(from, true);
+      }
+      for (Map.Entry<String, ConcurrentSkipListMap<String, Object>> partition : range.entrySet()) {
+        NavigableMap<String, Object> columns = partition.getKey().equals(from)
+            ? partition.getValue().tailMap(afterColumn, false) : partition.getValue();
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+          rows.add(new ScanPage.Row(partition.getKey(), column.getKey(), column.getValue()));
+          if (rows.size() == pageSize) {
+            return new ScanPage(rows, ScanPage.pagingState(rows));
+          }
+        }
+      }
+      return new ScanPage(rows, null);
+    }
+
+    public long drop(String partitionKey) {
+      Map<String, Object> columns = partitions.remove(partitionKey);
+      if (null == columns) {
+        return 0;
+      }
+      long bytes = partitionBytes(partitionKey, columns);
+      footprint.add(-bytes);
+      return bytes;
+    }
+
+    public void writeSnapshot(DataOutput out) throws IOException {
+      List<Map.Entry<String, ConcurrentSkipListMap<String, Object>>> entries =
+          new ArrayList<>(partitions.entrySet());
+      out.writeInt(entries.size());
+      for (Map.Entry<String, ConcurrentSkipListMap<String, Object>> partition : entries) {
+        out.writeUTF(partition.getKey());
+        // Copied so that the number of columns matches the columns written
+        PartitionCodec.write(out, new TreeMap<>(partition.getValue()));
+      }
+    }
+
+    public void readSnapshot(DataInput in) throws IOException {
+      int numPartitions = in.readInt();
+      for (int i = 0; i < numPartitions; i++) {
+        String key = in.readUTF();
+        ConcurrentSkipListMap<String, Object> columns = new ConcurrentSkipListMap<>(
+            PartitionCodec.read(in, new Footprint(null)).getAll());
+        long bytes = partitionBytes(key, columns);
+        Map<String, Object> replaced = partitions.put(key, columns);
+        footprint.add(null == replaced ? bytes : bytes - partitionBytes(key, replaced));
+      }
+    }
+
+    public int size() {
+      return partitions.size();
+    }
+
+    public long getEstimatedBytes() {
+      return footprint.get();
+    }
+
+    private ConcurrentSkipListMap<String, Object> partition(String partitionKey) {
+      ConcurrentSkipListMap<String, Object> columns = partitions.get(partitionKey);
+      if (null != columns) {
+        return columns;
+      }
+      ConcurrentSkipListMap<String, Object> created = new ConcurrentSkipListMap<>();
+      columns = partitions.putIfAbsent(partitionKey, created);
+      if (null == columns) {
+        footprint.add(Footprint.partitionBytes(partitionKey));
+        return created;
+      }
+      return columns;
+    }
+
+    private static long partitionBytes(String key, Map<String, Object> columns) {
+      long bytes = Footprint.partitionBytes(key);
+      for (Map.Entry<String, Object> column : columns.entrySet()) {
+        bytes += Footprint.columnBytes(column.getKey(), column.getValue());
+      }
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local disk tier of a {@link ColumnFamily}. Evicted partitions are appended to a single spill
+ * file per table and located through an in-memory index of their offsets. Faulting a partition
+ * back in removes it from the index; the space it used in the file is not reclaimed until the
+ * table is dropped.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class SpillStore {
+
+  private FileChannel channel;
+  private Map<String, long[]> index;
+  private AtomicLong spilledBytes;
+  private AtomicLong evictions;
+  private AtomicLong faults;
+
+  SpillStore(Path directory, String tableName) {
+    try {
+      Files.createDirectories(directory);
+      this.channel = FileChannel.open(directory.resolve(tableName.concat(".spill")),
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.index = new ConcurrentHashMap<>();
+    this.spilledBytes = new AtomicLong();
+    this.evictions = new AtomicLong();
+    this.faults = new AtomicLong();
+  }
+
+  /**
+   * Appends a partition to the spill file.
+   *
+   * @param key
+   *     the partition key
+   * @param columns
+   *     the partition's columns
+   */
+  synchronized void write(String key, Map<String, Object> columns) {
+    byte[] bytes = PartitionCodec.encode(columns);
+    try {
+      long position = channel.size();
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+      index.put(key, new long[]{position, bytes.length});
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    spilledBytes.addAndGet(bytes.length);
+    evictions.incrementAndGet();
+  }
+
+  /**
+   * Reads a spilled partition and removes it from the store.
+   *
+   * @param key
+   *     the partition key
+   * @param footprint
+   *     the footprint the partition will be accounted to once back in memory
+   * @return the partition or null if it was not spilled
+   */
+  ColumnFamilyData faultIn(String key, Footprint footprint) {
+    long[] location = index.remove(key);
+    if (null == location) {
+      return null;
+    }
+    spilledBytes.addAndGet(-location[1]);
+    faults.incrementAndGet();
+    return PartitionCodec.decode(read(location), footprint);
+  }
+
+  /**
+   * Forgets a spilled partition, e.g. once it is dropped from its table.
+   *
+   * @param key
+   *     the partition key
+   * @return true if the partition was spilled
+   */
+  boolean remove(String key) {
+    long[] location = index.remove(key);
+    if (null == location) {
+      return false;
+    }
+    spilledBytes.addAndGet(-location[1]);
+    return true;
+  }
+
+  /**
+   * Reads a spilled partition, leaving it in the store.
+   *
+   * @param key
+   *     the partition key
+   * @return the partition or null if it is not spilled
+   */
+  ColumnFamilyData peek(String key) {
+    long[] location = index.get(key);
+    return null == location ? null : PartitionCodec.decode(read(location), new Footprint(null));
+  }
+
+  private byte[] read(long[] location) {
+    ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, location[0] + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of spill file");
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * @param key
+   *     the partition key
+   * @return the offset of the partition in the spill file, -1 if it is not spilled
+   */
+  long position(String key) {
+    long[] location = index.get(key);
+    return null == location ? -1 : location[0];
+  }
+
+  boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  Set<String> keys() {
+    return index.keySet();
+  }
+
+  int size() {
+    return index.size();
+  }
+
+  long getSpilledBytes() {
+    return spilledBytes.get();
+  }
+
+  long getEvictions() {
+    return evictions.get();
+  }
+
+  long getFaults() {
+    return faults.get();
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+/**
+ * Storage engine service provider interface: creates the {@link StorageTable}s {@link Database}
+ * keeps its guid data and counts in. {@link InMemoryStorageEngine} is the default engine, and
+ * the only one supporting memory budgets, checkpoints, striped counters and read views. Other
+ * engines are picked by name with {@link StorageEngines#forName(String)}, and may be plugged in
+ * from other jars through {@link java.util.ServiceLoader}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public interface StorageEngine {
+
+  /**
+   * @return the name the engine is selected by
+   */
+  String getName();
+
+  /**
+   * @param name
+   *     the table name
+   * @param definition
+   *     the partitioning and clustering keys
+   * @return a new, empty table
+   */
+  StorageTable createTable(String name, ColumnDefinition definition);
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Looks up {@link StorageEngine}s by name: the built in engines first, then the engines
+ * registered with {@link ServiceLoader} under {@code
+ * META-INF/services/com.gps.cardinality.storage.StorageEngine}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class StorageEngines {
+
+  private StorageEngines() {
+  }
+
+  /**
+   * @param name
+   *     the name of the engine, see {@link StorageEngine#getName()}
+   * @return a new instance of the engine
+   * @throws IllegalArgumentException
+   *     if no engine has that name
+   */
+  public static StorageEngine forName(String name) {
+    List<String> names = new ArrayList<>();
+    List<StorageEngine> builtIn =
+        List.of(new InMemoryStorageEngine(), new SortedMapStorageEngine());
+    for (StorageEngine engine : builtIn) {
+      if (engine.getName().equals(name)) {
+        return engine;
+      }
+      names.add(engine.getName());
+    }
+    for (StorageEngine engine : ServiceLoader.load(StorageEngine.class)) {
+      if (engine.getName().equals(name)) {
+        return engine;
+      }
+      names.add(engine.getName());
+    }
+    throw new IllegalArgumentException(String.format(
+        "Unknown storage engine '%s', expected one of %s", name, names));
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A table of a {@link StorageEngine}: partitions of named columns, addressed by the partition
+ * key and full column name layouts of a {@link ColumnDefinition}, see {@link PreparedStatement}.
+ * Column values are counters ({@code Integer}) or strings. Every method is called concurrently
+ * by tracking and query threads, and single column writes must be atomic.
+ *
+ * <p>
+ * {@link #writeSnapshot(DataOutput)} and {@link #readSnapshot(DataInput)} only need to agree
+ * with each other. Conformance to this contract is checked by the storage engine conformance
+ * tests, which every engine is expected to pass.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public interface StorageTable {
+
+  String getName();
+
+  ColumnDefinition getColumnDefinition();
+
+  /**
+   * Writes a column, creating the partition if needed (upsert).
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @param value
+   *     the column value
+   */
+  void put(String partitionKey, String column, Object value);
+
+  /**
+   * Writes a column unless it already exists, creating the partition if needed. When several
+   * threads insert the same column, exactly one of them succeeds.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @param value
+   *     the column value
+   * @return true if the column was inserted
+   */
+  boolean putIfAbsent(String partitionKey, String column, Object value);
+
+  /**
+   * Atomically increments a counter column, creating the partition and the counter if needed.
+   * Concurrent increments are never lost.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @param delta
+   *     the amount to add to the counter
+   * @return the previous value of the counter, 0 if it did not exist
+   */
+  int increment(String partitionKey, String column, int delta);
+
+  /**
+   * Adds to a counter column without reading it back, see {@link #increment(String, String,
+   * int)}.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @param delta
+   *     the amount to add to the counter
+   * @param hot
+   *     a hint that the counter is contended, which engines are free to ignore
+   */
+  default void add(String partitionKey, String column, int delta, boolean hot) {
+    increment(partitionKey, column, delta);
+  }
+
+  /**
+   * Reads a single column (point get).
+   *
+   * @param partitionKey
+   *     the partition key
+   * @param column
+   *     the full column name
+   * @return the column value or null if either the partition or the column does not exist
+   */
+  Object select(String partitionKey, String column);
+
+  /**
+   * Reads a batch of single columns.
+   *
+   * @param partitionKeys
+   *     the partition key of each request
+   * @param columns
+   *     the full column name of each request
+   * @return the column values, in request order, null where either the partition or the column
+   * does not exist
+   */
+  default Object[] multiGet(String[] partitionKeys, String[] columns) {
+    Object[] values = new Object[partitionKeys.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = select(partitionKeys[i], columns[i]);
+    }
+    return values;
+  }
+
+  /**
+   * @param partitionKey
+   *     the partition key
+   * @return the columns of a partition in column name order, empty if the partition does not
+   * exist
+   */
+  Map<String, Object> selectPartition(String partitionKey);
+
+  /**
+   * Scans the keys of the partitions in a key range (range scan).
+   *
+   * @param prefix
+   *     the start of the keys, empty for every partition
+   * @param action
+   *     called with the key of each partition starting with the prefix, in no particular order
+   */
+  void forEachPartitionKey(String prefix, Consumer<String> action);
+
+  /**
+   * Scans the whole table one page of rows at a time. Rows of a partition are returned in
+   * column order, partitions in an order of the engine's choosing that stays the same across
+   * pages.
+   *
+   * @param pagingState
+   *     the paging state of the previous page, null to start from the beginning
+   * @param pageSize
+   *     the maximum number of rows to return
+   * @return the next page of rows
+   */
+  ScanPage scan(String pagingState, int pageSize);
+
+  /**
+   * Deletes a partition.
+   *
+   * @param partitionKey
+   *     the partition key
+   * @return the estimated number of bytes freed, 0 if the partition did not exist
+   */
+  long drop(String partitionKey);
+
+  /**
+   * Writes every partition (snapshot). Partitions written to during the snapshot are written in
+   * whatever state they are in.
+   *
+   * @param out
+   *     the snapshot output
+   * @throws IOException
+   *     if the snapshot could not be written
+   */
+  void writeSnapshot(DataOutput out) throws IOException;
+
+  /**
+   * Loads the partitions written by {@link #writeSnapshot(DataOutput)}, replacing the partitions
+   * with the same keys.
+   *
+   * @param in
+   *     the snapshot input
+   * @throws IOException
+   *     if the snapshot could not be read
+   */
+  void readSnapshot(DataInput in) throws IOException;
+
+  /**
+   * @return the number of partitions
+   */
+  int size();
+
+  /**
+   * @return the estimated footprint of the table, in bytes
+   */
+  long getEstimatedBytes();
+
+  /**
+   * Writes the whole table, in scan order, paging through it so that only one page of rows is
+   * held in memory at a time.
+   *
+   * @param writer
+   *     the writer to write to
+   * @throws IOException
+   *     if writing fails
+   */
+  default void write(Writer writer) throws IOException {
+    writer.write("Column Family: '");
+    writer.write(getName());
+    writer.write("'\n");
+    String partitionKey = null;
+    String pagingState = null;
+    do {
+      ScanPage page = scan(pagingState, 1000);
+      for (ScanPage.Row row : page.getRows()) {
+        if (!row.getPartitionKey().equals(partitionKey)) {
+          partitionKey = row.getPartitionKey();
+          writer.write("Partition Key: '");
+          writer.write(partitionKey);
+          writer.write("'\n");
+        }
+        writer.write("=>(column='");
+        writer.write(row.getColumn());
+        writer.write("', value='");
+        writer.write(row.getValue().toString());
+        writer.write("')");
+        writer.write('\n');
+      }
+      pagingState = page.getPagingState();
+    } while (null != pagingState);
+  }
+}
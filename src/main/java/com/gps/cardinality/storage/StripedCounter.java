@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A counter split into several sub-counters (stripes), each on its own cache line, that are
+ * summed on read. Threads add to the stripe picked by their id, so threads incrementing the same
+ * hot counter rarely collide. Stored in place of the {@link Integer} value of hot counter columns
+ * by {@link ColumnFamilyData}.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class StripedCounter {
+
+  /**
+   * Number of ints per stripe, so that two stripes never share a 64 bytes cache line.
+   */
+  private static final int PADDING = 16;
+
+  private AtomicIntegerArray cells;
+  private int mask;
+
+  /**
+   * @param stripes
+   *     the number of stripes, rounded up to the next power of two
+   * @param initialValue
+   *     the value of the counter
+   */
+  StripedCounter(int stripes, int initialValue) {
+    int size = Integer.highestOneBit(Math.max(2, stripes) - 1) << 1;
+    this.cells = new AtomicIntegerArray(size * PADDING);
+    this.mask = size - 1;
+    cells.set(0, initialValue);
+  }
+
+  void add(int delta) {
+    long id = Thread.currentThread().getId();
+    // Spreads consecutive thread ids over the stripes
+    int stripe = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    cells.addAndGet(stripe * PADDING, delta);
+  }
+
+  /**
+   * @return the sum of the stripes, concurrent additions may or may not be included
+   */
+  int sum() {
+    int sum = 0;
+    for (int i = 0; i <= mask; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  int getStripes() {
+    return mask + 1;
+  }
+
+  long estimateBytes() {
+    return Footprint.INTEGER_BYTES + 16 + 4L * cells.length();
+  }
+
+  public String toString() {
+    return String.valueOf(sum());
+  }
+}
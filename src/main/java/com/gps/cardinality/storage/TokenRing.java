@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import com.gps.cardinality.utils.Hashing;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Cassandra inspired consistent hashing ring. Each shard owns a number of virtual nodes placed
+ * at pseudo random positions of the 64 bit token space and a partition key belongs to the shard
+ * owning the first virtual node at or after the key's token (wrapping around the ring).
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class TokenRing {
+
+  private static final double TOKEN_SPACE = Math.pow(2, 64);
+
+  private int numShards;
+  private NavigableMap<Long, Integer> ring;
+
+  /**
+   * @param numShards
+   *     the number of shards sharing the ring
+   * @param virtualNodes
+   *     the number of virtual nodes placed on the ring for each shard
+   */
+  public TokenRing(int numShards, int virtualNodes) {
+    if (numShards < 1 || virtualNodes < 1) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid ring size: %d shards, %d virtual nodes", numShards, virtualNodes));
+    }
+    this.numShards = numShards;
+    NavigableMap<Long, Integer> ring = new TreeMap<>();
+    for (int shard = 0; shard < numShards; shard++) {
+      for (int vnode = 0; vnode < virtualNodes; vnode++) {
+        ring.put(Hashing.hash64(String.format("shard-%d-vnode-%d", shard, vnode)), shard);
+      }
+    }
+    this.ring = Collections.unmodifiableNavigableMap(ring);
+  }
+
+  /**
+   * @param partitionKey
+   *     a partition key
+   * @return the token of the partition key on the ring
+   */
+  public static long token(String partitionKey) {
+    return Hashing.hash64(partitionKey);
+  }
+
+  /**
+   * @param partitionKey
+   *     a partition key
+   * @return the shard owning the partition key
+   */
+  public int shardFor(String partitionKey) {
+    return shardForToken(token(partitionKey));
+  }
+
+  /**
+   * @param token
+   *     a token
+   * @return the shard owning the token
+   */
+  public int shardForToken(long token) {
+    Map.Entry<Long, Integer> owner = ring.ceilingEntry(token);
+    return null == owner ? ring.firstEntry().getValue() : owner.getValue();
+  }
+
+  public int getNumShards() {
+    return numShards;
+  }
+
+  /**
+   * Computes the fraction of the token space owned by each shard. Useful to study how evenly the
+   * virtual nodes spread the load before any data is written.
+   *
+   * @return the fraction of the token space owned by each shard, indexed by shard
+   */
+  public double[] ownership() {
+    double[] owned = new double[numShards];
+    long previous = ring.lastKey();
+    for (Map.Entry<Long, Integer> vnode : ring.entrySet()) {
+      // Token ranges are (previous, current], wrapping around the ring for the first vnode
+      long width = vnode.getKey() - previous;
+      owned[vnode.getValue()] += (width > 0 ? width : width + TOKEN_SPACE) / TOKEN_SPACE;
+      previous = vnode.getKey();
+    }
+    if (ring.size() == 1) {
+      owned[ring.firstEntry().getValue()] = 1.0;
+    }
+    return owned;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+/**
+ * How a site's events are laid out in storage.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public enum TrackingMode {
+  /**
+   * Every feature combination of an event is written to the guid data table and unique visits
+   * are counted in the monthly counts table as they come in. Writes are amplified by the number
+   * of combinations but reads are a single lookup.
+   */
+  PRECOMPUTED,
+  /**
+   * Only the full feature tuple of an event is written, clustered by guid under a single monthly
+   * partition. Counts are rolled up at query time by scanning the month and de-duplicating guids.
+   * Each event is a single write at the cost of slower, cached, reads.
+   */
+  FULL_TUPLE
+}
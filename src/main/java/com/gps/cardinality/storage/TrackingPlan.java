@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import com.gps.cardinality.utils.Timestamps.Intervals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The writes a single site event expands to, as computed by {@link Database#plan(String, long,
+ * String, NavigableMap)} and applied by {@link Database#apply(TrackingPlan)}. Splitting the two
+ * allows combination expansion and storage updates to run on different threads.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class TrackingPlan {
+
+  String siteId;
+  Intervals intervals;
+  String guid;
+  NavigableMap<String, String> features;
+  /**
+   * The feature value combinations to write, null when the site tracks full tuples.
+   */
+  List<Map<String, Object>> featureCombos;
+
+  TrackingPlan(String siteId, Intervals intervals, String guid,
+      NavigableMap<String, String> features, List<Map<String, Object>> featureCombos) {
+    this.siteId = siteId;
+    this.intervals = intervals;
+    this.guid = guid;
+    this.features = features;
+    this.featureCombos = featureCombos;
+  }
+
+  public String getSiteId() {
+    return siteId;
+  }
+
+  /**
+   * @return the number of guid data rows the plan writes to
+   */
+  public int size() {
+    return null == featureCombos ? 1 : featureCombos.size();
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write epochs of a table with versioned counters, see {@link CounterVersion}. Writers tag the
+ * counter versions they create with the current epoch, every write of a group (e.g. the
+ * combinations of an event) with the same one. Opening a {@link ReadView} starts a new epoch and
+ * pins the latest epoch whose writers have all completed, so that the view sees every group
+ * written up to it and nothing of later ones.
+ *
+ * <p>
+ * Writers never wait: they publish their epoch in a per thread slot that readers scan, and a
+ * reader that finds a writer still active in an epoch simply pins the epoch before it. Readers
+ * synchronize with each other only, when pinning and unpinning epochs.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+class VersionClock {
+
+  /**
+   * Epoch of the latest counter versions, read by writers that do not pin an epoch.
+   */
+  static final long LATEST = Long.MAX_VALUE;
+
+  private AtomicLong epoch;
+  private Set<Writer> writers;
+  private ThreadLocal<Writer> writer;
+  /**
+   * The number of open views of each pinned epoch.
+   */
+  private TreeMap<Long, Integer> pinned;
+  private long stableEpoch;
+  private volatile long pruneEpoch;
+
+  VersionClock() {
+    this.epoch = new AtomicLong(1);
+    this.writers = ConcurrentHashMap.newKeySet();
+    this.writer = ThreadLocal.withInitial(() -> {
+      Writer writer = new Writer(Thread.currentThread());
+      writers.add(writer);
+      return writer;
+    });
+    this.pinned = new TreeMap<>();
+  }
+
+  /**
+   * The epoch a thread is writing in. Only its owner thread sets it but readers scan it.
+   */
+  private static class Writer {
+    private Thread owner;
+    private volatile long epoch;
+    private int depth;
+
+    Writer(Thread owner) {
+      this.owner = owner;
+    }
+  }
+
+  /**
+   * Starts a group of writes, or joins the group the thread already started. Every {@link
+   * #enter()} must be followed by an {@link #exit()}.
+   *
+   * @return the epoch of the group's writes
+   */
+  long enter() {
+    Writer writer = this.writer.get();
+    if (0 == writer.depth++) {
+      long current;
+      do {
+        // Readers that started a new epoch before the slot was published are seen by the check
+        current = epoch.get();
+        writer.epoch = current;
+      } while (current != epoch.get());
+    }
+    return writer.epoch;
+  }
+
+  /**
+   * Ends the group of writes started by the matching {@link #enter()}.
+   */
+  void exit() {
+    Writer writer = this.writer.get();
+    if (0 == --writer.depth) {
+      writer.epoch = 0;
+    }
+  }
+
+  /**
+   * Starts a new epoch for writers and pins the latest epoch whose writes are all complete.
+   *
+   * @return the pinned epoch
+   */
+  synchronized long pin() {
+    long stable = epoch.getAndIncrement();
+    for (Writer writer : writers) {
+      long active = writer.epoch;
+      if (0 != active && active <= stable) {
+        stable = active - 1;
+      } else if (0 == active && !writer.owner.isAlive()) {
+        // The owner can no longer write, forget it
+        writers.remove(writer);
+      }
+    }
+    stableEpoch = Math.max(stableEpoch, stable);
+    pinned.merge(stableEpoch, 1, Integer::sum);
+    updatePruneEpoch();
+    return stableEpoch;
+  }
+
+  /**
+   * Releases an epoch pinned by {@link #pin()}, letting writers drop the versions only it read.
+   */
+  synchronized void unpin(long epoch) {
+    pinned.computeIfPresent(epoch, (e, views) -> views > 1 ? views - 1 : null);
+    updatePruneEpoch();
+  }
+
+  private void updatePruneEpoch() {
+    Map.Entry<Long, Integer> oldest = pinned.firstEntry();
+    pruneEpoch = null == oldest ? stableEpoch : Math.min(oldest.getKey(), stableEpoch);
+  }
+
+  /**
+   * @return the oldest epoch open and future views may read, versions older than the latest
+   * one as of this epoch are no longer needed
+   */
+  long getPruneEpoch() {
+    return pruneEpoch;
+  }
+
+  /**
+   * @return the number of open views
+   */
+  synchronized int getOpenViews() {
+    int views = 0;
+    for (int count : pinned.values()) {
+      views += count;
+    }
+    return views;
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Replays a visits CSV file, as written by {@link com.gps.cardinality.storage.FileWriter}, into
+ * {@link EventBatch}es. The header names the columns: {@code guid,timestamp} followed by the
+ * features. Batch features missing from the file, and empty values, are read as absent.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class CsvEventReader implements EventReader {
+
+  private BufferedReader reader;
+  private List<String> featureNames;
+  private int lineNumber;
+
+  /**
+   * @param path
+   *     the CSV file
+   */
+  public CsvEventReader(Path path) {
+    try {
+      this.reader = Files.newBufferedReader(path);
+      String header = reader.readLine();
+      if (null == header) {
+        throw new IllegalArgumentException(String.format("Empty CSV file: %s", path));
+      }
+      List<String> columns = parse(header);
+      if (columns.size() < 2 || !columns.get(0).equals("guid")
+          || !columns.get(1).equals("timestamp")) {
+        throw new IllegalArgumentException(String.format("Unexpected CSV header: %s", header));
+      }
+      this.featureNames = columns.subList(2, columns.size());
+      this.lineNumber = 1;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public List<String> getFeatureNames() {
+    return featureNames;
+  }
+
+  @Override
+  public int read(EventBatch batch, int maxEvents) {
+    // Position in the file of each of the batch's features, -1 if the file does not have it
+    List<String> batchFeatures = batch.getFeatureNames();
+    int[] columns = new int[batchFeatures.size()];
+    for (int f = 0; f < columns.length; f++) {
+      int column = featureNames.indexOf(batchFeatures.get(f));
+      columns[f] = column < 0 ? -1 : column + 2;
+    }
+    int[] featureIds = new int[columns.length];
+    int read = 0;
+    try {
+      String line;
+      while (read < maxEvents && null != (line = reader.readLine())) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        List<String> fields = parse(line);
+        if (fields.size() != featureNames.size() + 2) {
+          throw new IllegalArgumentException(
+              String.format("Malformed CSV line %d: %s", lineNumber, line));
+        }
+        UUID guid = UUID.fromString(fields.get(0));
+        for (int f = 0; f < columns.length; f++) {
+          String value = columns[f] < 0 ? "" : fields.get(columns[f]);
+          featureIds[f] = value.isEmpty() ? EventBatch.ABSENT : batch.featureId(f, value);
+        }
+        batch.add(guid.getMostSignificantBits(), guid.getLeastSignificantBits(),
+            Long.parseLong(fields.get(1)), featureIds);
+        read++;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return read;
+  }
+
+  /**
+   * Splits a CSV line, unquoting quoted fields.
+   */
+  static List<String> parse(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  @Override
+  public void close() {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -101,6 +101,68 @@ public class DataGenerator {
     return generate(rand, guids, referers, landingPages, intervalStart, intervalEnd, throttle);
   }
 
+  /**
+   * Appends generated events to a batch, without allocating a {@link GeneratedData} per event.
+   * The batch's first feature is the referer and its second feature the landing page.
+   *
+   * @param rand
+   *     a random number generator
+   * @param guids
+   *     a list of UUIDs from which to randomly select
+   * @param referers
+   *     a list of referer sites from which to randomly select
+   * @param landingPages
+   *     a list of landing pages from which to randomly select
+   * @param intervalStart
+   *     the mock data timestamp interval start
+   * @param intervalEnd
+   *     the mock data timestamp interval end
+   * @param throttle
+   *     a rate limiter, acquired once per event
+   * @param batch
+   *     the batch to append to
+   * @param count
+   *     the number of events to generate
+   */
+  public static void generate(
+      Random rand, List<UUID> guids, List<String> referers, List<String> landingPages,
+      int intervalStart, int intervalEnd, Throttle throttle, EventBatch batch, int count) {
+    int[] refererIds = new int[referers.size()];
+    for (int i = 0; i < refererIds.length; i++) {
+      refererIds[i] = batch.featureId(0, referers.get(i));
+    }
+    int[] landingPageIds = new int[landingPages.size()];
+    for (int i = 0; i < landingPageIds.length; i++) {
+      landingPageIds[i] = batch.featureId(1, landingPages.get(i));
+    }
+    int[] featureIds = new int[2];
+    for (int i = 0; i < count; i++) {
+      if (null != throttle) {
+        throttle.acquire();
+      }
+      UUID guid = guids.get(rand.nextInt(guids.size()));
+      long timestamp = rand.nextInt((intervalEnd - intervalStart) + 1) + intervalStart;
+      featureIds[0] = refererIds[rand.nextInt(refererIds.length)];
+      featureIds[1] = landingPageIds[rand.nextInt(landingPageIds.length)];
+      batch.add(guid.getMostSignificantBits(), guid.getLeastSignificantBits(), timestamp,
+          featureIds);
+    }
+  }
+
+  /**
+   * @param batch
+   *     a batch filled by {@link #generate(Random, List, List, List, int, int, Throttle,
+   *     EventBatch, int)}
+   * @param event
+   *     the index of an event of the batch
+   * @return the event as a CSV line, see {@link GeneratedData#toCsv()}
+   */
+  public static String toCsv(EventBatch batch, int event) {
+    return String.format("\"%s\",\"%d\",\"%s\",\"%s\"", batch.getGuid(event),
+        batch.getTimestamp(event), batch.getFeatureValue(0, batch.getFeatureId(0, event)),
+        batch.getFeatureValue(1, batch.getFeatureId(1, event)));
+  }
+
   public static List<UUID> generateUUIDs(int count) {
     List<UUID> ret = new ArrayList<>();
     IntStream.range(0, count).forEach(i -> ret.add(UUID.randomUUID()));
@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Replays the events of an archive written by {@link EventArchiveWriter} into {@link
+ * EventBatch}es. Only the blocks whose time range overlaps the requested one are read and
+ * inflated, and each block's feature dictionaries are mapped to the batch's once, so decoding
+ * is a copy of its columns into the batch.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class EventArchiveReader implements EventReader {
+
+  private final RandomAccessFile file;
+  private final List<String> featureNames;
+  private final long from;
+  private final long to;
+  private final int numBlocks;
+  /**
+   * Index entries of the blocks overlapping the time range, see {@link EventArchiveWriter}.
+   */
+  private final List<long[]> blocks;
+  private final Inflater inflater;
+  private int nextBlock;
+  private long[] guidHi;
+  private long[] guidLo;
+  private long[] timestamps;
+  private int[][] featureIds;
+  private String[][] values;
+  private int size;
+  private int position;
+
+  /**
+   * @param path
+   *     the archive file
+   */
+  public EventArchiveReader(Path path) {
+    this(path, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param path
+   *     the archive file
+   * @param from
+   *     the timestamp of the first events to read, inclusive
+   * @param to
+   *     the timestamp of the last events to read, exclusive
+   */
+  public EventArchiveReader(Path path, long from, long to) {
+    this.from = from;
+    this.to = to;
+    this.inflater = new Inflater();
+    try {
+      this.file = new RandomAccessFile(path.toFile(), "r");
+      if (file.length() < 24 || file.readInt() != EventArchiveWriter.MAGIC) {
+        throw new IllegalArgumentException(String.format("Not an event archive: %s", path));
+      }
+      int version = file.readInt();
+      if (version != EventArchiveWriter.VERSION) {
+        throw new IllegalArgumentException(
+            String.format("Unsupported event archive version %d: %s", version, path));
+      }
+      List<String> names = new ArrayList<>();
+      int numFeatures = file.readInt();
+      for (int f = 0; f < numFeatures; f++) {
+        names.add(file.readUTF());
+      }
+      this.featureNames = List.copyOf(names);
+      file.seek(file.length() - 12);
+      long indexOffset = file.readLong();
+      if (file.readInt() != EventArchiveWriter.MAGIC) {
+        throw new IllegalArgumentException(
+            String.format("Event archive was not closed properly: %s", path));
+      }
+      file.seek(indexOffset);
+      this.numBlocks = file.readInt();
+      this.blocks = new ArrayList<>();
+      for (int b = 0; b < numBlocks; b++) {
+        long[] block = new long[]{file.readLong(), file.readInt(), file.readInt(),
+            file.readInt(), file.readLong(), file.readLong()};
+        if (block[4] < to && block[5] >= from) {
+          blocks.add(block);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return whether a file starts like an event archive rather than a CSV file
+   */
+  public static boolean isArchive(Path path) {
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+      return in.readInt() == EventArchiveWriter.MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public List<String> getFeatureNames() {
+    return featureNames;
+  }
+
+  /**
+   * @return the number of blocks of the archive
+   */
+  public int getBlocks() {
+    return numBlocks;
+  }
+
+  /**
+   * @return the number of blocks overlapping the time range, the only ones read
+   */
+  public int getBlocksInRange() {
+    return blocks.size();
+  }
+
+  @Override
+  public int read(EventBatch batch, int maxEvents) {
+    // Batch feature ids of each block value, resolved on first use
+    int[][] batchIds = null;
+    int[] columns = new int[batch.getFeatureNames().size()];
+    for (int f = 0; f < columns.length; f++) {
+      columns[f] = featureNames.indexOf(batch.getFeatureNames().get(f));
+    }
+    int[] ids = new int[columns.length];
+    int read = 0;
+    while (read < maxEvents) {
+      if (position == size) {
+        if (nextBlock == blocks.size()) {
+          break;
+        }
+        readBlock(blocks.get(nextBlock++));
+        batchIds = null;
+      }
+      if (null == batchIds) {
+        batchIds = new int[columns.length][];
+        for (int f = 0; f < columns.length; f++) {
+          batchIds[f] = new int[columns[f] < 0 ? 0 : values[columns[f]].length];
+          Arrays.fill(batchIds[f], EventBatch.ABSENT);
+        }
+      }
+      for (; position < size && read < maxEvents; position++) {
+        long timestamp = timestamps[position];
+        if (timestamp < from || timestamp >= to) {
+          continue;
+        }
+        for (int f = 0; f < columns.length; f++) {
+          int id = columns[f] < 0 ? EventBatch.ABSENT : featureIds[columns[f]][position];
+          if (id != EventBatch.ABSENT) {
+            if (batchIds[f][id] == EventBatch.ABSENT) {
+              batchIds[f][id] = batch.featureId(f, values[columns[f]][id]);
+            }
+            id = batchIds[f][id];
+          }
+          ids[f] = id;
+        }
+        batch.add(guidHi[position], guidLo[position], timestamp, ids);
+        read++;
+      }
+    }
+    return read;
+  }
+
+  private void readBlock(long[] block) {
+    try {
+      byte[] compressed = new byte[(int) block[1]];
+      file.seek(block[0]);
+      file.readFully(compressed);
+      byte[] raw = new byte[(int) block[2]];
+      inflater.reset();
+      inflater.setInput(compressed);
+      if (inflater.inflate(raw) != raw.length) {
+        throw new IllegalStateException(
+            String.format("Truncated event archive block at offset %d", block[0]));
+      }
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+      size = (int) block[3];
+      position = 0;
+      if (null == timestamps || timestamps.length < size) {
+        guidHi = new long[size];
+        guidLo = new long[size];
+        timestamps = new long[size];
+        featureIds = new int[featureNames.size()][size];
+      }
+      values = new String[featureNames.size()][];
+      for (int f = 0; f < values.length; f++) {
+        values[f] = new String[(int) readVarint(in)];
+        for (int v = 0; v < values[f].length; v++) {
+          values[f][v] = in.readUTF();
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        guidHi[i] = in.readLong();
+      }
+      for (int i = 0; i < size; i++) {
+        guidLo[i] = in.readLong();
+      }
+      long previous = block[4];
+      for (int i = 0; i < size; i++) {
+        long zigzag = readVarint(in);
+        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+        timestamps[i] = previous;
+      }
+      for (int[] ids : featureIds) {
+        for (int i = 0; i < size; i++) {
+          ids[i] = (int) readVarint(in) - 1;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (DataFormatException e) {
+      throw new IllegalStateException(
+          String.format("Corrupt event archive block at offset %d", block[0]), e);
+    }
+  }
+
+  static long readVarint(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+    try {
+      file.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Writes site events to a compressed columnar archive, a compact alternative to the visits CSV
+ * file for cold storage. Events are buffered into blocks, each block holding its guids as raw
+ * 128 bit values, its timestamps as deltas and its feature values as ids into per block
+ * dictionaries, deflated as a whole. The block index at the end of the file keeps the time
+ * range of each block so that {@link EventArchiveReader} only reads the blocks of the requested
+ * months.
+ *
+ * <pre>
+ * int                  {@link #MAGIC}
+ * int                  {@link #VERSION}
+ * int                  number of features
+ * UTF*                 feature names
+ * per block:
+ *   byte[]             deflated block
+ * int                  number of blocks
+ * per block:
+ *   long               offset of the block in the file
+ *   int                compressed length
+ *   int                uncompressed length
+ *   int                number of events
+ *   long, long         min and max timestamps of the block's events
+ * long                 offset of the block index
+ * int                  {@link #MAGIC}
+ *
+ * block:
+ *   per feature:
+ *     varint           dictionary size
+ *     UTF*             feature values
+ *   long*              guid most significant bits
+ *   long*              guid least significant bits
+ *   varint*            zigzag coded difference with the previous timestamp, the first one
+ *                      with the block's min timestamp
+ *   per feature:
+ *     varint*          1 + value id, 0 for absent values
+ * </pre>
+ *
+ * Appending is synchronized so that several logging workers can share a writer.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class EventArchiveWriter implements Closeable {
+
+  static final int MAGIC = 0x43455641;
+  static final int VERSION = 1;
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+  private final DataOutputStream out;
+  private final List<String> featureNames;
+  private final int blockSize;
+  private final Deflater deflater;
+  private long position;
+  private final List<long[]> blocks;
+  private long[] guidHi;
+  private long[] guidLo;
+  private long[] timestamps;
+  private int[][] featureIds;
+  private final List<Map<String, Integer>> valueIds;
+  private final List<List<String>> values;
+  private int size;
+  private long events;
+
+  /**
+   * @param path
+   *     the archive file, replaced if it exists
+   * @param featureNames
+   *     the names of the feature columns
+   * @param blockSize
+   *     the number of events per block
+   */
+  public EventArchiveWriter(Path path, List<String> featureNames, int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException(String.format("Invalid block size: %d", blockSize));
+    }
+    this.featureNames = List.copyOf(featureNames);
+    this.blockSize = blockSize;
+    this.deflater = new Deflater(Deflater.BEST_SPEED);
+    this.blocks = new ArrayList<>();
+    this.guidHi = new long[blockSize];
+    this.guidLo = new long[blockSize];
+    this.timestamps = new long[blockSize];
+    this.featureIds = new int[featureNames.size()][blockSize];
+    this.valueIds = new ArrayList<>();
+    this.values = new ArrayList<>();
+    for (int f = 0; f < featureNames.size(); f++) {
+      valueIds.add(new HashMap<>());
+      values.add(new ArrayList<>());
+    }
+    try {
+      this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(this.featureNames.size());
+      for (String featureName : this.featureNames) {
+        out.writeUTF(featureName);
+      }
+      this.position = out.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public List<String> getFeatureNames() {
+    return featureNames;
+  }
+
+  /**
+   * Appends an event.
+   *
+   * @param guid
+   *     the guid of the visitor
+   * @param timestamp
+   *     the timestamp of the event
+   * @param featureValues
+   *     the value of each feature, null if absent
+   */
+  public synchronized void add(UUID guid, long timestamp, String... featureValues) {
+    if (featureValues.length != featureIds.length) {
+      throw new IllegalArgumentException(String.format(
+          "Expected %d feature values, got %d", featureIds.length, featureValues.length));
+    }
+    guidHi[size] = guid.getMostSignificantBits();
+    guidLo[size] = guid.getLeastSignificantBits();
+    timestamps[size] = timestamp;
+    for (int f = 0; f < featureValues.length; f++) {
+      featureIds[f][size] =
+          null == featureValues[f] ? EventBatch.ABSENT : valueId(f, featureValues[f]);
+    }
+    size++;
+    events++;
+    if (size == blockSize) {
+      writeBlock();
+    }
+  }
+
+  private int valueId(int feature, String value) {
+    Integer id = valueIds.get(feature).get(value);
+    if (null == id) {
+      id = values.get(feature).size();
+      values.get(feature).add(value);
+      valueIds.get(feature).put(value, id);
+    }
+    return id;
+  }
+
+  /**
+   * Appends the events of a batch, matching its features to the archive's by name.
+   *
+   * @param batch
+   *     the events
+   */
+  public synchronized void write(EventBatch batch) {
+    int[] columns = new int[featureNames.size()];
+    for (int f = 0; f < columns.length; f++) {
+      columns[f] = batch.getFeatureNames().indexOf(featureNames.get(f));
+    }
+    String[] featureValues = new String[columns.length];
+    for (int event = 0; event < batch.size(); event++) {
+      for (int f = 0; f < columns.length; f++) {
+        int id = columns[f] < 0 ? EventBatch.ABSENT : batch.getFeatureId(columns[f], event);
+        featureValues[f] = id == EventBatch.ABSENT ? null : batch.getFeatureValue(columns[f], id);
+      }
+      add(new UUID(batch.getGuidHi(event), batch.getGuidLo(event)), batch.getTimestamp(event),
+          featureValues);
+    }
+  }
+
+  private void writeBlock() {
+    if (0 == size) {
+      return;
+    }
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    for (int i = 0; i < size; i++) {
+      minTimestamp = Math.min(minTimestamp, timestamps[i]);
+      maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 24);
+    try (DataOutputStream block = new DataOutputStream(bytes)) {
+      for (List<String> dictionary : values) {
+        writeVarint(block, dictionary.size());
+        for (String value : dictionary) {
+          block.writeUTF(value);
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        block.writeLong(guidHi[i]);
+      }
+      for (int i = 0; i < size; i++) {
+        block.writeLong(guidLo[i]);
+      }
+      long previous = minTimestamp;
+      for (int i = 0; i < size; i++) {
+        long delta = timestamps[i] - previous;
+        writeVarint(block, (delta << 1) ^ (delta >> 63));
+        previous = timestamps[i];
+      }
+      for (int[] ids : featureIds) {
+        for (int i = 0; i < size; i++) {
+          writeVarint(block, ids[i] + 1);
+        }
+      }
+      byte[] raw = bytes.toByteArray();
+      byte[] compressed = deflate(raw);
+      out.write(compressed);
+      blocks.add(new long[]{position, compressed.length, raw.length, size, minTimestamp,
+          maxTimestamp});
+      position += compressed.length;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    size = 0;
+    for (int f = 0; f < values.size(); f++) {
+      valueIds.get(f).clear();
+      values.get(f).clear();
+    }
+  }
+
+  private byte[] deflate(byte[] raw) {
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] buffer = new byte[Math.max(64, raw.length / 2)];
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      length += deflater.deflate(buffer, length, buffer.length - length);
+    }
+    return Arrays.copyOf(buffer, length);
+  }
+
+  static void writeVarint(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * @return the number of events appended
+   */
+  public synchronized long getEvents() {
+    return events;
+  }
+
+  /**
+   * Writes the pending block and the block index, then closes the file.
+   */
+  @Override
+  public synchronized void close() {
+    try {
+      writeBlock();
+      long indexOffset = position;
+      out.writeInt(blocks.size());
+      for (long[] block : blocks) {
+        out.writeLong(block[0]);
+        out.writeInt((int) block[1]);
+        out.writeInt((int) block[2]);
+        out.writeInt((int) block[3]);
+        out.writeLong(block[4]);
+        out.writeLong(block[5]);
+      }
+      out.writeLong(indexOffset);
+      out.writeInt(MAGIC);
+      out.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      deflater.end();
+    }
+  }
+}
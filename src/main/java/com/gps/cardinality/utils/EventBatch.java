@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Columnar batch of site events: parallel arrays of guid halves, timestamps and dictionary coded
+ * feature values. A batch is meant to be filled, consumed and {@link #clear() cleared} over and
+ * over: its arrays only grow and its feature dictionaries are kept across batches, so steady
+ * state ingestion allocates next to nothing. Not thread safe.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class EventBatch {
+
+  /**
+   * Feature id of events that do not carry a value for a feature.
+   */
+  public static final int ABSENT = -1;
+
+  private List<String> featureNames;
+  private long[] guidHi;
+  private long[] guidLo;
+  private long[] timestamps;
+  /**
+   * Feature value ids, by feature then event.
+   */
+  private int[][] featureIds;
+  private List<Map<String, Integer>> valueIds;
+  private List<List<String>> values;
+  private int size;
+
+  /**
+   * @param featureNames
+   *     the names of the feature columns
+   * @param capacity
+   *     the initial number of events the batch can hold
+   */
+  public EventBatch(List<String> featureNames, int capacity) {
+    this.featureNames = List.copyOf(featureNames);
+    this.guidHi = new long[capacity];
+    this.guidLo = new long[capacity];
+    this.timestamps = new long[capacity];
+    this.featureIds = new int[featureNames.size()][capacity];
+    this.valueIds = new ArrayList<>();
+    this.values = new ArrayList<>();
+    for (int f = 0; f < featureNames.size(); f++) {
+      valueIds.add(new HashMap<>());
+      values.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Appends an event.
+   *
+   * @param guidHi
+   *     the most significant bits of the guid
+   * @param guidLo
+   *     the least significant bits of the guid
+   * @param timestamp
+   *     the timestamp of the event
+   * @param featureIds
+   *     the id of each feature value, see {@link #featureId(int, String)}, or {@link #ABSENT}
+   */
+  public void add(long guidHi, long guidLo, long timestamp, int... featureIds) {
+    if (featureIds.length != this.featureIds.length) {
+      throw new IllegalArgumentException(String.format(
+          "Expected %d feature ids, got %d", this.featureIds.length, featureIds.length));
+    }
+    if (size == timestamps.length) {
+      grow();
+    }
+    this.guidHi[size] = guidHi;
+    this.guidLo[size] = guidLo;
+    this.timestamps[size] = timestamp;
+    for (int f = 0; f < featureIds.length; f++) {
+      this.featureIds[f][size] = featureIds[f];
+    }
+    size++;
+  }
+
+  /**
+   * Appends an event, dictionary coding its feature values.
+   *
+   * @param guid
+   *     the guid of the visitor
+   * @param timestamp
+   *     the timestamp of the event
+   * @param featureValues
+   *     the value of each feature, null if absent
+   */
+  public void add(UUID guid, long timestamp, String... featureValues) {
+    int[] ids = new int[featureValues.length];
+    for (int f = 0; f < featureValues.length; f++) {
+      ids[f] = null == featureValues[f] ? ABSENT : featureId(f, featureValues[f]);
+    }
+    add(guid.getMostSignificantBits(), guid.getLeastSignificantBits(), timestamp, ids);
+  }
+
+  private void grow() {
+    int capacity = Math.max(16, timestamps.length * 2);
+    guidHi = Arrays.copyOf(guidHi, capacity);
+    guidLo = Arrays.copyOf(guidLo, capacity);
+    timestamps = Arrays.copyOf(timestamps, capacity);
+    for (int f = 0; f < featureIds.length; f++) {
+      featureIds[f] = Arrays.copyOf(featureIds[f], capacity);
+    }
+  }
+
+  /**
+   * Returns the dictionary id of a feature value, assigning one if the value is new.
+   *
+   * @param feature
+   *     the feature column
+   * @param value
+   *     the feature value
+   * @return the value's id
+   */
+  public int featureId(int feature, String value) {
+    Integer id = valueIds.get(feature).get(value);
+    if (null == id) {
+      id = values.get(feature).size();
+      values.get(feature).add(value);
+      valueIds.get(feature).put(value, id);
+    }
+    return id;
+  }
+
+  /**
+   * Empties the batch, keeping its arrays and feature dictionaries.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public List<String> getFeatureNames() {
+    return featureNames;
+  }
+
+  public long getGuidHi(int event) {
+    return guidHi[event];
+  }
+
+  public long getGuidLo(int event) {
+    return guidLo[event];
+  }
+
+  /**
+   * @return the guid of an event in its canonical string form
+   */
+  public String getGuid(int event) {
+    return new UUID(guidHi[event], guidLo[event]).toString();
+  }
+
+  public long getTimestamp(int event) {
+    return timestamps[event];
+  }
+
+  /**
+   * @return the id of an event's feature value, {@link #ABSENT} if the event has none
+   */
+  public int getFeatureId(int feature, int event) {
+    return featureIds[feature][event];
+  }
+
+  /**
+   * @return the feature value of a dictionary id
+   */
+  public String getFeatureValue(int feature, int id) {
+    return values.get(feature).get(id);
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.utils;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Source of previously logged site events, read into {@link EventBatch}es. Batch features are
+ * matched to the source's features by name, features missing from the source are read as absent.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public interface EventReader extends Closeable {
+
+  /**
+   * @return the names of the features of the logged events
+   */
+  List<String> getFeatureNames();
+
+  /**
+   * Appends the next events to a batch.
+   *
+   * @param batch
+   *     the batch to append to
+   * @param maxEvents
+   *     the maximum number of events to read
+   * @return the number of events read, 0 once every event was read
+   */
+  int read(EventBatch batch, int maxEvents);
+
+  @Override
+  void close();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+/**
+ * Non cryptographic hashing helpers used to derive partition tokens.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class Hashing {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Hashes a string into a well distributed 64 bit value. Characters are folded in with FNV-1a
+   * and the result is run through the MurmurHash3 finalizer so that keys sharing long common
+   * prefixes (e.g. {@code site1:month:1538352000:...}) still spread evenly over the token space.
+   *
+   * @param value
+   *     the value to hash
+   * @return a 64 bit hash
+   */
+  public static long hash64(CharSequence value) {
+    long h = FNV_OFFSET_BASIS;
+    for (int i = 0; i < value.length(); i++) {
+      h ^= value.charAt(i);
+      h *= FNV_PRIME;
+    }
+    return fmix64(h);
+  }
+
+  /**
+   * MurmurHash3 64 bit finalizer. Forces all bits of the input to avalanche.
+   *
+   * @param k
+   *     the value to mix
+   * @return the mixed value
+   */
+  public static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb3fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import com.gps.cardinality.utils.Timestamps.Intervals;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps timestamps to the month, week and day they belong to in a given time zone. Intervals
+ * start at local midnight (or at the first valid local time of the day when a DST transition
+ * skips midnight), weeks start on Mondays.
+ *
+ * <p>
+ * The start of every local day between {@link #FIRST_DAY} and {@link #LAST_DAY} is precomputed
+ * once per zone, so finding the intervals of a timestamp is a binary search over the day
+ * boundaries followed by index arithmetic for the week and month. DST transitions are handled
+ * by construction since each boundary comes from the zone's rules. Timestamps outside the table
+ * fall back to {@link java.time}.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class IntervalCalculator {
+
+  /**
+   * A Monday, so that the week of every day in the table starts within the table.
+   */
+  static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 3);
+  static final LocalDate LAST_DAY = LocalDate.of(2060, 1, 1);
+
+  private static final Map<ZoneId, IntervalCalculator> CALCULATORS = new ConcurrentHashMap<>();
+
+  private ZoneId zone;
+  /**
+   * Start of each local day, ascending.
+   */
+  private long[] dayStarts;
+  /**
+   * Day of the month of each day, to step back to the first day of its month.
+   */
+  private byte[] daysOfMonth;
+
+  private IntervalCalculator(ZoneId zone) {
+    this.zone = zone;
+    int numDays = (int) ChronoUnit.DAYS.between(FIRST_DAY, LAST_DAY);
+    this.dayStarts = new long[numDays];
+    this.daysOfMonth = new byte[numDays];
+    LocalDate day = FIRST_DAY;
+    for (int i = 0; i < numDays; i++) {
+      dayStarts[i] = day.atStartOfDay(zone).toEpochSecond();
+      daysOfMonth[i] = (byte) day.getDayOfMonth();
+      day = day.plusDays(1);
+    }
+  }
+
+  /**
+   * Returns the calculator of a time zone. Calculators are shared by all the callers using the
+   * same zone.
+   *
+   * @param zone
+   *     the time zone
+   * @return the zone's calculator
+   */
+  public static IntervalCalculator forZone(ZoneId zone) {
+    return CALCULATORS.computeIfAbsent(zone.normalized(), IntervalCalculator::new);
+  }
+
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * @param timestamp
+   *     the timestamp
+   * @return the starts of the timestamp's month, week and day in the calculator's time zone
+   */
+  public Intervals getIntervals(long timestamp) {
+    int day = Arrays.binarySearch(dayStarts, timestamp);
+    // Between two day starts, the insertion point is the following day
+    day = day >= 0 ? day : -day - 2;
+    int month = day - daysOfMonth[Math.max(day, 0)] + 1;
+    if (month < 0 || day == dayStarts.length - 1) {
+      return computeIntervals(timestamp);
+    }
+    // FIRST_DAY is a Monday, which makes day % 7 the days since Monday
+    return new Intervals(timestamp, dayStarts[month], dayStarts[day - day % 7], dayStarts[day]);
+  }
+
+  /**
+   * Finds the start of a timestamp's month without allocating its {@link Intervals}.
+   *
+   * @param timestamp
+   *     the timestamp
+   * @return the start of the timestamp's month in the calculator's time zone
+   */
+  public long getMonthStart(long timestamp) {
+    int day = Arrays.binarySearch(dayStarts, timestamp);
+    day = day >= 0 ? day : -day - 2;
+    int month = day - daysOfMonth[Math.max(day, 0)] + 1;
+    if (month < 0 || day == dayStarts.length - 1) {
+      return computeIntervals(timestamp).getMonthStart();
+    }
+    return dayStarts[month];
+  }
+
+  /**
+   * @param monthStart
+   *     the start of a month in the calculator's time zone
+   * @return the start of the following month, i.e. the end of the month
+   */
+  public long getMonthEnd(long monthStart) {
+    return ZonedDateTime.ofInstant(Instant.ofEpochSecond(monthStart), zone).plusMonths(1)
+        .toLocalDate().withDayOfMonth(1).atStartOfDay(zone).toEpochSecond();
+  }
+
+  /**
+   * Computes the intervals of a timestamp with {@link java.time}, for timestamps outside of the
+   * precomputed table.
+   */
+  Intervals computeIntervals(long timestamp) {
+    LocalDate day = ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), zone).toLocalDate();
+    return new Intervals(timestamp,
+        day.withDayOfMonth(1).atStartOfDay(zone).toEpochSecond(),
+        day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay(zone)
+            .toEpochSecond(),
+        day.atStartOfDay(zone).toEpochSecond());
+  }
+}
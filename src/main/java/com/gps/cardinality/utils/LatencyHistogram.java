@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+/**
+ * Fixed memory latency histogram with a bounded relative error. Values are bucketed by their
+ * power of two and each power of two is split into {@value #SUB_BUCKETS} linear sub buckets, so
+ * recorded values are accurate to within about 6%. Not thread safe: use one histogram per thread
+ * and {@link #merge(LatencyHistogram)} them.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private long[] counts;
+  private long totalCount;
+  private long max;
+
+  public LatencyHistogram() {
+    this.counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+  }
+
+  /**
+   * @param value
+   *     a non negative value, e.g. a latency in nanoseconds
+   */
+  public void record(long value) {
+    counts[index(Math.max(0, value))]++;
+    totalCount++;
+    max = Math.max(max, value);
+  }
+
+  public void merge(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * @param percentile
+   *     a percentile between 0 and 100
+   * @return an upper bound of the value at the percentile, 0 if nothing was recorded
+   */
+  public long percentile(double percentile) {
+    long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(1, rank) && counts[i] > 0) {
+        return Math.min(max, upperBound(i));
+      }
+    }
+    return max;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    // Keep the top SUB_BUCKET_BITS + 1 bits of the value, the shift is the bucket
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
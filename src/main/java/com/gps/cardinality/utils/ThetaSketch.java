@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * K minimum values (Theta) sketch estimating the number of distinct items of a stream. Items are
+ * hashed to 63 bit values and only the hashes below a threshold theta are retained: all of them
+ * until {@code 2 * nominalEntries} distinct items were seen, then the sketch is culled back to
+ * the {@code nominalEntries} smallest ones whenever it fills up again. The estimate is the
+ * number of retained hashes divided by theta (as a fraction of the hash space), with a relative
+ * standard error of about {@code 1 / sqrt(nominalEntries)}.
+ *
+ * <p>
+ * Sketches support set algebra through their {@link Compact} form: the union, intersection and
+ * difference of two sketches are sketches of the union, intersection and difference of their
+ * streams, using the smallest theta of the inputs. Thread safe.
+ * </p>
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ThetaSketch {
+
+  private static final long MAX_THETA = Long.MAX_VALUE;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long ARRAY_OVERHEAD = 16;
+  private static final long OBJECT_OVERHEAD = 32;
+
+  private int nominalEntries;
+  private long theta;
+  /**
+   * Open addressing hash set of the retained hashes, 0 marks an empty slot.
+   */
+  private long[] table;
+  private int count;
+
+  /**
+   * @param nominalEntries
+   *     the number of hashes retained once the sketch is in estimation mode
+   */
+  public ThetaSketch(int nominalEntries) {
+    if (nominalEntries < 16) {
+      throw new IllegalArgumentException(
+          String.format("Invalid number of nominal entries: %d", nominalEntries));
+    }
+    this.nominalEntries = nominalEntries;
+    this.theta = MAX_THETA;
+    this.table = new long[INITIAL_CAPACITY];
+  }
+
+  /**
+   * @param item
+   *     an item of the stream, e.g. a guid
+   */
+  public void update(String item) {
+    updateHash(hash(item));
+  }
+
+  /**
+   * @return the 63 bit hash of an item, never 0
+   */
+  static long hash(String item) {
+    long hash = Hashing.hash64(item) >>> 1;
+    return 0 == hash ? 1 : hash;
+  }
+
+  synchronized void updateHash(long hash) {
+    if (hash >= theta || !insert(table, hash)) {
+      return;
+    }
+    count++;
+    if (count >= 2 * nominalEntries) {
+      cull();
+    } else if (count > table.length * 3 / 4) {
+      table = rehash(table, table.length * 2);
+    }
+  }
+
+  /**
+   * Keeps the {@code nominalEntries} smallest hashes and lowers theta to the next one.
+   */
+  private void cull() {
+    long[] hashes = retained(table);
+    Arrays.sort(hashes);
+    theta = hashes[nominalEntries];
+    long[] culled = new long[table.length];
+    for (int i = 0; i < nominalEntries; i++) {
+      insert(culled, hashes[i]);
+    }
+    table = culled;
+    count = nominalEntries;
+  }
+
+  private static boolean insert(long[] table, long hash) {
+    int mask = table.length - 1;
+    int slot = (int) Hashing.fmix64(hash) & mask;
+    while (0 != table[slot]) {
+      if (table[slot] == hash) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = hash;
+    return true;
+  }
+
+  private static long[] rehash(long[] table, int capacity) {
+    long[] rehashed = new long[capacity];
+    for (long hash : table) {
+      if (0 != hash) {
+        insert(rehashed, hash);
+      }
+    }
+    return rehashed;
+  }
+
+  private static long[] retained(long[] table) {
+    long[] hashes = new long[table.length];
+    int n = 0;
+    for (long hash : table) {
+      if (0 != hash) {
+        hashes[n++] = hash;
+      }
+    }
+    return Arrays.copyOf(hashes, n);
+  }
+
+  /**
+   * @return an immutable, compact copy of the sketch for estimates and set operations, holding
+   * at most {@code nominalEntries} hashes
+   */
+  public synchronized Compact compact() {
+    long[] hashes = retained(table);
+    Arrays.sort(hashes);
+    if (hashes.length > nominalEntries) {
+      return new Compact(nominalEntries, hashes[nominalEntries],
+          Arrays.copyOf(hashes, nominalEntries));
+    }
+    return new Compact(nominalEntries, theta, hashes);
+  }
+
+  public synchronized double getEstimate() {
+    return estimate(count, theta);
+  }
+
+  /**
+   * @return the estimated heap footprint of the sketch, in bytes
+   */
+  public synchronized long estimateBytes() {
+    return OBJECT_OVERHEAD + ARRAY_OVERHEAD + 8L * table.length;
+  }
+
+  private static double estimate(int retained, long theta) {
+    return MAX_THETA == theta ? retained : retained / ((double) theta / MAX_THETA);
+  }
+
+  /**
+   * @return an empty compact sketch, the identity of unions
+   */
+  public static Compact empty(int nominalEntries) {
+    return new Compact(nominalEntries, MAX_THETA, new long[0]);
+  }
+
+  /**
+   * @return a sketch of the items in either stream
+   */
+  public static Compact union(Compact a, Compact b) {
+    int nominalEntries = Math.max(a.nominalEntries, b.nominalEntries);
+    long theta = Math.min(a.theta, b.theta);
+    long[] merged = new long[a.hashes.length + b.hashes.length];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < a.hashes.length || j < b.hashes.length) {
+      long next;
+      if (j == b.hashes.length || (i < a.hashes.length && a.hashes[i] < b.hashes[j])) {
+        next = a.hashes[i++];
+      } else if (i == a.hashes.length || b.hashes[j] < a.hashes[i]) {
+        next = b.hashes[j++];
+      } else {
+        next = a.hashes[i++];
+        j++;
+      }
+      if (next >= theta) {
+        break;
+      }
+      merged[n++] = next;
+    }
+    if (n > nominalEntries) {
+      theta = merged[nominalEntries];
+      n = nominalEntries;
+    }
+    return new Compact(nominalEntries, theta, Arrays.copyOf(merged, n));
+  }
+
+  /**
+   * @return a sketch of the items in both streams
+   */
+  public static Compact intersect(Compact a, Compact b) {
+    return combine(a, b, true);
+  }
+
+  /**
+   * @return a sketch of the items in stream a but not in stream b
+   */
+  public static Compact aNotB(Compact a, Compact b) {
+    return combine(a, b, false);
+  }
+
+  private static Compact combine(Compact a, Compact b, boolean keepCommon) {
+    long theta = Math.min(a.theta, b.theta);
+    long[] result = new long[a.hashes.length];
+    int n = 0;
+    for (long hash : a.hashes) {
+      if (hash >= theta) {
+        break;
+      }
+      if (keepCommon == (Arrays.binarySearch(b.hashes, hash) >= 0)) {
+        result[n++] = hash;
+      }
+    }
+    return new Compact(Math.max(a.nominalEntries, b.nominalEntries), theta,
+        Arrays.copyOf(result, n));
+  }
+
+  /**
+   * Immutable sketch holding its retained hashes in a sorted array.
+   */
+  public static class Compact {
+    private int nominalEntries;
+    private long theta;
+    private long[] hashes;
+
+    Compact(int nominalEntries, long theta, long[] hashes) {
+      this.nominalEntries = nominalEntries;
+      this.theta = theta;
+      this.hashes = hashes;
+    }
+
+    public double getEstimate() {
+      return estimate(hashes.length, theta);
+    }
+
+    /**
+     * @return true if the estimate is an exact count
+     */
+    public boolean isExact() {
+      return MAX_THETA == theta;
+    }
+
+    public int getRetainedEntries() {
+      return hashes.length;
+    }
+
+    /**
+     * Writes the sketch in the format read by {@link #read(DataInput)}.
+     *
+     * @param out
+     *     the output
+     * @throws IOException
+     *     if the sketch could not be written
+     */
+    public void write(DataOutput out) throws IOException {
+      out.writeInt(nominalEntries);
+      out.writeLong(theta);
+      out.writeInt(hashes.length);
+      for (long hash : hashes) {
+        out.writeLong(hash);
+      }
+    }
+
+    /**
+     * @param in
+     *     the input
+     * @return the sketch written by {@link #write(DataOutput)}
+     * @throws IOException
+     *     if the sketch could not be read
+     */
+    public static Compact read(DataInput in) throws IOException {
+      int nominalEntries = in.readInt();
+      long theta = in.readLong();
+      long[] hashes = new long[in.readInt()];
+      for (int i = 0; i < hashes.length; i++) {
+        hashes[i] = in.readLong();
+      }
+      return new Compact(nominalEntries, theta, hashes);
+    }
+  }
+}
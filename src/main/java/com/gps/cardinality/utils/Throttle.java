@@ -33,6 +33,7 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 public class Throttle {
 
   private Long maxWaitIntervalNanos;
+  private long nextPermitNanos;
 
   private Throttle(Double permitsPerSecond) {
     if (null == permitsPerSecond) {
@@ -45,11 +46,22 @@ public class Throttle {
     return new Throttle(permitsPerSecond);
   }
 
+  /**
+   * Waits until the next permit is available. Permits are scheduled at fixed intervals, so the
+   * time spent by the caller between two permits counts towards the interval. Not thread safe,
+   * use one throttle per thread.
+   */
   public void acquire() {
+    long now = System.nanoTime();
+    if (0 == nextPermitNanos) {
+      nextPermitNanos = now;
+    }
     try {
-      NANOSECONDS.sleep(this.maxWaitIntervalNanos);
+      NANOSECONDS.sleep(nextPermitNanos - now);
     } catch (InterruptedException e) {
       throw new RuntimeException(e);
     }
+    // Do not accumulate permits while the caller is slower than the rate
+    nextPermitNanos = Math.max(now, nextPermitNanos) + this.maxWaitIntervalNanos;
   }
 }
@@ -41,24 +41,14 @@ public class Timestamps {
   /**
    * For a given timestamp, this method generates the timestamps for the corresponding month
    * (00:00 UTC of the first day of the month), week (00:00 UTC of that week's Monday) and day
-   * (00:00 UTC of that same day).
+   * (00:00 UTC of that same day). See {@link IntervalCalculator} for other time zones.
    *
    * @param timestamp
    *     the timestamp
    * @return a {@link Intervals} instance
    */
   public static Intervals getIntervals(long timestamp) {
-    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC);
-    int year = dateTime.getYear();
-    int month = dateTime.getMonthValue();
-    int day = dateTime.getDayOfMonth();
-    int weekDay = dateTime.getDayOfWeek().getValue();
-    LocalDateTime weekDateTime = dateTime.minusDays(weekDay - 1);
-
-    return new Intervals(
-        timestamp, toEpoch(year, month, 1),
-        toEpoch(weekDateTime.getYear(), weekDateTime.getMonthValue(), weekDateTime.getDayOfMonth()),
-        toEpoch(year, month, day));
+    return IntervalCalculator.forZone(ZoneOffset.UTC).getIntervals(timestamp);
   }
 
   /**
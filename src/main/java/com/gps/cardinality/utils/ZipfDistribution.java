@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf distributed sampler over ranks {@code 0..n-1}, where rank {@code k} is drawn with a
+ * probability proportional to {@code 1 / (k + 1)^exponent}. An exponent of 0 is uniform, an
+ * exponent around 1 models typical web traffic where a few sites get most of the visits.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ZipfDistribution {
+
+  private double[] cumulativeProbabilities;
+
+  /**
+   * @param n
+   *     the number of ranks
+   * @param exponent
+   *     the skew of the distribution
+   */
+  public ZipfDistribution(int n, double exponent) {
+    if (n < 1 || exponent < 0) {
+      throw new IllegalArgumentException(
+          String.format("Invalid Zipf distribution: n=%d, exponent=%f", n, exponent));
+    }
+    this.cumulativeProbabilities = new double[n];
+    double total = 0;
+    for (int k = 0; k < n; k++) {
+      total += 1.0 / Math.pow(k + 1, exponent);
+      cumulativeProbabilities[k] = total;
+    }
+    for (int k = 0; k < n; k++) {
+      cumulativeProbabilities[k] /= total;
+    }
+  }
+
+  /**
+   * @param rand
+   *     a random number generator
+   * @return a rank
+   */
+  public int sample(Random rand) {
+    int rank = Arrays.binarySearch(cumulativeProbabilities, rand.nextDouble());
+    rank = rank < 0 ? -rank - 1 : rank;
+    return Math.min(rank, cumulativeProbabilities.length - 1);
+  }
+
+  /**
+   * @param rank
+   *     a rank
+   * @return the probability of drawing the rank
+   */
+  public double probability(int rank) {
+    return cumulativeProbabilities[rank] - (rank == 0 ? 0 : cumulativeProbabilities[rank - 1]);
+  }
+}
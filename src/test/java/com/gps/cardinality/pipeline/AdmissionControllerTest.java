@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.gps.cardinality.storage.Database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class AdmissionControllerTest {
+
+  private static final NavigableMap<String, String> FEATURES =
+      new TreeMap<>(Map.of("feature1", "facebook.com"));
+
+  @Test
+  public void siteBudgetTest() {
+    Database db = newDatabase("noisy", "quiet");
+    AdmissionController admission = new AdmissionController(db, 1024, 1)
+        .withSiteRate(0.001, 10)
+        .withSiteRate("quiet", 0, 0);
+    admission.start();
+    for (int i = 0; i < 100; i++) {
+      boolean admitted = admission.submit("noisy", 1538352000, "guid" + i, FEATURES);
+      assertEquals(i < 10, admitted);
+      assertTrue(admission.submit("quiet", 1538352000, "guid" + i, FEATURES));
+    }
+    admission.close();
+    assertEquals(100, admission.getStats("noisy").getOffered());
+    assertEquals(10, admission.getStats("noisy").getAdmitted());
+    assertEquals(90, admission.getStats("noisy").getShed());
+    assertEquals(10.0, admission.getStats("noisy").getUpscaleFactor(), 0);
+    assertEquals(0, admission.getStats("quiet").getShed());
+    assertEquals(200, admission.getStats().getOffered());
+    assertEquals(10, db.getMonthlyUniqueCount("noisy", 1538352000, new TreeMap<>()));
+    assertEquals(100, db.getMonthlyUniqueCount("quiet", 1538352000, new TreeMap<>()));
+  }
+
+  @Test
+  public void queueShareTest() {
+    Database db = newDatabase("noisy", "quiet");
+    // Not started, so queued events stay queued
+    AdmissionController admission = new AdmissionController(db, 8, 1)
+        .withMaxSiteQueueShare(0.5);
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i < 4, admission.submit("noisy", 1538352000, "guid" + i, FEATURES));
+    }
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i < 4, admission.submit("quiet", 1538352000, "guid" + i, FEATURES));
+    }
+    // The queue is full
+    assertFalse(admission.submit("other", 1538352000, "guid", FEATURES));
+    admission.start();
+    admission.close();
+    assertEquals(4, db.getMonthlyUniqueCount("noisy", 1538352000, new TreeMap<>()));
+    assertEquals(4, admission.getStats("quiet").getShed());
+  }
+
+  @Test
+  public void samplePolicyTest() {
+    AdmissionController admission = new AdmissionController(newDatabase("site1"), 1 << 14, 1)
+        .withSiteRate(0.001, 1)
+        .withShedPolicy(ShedPolicy.SAMPLE, 0.25);
+    for (int i = 0; i < 10_000; i++) {
+      admission.submit("site1", 1538352000, "guid" + i, FEATURES);
+    }
+    admission.start();
+    admission.close();
+    AdmissionStats stats = admission.getStats("site1");
+    assertEquals(stats.getOffered(), stats.getAdmitted() + stats.getShed());
+    assertEquals(stats.getAdmitted() - 1, stats.getSampled());
+    assertEquals(4.0, stats.getUpscaleFactor(), 0.3);
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void rejectPolicyTest() {
+    AdmissionController admission = new AdmissionController(newDatabase("site1"), 16, 1)
+        .withSiteRate(0.001, 1)
+        .withShedPolicy(ShedPolicy.REJECT, 0);
+    assertTrue(admission.submit("site1", 1538352000, "guid1", FEATURES));
+    admission.submit("site1", 1538352000, "guid2", FEATURES);
+  }
+
+  @Test
+  public void closeRaceTest() throws InterruptedException {
+    Database db = newDatabase("site1");
+    AdmissionController admission = new AdmissionController(db, 1 << 16, 2);
+    admission.start();
+    AtomicInteger admitted = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < 10_000; i++) {
+            if (admission.submit("site1", 1538352000, thread + "guid" + i, FEATURES)) {
+              admitted.incrementAndGet();
+            }
+          }
+        } catch (IllegalStateException e) {
+          // Closed while submitting
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    Thread.sleep(5);
+    admission.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // Every admitted event is tracked, even those racing with the close
+    assertEquals(admitted.get(),
+        db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closeWithoutStartTest() {
+    AdmissionController admission = new AdmissionController(newDatabase("site1"), 16, 1);
+    admission.submit("site1", 1538352000, "guid1", FEATURES);
+    admission.close();
+  }
+
+  private static Database newDatabase(String... siteIds) {
+    Database db = new Database();
+    for (String siteId : siteIds) {
+      db.createTables(siteId, new TreeSet<>(List.of("feature1")));
+    }
+    return db;
+  }
+}
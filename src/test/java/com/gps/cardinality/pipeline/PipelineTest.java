@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class PipelineTest {
+
+  @Test
+  public void boundedQueueTest() {
+    BoundedQueue<Integer> queue = new BoundedQueue<>(3);
+    assertEquals(4, queue.capacity());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(4));
+    assertEquals(Integer.valueOf(0), queue.poll());
+    assertTrue(queue.offer(4));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void drainTest() {
+    AtomicLong sum = new AtomicLong();
+    Pipeline pipeline = new Pipeline(4, 16);
+    pipeline.addStage(new Stage<Integer, Integer>("parse", 2, (i, emit) -> emit.accept(i)));
+    // Fan out each element into two to exercise batching between stages
+    pipeline.addStage(new Stage<Integer, Integer>("expand", 3, (i, emit) -> {
+      emit.accept(i);
+      emit.accept(i);
+    }));
+    pipeline.addStage(new Stage<Integer, Void>("apply", 2, (i, emit) -> sum.addAndGet(i)));
+    pipeline.start();
+    for (int i = 1; i <= 10000; i++) {
+      pipeline.submit(i);
+    }
+    pipeline.close();
+    assertEquals(2L * 10000 * 10001 / 2, sum.get());
+    assertTrue(pipeline.report().contains("bottleneck"));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void failureTest() {
+    Pipeline pipeline = new Pipeline(4, 16);
+    pipeline.addStage(new Stage<Integer, Void>("apply", 1, (i, emit) -> {
+      if (i == 42) {
+        throw new IllegalStateException("boom");
+      }
+    }));
+    pipeline.start();
+    for (int i = 0; i < 100; i++) {
+      pipeline.submit(i);
+    }
+    pipeline.close();
+  }
+
+  @Test
+  public void errorTest() {
+    AtomicLong applied = new AtomicLong();
+    Pipeline pipeline = new Pipeline(4, 1);
+    pipeline.addStage(new Stage<Integer, Integer>("parse", 1, (i, emit) -> {
+      if (i == 5) {
+        throw new AssertionError("boom");
+      }
+      emit.accept(i);
+    }));
+    pipeline.addStage(new Stage<Integer, Void>("apply", 2, (i, emit) -> applied.addAndGet(1)));
+    pipeline.start();
+    // Many more elements than the queues hold, the dead parse worker must keep draining its input
+    for (int i = 0; i < 1000; i++) {
+      pipeline.submit(i);
+    }
+    // The dead parse worker still counts as finished, so apply drains and stops
+    RuntimeException failure = null;
+    try {
+      pipeline.close();
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    assertTrue(null != failure && failure.getCause() instanceof AssertionError);
+    assertTrue(applied.get() <= 5);
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ChangeFeedTest {
+
+  @Test
+  public void ringTest() {
+    ChangeFeed feed = new ChangeFeed(6);
+    assertEquals(8, feed.getCapacity());
+    ChangeFeed.Subscription first = feed.subscribe();
+    for (int i = 0; i < 5; i++) {
+      feed.publish("site1", 0, "row" + i, null, null);
+    }
+    // Batches are delivered in sequence order
+    assertEquals(List.of("row0", "row1", "row2"), rowKeys(first.poll(3)));
+    assertEquals(3, first.getPosition());
+    assertEquals(2, first.getLag());
+
+    // Subscribers replay from any sequence still held by the ring
+    ChangeFeed.Subscription second = feed.subscribe(1);
+    assertEquals(List.of("row1", "row2", "row3", "row4"), rowKeys(second.poll(10)));
+    assertEquals(2, feed.getSubscriptions());
+    second.close();
+    assertEquals(1, feed.getSubscriptions());
+
+    // Subscribers lapped by the writers skip what was overwritten
+    for (int i = 5; i < 20; i++) {
+      feed.publish("site1", 0, "row" + i, null, null);
+    }
+    List<ChangeEvent> events = first.poll(100);
+    assertEquals(9, first.getMissed());
+    assertEquals(8, events.size());
+    assertEquals(12, events.get(0).getSequence());
+    assertEquals(20, first.getPosition());
+    assertTrue(first.poll(10, 1, TimeUnit.MILLISECONDS).isEmpty());
+    try {
+      feed.subscribe(21);
+      throw new AssertionError("Subscribed past the published changes");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void databaseFeedTest() throws InterruptedException {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+    db.createTables("site2", new TreeSet<>(List.of("feature1")),
+        SiteOptions.defaults().withTrackingMode(TrackingMode.FULL_TUPLE));
+    assertNull(db.getChangeFeed());
+    ChangeFeed feed = db.enableChangeFeed(1 << 16);
+    assertSame(feed, db.enableChangeFeed(16));
+    ChangeFeed.Subscription subscription = feed.subscribe();
+
+    db.track("site1", 1538352000, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    // Repeat visits change nothing
+    db.track("site1", 1538352001, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    db.track("site2", 1538352000, "guid1", new TreeMap<>(Map.of("feature1", "facebook.com")));
+    List<ChangeEvent> events = subscription.poll(100);
+    assertEquals(5, events.size());
+    Set<String> countsKeys = new HashSet<>();
+    for (ChangeEvent event : events.subList(0, 4)) {
+      assertEquals("site1", event.getSiteId());
+      assertEquals(1538352000, event.getMonthStart());
+      assertTrue(event.getRowKey().startsWith("site1:month:1538352000:guid1:"));
+      assertEquals("month_unique:1538352000:visits", event.getColumn());
+      countsKeys.add(event.getCountsKey());
+    }
+    assertEquals(Set.of("site1:1538352000::", "site1:1538352000:facebook.com:",
+        "site1:1538352000::/index.html", "site1:1538352000:facebook.com:/index.html"),
+        countsKeys);
+    assertTrue(subscription.poll(1).isEmpty());
+    assertNull(events.get(4).getCountsKey());
+
+    // Concurrent writers publish every change exactly once
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 500; i++) {
+          db.track("site1", 1538352000, "guid-" + thread + "-" + i, new TreeMap<>());
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    List<Long> sequences = new ArrayList<>();
+    while (sequences.size() < 2000) {
+      subscription.poll(64, 1, TimeUnit.SECONDS).forEach(e -> sequences.add(e.getSequence()));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int i = 0; i < sequences.size(); i++) {
+      assertEquals(5L + i, (long) sequences.get(i));
+    }
+    assertEquals(0, subscription.getMissed());
+  }
+
+  private static List<String> rowKeys(List<ChangeEvent> events) {
+    List<String> keys = new ArrayList<>();
+    events.forEach(event -> keys.add(event.getRowKey()));
+    return keys;
+  }
+}
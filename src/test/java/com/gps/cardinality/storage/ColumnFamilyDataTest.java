@@ -148,4 +148,52 @@ public class ColumnFamilyDataTest {
     assertEquals("-", m.getOp());
     assertEquals(Integer.valueOf(4), m.getInc());
   }
+
+  @Test
+  public void concurrentCounterTest() throws InterruptedException {
+    ColumnFamilyData data = new ColumnFamilyData();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          data.increment("testCol:testField", 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, data.get("testCol:testField"));
+  }
+
+  @Test
+  public void stripedCounterTest() throws InterruptedException {
+    ColumnFamilyData data = new ColumnFamilyData();
+    data.add("month_unique:1", 5, 4, false);
+    assertFalse(data.isStriped());
+    // Known hot counters are striped right away, keeping their value
+    data.add("month_unique:1", 1, 4, true);
+    assertTrue(data.isStriped());
+    assertEquals(6, data.get("month_unique:1"));
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          data.add("month_unique:1", 1, 4, false);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40006, data.get("month_unique:1"));
+    assertEquals(40006, data.getAll().get("month_unique:1"));
+    assertEquals(40006, data.getTail(null).get("month_unique:1"));
+    assertEquals("=>(column='month_unique:1', value='40006')\n", data.toString());
+    // Striped counters are written out as plain counters
+    assertEquals(40006, PartitionCodec.decode(PartitionCodec.encode(data.getAll()),
+        new Footprint(null)).get("month_unique:1"));
+  }
 }
@@ -28,6 +28,10 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -108,4 +112,83 @@ public class ColumnFamilyTest {
             Map.of("metric", "day_total", "interval_start", "∞")).toString());
   }
 
+  @Test
+  public void scanTest() throws IOException {
+    ColumnDefinition definition = new ColumnDefinition(List.of("pKey"), List.of());
+    ColumnFamily data =
+        new ColumnFamily("testTable", definition, null, Files.createTempDirectory("scan"));
+    for (int p = 0; p < 10; p++) {
+      for (int c = 0; c < 7; c++) {
+        data.update(Map.of("pKey", "pVal" + p), Map.of("colKey" + c, c));
+      }
+    }
+    // Spilled partitions are scanned too
+    data.evict("pVal3");
+    List<String> scanned = new ArrayList<>();
+    long previousToken = Long.MIN_VALUE;
+    String pagingState = null;
+    int pages = 0;
+    do {
+      ScanPage page = data.scan(pagingState, 4);
+      assertTrue(page.getRows().size() <= 4);
+      for (ScanPage.Row row : page.getRows()) {
+        long token = TokenRing.token(row.getPartitionKey());
+        assertTrue(token >= previousToken);
+        previousToken = token;
+        scanned.add(row.getPartitionKey() + ":" + row.getColumn());
+      }
+      pagingState = page.getPagingState();
+      pages++;
+    } while (null != pagingState);
+    assertEquals(70, scanned.size());
+    assertEquals(70, new HashSet<>(scanned).size());
+    assertEquals(18, pages);
+    assertEquals(0, data.getSpillStore().getFaults());
+  }
+
+  @Test
+  public void scanPartitionTest() {
+    ColumnDefinition definition = new ColumnDefinition(List.of("pKey"), List.of());
+    ColumnFamily data = new ColumnFamily("testTable", definition);
+    Map<String, Object> keys = Map.of("pKey", "pVal");
+    for (int c = 0; c < 5; c++) {
+      data.update(keys, Map.of("colKey" + c, c));
+    }
+    ScanPage first = data.scanPartition(keys, null, 3);
+    assertEquals("[pVal=>(column='colKey0', value='0'), pVal=>(column='colKey1', value='1'), "
+                 + "pVal=>(column='colKey2', value='2')]", first.getRows().toString());
+    ScanPage second = data.scanPartition(keys, first.getPagingState(), 3);
+    assertEquals("[pVal=>(column='colKey3', value='3'), pVal=>(column='colKey4', value='4')]",
+        second.getRows().toString());
+    assertTrue(second.isLast());
+    assertTrue(data.scanPartition(Map.of("pKey", "missing"), null, 3).getRows().isEmpty());
+  }
+
+  @Test
+  public void preparedStatementTest() {
+    ColumnDefinition definition = new ColumnDefinition(List.of("pKey1", "pKey2"), List.of(
+        "metric", "interval_start"));
+    ColumnFamily data = new ColumnFamily("testTable", definition);
+    PreparedStatement visits = data.prepare("visits");
+    assertEquals(0, visits.increment(1, "pVal1", 2, "day_total", 1535846400));
+    assertEquals(1, visits.increment(4, "pVal1", 2, "day_total", 1535846400));
+    // Prepared and map based statements address the same cells
+    Map<String, Object> keys = Map.of("pKey1", "pVal1", "pKey2", 2);
+    Map<String, Object> columns = Map.of("metric", "day_total", "interval_start", 1535846400);
+    assertEquals(5, data.selectOne(keys, Map.of("metric", "day_total",
+        "interval_start", 1535846400, "visits", "")));
+    data.update(keys, Map.of("metric", "day_total", "interval_start", 1535846400,
+        "visits", "visits+2"));
+    assertEquals(7, visits.select("pVal1", 2, "day_total", 1535846400));
+    assertEquals(null, visits.select("pVal1", 3, "day_total", 1535846400));
+    assertEquals("pVal1:2", visits.partitionKey("pVal1", 2, "day_total", 1535846400));
+    assertEquals(data.columnName(columns, "visits"),
+        visits.column("pVal1", 2, "day_total", 1535846400));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void preparedStatementArityTest() {
+    ColumnDefinition definition = new ColumnDefinition(List.of("pKey"), List.of("metric"));
+    new ColumnFamily("testTable", definition).prepare("visits").select("pVal");
+  }
 }
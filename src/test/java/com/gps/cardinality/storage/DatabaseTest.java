@@ -23,14 +23,26 @@
 package com.gps.cardinality.storage;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.gps.cardinality.utils.EventBatch;
+import com.gps.cardinality.utils.ThetaSketch;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.UUID;
 
 /**
  * @author gstathis
@@ -77,4 +89,592 @@ public class DatabaseTest {
         + "{feature1=facebook.com, feature2=/index.html, feature3=, feature4=}]",
         valueCombos.toString());
   }
+
+  @Test
+  public void monthlyUniqueCountTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+    db.track("site1", 1538352000, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    db.track("site1", 1538352001, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    db.track("site1", 1538352002, "guid2",
+        new TreeMap<>(Map.of("feature1", "google.com", "feature2", "/index.html")));
+    assertEquals(2, db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(1, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com"))));
+    assertEquals(2, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature2", "/index.html"))));
+    assertEquals(0, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "bing.com"))));
+  }
+
+  @Test
+  public void fullTupleRollupTest() {
+    Database precomputed = new Database();
+    Database fullTuple = new Database();
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    precomputed.createTables("site1", features);
+    fullTuple.createTables("site1", features,
+        SiteOptions.defaults().withTrackingMode(TrackingMode.FULL_TUPLE));
+    List<String> referers = List.of("facebook.com", "google.com", "bing.com");
+    List<String> pages = List.of("/index.html", "/index2.html");
+    for (int i = 0; i < 300; i++) {
+      NavigableMap<String, String> values = new TreeMap<>(Map.of(
+          "feature1", referers.get(i % 3), "feature2", pages.get(i % 7 % 2)));
+      precomputed.track("site1", 1538352000 + i, "guid" + (i % 40), values);
+      fullTuple.track("site1", 1538352000 + i, "guid" + (i % 40), values);
+    }
+    List<NavigableMap<String, String>> queries = List.of(
+        new TreeMap<>(),
+        new TreeMap<>(Map.of("feature1", "facebook.com")),
+        new TreeMap<>(Map.of("feature2", "/index2.html")),
+        new TreeMap<>(Map.of("feature1", "bing.com", "feature2", "/index.html")));
+    for (NavigableMap<String, String> query : queries) {
+      assertEquals(precomputed.getMonthlyUniqueCount("site1", 1538352000, query),
+          fullTuple.getMonthlyUniqueCount("site1", 1538352000, query));
+    }
+    // Cached rollups are invalidated by new tuples
+    assertEquals(40, fullTuple.getMonthlyUniqueCount("site1", 1538352000, queries.get(0)));
+    fullTuple.track("site1", 1538352000, "guid-new", new TreeMap<>(Map.of("feature1", "x")));
+    assertEquals(41, fullTuple.getMonthlyUniqueCount("site1", 1538352000, queries.get(0)));
+  }
+
+  @Test
+  public void cuboidSpecCombinationsTest() {
+    Database db = new Database();
+    NavigableSet<String> features = new TreeSet<>(
+        List.of("feature1", "feature2", "feature3", "feature4"));
+    assertEquals(
+        "[[, , , ], [feature1, , , ], [, feature2, , ], [, , feature3, ], [, , , feature4], "
+        + "[feature1, feature2, , ]]",
+        db.featureNameCombinations(features, CuboidSpec.create().withMaxCombinationSize(1)
+            .include("feature1", "feature2")).toString());
+    assertEquals(
+        "[[feature1, , , ], [feature1, feature2, , ], [feature1, , , feature4]]",
+        db.featureNameCombinations(features, CuboidSpec.create().withMaxCombinationSize(2)
+            .withMandatory("feature1").exclude("feature1", "feature3")).toString());
+    // Without a size bound, every subset is generated exactly once
+    assertEquals(16, db.featureNameCombinations(features, CuboidSpec.create()).size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void cuboidSpecNotMaterializedTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")),
+        SiteOptions.defaults().withCuboids(CuboidSpec.create().withMaxCombinationSize(1)));
+    db.track("site1", 1538352000, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    assertEquals(1, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature2", "/index.html"))));
+    db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+  }
+
+  @Test
+  public void concurrentTrackingTest() throws InterruptedException {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    Database db = new Database();
+    db.createTables("site1", features);
+    Database coalesced = new Database();
+    coalesced.createTables("site1", features,
+        SiteOptions.defaults().withCounterCoalescing(64, 60_000));
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          NavigableMap<String, String> values = new TreeMap<>(Map.of(
+              "feature1", i % 2 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html"));
+          db.track("site1", 1538352000 + i, "guid" + (i % 500), values);
+          coalesced.track("site1", 1538352000 + i, "guid" + (i % 500), values);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    assertEquals(500, db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(250, db.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    // The staleness bound has not elapsed but threads are done, flush their buffers explicitly
+    coalesced.flush();
+    assertEquals(500, coalesced.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(250, coalesced.getMonthlyUniqueCount("site1", 1538352000, facebook));
+  }
+
+  @Test
+  public void stripedCountersTest() throws InterruptedException {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    Database db = new Database();
+    // Site totals and single feature counts are striped right away
+    db.createTables("site1", features, SiteOptions.defaults().withCounterStripes(4, 1));
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          NavigableMap<String, String> values = new TreeMap<>(Map.of(
+              "feature1", i % 2 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html"));
+          db.track("site1", 1538352000 + i, "guid" + thread + "_" + i, values);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8000, db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(4000, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com"))));
+    assertEquals(4000, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html"))));
+    // The totals, 2 referers and 1 landing page
+    assertEquals(4, ((ColumnFamily) db.getMonthlyCountsTable("site1")).getStripedPartitions());
+  }
+
+  @Test
+  public void memoryBudgetSpillTest() throws IOException {
+    Path spillDirectory = Files.createTempDirectory("spill");
+    Database db = new Database(1, spillDirectory);
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+    NavigableMap<String, String> values =
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html"));
+    for (int i = 0; i < 100; i++) {
+      db.track("site1", 1538352000 + i, "guid" + (i % 10), values);
+    }
+    // Evict everything, all partitions are colder than the budget allows
+    db.enforceMemoryBudget();
+    MemoryStats stats = db.getMemoryStats();
+    assertTrue(stats.getEvictions() > 0);
+    assertEquals(db.getGuidDataTable("site1").size() + db.getMonthlyCountsTable("site1").size(),
+        stats.getSpilledPartitions());
+    assertEquals(0, stats.getEstimatedBytes());
+    // Reads and writes fault partitions back in without losing counts
+    db.track("site1", 1538352000, "guid10", values);
+    db.track("site1", 1538352000, "guid0", values);
+    assertEquals(11, db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(11, db.getMonthlyUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com"))));
+    assertTrue(db.getMemoryStats().getFaults() > 0);
+  }
+
+  @Test
+  public void secondaryIndexTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")),
+        SiteOptions.defaults().withSecondaryIndex(true));
+    for (int i = 0; i < 100; i++) {
+      db.track("site1", 1538352000 + i, "guid" + (i % 20), new TreeMap<>(Map.of(
+          "feature1", i % 4 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html")));
+    }
+    db.track("site1", 1541030400, "guid0", new TreeMap<>(Map.of("feature1", "facebook.com")));
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    assertEquals(List.of("guid0", "guid4", "guid8", "guid12", "guid16"),
+        db.getIndexedGuids("site1", 1538352000, "feature1", "facebook.com"));
+    assertEquals(db.getMonthlyUniqueCount("site1", 1538352000, facebook),
+        db.getIndexedUniqueCount("site1", 1538352000, facebook));
+    assertEquals(20, db.getIndexedUniqueCount("site1", 1538352000, new TreeMap<>()));
+    assertEquals(5, db.getIndexedUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html"))));
+    assertEquals(0, db.getIndexedUniqueCount("site1", 1538352000,
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/other.html"))));
+    assertEquals(1, db.getIndexedUniqueCount("site1", 1541030400, facebook));
+    assertTrue(db.getSecondaryIndexBytes("site1") > 0);
+  }
+
+  @Test
+  public void secondaryIndexReturningGuidsTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1")),
+        SiteOptions.defaults().withSecondaryIndex(true));
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    for (int i = 0; i < 1000; i++) {
+      db.track("site1", 1538352000 + i, "guid" + i, facebook);
+    }
+    // Visitors return the next month in the opposite order, ids follow the month's first visits
+    List<String> expected = new ArrayList<>();
+    for (int i = 999; i >= 0; i--) {
+      db.track("site1", 1541030400 + i, "guid" + i, facebook);
+      expected.add("guid" + i);
+    }
+    db.track("site1", 1541030400, "guid-new", facebook);
+    expected.add("guid-new");
+    assertEquals(expected, db.getIndexedGuids("site1", 1541030400, "feature1", "facebook.com"));
+    assertEquals(1001, db.getIndexedUniqueCount("site1", 1541030400, facebook));
+    assertEquals(1000, db.getIndexedUniqueCount("site1", 1538352000, new TreeMap<>()));
+  }
+
+  @Test
+  public void queryCacheEvictionTest() {
+    QueryCache cache = new QueryCache(4);
+    for (int i = 0; i < 100; i++) {
+      String scope = "site1:" + i;
+      cache.put(scope, "count", cache.getVersion(scope), i);
+    }
+    // Versions are dropped along with the last result of their scope
+    assertEquals(4, cache.getScopes());
+    assertEquals(Integer.valueOf(99), cache.get("site1:99", "count", 0));
+    assertNull(cache.get("site1:0", "count", 0));
+    // A result computed against a dropped version is never served
+    long version = cache.getVersion("site1:96");
+    for (int i = 100; i < 104; i++) {
+      cache.put("site1:" + i, "count", cache.getVersion("site1:" + i), i);
+    }
+    cache.invalidate("site1:96");
+    cache.put("site1:96", "count", version, 96);
+    assertNull(cache.get("site1:96", "count", 0));
+  }
+
+  @Test
+  public void multiGetTest() throws IOException {
+    Database db = new Database(1, Files.createTempDirectory("spill"));
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+    for (int i = 0; i < 200; i++) {
+      db.track("site1", 1538352000 + i * 20000, "guid" + (i % 30), new TreeMap<>(Map.of(
+          "feature1", i % 3 == 0 ? "facebook.com" : "google.com",
+          "feature2", i % 2 == 0 ? "/index.html" : "/other.html")));
+    }
+    // Some partitions are on disk, some in memory
+    db.enforceMemoryBudget();
+    db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>());
+    List<CountQuery> queries = new ArrayList<>();
+    for (long month : List.of(1541030400L, 1538352000L, 1535760000L)) {
+      queries.add(CountQuery.of(month, new TreeMap<>()));
+      queries.add(CountQuery.of(month, new TreeMap<>(Map.of("feature1", "facebook.com"))));
+      queries.add(CountQuery.of(month, new TreeMap<>(Map.of("feature2", "/other.html"))));
+      queries.add(CountQuery.of(month,
+          new TreeMap<>(Map.of("feature1", "google.com", "feature2", "/index.html"))));
+      queries.add(CountQuery.of(month, new TreeMap<>()));
+    }
+    int[] counts = db.getMonthlyUniqueCounts("site1", queries);
+    assertEquals(queries.size(), counts.length);
+    for (int i = 0; i < counts.length; i++) {
+      CountQuery query = queries.get(i);
+      assertEquals(db.getMonthlyUniqueCount("site1", query.getMonthStart(), query.getFeatures()),
+          counts[i]);
+    }
+    assertEquals(30, counts[5]);
+    assertEquals(0, counts[10]);
+  }
+
+  @Test
+  public void queryCacheTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1")));
+    db.createTables("site2", new TreeSet<>(List.of("feature1")),
+        SiteOptions.defaults().withMaxQueryStaleness(60_000));
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    for (String siteId : List.of("site1", "site2")) {
+      db.track(siteId, 1538352000, "guid1", facebook);
+      assertEquals(1, db.getMonthlyUniqueCount(siteId, 1538352000, facebook));
+    }
+    QueryCache cache = db.getQueryCache();
+    long misses = cache.getMisses();
+    assertEquals(1, db.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    assertEquals(misses, cache.getMisses());
+    // Repeat visits do not invalidate, new unique visits do
+    db.track("site1", 1538352000, "guid1", facebook);
+    assertEquals(1, db.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    assertEquals(misses, cache.getMisses());
+    db.track("site1", 1538352000, "guid2", facebook);
+    assertEquals(2, db.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    assertEquals(misses + 1, cache.getMisses());
+    // Within the staleness bound, the stale result is served
+    db.track("site2", 1538352000, "guid2", facebook);
+    assertEquals(1, db.getMonthlyUniqueCount("site2", 1538352000, facebook));
+    assertEquals(2, db.getMonthlyUniqueCount("site2", 1538352000, new TreeMap<>()));
+  }
+
+  @Test
+  public void coalescedQueryCacheTest() throws InterruptedException {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1")),
+        SiteOptions.defaults().withCounterCoalescing(64, 50));
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    List<CountQuery> queries = List.of(new CountQuery(1538352000, facebook));
+    db.track("site1", 1538352000, "guid1", facebook);
+    db.getMonthlyUniqueCount("site1", 1538352000, facebook);
+    db.getMonthlyUniqueCounts("site1", queries);
+    db.track("site1", 1538352000, "guid2", facebook);
+    // Cached results are no older than the coalescing staleness bound
+    Thread.sleep(100);
+    assertEquals(2, db.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    db.track("site1", 1538352000, "guid3", facebook);
+    Thread.sleep(100);
+    assertEquals(3, db.getMonthlyUniqueCounts("site1", queries)[0]);
+  }
+
+  @Test
+  public void segmentTest() {
+    Database db = new Database();
+    db.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")),
+        SiteOptions.defaults().withThetaSketches(1024));
+    for (int i = 0; i < 100; i++) {
+      db.track("site1", 1538352000, "guid" + i, new TreeMap<>(Map.of(
+          "feature1", i < 60 ? "facebook.com" : "google.com",
+          "feature2", i % 2 == 0 ? "/index.html" : "/other.html")));
+      db.track("site1", 1541030400, "guid" + (i + 50), new TreeMap<>(Map.of(
+          "feature1", "facebook.com", "feature2", "/index.html")));
+    }
+    // Visitors from facebook.com who never landed on /index.html
+    ThetaSketch.Compact facebook = db.getSegment("site1", 1538352000, "feature1", "facebook.com");
+    ThetaSketch.Compact index = db.getSegment("site1", 1538352000, "feature2", "/index.html");
+    assertEquals(30, ThetaSketch.aNotB(facebook, index).getEstimate(), 0);
+    assertEquals(30, ThetaSketch.intersect(facebook, index).getEstimate(), 0);
+    // Visitors of both months
+    assertEquals(50, ThetaSketch.intersect(db.getSegment("site1", 1538352000, null, null),
+        db.getSegment("site1", 1541030400, null, null)).getEstimate(), 0);
+    assertEquals(0, db.getSegment("site1", 1538352000, "feature1", "bing.com").getEstimate(), 0);
+    assertTrue(db.getSketchBytes("site1") > 0);
+  }
+
+  @Test
+  public void batchTrackTest() {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    List<String> referers = List.of("facebook.com", "google.com", "bing.com");
+    List<String> pages = List.of("/index.html", "/index2.html");
+    for (SiteOptions options : List.of(SiteOptions.defaults(),
+        SiteOptions.defaults().withTrackingMode(TrackingMode.FULL_TUPLE))) {
+      Database perEvent = new Database();
+      Database batched = new Database();
+      perEvent.createTables("site1", features, options);
+      batched.createTables("site1", features, options);
+      // The batch carries an unknown feature and misses feature2 on some events
+      EventBatch batch = new EventBatch(List.of("feature2", "other", "feature1"), 16);
+      for (int i = 0; i < 300; i++) {
+        UUID guid = new UUID(0, i % 40);
+        long timestamp = 1538352000 + i * 10000;
+        String page = i % 5 == 0 ? null : pages.get(i % 7 % 2);
+        NavigableMap<String, String> values = new TreeMap<>();
+        values.put("feature1", referers.get(i % 3));
+        if (null != page) {
+          values.put("feature2", page);
+        }
+        perEvent.track("site1", timestamp, guid.toString(), values);
+        batch.add(guid, timestamp, page, "x", referers.get(i % 3));
+      }
+      batched.track("site1", batch);
+      List<NavigableMap<String, String>> queries = List.of(
+          new TreeMap<>(),
+          new TreeMap<>(Map.of("feature1", "facebook.com")),
+          new TreeMap<>(Map.of("feature2", "/index2.html")),
+          new TreeMap<>(Map.of("feature1", "bing.com", "feature2", "/index.html")));
+      for (long monthStart : List.of(1538352000L, 1541030400L)) {
+        for (NavigableMap<String, String> query : queries) {
+          assertEquals(perEvent.getMonthlyUniqueCount("site1", monthStart, query),
+              batched.getMonthlyUniqueCount("site1", monthStart, query));
+        }
+      }
+      assertEquals(rows(perEvent.getGuidDataTable("site1")),
+          rows(batched.getGuidDataTable("site1")));
+    }
+  }
+
+  @Test
+  public void snapshotRestoreTest() throws IOException {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    Database db = new Database();
+    db.createTables("site1", features);
+    db.createTables("site2", features,
+        SiteOptions.defaults().withTrackingMode(TrackingMode.FULL_TUPLE));
+    for (int i = 0; i < 200; i++) {
+      NavigableMap<String, String> values = new TreeMap<>(Map.of(
+          "feature1", i % 3 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html"));
+      db.track("site1", 1538352000 + i, "guid" + (i % 70), values);
+      db.track("site2", 1538352000 + i, "guid" + (i % 30), values);
+    }
+    Path snapshot = Files.createTempDirectory("snapshot");
+    db.snapshot(snapshot);
+
+    // Sites are only loaded on demand
+    Database restored = new Database();
+    SnapshotRestore restore = restored.restore(snapshot, 0);
+    assertTrue(restored.hasSite("site1"));
+    assertEquals(2, restore.getRegisteredSites());
+    assertEquals(0, restore.getLoadedSites());
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    assertEquals(db.getMonthlyUniqueCount("site1", 1538352000, facebook),
+        restored.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    assertEquals(1, restore.getLoadedSites());
+    assertTrue(restore.getFirstReadyNanos() > 0);
+    assertEquals(rows(db.getMonthlyCountsTable("site1")),
+        rows(restored.getMonthlyCountsTable("site1")));
+    // Known guids are not counted again
+    restored.track("site2", 1538352000, "guid1", facebook);
+    restored.track("site2", 1538352000, "guid-new", facebook);
+    assertTrue(restore.isComplete());
+    assertEquals(31, restored.getMonthlyUniqueCount("site2", 1538352000, new TreeMap<>()));
+
+    // Sites are loaded in the background
+    Database loaded = new Database();
+    restore = loaded.restore(snapshot, 2);
+    restore.awaitLoaded();
+    assertTrue(restore.isComplete());
+    assertTrue(restore.getAllReadyNanos() >= restore.getFirstReadyNanos());
+    assertEquals(rows(db.getGuidDataTable("site2")),
+        rows(loaded.getGuidDataTable("site2")));
+    for (Path file : Files.list(snapshot).toArray(Path[]::new)) {
+      Files.delete(file);
+    }
+    Files.delete(snapshot);
+  }
+
+  @Test
+  public void restoreConcurrentTrackTest() throws Exception {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1"));
+    Database db = new Database();
+    db.createTables("site1", features);
+    NavigableMap<String, String> values = new TreeMap<>(Map.of("feature1", "google.com"));
+    for (int i = 0; i < 50; i++) {
+      db.track("site1", 1538352000 + i, "guid" + i, values);
+    }
+    Path snapshot = Files.createTempDirectory("snapshot");
+    db.snapshot(snapshot);
+
+    // Writes racing the registration of their site are not overwritten by its load
+    for (int run = 0; run < 20; run++) {
+      Database restored = new Database();
+      Thread writer = new Thread(() -> {
+        while (!restored.hasSite("site1")) {
+          Thread.onSpinWait();
+        }
+        restored.track("site1", 1538352000, "guid-new", values);
+      });
+      writer.start();
+      restored.restore(snapshot, 1);
+      writer.join();
+      assertEquals(51, restored.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+    }
+    for (Path file : Files.list(snapshot).toArray(Path[]::new)) {
+      Files.delete(file);
+    }
+    Files.delete(snapshot);
+  }
+
+  @Test
+  public void checkpointTest() throws IOException {
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    Database db = new Database();
+    db.createTables("site1", features);
+    db.createTables("site2", features);
+    for (int i = 0; i < 100; i++) {
+      NavigableMap<String, String> values = new TreeMap<>(Map.of(
+          "feature1", i % 3 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html"));
+      db.track("site1", 1538352000 + i, "guid" + (i % 70), values);
+      db.track("site2", 1538352000 + i, "guid" + (i % 30), values);
+    }
+    Path directory = Files.createTempDirectory("checkpoints");
+    Checkpoint base = db.checkpoint(directory, 2);
+    assertFalse(base.isDelta());
+    assertEquals(2, base.getSites());
+    assertEquals(db.getGuidDataTable("site1").size() + db.getMonthlyCountsTable("site1").size()
+                 + db.getGuidDataTable("site2").size() + db.getMonthlyCountsTable("site2").size(),
+        base.getPartitions());
+
+    // A new guid in a new month changes 4 guid data and 4 counts partitions of site1 only
+    db.track("site1", 1541030400, "guid-new",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    Checkpoint delta = db.checkpoint(directory, 2);
+    assertTrue(delta.isDelta());
+    assertEquals(1, delta.getSites());
+    assertEquals(8, delta.getPartitions());
+    // Returning visitors only change guid data partitions
+    db.track("site2", 1538352000, "guid1",
+        new TreeMap<>(Map.of("feature1", "google.com", "feature2", "/index.html")));
+    assertEquals(4, db.checkpoint(directory, 2).getPartitions());
+
+    Database restored = new Database();
+    restored.restore(directory, 1).awaitLoaded();
+    for (String siteId : List.of("site1", "site2")) {
+      assertEquals(rows(db.getGuidDataTable(siteId)),
+          rows(restored.getGuidDataTable(siteId)));
+      assertEquals(rows(db.getMonthlyCountsTable(siteId)),
+          rows(restored.getMonthlyCountsTable(siteId)));
+    }
+    // The restored chain is continued, unchanged sites are skipped
+    restored.track("site1", 1541030400, "guid-new2", new TreeMap<>());
+    Checkpoint next = restored.checkpoint(directory, 3);
+    assertTrue(next.isDelta());
+    assertEquals(1, next.getSites());
+
+    // Deltas are merged into a new base once there are enough of them
+    Checkpoint merged = db.checkpoint(directory, 2);
+    assertFalse(merged.isDelta());
+    List<Path> checkpoints = new ArrayList<>();
+    Files.list(directory).forEach(checkpoints::add);
+    assertEquals(List.of(merged.getPath()), checkpoints);
+    for (Path file : Files.list(merged.getPath()).toArray(Path[]::new)) {
+      Files.delete(file);
+    }
+    Files.delete(merged.getPath());
+    Files.delete(directory);
+  }
+
+  @Test
+  public void rollUpTest() {
+    Database db = new Database();
+    NavigableSet<String> features = new TreeSet<>(List.of("feature1", "feature2"));
+    for (int site = 0; site < 20; site++) {
+      db.createTables("site" + site, features, site % 5 == 0
+          ? SiteOptions.defaults().withThetaSketches(4096) : SiteOptions.defaults());
+    }
+    db.createTables("full", features,
+        SiteOptions.defaults().withTrackingMode(TrackingMode.FULL_TUPLE));
+    for (int i = 0; i < 4000; i++) {
+      // Visitors are shared across sites
+      long month = i / 20 % 2 == 0 ? 1538352000 : 1541030400;
+      db.track("site" + i % 20, month + i, "guid" + i % 300,
+          new TreeMap<>(Map.of("feature1", "referer" + i % 3, "feature2", "/page" + i % 4)));
+      db.track("full", 1538352000 + i, "guid" + i, new TreeMap<>(Map.of("feature1", "x")));
+    }
+
+    Rollup rollup = db.rollUp("feature1", Long.MIN_VALUE, Long.MAX_VALUE);
+    assertEquals(20, rollup.getSites());
+    assertEquals(40, rollup.getSiteMonths());
+    assertEquals(1, rollup.getSkippedSites());
+    long total = 0;
+    Map<String, Long> counts = new TreeMap<>();
+    for (int site = 0; site < 20; site++) {
+      for (long month : List.of(1538352000L, 1541030400L)) {
+        total += db.getMonthlyUniqueCount("site" + site, month, new TreeMap<>());
+        for (int referer = 0; referer < 3; referer++) {
+          counts.merge("referer" + referer, (long) db.getMonthlyUniqueCount("site" + site, month,
+              new TreeMap<>(Map.of("feature1", "referer" + referer))), Long::sum);
+        }
+      }
+    }
+    assertEquals(total, rollup.getTotal());
+    assertEquals(counts, rollup.getCounts());
+    // Sketches of the sites keeping them count each visitor once across sites and months
+    ThetaSketch.Compact distinct = ThetaSketch.empty(4096);
+    for (int site = 0; site < 20; site += 5) {
+      for (long month : List.of(1538352000L, 1541030400L)) {
+        distinct = ThetaSketch.union(distinct,
+            db.getSegment("site" + site, month, "feature1", "referer1"));
+      }
+    }
+    assertEquals(distinct.getEstimate(), rollup.getSketch("referer1").getEstimate(), 0);
+    assertTrue(rollup.getSketch(null).getEstimate() <= 300);
+
+    // Months are filtered, and totals only skip the breakdown
+    Rollup october = db.rollUp(null, 1538352000, 1538352000);
+    assertEquals(20, october.getSiteMonths());
+    assertTrue(october.getCounts().isEmpty());
+    assertTrue(october.getTotal() > 0 && october.getTotal() < total);
+  }
+
+  /**
+   * @return every row of a table, in scan order
+   */
+  private static List<String> rows(StorageTable table) {
+    List<String> rows = new ArrayList<>();
+    String pagingState = null;
+    do {
+      ScanPage page = table.scan(pagingState, 100);
+      page.getRows().forEach(row -> rows.add(row.toString()));
+      pagingState = page.getPagingState();
+    } while (null != pagingState);
+    return rows;
+  }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.gps.cardinality.utils.ThetaSketch;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class MonthCloseOutTest {
+
+  private static final NavigableSet<String> FEATURES =
+      new TreeSet<>(List.of("feature1", "feature2"));
+  private static final long OCTOBER = 1538352000;
+  private static final long NOVEMBER = 1541030400;
+  private static final long GRACE = TimeUnit.DAYS.toSeconds(2);
+
+  @Test
+  public void closeMonthTest() throws IOException {
+    Database db = new Database();
+    db.createTables("site1", FEATURES);
+    for (int i = 0; i < 300; i++) {
+      db.track("site1", OCTOBER + i, "guid" + (i % 90), features(i));
+      db.track("site1", NOVEMBER + i, "guid" + (i % 40), features(i));
+    }
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    int octoberTotal = db.getMonthlyUniqueCount("site1", OCTOBER, new TreeMap<>());
+    int octoberFacebook = db.getMonthlyUniqueCount("site1", OCTOBER, facebook);
+    int guidRows = db.getGuidDataTable("site1").size();
+    Path archives = Files.createTempDirectory("archives");
+
+    // October is still within its grace period
+    assertTrue(db.closeMonths(GRACE, archives, 256).isEmpty());
+    db.track("site1", NOVEMBER + GRACE, "guid1", features(1));
+    List<MonthCloseOut> closeOuts = db.closeMonths(GRACE, archives, 256);
+    assertEquals(1, closeOuts.size());
+    MonthCloseOut closeOut = closeOuts.get(0);
+    assertEquals(OCTOBER, closeOut.getMonthStart());
+    assertTrue(closeOut.getFreedBytes() > 0);
+    assertTrue(closeOut.getArchiveBytes() > 0);
+    assertEquals(guidRows - closeOut.getRows(), db.getGuidDataTable("site1").size());
+    assertEquals(List.of(OCTOBER), new ArrayList<>(db.getClosedMonths("site1").keySet()));
+
+    // Counts remain queryable and the archive holds the dropped rows
+    assertEquals(octoberTotal, db.getMonthlyUniqueCount("site1", OCTOBER, new TreeMap<>()));
+    assertEquals(octoberFacebook, db.getMonthlyUniqueCount("site1", OCTOBER, facebook));
+    List<String> keys = new ArrayList<>();
+    assertEquals(closeOut.getRows(),
+        closeOut.getArchive().readRows((key, columns) -> keys.add(key)));
+    assertTrue(keys.stream().allMatch(key -> key.startsWith("site1:month:" + OCTOBER + ":")));
+    ThetaSketch.Compact sketch = db.getClosedMonthSketch("site1", OCTOBER, facebook);
+    assertEquals(octoberFacebook, sketch.getEstimate(), 0);
+    ThetaSketch.Compact google = db.getClosedMonthSketch("site1", OCTOBER,
+        new TreeMap<>(Map.of("feature1", "google.com")));
+    assertEquals(octoberTotal, ThetaSketch.union(sketch, google).getEstimate(), 0);
+
+    // Late events of a closed month are dropped
+    db.track("site1", OCTOBER + 1, "guid-late", facebook);
+    assertEquals(1, db.getLateEvents());
+    assertEquals(octoberFacebook, db.getMonthlyUniqueCount("site1", OCTOBER, facebook));
+    try {
+      db.closeMonth("site1", OCTOBER, archives, 0);
+      throw new AssertionError("Closed a month twice");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    // Closed months survive a snapshot
+    Path snapshot = Files.createTempDirectory("snapshot");
+    db.snapshot(snapshot);
+    Database restored = new Database();
+    restored.restore(snapshot, 0);
+    assertEquals(octoberFacebook, restored.getMonthlyUniqueCount("site1", OCTOBER, facebook));
+    assertEquals(octoberFacebook,
+        restored.getClosedMonthSketch("site1", OCTOBER, facebook).getEstimate(), 0);
+    restored.track("site1", OCTOBER + 1, "guid-late", facebook);
+    assertEquals(1, restored.getLateEvents());
+
+    delete(snapshot);
+    delete(archives);
+  }
+
+  @Test
+  public void closeIndexedMonthTest() throws IOException {
+    Database db = new Database();
+    db.createTables("site1", FEATURES,
+        SiteOptions.defaults().withSecondaryIndex(true).withThetaSketches(256));
+    for (int i = 0; i < 300; i++) {
+      db.track("site1", OCTOBER + i, "guid" + (i % 90), features(i));
+      db.track("site1", NOVEMBER + i, "guid" + (i % 40), features(i));
+    }
+    long indexBytes = db.getSecondaryIndexBytes("site1");
+    long sketchBytes = db.getSketchBytes("site1");
+    Path archives = Files.createTempDirectory("archives");
+
+    // The month's index and sketches are dropped with its rows
+    MonthCloseOut closeOut = db.closeMonth("site1", OCTOBER, archives, 0);
+    assertTrue(db.getSecondaryIndexBytes("site1") < indexBytes);
+    assertTrue(db.getSketchBytes("site1") < sketchBytes);
+    assertTrue(closeOut.getFreedBytes() > indexBytes - db.getSecondaryIndexBytes("site1"));
+    assertEquals(0, db.getIndexedUniqueCount("site1", OCTOBER, new TreeMap<>()));
+    assertEquals(0, db.getSegment("site1", OCTOBER, null, null).getEstimate(), 0);
+    assertEquals(40, db.getIndexedUniqueCount("site1", NOVEMBER, new TreeMap<>()));
+    assertEquals(40, db.getSegment("site1", NOVEMBER, null, null).getEstimate(), 0);
+    delete(archives);
+  }
+
+  @Test
+  public void unverifiedMonthTest() throws Exception {
+    Database db = new Database();
+    db.createTables("site1", FEATURES);
+    for (int i = 0; i < 50; i++) {
+      db.track("site1", OCTOBER + i, "guid" + (i % 20), features(i));
+    }
+    int guidRows = db.getGuidDataTable("site1").size();
+    // A count drifting from its guid data keeps the month open
+    db.getMonthlyCountsTable("site1").add(
+        "site1:" + OCTOBER + "::", "month_unique:" + OCTOBER + ":visits", 1, false);
+    Path archives = Files.createTempDirectory("archives");
+    // Events tracked while the month fails to close are not dropped as late
+    AtomicBoolean closing = new AtomicBoolean(true);
+    Thread writer = new Thread(() -> {
+      while (closing.get()) {
+        db.track("site1", OCTOBER + 1, "guid1", features(1));
+      }
+    });
+    writer.start();
+    for (int i = 0; i < 20; i++) {
+      try {
+        db.closeMonth("site1", OCTOBER, archives, 0);
+        throw new AssertionError("Closed an unverified month");
+      } catch (IllegalStateException e) {
+        assertTrue(e.getMessage().contains("does not verify"));
+      }
+    }
+    closing.set(false);
+    writer.join();
+    assertEquals(0, db.getLateEvents());
+    assertTrue(db.getClosedMonths("site1").isEmpty());
+    assertEquals(guidRows, db.getGuidDataTable("site1").size());
+    assertEquals(0, Files.list(archives).count());
+    delete(archives);
+  }
+
+  private static NavigableMap<String, String> features(int i) {
+    return new TreeMap<>(Map.of("feature1", i % 3 == 0 ? "facebook.com" : "google.com",
+        "feature2", i % 2 == 0 ? "/index.html" : "/about.html"));
+  }
+
+  private static void delete(Path directory) throws IOException {
+    for (Path file : Files.list(directory).toArray(Path[]::new)) {
+      Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ReadViewTest {
+
+  private static final NavigableSet<String> FEATURES =
+      new TreeSet<>(List.of("feature1", "feature2"));
+  private static final List<CountQuery> QUERIES = List.of(
+      CountQuery.of(1538352000, new TreeMap<>()),
+      CountQuery.of(1538352000, new TreeMap<>(Map.of("feature1", "facebook.com"))),
+      CountQuery.of(1538352000, new TreeMap<>(Map.of("feature1", "google.com"))),
+      CountQuery.of(1538352000, new TreeMap<>(Map.of("feature2", "/index.html"))));
+
+  @Test
+  public void counterVersionTest() {
+    // A writer of epoch 3 adds first, then a writer of epoch 2 that started before it
+    CounterVersion version = CounterVersion.add(5, 1, 3, 0);
+    version = CounterVersion.add(version, 10, 2, 0);
+    assertEquals(5, (int) version.valueAt(1));
+    assertEquals(15, (int) version.valueAt(2));
+    assertEquals(16, (int) version.valueAt(3));
+    assertEquals(16, (int) version.valueAt(VersionClock.LATEST));
+    // Versions only readers of epoch 2 or later need are kept
+    version = CounterVersion.add(version, 1, 4, 2);
+    assertEquals(15, (int) version.valueAt(2));
+    assertEquals(17, (int) version.valueAt(4));
+    assertNull(version.valueAt(1));
+    assertNull(CounterVersion.add(null, 1, 4, 0).valueAt(3));
+  }
+
+  @Test
+  public void pointInTimeTest() {
+    Database db = new Database();
+    db.createTables("site1", FEATURES, SiteOptions.defaults().withReadViews(true));
+    db.track("site1", 1538352000, "guid1",
+        new TreeMap<>(Map.of("feature1", "facebook.com", "feature2", "/index.html")));
+    try (ReadView view = db.openReadView("site1")) {
+      db.track("site1", 1538352001, "guid2",
+          new TreeMap<>(Map.of("feature1", "google.com", "feature2", "/index.html")));
+      assertEquals("[1, 1, 0, 1]", counts(view));
+      try (ReadView later = db.openReadView("site1")) {
+        assertEquals("[2, 1, 1, 2]", counts(later));
+      }
+      assertEquals(2, db.getMonthlyUniqueCount("site1", 1538352000, new TreeMap<>()));
+      assertEquals("[1, 1, 0, 1]", counts(view));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedViewTest() {
+    Database db = new Database();
+    db.createTables("site1", FEATURES, SiteOptions.defaults().withReadViews(true));
+    ReadView view = db.openReadView("site1");
+    view.close();
+    view.getMonthlyUniqueCounts(QUERIES);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readViewsNotEnabledTest() {
+    Database db = new Database();
+    db.createTables("site1", FEATURES);
+    db.openReadView("site1");
+  }
+
+  @Test
+  public void consistentViewsTest() throws InterruptedException {
+    Database db = new Database();
+    db.createTables("site1", FEATURES, SiteOptions.defaults().withReadViews(true));
+    assertConsistentViews(db);
+    Database coalesced = new Database();
+    coalesced.createTables("site1", FEATURES,
+        SiteOptions.defaults().withReadViews(true).withCounterCoalescing(16, 0));
+    assertConsistentViews(coalesced);
+  }
+
+  /**
+   * Checks that the totals of views opened while events are being tracked always match the sum
+   * of their per feature value counts, i.e. that views never see part of an event.
+   */
+  private static void assertConsistentViews(Database db) throws InterruptedException {
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicInteger views = new AtomicInteger();
+    List<String> torn = new ArrayList<>();
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        try (ReadView view = db.openReadView("site1")) {
+          int[] counts = view.getMonthlyUniqueCounts(QUERIES);
+          if (counts[0] != counts[1] + counts[2] || counts[0] != counts[3]) {
+            torn.add(counts[0] + " " + counts[1] + " " + counts[2] + " " + counts[3]);
+          }
+          views.incrementAndGet();
+        }
+      }
+    });
+    List<Thread> writers = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      int thread = t;
+      writers.add(new Thread(() -> {
+        for (int i = 0; i < 5000; i++) {
+          NavigableMap<String, String> values = new TreeMap<>(Map.of(
+              "feature1", i % 2 == 0 ? "facebook.com" : "google.com", "feature2", "/index.html"));
+          db.track("site1", 1538352000 + i, "guid" + thread + "_" + i, values);
+        }
+      }));
+    }
+    reader.start();
+    writers.forEach(Thread::start);
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    done.set(true);
+    reader.join();
+    assertEquals(List.of(), torn);
+    db.flush();
+    try (ReadView view = db.openReadView("site1")) {
+      assertEquals("[10000, 5000, 5000, 10000]", counts(view));
+    }
+    ColumnFamily counts = (ColumnFamily) db.getMonthlyCountsTable("site1");
+    assertEquals(0, counts.getVersionClock().getOpenViews());
+  }
+
+  private static String counts(ReadView view) {
+    return Arrays.toString(view.getMonthlyUniqueCounts(QUERIES));
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ShardedDatabaseTest {
+
+  @Test
+  public void ringRoutingTest() {
+    TokenRing ring = new TokenRing(4, 64);
+    // Routing is stable
+    assertEquals(ring.shardFor("site1:guid1"), ring.shardFor("site1:guid1"));
+    // Ownership covers the whole token space and is reasonably even
+    double[] owned = ring.ownership();
+    assertEquals(1.0, Arrays.stream(owned).sum(), 1e-9);
+    Arrays.stream(owned).forEach(o -> assertTrue(o > 0.15 && o < 0.35));
+    assertEquals(1.0, new TokenRing(1, 1).ownership()[0], 1e-9);
+  }
+
+  @Test
+  public void mergedCountsTest() {
+    NavigableMap<String, String> noFilter = new TreeMap<>();
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    Database single = new Database();
+    single.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+    try (ShardedDatabase sharded = new ShardedDatabase(4)) {
+      sharded.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+      for (int i = 0; i < 200; i++) {
+        NavigableMap<String, String> features = new TreeMap<>(Map.of(
+            "feature1", i % 3 == 0 ? "facebook.com" : "google.com",
+            "feature2", "/index.html"));
+        single.track("site1", 1538352000 + i, "guid" + (i % 50), features);
+        sharded.track("site1", 1538352000 + i, "guid" + (i % 50), features);
+      }
+      assertEquals(50, sharded.getMonthlyUniqueCount("site1", 1538352000, noFilter));
+      assertEquals(single.getMonthlyUniqueCount("site1", 1538352000, facebook),
+          sharded.getMonthlyUniqueCount("site1", 1538352000, facebook));
+      assertEquals(200, Arrays.stream(sharded.getRoutedEvents()).sum());
+    }
+  }
+
+  @Test
+  public void failureTest() {
+    NavigableMap<String, String> facebook = new TreeMap<>(Map.of("feature1", "facebook.com"));
+    ShardedDatabase sharded = new ShardedDatabase(2, 16, 1);
+    sharded.createTables("site1", new TreeSet<>(List.of("feature1")));
+    // Routing waits on the full queues rather than dropping events
+    for (int i = 0; i < 1000; i++) {
+      sharded.track("site1", 1538352000 + i, "guid" + i, facebook);
+    }
+    sharded.drain();
+    assertEquals(1000, sharded.getMonthlyUniqueCount("site1", 1538352000, facebook));
+    // Failures on the shard workers are reported by drain and close
+    sharded.track("site2", 1538352000, "guid1", facebook);
+    try {
+      sharded.drain();
+      throw new AssertionError("Drained a failed event");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().startsWith("Events failed to be applied by shard"));
+    }
+    try {
+      sharded.close();
+      throw new AssertionError("Closed after a failed event");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof RuntimeException);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conformance tests of the {@link StorageTable} contract, run against the engine returned by
+ * {@link #engine()}. Every engine gets a test class extending this one.
+ *
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public abstract class StorageEngineConformance {
+
+  private static final long OCTOBER = 1538352000L;
+  private static final long NOVEMBER = 1541030400L;
+
+  /**
+   * @return a new instance of the engine under test
+   */
+  protected abstract StorageEngine engine();
+
+  private StorageTable table() {
+    return engine().createTable("testTable", new ColumnDefinition(
+        List.of("site", "month"), List.of("metric")));
+  }
+
+  @Test
+  public void upsertTest() {
+    StorageTable table = table();
+    assertEquals("testTable", table.getName());
+    assertNull(table.select("site1:1", "visits"));
+    table.put("site1:1", "visits", "first");
+    table.put("site1:1", "visits", "second");
+    table.put("site1:1", "referer", "facebook.com");
+    assertEquals("second", table.select("site1:1", "visits"));
+    assertNull(table.select("site1:1", "missing"));
+    assertNull(table.select("site1:2", "visits"));
+    assertEquals(1, table.size());
+    assertTrue(table.getEstimatedBytes() > 0);
+  }
+
+  @Test
+  public void insertIfAbsentTest() throws InterruptedException {
+    StorageTable table = table();
+    assertTrue(table.putIfAbsent("site1:1", "guid", "first"));
+    assertFalse(table.putIfAbsent("site1:1", "guid", "second"));
+    assertEquals("first", table.select("site1:1", "guid"));
+
+    // Exactly one of the racing inserts wins
+    AtomicInteger inserted = new AtomicInteger();
+    runConcurrently(8, thread -> {
+      if (table.putIfAbsent("site1:2", "guid", "thread" + thread)) {
+        inserted.incrementAndGet();
+      }
+    });
+    assertEquals(1, inserted.get());
+  }
+
+  @Test
+  public void incrementTest() throws InterruptedException {
+    StorageTable table = table();
+    assertEquals(0, table.increment("site1:1", "visits", 3));
+    assertEquals(3, table.increment("site1:1", "visits", -1));
+    table.add("site1:1", "visits", 2, true);
+    assertEquals(4, table.select("site1:1", "visits"));
+
+    // Concurrent increments are never lost, and exactly one of them creates the counter
+    AtomicInteger created = new AtomicInteger();
+    runConcurrently(8, thread -> {
+      for (int i = 0; i < 10_000; i++) {
+        if (0 == table.increment("site1:2", "visits", 1)) {
+          created.incrementAndGet();
+        }
+        table.add("site1:2", "hot", 1, i % 2 == 0);
+      }
+    });
+    assertEquals(80_000, table.select("site1:2", "visits"));
+    assertEquals(80_000, table.select("site1:2", "hot"));
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  public void pointGetTest() {
+    StorageTable table = table();
+    table.increment("site1:1", "a:visits", 1);
+    table.increment("site1:2", "b:visits", 2);
+    table.put("site1:2", "c:name", "value");
+    assertArrayEquals(new Object[]{1, 2, null, "value", null}, table.multiGet(
+        new String[]{"site1:1", "site1:2", "site1:2", "site1:2", "site1:3"},
+        new String[]{"a:visits", "b:visits", "a:visits", "c:name", "a:visits"}));
+    assertEquals(Map.of("b:visits", 2, "c:name", "value"), table.selectPartition("site1:2"));
+    // Columns are returned in column order
+    assertEquals(List.of("b:visits", "c:name"),
+        new ArrayList<>(table.selectPartition("site1:2").keySet()));
+    assertTrue(table.selectPartition("site1:3").isEmpty());
+  }
+
+  @Test
+  public void rangeScanTest() {
+    StorageTable table = table();
+    for (String key : List.of("site1:1", "site1:2", "site11:1", "site2:1", "site")) {
+      table.increment(key, "visits", 1);
+    }
+    Set<String> keys = new TreeSet<>();
+    table.forEachPartitionKey("site1:", keys::add);
+    assertEquals(Set.of("site1:1", "site1:2"), keys);
+    keys.clear();
+    table.forEachPartitionKey("site1", keys::add);
+    assertEquals(Set.of("site1:1", "site1:2", "site11:1"), keys);
+    keys.clear();
+    table.forEachPartitionKey("", keys::add);
+    assertEquals(5, keys.size());
+    keys.clear();
+    table.forEachPartitionKey("site3", keys::add);
+    assertTrue(keys.isEmpty());
+  }
+
+  @Test
+  public void scanTest() {
+    StorageTable table = table();
+    Set<String> expected = new HashSet<>();
+    for (int partition = 0; partition < 10; partition++) {
+      for (int column = 0; column < 7; column++) {
+        table.increment("site1:" + partition, "column" + column, partition);
+        expected.add("site1:" + partition + "/column" + column);
+      }
+    }
+    // Pages never hold a row twice, and resume where the previous page stopped
+    Set<String> scanned = new HashSet<>();
+    String pagingState = null;
+    int pages = 0;
+    do {
+      ScanPage page = table.scan(pagingState, 4);
+      assertTrue(page.getRows().size() <= 4);
+      String lastColumn = null;
+      String lastPartition = null;
+      for (ScanPage.Row row : page.getRows()) {
+        assertTrue(scanned.add(row.getPartitionKey() + "/" + row.getColumn()));
+        assertEquals(Integer.parseInt(row.getPartitionKey().substring(6)), row.getValue());
+        if (row.getPartitionKey().equals(lastPartition)) {
+          assertTrue(row.getColumn().compareTo(lastColumn) > 0);
+        }
+        lastPartition = row.getPartitionKey();
+        lastColumn = row.getColumn();
+      }
+      pagingState = page.getPagingState();
+      pages++;
+    } while (null != pagingState);
+    assertEquals(expected, scanned);
+    assertTrue(pages >= 18);
+    assertTrue(table().scan(null, 10).isLast());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidPagingStateTest() {
+    table().scan("not a paging state", 10);
+  }
+
+  @Test
+  public void dropTest() {
+    StorageTable table = table();
+    table.increment("site1:1", "visits", 1);
+    table.increment("site1:2", "visits", 1);
+    long bytes = table.getEstimatedBytes();
+    long freed = table.drop("site1:1");
+    assertTrue(freed > 0);
+    assertEquals(bytes - freed, table.getEstimatedBytes());
+    assertEquals(0, table.drop("site1:1"));
+    assertNull(table.select("site1:1", "visits"));
+    assertEquals(1, table.size());
+    Set<String> keys = new HashSet<>();
+    table.forEachPartitionKey("", keys::add);
+    assertEquals(Set.of("site1:2"), keys);
+  }
+
+  @Test
+  public void snapshotTest() throws IOException {
+    StorageTable table = table();
+    for (int i = 0; i < 100; i++) {
+      table.increment("site1:" + i % 10, "visits" + i, i);
+      table.put("site1:" + i % 10, "name" + i, "value" + i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      table.writeSnapshot(out);
+    }
+
+    StorageTable restored = table();
+    // Restored partitions replace the existing ones
+    restored.increment("site1:0", "stale", 1);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      restored.readSnapshot(in);
+    }
+    assertEquals(10, restored.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(table.selectPartition("site1:" + i), restored.selectPartition("site1:" + i));
+    }
+    assertNull(restored.select("site1:0", "stale"));
+    // Counters are still counters
+    assertEquals(99, restored.increment("site1:9", "visits99", 1));
+  }
+
+  @Test
+  public void databaseTest() throws IOException {
+    Database db = new Database(engine());
+    Database reference = new Database();
+    NavigableMap<String, String> features = new TreeMap<>();
+    for (Database database : List.of(db, reference)) {
+      database.createTables("site1", new TreeSet<>(List.of("feature1", "feature2")));
+      for (int i = 0; i < 2000; i++) {
+        features.put("feature1", "referer" + i % 3);
+        features.put("feature2", "page" + i % 5);
+        database.track("site1", i % 2 == 0 ? OCTOBER : NOVEMBER, "guid" + i % 700, features);
+      }
+    }
+    for (long month : List.of(OCTOBER, NOVEMBER)) {
+      for (int i = 0; i < 3; i++) {
+        NavigableMap<String, String> filter = new TreeMap<>(Map.of("feature1", "referer" + i));
+        assertEquals(reference.getMonthlyUniqueCount("site1", month, filter),
+            db.getMonthlyUniqueCount("site1", month, filter));
+      }
+      assertEquals(reference.getMonthlyUniqueCount("site1", month, new TreeMap<>()),
+          db.getMonthlyUniqueCount("site1", month, new TreeMap<>()));
+    }
+    assertEquals(reference.getGuidDataTable("site1").size(), db.getGuidDataTable("site1").size());
+
+    // Snapshots restore into the same engine
+    Path snapshot = Files.createTempDirectory("snapshot");
+    db.snapshot(snapshot);
+    Database restored = new Database(engine());
+    restored.restore(snapshot, 0).awaitLoaded();
+    assertEquals(db.getMonthlyUniqueCount("site1", OCTOBER, new TreeMap<>()),
+        restored.getMonthlyUniqueCount("site1", OCTOBER, new TreeMap<>()));
+    assertEquals(db.getMonthlyCountsTable("site1").size(),
+        restored.getMonthlyCountsTable("site1").size());
+  }
+
+  private interface ThreadBody {
+    void run(int thread);
+  }
+
+  private static void runConcurrently(int numThreads, ThreadBody body)
+      throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      int thread = i;
+      threads.add(new Thread(() -> body.run(thread)));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
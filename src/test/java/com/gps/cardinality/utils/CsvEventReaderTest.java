@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class CsvEventReaderTest {
+
+  @Test
+  public void parseTest() {
+    assertEquals(List.of("a", "b,c", "", "d\"e"),
+        CsvEventReader.parse("a,\"b,c\",,\"d\"\"e\""));
+  }
+
+  @Test
+  public void readTest() throws IOException {
+    UUID guid1 = UUID.randomUUID();
+    UUID guid2 = UUID.randomUUID();
+    Path csv = Files.createTempFile("events", ".csv");
+    Files.write(csv, List.of(
+        "guid,timestamp,feature1,feature2",
+        guid1 + ",1538352000,facebook.com,/index.html",
+        guid2 + ",1538352001,google.com,",
+        guid1 + ",1538352002,facebook.com,/index2.html"));
+    try (CsvEventReader reader = new CsvEventReader(csv)) {
+      assertEquals(List.of("feature1", "feature2"), reader.getFeatureNames());
+      // Batch features are matched to the CSV columns by name
+      EventBatch batch = new EventBatch(List.of("feature2", "feature1"), 1);
+      assertEquals(2, reader.read(batch, 2));
+      assertEquals(2, batch.size());
+      assertEquals(guid1.toString(), batch.getGuid(0));
+      assertEquals(1538352001, batch.getTimestamp(1));
+      assertEquals("/index.html", batch.getFeatureValue(0, batch.getFeatureId(0, 0)));
+      assertEquals("google.com", batch.getFeatureValue(1, batch.getFeatureId(1, 1)));
+      assertEquals(EventBatch.ABSENT, batch.getFeatureId(0, 1));
+      batch.clear();
+      assertEquals(1, reader.read(batch, 2));
+      // Feature values keep their ids across batches
+      assertEquals(batch.getFeatureId(1, 0), batch.featureId(1, "facebook.com"));
+      assertEquals(0, reader.read(batch, 2));
+    } finally {
+      Files.delete(csv);
+    }
+  }
+}
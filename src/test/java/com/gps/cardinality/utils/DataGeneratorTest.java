@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class DataGeneratorTest {
+
+  @Test
+  public void generateBatchTest() {
+    List<UUID> guids = DataGenerator.generateUUIDs(10);
+    List<String> referers = List.of("facebook.com", "google.com");
+    List<String> landingPages = List.of("/index.html", "/about.html", "/contact.html");
+    EventBatch batch = new EventBatch(List.of("feature1", "feature2"), 16);
+    DataGenerator.generate(new Random(42), guids, referers, landingPages, 1538352000,
+        1538352099, null, batch, 100);
+    // Appends to the batch, growing it as needed
+    DataGenerator.generate(new Random(42), guids, referers, landingPages, 1538352000,
+        1538352099, null, batch, 50);
+    assertEquals(150, batch.size());
+    for (int e = 0; e < batch.size(); e++) {
+      UUID guid = UUID.fromString(batch.getGuid(e));
+      assertTrue(guids.contains(guid));
+      assertTrue(batch.getTimestamp(e) >= 1538352000 && batch.getTimestamp(e) <= 1538352099);
+      String referer = batch.getFeatureValue(0, batch.getFeatureId(0, e));
+      String landingPage = batch.getFeatureValue(1, batch.getFeatureId(1, e));
+      assertTrue(referers.contains(referer));
+      assertTrue(landingPages.contains(landingPage));
+      assertEquals(String.format("\"%s\",\"%d\",\"%s\",\"%s\"", guid, batch.getTimestamp(e),
+          referer, landingPage), DataGenerator.toCsv(batch, e));
+    }
+    // The same seed generates the same events
+    for (int e = 0; e < 50; e++) {
+      assertEquals(DataGenerator.toCsv(batch, e), DataGenerator.toCsv(batch, 100 + e));
+    }
+  }
+}
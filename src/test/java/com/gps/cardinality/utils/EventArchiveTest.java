@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class EventArchiveTest {
+
+  private static final long OCTOBER = 1538352000;
+  private static final long NOVEMBER = 1541030400;
+
+  @Test
+  public void roundTripTest() throws IOException {
+    List<UUID> guids = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      guids.add(UUID.randomUUID());
+    }
+    Path path = Files.createTempFile("events", ".archive");
+    List<String> expected = new ArrayList<>();
+    try (EventArchiveWriter writer =
+        new EventArchiveWriter(path, List.of("feature1", "feature2"), 100)) {
+      for (int i = 0; i < 1000; i++) {
+        // Two months of events, slightly out of order within each block
+        long timestamp = (i < 500 ? OCTOBER : NOVEMBER) + i * 60 + (i % 7 == 0 ? -30 : 0);
+        String referer = i % 3 == 0 ? "facebook.com" : "google.com";
+        String page = i % 5 == 0 ? null : "/index" + i % 4 + ".html";
+        writer.add(guids.get(i % guids.size()), timestamp, referer, page);
+        if (timestamp >= NOVEMBER) {
+          expected.add(guids.get(i % guids.size()) + "," + timestamp + "," + referer + ","
+                       + page);
+        }
+      }
+      assertEquals(1000, writer.getEvents());
+    }
+    assertTrue(EventArchiveReader.isArchive(path));
+
+    try (EventArchiveReader reader = new EventArchiveReader(path, NOVEMBER, Long.MAX_VALUE)) {
+      assertEquals(List.of("feature1", "feature2"), reader.getFeatureNames());
+      // Only the blocks of November are read
+      assertEquals(10, reader.getBlocks());
+      assertEquals(5, reader.getBlocksInRange());
+      // Batch features are matched to the archive's by name
+      EventBatch batch = new EventBatch(List.of("feature2", "feature1", "feature3"), 16);
+      List<String> actual = new ArrayList<>();
+      int read;
+      while ((read = reader.read(batch, 128)) > 0) {
+        assertEquals(read, batch.size());
+        for (int event = 0; event < batch.size(); event++) {
+          int page = batch.getFeatureId(0, event);
+          assertEquals(EventBatch.ABSENT, batch.getFeatureId(2, event));
+          actual.add(batch.getGuid(event) + "," + batch.getTimestamp(event) + ","
+                     + batch.getFeatureValue(1, batch.getFeatureId(1, event)) + ","
+                     + (page == EventBatch.ABSENT ? null : batch.getFeatureValue(0, page)));
+        }
+        batch.clear();
+      }
+      assertEquals(expected, actual);
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void notAnArchiveTest() throws IOException {
+    Path csv = Files.createTempFile("events", ".csv");
+    Files.write(csv, List.of("guid,timestamp"));
+    try {
+      assertFalse(EventArchiveReader.isArchive(csv));
+      new EventArchiveReader(csv).close();
+      throw new AssertionError("Read a CSV file as an archive");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().startsWith("Not an event archive"));
+    } finally {
+      Files.delete(csv);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.gps.cardinality.utils.Timestamps.Intervals;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class IntervalCalculatorTest {
+
+  @Test
+  public void localIntervalsTest() {
+    ZoneId newYork = ZoneId.of("America/New_York");
+    IntervalCalculator calculator = IntervalCalculator.forZone(newYork);
+    // 11/01/2018 @ 3:00am (UTC) is still October 31st in New York
+    Intervals intervals = calculator.getIntervals(1541041200);
+    assertEquals(epoch(2018, 10, 1, newYork), intervals.getMonthStart());
+    assertEquals(epoch(2018, 10, 29, newYork), intervals.getWeekStart());
+    assertEquals(epoch(2018, 10, 31, newYork), intervals.getDayStart());
+    // DST ends on 11/04/2018, that day lasts 25 hours
+    intervals = calculator.getIntervals(epoch(2018, 11, 5, newYork) - 1);
+    assertEquals(epoch(2018, 11, 1, newYork), intervals.getMonthStart());
+    assertEquals(epoch(2018, 10, 29, newYork), intervals.getWeekStart());
+    assertEquals(epoch(2018, 11, 4, newYork), intervals.getDayStart());
+    assertEquals(25 * 3600, epoch(2018, 11, 5, newYork) - epoch(2018, 11, 4, newYork));
+  }
+
+  @Test
+  public void skippedMidnightTest() {
+    // DST started at midnight on 11/04/2018 in Sao Paulo, the day started at 1:00am
+    ZoneId saoPaulo = ZoneId.of("America/Sao_Paulo");
+    Intervals intervals = IntervalCalculator.forZone(saoPaulo).getIntervals(1541300400);
+    assertEquals(1541300400, intervals.getDayStart());
+    assertEquals(epoch(2018, 11, 1, saoPaulo), intervals.getMonthStart());
+  }
+
+  @Test
+  public void matchesJavaTimeTest() {
+    Random random = new Random(42);
+    for (ZoneId zone : List.of(ZoneOffset.UTC, ZoneId.of("Europe/London"),
+        ZoneId.of("Australia/Lord_Howe"), ZoneId.of("Asia/Kathmandu"))) {
+      IntervalCalculator calculator = IntervalCalculator.forZone(zone);
+      for (int i = 0; i < 10_000; i++) {
+        // From 1990 to 2070, including timestamps outside of the precomputed table
+        long timestamp = 631152000L + (long) (random.nextDouble() * 2524608000L);
+        Intervals expected = calculator.computeIntervals(timestamp);
+        Intervals actual = calculator.getIntervals(timestamp);
+        assertEquals(expected.getMonthStart(), actual.getMonthStart());
+        assertEquals(expected.getWeekStart(), actual.getWeekStart());
+        assertEquals(expected.getDayStart(), actual.getDayStart());
+        assertEquals(expected.getMonthStart(), calculator.getMonthStart(timestamp));
+      }
+    }
+  }
+
+  private static long epoch(int year, int month, int day, ZoneId zone) {
+    return LocalDate.of(year, month, day).atStartOfDay(zone).toEpochSecond();
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void percentileTest() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(10000, histogram.getTotalCount());
+    assertEquals(10_000_000L, histogram.percentile(100));
+    // Values are accurate to within the sub bucket resolution
+    assertTrue(Math.abs(histogram.percentile(50) - 5_000_000L) < 5_000_000L / 16);
+    assertTrue(Math.abs(histogram.percentile(99) - 9_900_000L) < 9_900_000L / 16);
+
+    LatencyHistogram other = new LatencyHistogram();
+    other.record(3);
+    histogram.merge(other);
+    assertEquals(3, histogram.percentile(0));
+  }
+}
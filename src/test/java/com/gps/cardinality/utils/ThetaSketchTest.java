@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.gps.cardinality.utils.ThetaSketch.Compact;
+
+import org.junit.Test;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ThetaSketchTest {
+
+  @Test
+  public void exactModeTest() {
+    ThetaSketch sketch = new ThetaSketch(1024);
+    for (int i = 0; i < 3000; i++) {
+      sketch.update("guid" + (i % 1000));
+    }
+    Compact compact = sketch.compact();
+    assertTrue(compact.isExact());
+    assertEquals(1000, compact.getEstimate(), 0);
+    assertEquals(1000, sketch.getEstimate(), 0);
+  }
+
+  @Test
+  public void estimationModeTest() {
+    ThetaSketch sketch = new ThetaSketch(4096);
+    for (int i = 0; i < 200_000; i++) {
+      sketch.update("guid" + i);
+    }
+    Compact compact = sketch.compact();
+    assertFalse(compact.isExact());
+    assertEquals(4096, compact.getRetainedEntries());
+    // 1 / sqrt(4096) is about 1.6%, allow three standard errors
+    assertEquals(200_000, compact.getEstimate(), 200_000 * 0.05);
+  }
+
+  @Test
+  public void setOperationsTest() {
+    // a holds guids 0 to 59999, b holds guids 40000 to 99999
+    ThetaSketch a = new ThetaSketch(4096);
+    ThetaSketch b = new ThetaSketch(4096);
+    for (int i = 0; i < 100_000; i++) {
+      if (i < 60_000) {
+        a.update("guid" + i);
+      }
+      if (i >= 40_000) {
+        b.update("guid" + i);
+      }
+    }
+    assertEquals(100_000,
+        ThetaSketch.union(a.compact(), b.compact()).getEstimate(), 100_000 * 0.05);
+    assertEquals(20_000,
+        ThetaSketch.intersect(a.compact(), b.compact()).getEstimate(), 20_000 * 0.1);
+    assertEquals(40_000,
+        ThetaSketch.aNotB(a.compact(), b.compact()).getEstimate(), 40_000 * 0.1);
+    Compact empty = ThetaSketch.empty(4096);
+    assertEquals(a.compact().getEstimate(),
+        ThetaSketch.union(a.compact(), empty).getEstimate(), 0);
+    assertEquals(0, ThetaSketch.intersect(a.compact(), empty).getEstimate(), 0);
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2018 George Stathis <gstathis@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.gps.cardinality.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author gstathis
+ * Created on: 2026-10-18
+ */
+public class ZipfDistributionTest {
+
+  @Test
+  public void sampleTest() {
+    ZipfDistribution uniform = new ZipfDistribution(4, 0);
+    assertEquals(0.25, uniform.probability(3), 1e-9);
+    ZipfDistribution skewed = new ZipfDistribution(100, 1.0);
+    assertTrue(skewed.probability(0) > skewed.probability(1));
+    Random rand = new Random(42);
+    int[] hits = new int[100];
+    for (int i = 0; i < 100000; i++) {
+      hits[skewed.sample(rand)]++;
+    }
+    assertEquals(skewed.probability(0), hits[0] / 100000.0, 0.01);
+  }
+}